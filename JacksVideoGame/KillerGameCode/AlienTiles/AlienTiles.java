@@ -14,7 +14,12 @@
    around the pickup that the player is heading towards 
    (AlienQuadSprite objects). 
 
-   The AlienAStarSprite class uses A* pathfinding to chase the player.
+   The AlienAStarSprite aliens chase the player by stepping down
+   a shared distance field (a TilesPathField in WorldDisplay),
+   which holds the number of moves from each tile to the player,
+   found by a breadth-first search. The search is restarted
+   whenever the player moves to a new tile, and extended only as
+   far as the chasing aliens need.
 
    The playing area is an isometric map containing 'no-go' tiles
    which the sprites cannot move on to. Some tiles 
@@ -315,14 +315,10 @@ public class AlienTilesPanel extends JPanel implements Runnable
         dbg = dbImage.getGraphics();
     }
 
-    // a light blue background
-    dbg.setColor(lightBlue);
-    dbg.fillRect(0, 0, PWIDTH, PHEIGHT);
-
     // draw the game elements: order is important
-    world.draw(dbg);  
-    /* WorldDisplay draws the game world: the tile floor, blocks, 
-       pickups, and the sprites. */
+    world.draw(dbg, PWIDTH, PHEIGHT, lightBlue);  
+    /* WorldDisplay draws the game world: a light blue background, 
+       the tile floor, blocks, pickups, and the sprites. */
 
     reportStats(dbg);
 
@@ -0,0 +1,135 @@
+
+// StaticLayer.java
+
+/* A StaticLayer holds the parts of the world that don't move: the
+   floor image, and the blocks and pickups in WorldItems. They are
+   drawn once, when the StaticLayer is created, into a grid of
+   CHUNK_SIZE*CHUNK_SIZE images (chunks), so drawing the static part
+   of the world only needs the chunks that are visible to be copied.
+
+   The chunks cover the floor image, and any blocks or pickups which
+   stick out past its edges. The chunk coordinates are relative to
+   the floor image, like the WorldItems coordinates. Chunks are
+   transparent where there is no floor.
+
+   When part of the static world changes (e.g. a pickup is removed),
+   redraw() redraws just that area of the chunks it touches.
+
+   The chunks are compatible images, so Java 2D can keep them in
+   video memory (as managed images) when copying them to the screen.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+
+
+public class StaticLayer
+{
+  private final static int CHUNK_SIZE = 256;   // pixels
+
+  private BufferedImage floorIm;
+  private WorldItems wItems;
+
+  private int xStart, yStart;       // top-left corner of the first chunk
+  private int numCols, numRows;     // of chunks
+  private BufferedImage[] chunks;   // numRows*numCols, in row order
+
+
+
+  public StaticLayer(BufferedImage fIm, WorldItems wi)
+  {
+    floorIm = fIm;
+    wItems = wi;
+
+    Rectangle area = new Rectangle(0, 0, floorIm.getWidth(), floorIm.getHeight());
+    Rectangle itemsArea = wItems.getStaticBounds();
+    if (itemsArea != null)
+      area = area.union(itemsArea);
+
+    xStart = area.x; yStart = area.y;
+    numCols = (area.width + CHUNK_SIZE - 1)/CHUNK_SIZE;
+    numRows = (area.height + CHUNK_SIZE - 1)/CHUNK_SIZE;
+    chunks = new BufferedImage[numRows*numCols];
+    makeChunks();
+  }  // end of StaticLayer()
+
+
+  private void makeChunks()
+  // create each chunk and draw the static world into it
+  {
+    GraphicsConfiguration gc = null;
+    if (!GraphicsEnvironment.isHeadless())
+      gc = GraphicsEnvironment.getLocalGraphicsEnvironment().
+                   getDefaultScreenDevice().getDefaultConfiguration();
+
+    for (int i=0; i < chunks.length; i++) {
+      if (gc != null)
+        chunks[i] = gc.createCompatibleImage(CHUNK_SIZE, CHUNK_SIZE,
+                                             Transparency.BITMASK);
+      else
+        chunks[i] = new BufferedImage(CHUNK_SIZE, CHUNK_SIZE,
+                                      BufferedImage.TYPE_INT_ARGB);
+      drawChunk(i, chunkArea(i));
+    }
+  }  // end of makeChunks()
+
+
+  private Rectangle chunkArea(int i)
+  // the area covered by chunk i, relative to the floor image
+  {  return new Rectangle(xStart + (i%numCols)*CHUNK_SIZE,
+                          yStart + (i/numCols)*CHUNK_SIZE,
+                          CHUNK_SIZE, CHUNK_SIZE);  }
+
+
+  private void drawChunk(int i, Rectangle area)
+  /* Clear area (relative to the floor image) in chunk i, then draw
+     the floor and the blocks and pickups that overlap it. */
+  {
+    Rectangle cArea = chunkArea(i);
+    int xOffset = -cArea.x;   // floor image position in the chunk
+    int yOffset = -cArea.y;
+
+    Graphics2D g2d = chunks[i].createGraphics();
+    g2d.setClip(area.x + xOffset, area.y + yOffset, area.width, area.height);
+    g2d.setComposite(AlphaComposite.Clear);
+    g2d.fillRect(area.x + xOffset, area.y + yOffset, area.width, area.height);
+    g2d.setComposite(AlphaComposite.SrcOver);
+
+    g2d.drawImage(floorIm, xOffset, yOffset, null);
+    wItems.drawStatic(g2d, area, xOffset, yOffset);
+    g2d.dispose();
+  }  // end of drawChunk()
+
+
+
+  public void redraw(Rectangle area)
+  // redraw the area (relative to the floor image) in every chunk it touches
+  {
+    Rectangle cArea, overlap;
+    for (int i=0; i < chunks.length; i++) {
+      cArea = chunkArea(i);
+      if (cArea.intersects(area)) {
+        overlap = cArea.intersection(area);
+        drawChunk(i, overlap);
+      }
+    }
+  }  // end of redraw()
+
+
+
+  public void draw(Graphics g, Rectangle area, int xOffset, int yOffset)
+  /* Draw the chunks which overlap area (relative to the floor image),
+     offset from the top-left of the JPanel by (xOffset,yOffset). */
+  {
+    int colStart = Math.max(0, (area.x - xStart)/CHUNK_SIZE);
+    int colEnd = Math.min(numCols-1, (area.x + area.width - 1 - xStart)/CHUNK_SIZE);
+    int rowStart = Math.max(0, (area.y - yStart)/CHUNK_SIZE);
+    int rowEnd = Math.min(numRows-1, (area.y + area.height - 1 - yStart)/CHUNK_SIZE);
+
+    for (int r = rowStart; r <= rowEnd; r++)
+      for (int c = colStart; c <= colEnd; c++)
+        g.drawImage(chunks[r*numCols + c], xStart + c*CHUNK_SIZE + xOffset,
+                                 yStart + r*CHUNK_SIZE + yOffset, null);
+  }  // end of draw()
+
+}  // end of StaticLayer class
@@ -15,7 +15,8 @@
    apparently moves. 
 
    A sprite draws itself, and must be positioned in
-   the JPanel first.
+   the JPanel first. A sprite's TileOccupier is reused as the
+   sprite moves, by calling setTileLoc().
 */
 
 import java.awt.*;
@@ -80,6 +81,36 @@ public class TileOccupier
   public Point getTileLoc()
   {  return new Point(xTile, yTile);  }
 
+  public int getXTile()
+  {  return xTile;  }
+
+  public int getYTile()
+  {  return yTile;  }
+
+
+  public void setTileLoc(int x, int y, BufferedImage im,
+                          int xRowStart, int yRowStart, 
+                          int xTileWidth, int yTileHeight)
+  /* Move the occupier to tile (x,y), and change its image. 
+     Used when a sprite moves, or its image changes. */
+  { xTile = x; yTile = y;
+    image = im;
+    calcPosition(xRowStart, yRowStart, xTileWidth, yTileHeight);
+  }
+
+
+  public Rectangle getBounds()
+  // the area covered by the image, relative to the floor image
+  {  return new Rectangle(xDraw, yDraw, image.getWidth(), image.getHeight());  }
+
+
+  public boolean intersects(Rectangle r)
+  // does the image overlap r (relative to the floor image)?
+  {
+    return (xDraw < r.x + r.width) && (xDraw + image.getWidth() > r.x) &&
+           (yDraw < r.y + r.height) && (yDraw + image.getHeight() > r.y);
+  }
+
 
   public void addSpriteRef(TiledSprite s)
   { if (type == WorldDisplay.SPRITE)
@@ -0,0 +1,176 @@
+
+// TilesPathField.java
+
+/* A TilesPathField object stores the distance (in moves) from
+   every tile to the player's tile, so that all the aliens chasing
+   the player can share one path search. It is managed by WorldDisplay.
+
+   The distances are calculated by a breadth-first search outwards
+   from the player's tile. Every move costs 1 and can be reversed,
+   so this gives the length of the shortest path from each tile
+   to the player. An alien's next step is to a neighbouring tile
+   that is one move closer.
+
+   The search is only carried out as far as it is needed: when an
+   alien asks about a tile which hasn't been reached yet, the search
+   continues from where it stopped until that tile is reached. So
+   after the player moves, the work done is proportional to the
+   number of tiles between the player and the furthest chasing alien,
+   rather than the number of aliens times the size of the map.
+
+   When the player moves, setGoal() starts a new search. The arrays
+   are not cleared; instead each search has a new search number, and
+   a tile's distance is only valid if its reached[] entry holds the
+   current search number.
+
+   The obstacles in WorldDisplay are fixed once the world has been
+   loaded (pickups are not obstacles), so the distances only change
+   when the player moves.
+*/
+
+import java.awt.*;
+import java.util.*;
+
+
+public class TilesPathField
+{
+  private WorldDisplay world;
+  private int numXTiles, numYTiles;
+
+  private int goal = -1;   // the player's tile number (y*numXTiles + x)
+
+  // indexed by tile number
+  private int[] dist;      // number of moves to the goal
+  private int[] reached;   // search number when the tile was reached
+
+  private int searchNum = 0;
+
+  // the breadth-first search queue of tile numbers
+  private int[] queue;
+  private int head, tail;
+
+
+
+  public TilesPathField(WorldDisplay wd)
+  { world = wd;
+    numXTiles = wd.getNumXTiles();
+    numYTiles = wd.getNumYTiles();
+    int numTiles = numXTiles * numYTiles;
+
+    dist = new int[numTiles];
+    reached = new int[numTiles];
+    queue = new int[numTiles];   // each tile is only added once
+  }  // end of TilesPathField()
+
+
+
+  public void setGoal(Point pt)
+  /* The player is now at pt, so the distances need to be
+     recalculated from there. The search only restarts here,
+     and is carried out when the distances are needed. */
+  {
+    int tile = pt.y*numXTiles + pt.x;
+    if (tile == goal)   // the distances are still correct
+      return;
+
+    searchNum++;
+    if (searchNum == Integer.MAX_VALUE) {   // wrap around safely
+      Arrays.fill(reached, 0);
+      searchNum = 1;
+    }
+    goal = tile;
+    reached[goal] = searchNum;
+    dist[goal] = 0;
+    queue[0] = goal;
+    head = 0; tail = 1;
+  }  // end of setGoal()
+
+
+
+  public int getDist(int x, int y)
+  /* Return the number of moves from tile (x,y) to the goal,
+     or -1 if the goal cannot be reached from (x,y). */
+  {
+    if ((goal == -1) || !world.validTileLoc(x,y))
+      return -1;
+    int tile = y*numXTiles + x;
+    while ((reached[tile] != searchNum) && (head < tail))
+      searchNext();
+    if (reached[tile] != searchNum)   // the search is finished
+      return -1;
+    return dist[tile];
+  }  // end of getDist()
+
+
+  private void searchNext()
+  // reach the unreached neighbours of the next tile in the queue
+  {
+    int tile = queue[head++];
+    int x = tile % numXTiles;
+    int y = tile / numXTiles;
+    int next;
+    for (int i=0; i < TiledSprite.NUM_DIRS; i++) {
+      if (((next = neighbour(x, y, i)) != -1) &&
+          (reached[next] != searchNum)) {
+        reached[next] = searchNum;
+        dist[next] = dist[tile] + 1;
+        queue[tail++] = next;
+      }
+    }
+  }  // end of searchNext()
+
+
+
+  public Point nextStep(Point loc)
+  /* Return the neighbouring tile which is one move closer to
+     the goal than loc, or null if loc is the goal, or the goal
+     cannot be reached from loc.
+
+     The neighbours are tried in quadrant order, so aliens on the
+     same tile follow the same path. Since the search is
+     breadth-first, all the tiles one move closer than loc will have
+     been reached when loc was reached.
+  */
+  {
+    int d = getDist(loc.x, loc.y);
+    if (d <= 0)
+      return null;
+
+    int next;
+    for (int i=0; i < TiledSprite.NUM_DIRS; i++) {
+      if (((next = neighbour(loc.x, loc.y, i)) != -1) &&
+          (reached[next] == searchNum) && (dist[next] == d-1))
+        return new Point(next%numXTiles, next/numXTiles);
+    }
+    return null;   // shouldn't happen
+  }  // end of nextStep()
+
+
+
+  private int neighbour(int x, int y, int quad)
+  /* Return the number of the neighbouring tile in the quad direction,
+     or -1 if that location is invalid according to WorldDisplay.
+     The same rules as in TiledSprite.tryMove(). */
+  {
+    if (quad == TiledSprite.NE) {
+      if (y%2 == 1) x++;
+      y--;
+    }
+    else if (quad == TiledSprite.SE) {
+      if (y%2 == 1) x++;
+      y++;
+    }
+    else if (quad == TiledSprite.SW) {
+      if (y%2 == 0) x--;
+      y++;
+    }
+    else {   // NW
+      if (y%2 == 0) x--;
+      y--;
+    }
+    if (!world.validTileLoc(x,y))
+      return -1;
+    return y*numXTiles + x;
+  } // end of neighbour()
+
+}  // end of TilesPathField class
@@ -12,7 +12,7 @@
    WorldDisplay manages the communication between the player and the
    sprites so that it can monitor/control the interactions.
 
-   The 3 main data structures used here are:
+   The 4 main data structures used here are:
       - an onstacles[][] array holding info on which tiles
         are no-gps or hold blocks.
 
@@ -23,6 +23,14 @@
       - a numPickups counter to record how many pickups ae still
         left to be picked up
 
+      - a TilesPathField object which stores the distance from each
+        tile to the player, so the chasing aliens can share one
+        path search
+
+    The floor image, blocks, and pickups are also drawn into a 
+    StaticLayer when the world is loaded, so only the sprites have 
+    to be drawn each frame.
+
     The methods fall into 5 main groups:
       - loading of floor info;           // info related to the floor image
       - loading of world objects info    // info about no-gos, blocks, pickups
@@ -90,6 +98,19 @@ public class WorldDisplay
   private PlayerSprite player;    // sprites
   private AlienSprite aliens[];
 
+  private TilesPathField pathField;
+     // distances to the player, shared by the chasing aliens
+
+  private StaticLayer staticLayer;   // the floor, blocks, and pickups
+
+  /* The world as it appears in the JPanel, kept between frames so
+     only the dirty areas need to be redrawn. viewXOffset and 
+     viewYOffset are the offsets it was drawn with. */
+  private BufferedImage viewIm = null;
+  private Graphics2D viewG;
+  private int viewXOffset, viewYOffset;
+  private Color bgColour;    // used where there is no floor
+
 
 
   public WorldDisplay(ImagesLoader imsLd, AlienTilesPanel atp)
@@ -103,12 +124,17 @@ public class WorldDisplay
    /* The WorldItem object uses the floor info data for deciding
       where the world objects should be drawn in the JPanel. */
    wItems = new WorldItems(tileWidth, tileHeight,
-                             evenRowX, evenRowY, oddRowX, oddRowY);
+                             evenRowX, evenRowY, oddRowX, oddRowY, numYTiles);
    initObstacles();
 
    loadWorldObjects("worldObjs.txt");
      /* The world objects information is stored in the obstacles[][]
         array and the WorldItems object. */
+
+   pathField = new TilesPathField(this);
+
+   staticLayer = new StaticLayer(floorIm, wItems);
+   wItems.clearStaticChanges();   // they're all in staticLayer
   }  // end of WorldDisplay()
 
 
@@ -420,22 +446,94 @@ public class WorldDisplay
   }  // end of validTileLoc()
 
 
-  public void draw(Graphics g)
-  /* Draw the world (with all its contents) to the screen.
-     The WorldItems object already contains the blocks and pickups.
+  public int getNumXTiles()
+  {  return numXTiles;  }
 
-     The sprites must be added, and then WorldItems' draw() method
-     is called. The sprites are then removed, since they will 
-     probably move before the next draw, and will need to be added
-     again in a new position.
+  public int getNumYTiles()
+  {  return numYTiles;  }
+
+
+  public void draw(Graphics g, int pWidth, int pHeight, Color bg)
+  /* Draw the world (with all its contents) to a pWidth*pHeight
+     area of the screen, with a bg coloured background. The 
+     WorldItems object already contains the blocks and pickups.
+
+     The sprites must be positioned first, which tells WorldItems
+     which areas of the world have changed. 
+
+     The world is drawn into viewIm, which is then drawn to the 
+     screen. If the offsets have not changed since the last frame
+     (i.e. the player hasn't moved), only the dirty areas in viewIm 
+     are redrawn. Otherwise, all of viewIm is redrawn, but only the
+     parts of the floor and its contents that are visible are drawn.
+     viewIm is opaque, so drawing it to the screen is a simple copy.
   */
-  { g.drawImage(floorIm, xOffset, yOffset, null);   // draw the floor image
-    wItems.positionSprites(player, aliens);         // add the sprites
-    wItems.draw(g, xOffset, yOffset);               // draw the things in the game
-    wItems.removeSprites();                         // remove the sprites
+  { 
+    wItems.positionSprites(player, aliens);   // update the sprites
+
+    ArrayList staticChanges = wItems.getStaticChanges();
+    for (int i=0; i < staticChanges.size(); i++)   // e.g. removed pickups
+      staticLayer.redraw( (Rectangle) staticChanges.get(i) );
+    wItems.clearStaticChanges();
+
+    if ((viewIm == null) || (viewIm.getWidth() != pWidth) ||
+        (viewIm.getHeight() != pHeight) || !bg.equals(bgColour) ||
+        (viewXOffset != xOffset) || (viewYOffset != yOffset)) {
+      if ((viewIm == null) || (viewIm.getWidth() != pWidth) ||
+          (viewIm.getHeight() != pHeight))
+        makeView(pWidth, pHeight);
+      viewXOffset = xOffset; viewYOffset = yOffset;
+      bgColour = bg;
+      drawView( new Rectangle(-xOffset, -yOffset, pWidth, pHeight) );
+    }
+    else {
+      ArrayList dirtyAreas = wItems.getDirtyAreas();
+      for (int i=0; i < dirtyAreas.size(); i++)
+        drawView( (Rectangle) dirtyAreas.get(i) );
+    }
+    wItems.clearDirtyAreas();
+
+    g.drawImage(viewIm, 0, 0, null);
   } // end of draw()
 
 
+  private void makeView(int pWidth, int pHeight)
+  // create an image for the view, compatible with the screen
+  {
+    if (viewG != null)
+      viewG.dispose();
+    GraphicsConfiguration gc = atPanel.getGraphicsConfiguration();
+    if (gc != null)
+      viewIm = gc.createCompatibleImage(pWidth, pHeight);
+    else
+      viewIm = new BufferedImage(pWidth, pHeight, BufferedImage.TYPE_INT_RGB);
+    viewG = viewIm.createGraphics();
+  }  // end of makeView()
+
+
+  private void drawView(Rectangle area)
+  /* Redraw the part of viewIm showing area (a rectangle relative to 
+     the floor image): fill it with the background colour, then draw 
+     the StaticLayer and the sprites that overlap it. */
+  {
+    Rectangle clip = new Rectangle(area.x + xOffset, area.y + yOffset,
+                                   area.width, area.height);
+    clip = clip.intersection( new Rectangle(0, 0, viewIm.getWidth(), 
+                                                  viewIm.getHeight()) );
+    if (clip.isEmpty())   // not visible
+      return;
+
+    viewG.setClip(clip);
+    viewG.setColor(bgColour);
+    viewG.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+    Rectangle visArea = new Rectangle(clip.x - xOffset, clip.y - yOffset,
+                                      clip.width, clip.height);
+    staticLayer.draw(viewG, visArea, xOffset, yOffset);   // floor, blocks, pickups
+    wItems.drawSprites(viewG, visArea, xOffset, yOffset);
+  }  // end of drawView()
+
+
 
   // ------------------ pickups related --------------------
 
@@ -484,6 +582,7 @@ public class WorldDisplay
   // add the player and aliens
   { player = ps;
     aliens = as;
+    pathField.setGoal( player.getTileLoc() );
   }
 
   public Point getPlayerLoc()
@@ -492,6 +591,13 @@ public class WorldDisplay
   {  return player.getTileLoc(); }
 
 
+  public Point nextStepToPlayer(Point loc)
+  /* Used by the chasing aliens to find the next tile on the
+     shortest path from loc to the player. null is returned if
+     loc is the player's tile, or the player can't be reached. */
+  {  return pathField.nextStep(loc);  }
+
+
   public void hitByAlien()
   /* An alien tells WorldDisplay that the player has been hit.
      Pass this on to the player. */
@@ -503,6 +609,8 @@ public class WorldDisplay
      has moved; tell the aliens and update the world display's 
      offsets. */
   {
+    pathField.setGoal(newPt);   // the distances are now from newPt
+
     for(int i=0; i < aliens.length; i++)
       aliens[i].playerHasMoved(newPt);   // tell the aliens
 
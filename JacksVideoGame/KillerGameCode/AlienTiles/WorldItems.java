@@ -1,21 +1,41 @@
 
-// WorldItems.java 
+// WorldItems.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
-/* WorldItems maintains a list of TileOccupier objects ordered by tile row.
-   When the objects are drawn, the correct z-ordering is
-   enforced, so objects in the 'foreground' are drawn in
-   front of those further back.
+/* WorldItems maintains the TileOccupier objects in the world, stored
+   in a bucket (an ArrayList) for each tile row. Within a row, the
+   items are ordered by their column position. When the objects are
+   drawn, row by row, the correct z-ordering is enforced, so objects
+   in the 'foreground' are drawn in front of those further back.
 
    A TileOccupier can be a block, pickup, or sprite.
 
-   A pickups is deleted from WorldItems when it is picked up by 
-   the player.
-
-   Sprites are added temporarily while drawing is carried out, then
-   removed afterwards. This is because sprites move around, changing
-   their tile position, which will affect where they are placed in
-   the list.
+   A pickups is deleted from WorldItems when it is picked up by
+   the player. The pickups are also kept in their own list, since
+   there are only a few of them.
+
+   Each sprite has a TileOccupier which stays in WorldItems. When
+   the sprite moves to a new tile, its TileOccupier is moved to the
+   bucket for the new row.
+
+   Only the items which overlap the area being drawn are drawn. The
+   bucket rows and the range of columns which may overlap the area
+   are calculated from the tile dimensions and the size of the
+   largest image, so drawing the visible part of the world doesn't
+   depend on the size of the world.
+
+   The blocks and pickups are drawn into a StaticLayer by
+   drawStatic() when the world is loaded. After that, only the 
+   sprites are drawn each frame, by drawSprites(), on top of the
+   StaticLayer, along with any parts of blocks and pickups which 
+   should appear in front of the sprites.
+
+   WorldItems also records the dirty areas of the world which
+   need to be redrawn because sprites have moved (or changed their
+   image), or pickups have been removed. WorldDisplay uses these
+   to update its view of the world. The areas where the blocks and 
+   pickups have changed are recorded separately, since those parts 
+   of the StaticLayer must be redrawn as well.
 */
 
 import java.awt.*;
@@ -36,77 +56,303 @@ public class WorldItems
   // 'start of first odd row' coordinate
   private int oddRowX, oddRowY;
 
-  private ArrayList items;    
-         // a row-ordered list of TileOccupier objects
+  private ArrayList[] rows;
+         // a column-ordered list of TileOccupier objects for each row
+
+  private ArrayList pickups;   // the pickup TileOccupier objects
+
+  private TileOccupier[] spriteItems = null;
+         // the player and aliens, in the order given to positionSprites()
+
+  // the largest image dimensions of any item
+  private int maxImWidth = 0;
+  private int maxImHeight = 0;
+
+  private ArrayList dirtyAreas;
+         // Rectangles relative to the floor image that need redrawing
+  private ArrayList staticChanges;
+         // Rectangles where the blocks and pickups have changed
+
+  private Rectangle[] spriteAreas;   // used by drawSprites()
 
 
 
   public WorldItems(int w, int h, int erX, int erY,
-                                  int orX, int orY)
+                                  int orX, int orY, int numYTiles)
   { tileWidth = w; tileHeight = h;
     evenRowX = erX; evenRowY = erY;
     oddRowX = orX; oddRowY = orY;
-    items = new ArrayList();
+
+    rows = new ArrayList[numYTiles];
+    for (int i=0; i < numYTiles; i++)
+      rows[i] = new ArrayList();
+    pickups = new ArrayList();
+    dirtyAreas = new ArrayList();
+    staticChanges = new ArrayList();
   }  // end of WorldItems()
 
 
 
   public void addItem(String name, int type, int x, int y, BufferedImage im)
-  /* When a TileOccupier object is created, it must be passed the 
+  /* When a TileOccupier object is created, it must be passed the
      relevant row coord information depending on if it is in an even or
      odd numbered row. The pixel dimensions of a tile are also needed,
      so the item can be drawn at the correct place in the JPanel.
 
      (x,y) is the tile coordinate for the item; type is one of
-     BLOCK or PICKUP. The SPRITE entities are handled by positionSprites() 
+     BLOCK or PICKUP. The SPRITE entities are handled by positionSprites()
      below.
   */
   {
     TileOccupier toc;
     if (y%2 == 0) // even row
-      toc = new TileOccupier(name, type, x, y, im, 
+      toc = new TileOccupier(name, type, x, y, im,
                                     evenRowX, evenRowY,
                                     tileWidth, tileHeight);
     else
-      toc = new TileOccupier(name, type, x, y, im, 
+      toc = new TileOccupier(name, type, x, y, im,
                                     oddRowX, oddRowY,
                                     tileWidth, tileHeight);
-    rowInsert(toc, x, y);
+    rowInsert(toc);
+    if (type == WorldDisplay.PICKUP)
+      pickups.add(toc);
+    dirtyAreas.add( toc.getBounds() );
+    staticChanges.add( toc.getBounds() );
   } // end of addItem()
 
 
-  private void rowInsert(TileOccupier toc, int x, int y)
-  /* Insert the toc item into the list in row order. Within a row, 
-     the items are orderd by their column position. */
+  private void rowInsert(TileOccupier toc)
+  /* Insert the toc item into the bucket for its row. Within a row,
+     the items are ordered by their column position. On the same tile,
+     blocks and pickups come before sprites, and sprites are in the
+     order they were given to positionSprites(). */
   {
+    ArrayList row = rows[toc.getYTile()];
+    int x = toc.getXTile();
+    int i = findColumn(row, x);
     TileOccupier item;
-    Point itemPt;
-    int i = 0;
-    while(i < items.size()) {
-      item = (TileOccupier) items.get(i);
-      itemPt = item.getTileLoc();
-      if (y < itemPt.y)   
-        break;
-      else if ((y == itemPt.y) && (x < itemPt.x))
+    while (i < row.size()) {
+      item = (TileOccupier) row.get(i);
+      if ((item.getXTile() != x) || !drawnBefore(item, toc))
         break;
       i++;
     }
-    items.add(i, toc);
+    row.add(i, toc);
+    noteImageSize(toc);
   } // end of rowInsert()
 
 
+  private boolean drawnBefore(TileOccupier item, TileOccupier toc)
+  // should item be drawn before toc when they are on the same tile?
+  {
+    if ((item.getType() != WorldDisplay.SPRITE) || 
+        (toc.getType() != WorldDisplay.SPRITE))
+      return (toc.getType() == WorldDisplay.SPRITE) ||
+             (item.getType() != WorldDisplay.SPRITE);
+    return spriteIndex(item) < spriteIndex(toc);
+  }  // end of drawnBefore()
+
 
-  public void draw(Graphics g, int xOffset, int yOffset)
-  /* Draw each item. Since the items are in row order, they 
-     will be drawn to the screen in the correct back-to-front
-     z-ordering. */
+  private int spriteIndex(TileOccupier toc)
   {
+    for (int i=0; i < spriteItems.length; i++)
+      if (spriteItems[i] == toc)
+        return i;
+    return spriteItems.length;
+  }
+
+
+  private int findColumn(ArrayList row, int x)
+  // binary search for the position of the first item in row at column x or later
+  {
+    int lo = 0;
+    int hi = row.size();
+    int mid;
+    while (lo < hi) {
+      mid = (lo+hi)/2;
+      if (((TileOccupier) row.get(mid)).getXTile() < x)
+        lo = mid+1;
+      else
+        hi = mid;
+    }
+    return lo;
+  } // end of findColumn()
+
+
+  private void noteImageSize(TileOccupier toc)
+  // remember the largest image dimensions
+  { Rectangle r = toc.getBounds();
+    if (r.width > maxImWidth)
+      maxImWidth = r.width;
+    if (r.height > maxImHeight)
+      maxImHeight = r.height;
+  }
+
+
+
+  public Rectangle getStaticBounds()
+  // the area covered by all the blocks and pickups, or null if there are none
+  {
+    Rectangle bounds = null;
+    ArrayList row;
+    TileOccupier item;
+    for (int y=0; y < rows.length; y++) {
+      row = rows[y];
+      for (int i=0; i < row.size(); i++) {
+        item = (TileOccupier) row.get(i);
+        if (item.getType() != WorldDisplay.SPRITE) {
+          if (bounds == null)
+            bounds = item.getBounds();
+          else
+            bounds = bounds.union( item.getBounds() );
+        }
+      }
+    }
+    return bounds;
+  }  // end of getStaticBounds()
+
+
+
+  public void drawStatic(Graphics g, Rectangle area, int xOffset, int yOffset)
+  /* Draw the blocks and pickups which overlap area (a rectangle 
+     relative to the floor image), in back-to-front order. 
+     Used by StaticLayer. */
+  {  drawItems(g, area, xOffset, yOffset, true);  }
+
+
+  public void drawSprites(Graphics g, Rectangle area, int xOffset, int yOffset)
+  /* Draw the sprites which overlap area, on top of a StaticLayer
+     which already shows the blocks and pickups.
+
+     A block or pickup which is further forward than a sprite must
+     be drawn again over that sprite, but only inside the sprite's
+     area; elsewhere the StaticLayer is already correct. The block and
+     pickup images have no partially transparent pixels, so drawing 
+     them again doesn't change the parts over the StaticLayer.
+  */
+  {
+    if (spriteItems == null)   // no sprites yet
+      return;
+    if (spriteAreas == null)
+      spriteAreas = new Rectangle[spriteItems.length];
+    drawItems(g, area, xOffset, yOffset, false);
+  }
+
+
+
+  private void drawItems(Graphics g, Rectangle area, int xOffset, int yOffset,
+                                                   boolean staticOnly)
+  /* Draw the items which overlap area (a rectangle relative to
+     the floor image). If staticOnly is true, only the blocks and 
+     pickups are drawn, otherwise the sprites are drawn, with any
+     blocks and pickups in front of them (see drawSprites()).
+     Since the rows are drawn in order, the items will be drawn to 
+     the screen in the correct back-to-front z-ordering.
+
+     The bottom edge of every item's image is the same distance
+     below the top of its row (see TileOccupier.calcPosition()), so
+     only rows whose bottom edge is no more than maxImHeight below
+     the top of area, and no further below than the area's bottom
+     edge, need to be looked at.
+  */
+  {
+    int numSprites = 0;   // the sprites drawn so far
+    Shape clip = g.getClip();
+
+    int yFeet = tileHeight - tileHeight/5;   // item bottom, relative to its row
+    int areaBottom = area.y + area.height;
+
+    // the rows which may overlap area, with a spare row on either side
+    int yStart = ((area.y - evenRowY - yFeet)*2)/tileHeight - 2;
+    int yEnd = ((areaBottom + maxImHeight - evenRowY - yFeet)*2)/tileHeight + 2;
+    if (yStart < 0)
+      yStart = 0;
+    if (yEnd >= rows.length)
+      yEnd = rows.length-1;
+
+    int rowBottom, xRowStart, xStart, xEnd, i;
+    ArrayList row;
     TileOccupier item;
-    for(int i = 0; i < items.size(); i++) {
-      item = (TileOccupier) items.get(i);
-      item.draw(g, xOffset, yOffset);    // draw the item
+    for (int y = yStart; y <= yEnd; y++) {
+      row = rows[y];
+      if (row.size() == 0)
+        continue;
+      if (y%2 == 0) {   // even row
+        rowBottom = evenRowY + (y/2 * tileHeight) + yFeet;
+        xRowStart = evenRowX;
+      }
+      else {
+        rowBottom = oddRowY + ((y-1)/2 * tileHeight) + yFeet;
+        xRowStart = oddRowX;
+      }
+      if ((rowBottom <= area.y) || (rowBottom - maxImHeight >= areaBottom))
+        continue;
+
+      // the columns which may overlap area
+      xStart = (area.x - maxImWidth/2 - xRowStart)/tileWidth - 1;
+      xEnd = (area.x + area.width + maxImWidth/2 - xRowStart)/tileWidth + 1;
+      i = findColumn(row, xStart);
+      while (i < row.size()) {
+        item = (TileOccupier) row.get(i);
+        if (item.getXTile() > xEnd)
+          break;
+        if (item.intersects(area)) {
+          if (item.getType() == WorldDisplay.SPRITE) {
+            if (!staticOnly) {
+              item.draw(g, xOffset, yOffset);    // draw the sprite
+              spriteAreas[numSprites++] = item.getBounds();
+            }
+          }
+          else if (staticOnly)
+            item.draw(g, xOffset, yOffset);    // draw the block or pickup
+          else
+            drawOverSprites(g, clip, item, numSprites, xOffset, yOffset);
+        }
+        i++;
+      }
+    }
+  }  // end of drawItems()
+
+
+  private void drawOverSprites(Graphics g, Shape clip, TileOccupier item, 
+                               int numSprites, int xOffset, int yOffset)
+  // draw the block or pickup again inside each sprite area it overlaps
+  {
+    Rectangle r;
+    for (int i=0; i < numSprites; i++) {
+      r = spriteAreas[i];
+      if (item.intersects(r)) {
+        g.setClip(clip);
+        g.clipRect(r.x + xOffset, r.y + yOffset, r.width, r.height);
+        item.draw(g, xOffset, yOffset);
+        g.setClip(clip);
+      }
     }
-  }  // end of draw()
+  }  // end of drawOverSprites()
+
+
+
+  // ------------------------ dirty areas -----------------
+
+
+  public ArrayList getDirtyAreas()
+  /* The Rectangles (relative to the floor image) which have
+     changed since the last call to clearDirtyAreas(). */
+  {  return dirtyAreas;  }
+
+
+  public void clearDirtyAreas()
+  {  dirtyAreas.clear();  }
+
+
+  public ArrayList getStaticChanges()
+  /* The Rectangles (relative to the floor image) where blocks or
+     pickups have changed since the last call to clearStaticChanges(). */
+  {  return staticChanges;  }
+
+
+  public void clearStaticChanges()
+  {  staticChanges.clear();  }
 
 
 
@@ -114,53 +360,77 @@ public class WorldItems
 
 
   public void positionSprites(PlayerSprite ps, AlienSprite[] aliens)
-  // Add player and aliens to world items
+  /* Update the positions and images of the player and aliens.
+     Their TileOccupiers are created the first time. */
   {
-    posnSprite("bob", ps);    // make up a 'unique' name
-    for(int i = 0; i < aliens.length; i++)
-      posnSprite("alien "+i, aliens[i]);
+    if (spriteItems == null) {
+      spriteItems = new TileOccupier[aliens.length+1];
+      makeSpriteItem(0, "bob", ps);    // make up a 'unique' name
+      for(int i = 0; i < aliens.length; i++)
+        makeSpriteItem(i+1, "alien "+i, aliens[i]);
+    }
+    else {
+      posnSprite(spriteItems[0], ps);
+      for(int i = 0; i < aliens.length; i++)
+        posnSprite(spriteItems[i+1], aliens[i]);
+    }
   }  // end of positionSprites()
 
 
-  private void posnSprite(String name, TiledSprite tSprite)
-  /* Add the TiledSprite object called name to the WorldItems
-     list. This methiod is a variant of addItem(). */
+  private void makeSpriteItem(int idx, String name, TiledSprite tSprite)
+  /* Add a TileOccupier for the TiledSprite object called name
+     to WorldItems, and store it in spriteItems[idx]. 
+     This method is a variant of addItem(). */
   {
     Point sPt = tSprite.getTileLoc();
 
     TileOccupier toc;
     if (sPt.y%2 == 0) // even row
-      toc = new TileOccupier(name, WorldDisplay.SPRITE, 
+      toc = new TileOccupier(name, WorldDisplay.SPRITE,
                                     sPt.x, sPt.y, tSprite.getImage(),
                                     evenRowX, evenRowY,
                                     tileWidth, tileHeight);
     else
-      toc = new TileOccupier(name, WorldDisplay.SPRITE, 
-                                    sPt.x, sPt.y, tSprite.getImage(), 
+      toc = new TileOccupier(name, WorldDisplay.SPRITE,
+                                    sPt.x, sPt.y, tSprite.getImage(),
                                     oddRowX, oddRowY,
                                     tileWidth, tileHeight);
 
-    toc.addSpriteRef(tSprite); 
+    toc.addSpriteRef(tSprite);
        /* the sprite reference is used when drawing the item to
           ensure that the current sprite image is shown. */
-    rowInsert(toc, sPt.x, sPt.y);
-  } // end of posnSprite()
-
+    spriteItems[idx] = toc;
+    rowInsert(toc);
+    dirtyAreas.add( toc.getBounds() );
+  } // end of makeSpriteItem()
 
 
-  public void removeSprites()
-  // remove all the sprites in the WorldItems list, based on type
+  private void posnSprite(TileOccupier toc, TiledSprite tSprite)
+  /* Move the sprite's TileOccupier to the sprite's current tile,
+     changing its row bucket if necessary. The area covered before
+     and after is dirty, since the sprite's image may have changed
+     even if it hasn't moved. */
   {
-    TileOccupier item;
-    int i = 0;
-    while(i < items.size()) {
-      item = (TileOccupier) items.get(i);
-      if (item.getType() == WorldDisplay.SPRITE)
-        items.remove(i);
-      else
-        i++;
-    }
-  } // end of removeSprites()
+    Rectangle oldBounds = toc.getBounds();
+    Point sPt = tSprite.getTileLoc();
+    boolean newRow = (sPt.y != toc.getYTile());
+    boolean newColumn = (sPt.x != toc.getXTile());
+    if (newRow || newColumn)
+      rows[ toc.getYTile() ].remove(toc);
+
+    if (sPt.y%2 == 0) // even row
+      toc.setTileLoc(sPt.x, sPt.y, tSprite.getImage(),
+                           evenRowX, evenRowY, tileWidth, tileHeight);
+    else
+      toc.setTileLoc(sPt.x, sPt.y, tSprite.getImage(),
+                           oddRowX, oddRowY, tileWidth, tileHeight);
+
+    if (newRow || newColumn)
+      rowInsert(toc);
+    else
+      noteImageSize(toc);
+    dirtyAreas.add( oldBounds.union( toc.getBounds() ));
+  } // end of posnSprite()
 
 
 
@@ -172,11 +442,10 @@ public class WorldItems
      return the pickup's name, otherwise null. */
   {
     TileOccupier item;
-    for(int i=0; i < items.size(); i++) {
-      item = (TileOccupier) items.get(i);
-      if ((item.getType() == WorldDisplay.PICKUP) && 
-          (pt.equals( item.getTileLoc())))    // find the pickup at pt
-        return item.getName();
+    for(int i=0; i < pickups.size(); i++) {
+      item = (TileOccupier) pickups.get(i);
+      if ((item.getXTile() == pt.x) && (item.getYTile() == pt.y))
+        return item.getName();   // the pickup at pt
     }
     return null;
   }  // end of findPickupName()
@@ -194,14 +463,12 @@ public class WorldItems
     Point minPoint = null;
     double dist;
     TileOccupier item;
-    for(int i=0; i < items.size(); i++) {
-      item = (TileOccupier) items.get(i);
-      if (item.getType() == WorldDisplay.PICKUP) { 
-        dist = pt.distanceSq( item.getTileLoc() );  // get sq dist. to pickup
-        if (dist < minDist) {
-          minDist = dist;                // store the smallest dist
-          minPoint = item.getTileLoc();  // store the associated pt
-        }
+    for(int i=0; i < pickups.size(); i++) {
+      item = (TileOccupier) pickups.get(i);
+      dist = pt.distanceSq( item.getXTile(), item.getYTile() );  // get sq dist. to pickup
+      if (dist < minDist) {
+        minDist = dist;                // store the smallest dist
+        minPoint = item.getTileLoc();  // store the associated pt
       }
     }
     return minPoint;
@@ -212,11 +479,13 @@ public class WorldItems
   // Attempt to delete the named pickup
   {
     TileOccupier item;
-    for(int i=0; i < items.size(); i++) {
-      item = (TileOccupier) items.get(i);
-      if ((item.getType() == WorldDisplay.PICKUP) && 
-          (name.equals(item.getName()))) {    // find the named pickup
-        items.remove(i);
+    for(int i=0; i < pickups.size(); i++) {
+      item = (TileOccupier) pickups.get(i);
+      if (name.equals(item.getName())) {    // find the named pickup
+        pickups.remove(i);
+        rows[ item.getYTile() ].remove(item);
+        dirtyAreas.add( item.getBounds() );
+        staticChanges.add( item.getBounds() );
         return true;
       }
     }
@@ -225,4 +494,3 @@ public class WorldItems
 
 
 }  // end of WorldItems class
-
@@ -2,14 +2,35 @@
 // ChatGroup.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
-/* ChatGroup maintains two ArrayLists: chatUsers and messages.
+/* ChatGroup maintains the list of users, chatUsers, and the
+  most recent chat messages, in the ring buffer messages[].
 
   chatUsers is an ArrayList of Chatter objects; each Chatter
-  object stores a client's name, UID, and the number of messages 
-  that they have currently read.
-
-  messages is an ArrayList of strings (chat messages).
-  When there are no users, the list is cleared.
+  object stores a client's name, UID, and the sequence number
+  of the next message they will read.
+
+  messages[] holds the last MAX_MSGS chat messages, as ChatMessage
+  objects. Every message gets the next sequence number (seq), and
+  is stored at messages[seq % MAX_MSGS], so an old message is
+  overwritten by a new one, and the memory used doesn't grow no
+  matter how long the server runs. A reader who falls more than
+  MAX_MSGS messages behind is told how many were missed.
+  When there are no users, the messages are cleared.
+
+  The name of a message's sender, and of its recipient (if it is
+  addressed to one person), are extracted when the message is
+  stored, so a read doesn't have to parse every message again.
+
+  read() can wait (long-poll) for up to a given time if there are
+  no new messages for the reader, and returns as soon as one
+  arrives. So a client can send a new read as soon as the last one
+  returns, and gets messages straight away, while an idle client
+  only sends one read every waiting period.
+
+  A user who hasn't read for USER_TIMEOUT ms (e.g. their client
+  crashed before it could say "bye") is removed. The check is made
+  whenever a user is added, a message is stored, or a read arrives,
+  so a dead user doesn't linger just because no one new joins.
 
   A new user is only added if there is no other user
   with the same name.
@@ -19,7 +40,8 @@
 
   All the public methods are synchronized since there may be many
   doGet() servlet threads wishing to access the ChatGroup object
-  at the same time.
+  at the same time. A waiting read() gives up the lock while it
+  waits.
 */
 
 import java.util.*;
@@ -27,14 +49,22 @@ import java.util.*;
 
 public class ChatGroup
 {
+  private static final int MAX_MSGS = 256;   // size of the ring buffer
+  private static final long USER_TIMEOUT = 5*60*1000;   // 5 mins
+
   private ArrayList chatUsers;
-  private ArrayList messages;
   private int numUsers;
 
+  private ChatMessage[] messages;
+  private long nextSeq;     // seq for the next message
+  private long firstSeq;    // seq of the oldest message still stored
+
 
   public ChatGroup()
-  {  chatUsers = new ArrayList();  
-     messages = new ArrayList();
+  {  chatUsers = new ArrayList();
+     messages = new ChatMessage[MAX_MSGS];
+     nextSeq = 0;
+     firstSeq = 0;
      numUsers = 0;
   }
 
@@ -42,13 +72,14 @@ public class ChatGroup
   synchronized public int addUser(String name)
   // adds a user, returns UID if okay, -1 otherwise
   {
+    removeTimedOut();
     if (numUsers == 0)   // no one logged in
-      messages.clear();
+      clearMessages();
 
     if (isUniqueName(name)) {
-      Chatter c = new Chatter(name);
-      chatUsers.add(c);  
-      messages.add("(" + name + ") has arrived");
+      Chatter c = new Chatter(name, firstSeq);   // sees the stored messages
+      chatUsers.add(c);
+      addMessage(name, "(" + name + ") has arrived", false);
       numUsers++;
       return c.getUID();
     }
@@ -80,7 +111,7 @@ public class ChatGroup
       c = (Chatter) chatUsers.get(i);
       if (c.matches(name, uid)) {
         chatUsers.remove(i);
-        messages.add("(" + name + ") has departed");
+        addMessage(name, "(" + name + ") has departed", false);
         numUsers--;
         return true;
       }
@@ -89,6 +120,22 @@ public class ChatGroup
   }  // end of delUser()
 
 
+  private void removeTimedOut()
+  // remove the users who haven't read anything for USER_TIMEOUT ms
+  {
+    long now = System.currentTimeMillis();
+    Chatter c;
+    for(int i=chatUsers.size()-1; i >= 0; i--) {
+      c = (Chatter) chatUsers.get(i);
+      if (!c.isReading() && (now - c.getLastReadTime() > USER_TIMEOUT)) {
+        chatUsers.remove(i);
+        addMessage(c.getUserName(), "(" + c.getUserName() + ") has timed out", false);
+        numUsers--;
+      }
+    }
+  }  // end of removeTimedOut()
+
+
   private Chatter findUser(String name, int uid)
   // returns Chatter object if it exists, null otherwise
   { if (uid == -1)
@@ -106,20 +153,57 @@ public class ChatGroup
 
 
   synchronized public boolean storeMessage(String name, int uid, String msg)
-  /* Add msg to the messages list. It is up to the clients
+  /* Add msg to the messages. It is up to the clients
      to read it by sending "read" messages.
   */
-  { Chatter c = findUser(name, uid);
+  { removeTimedOut();
+    Chatter c = findUser(name, uid);
     if (c != null) {
-      messages.add("(" + name + ") " + msg);
+      addMessage(name, "(" + name + ") " + msg, true);
       return true;
     }
     return false;
   }  // end of storeMessage()
 
 
-  synchronized public String read(String name, int uid)
-  /* Read all the unread messages since the last "read" message.
+  private void addMessage(String fromName, String msg, boolean canBePrivate)
+  /* Store msg in the ring buffer, overwriting the oldest message
+     if it's full, and wake up any waiting readers.
+
+     A message may be addressed to a single person by using the
+     message format:
+          msg / toName
+     The toName is extracted here, once for all the readers.
+  */
+  {
+    String toName = null;    // public
+    if (canBePrivate) {
+      int index = msg.indexOf("/");
+      if (index != -1)
+        toName = msg.substring(index+1).trim();
+    }
+
+    messages[ (int)(nextSeq % MAX_MSGS) ] = new ChatMessage(msg, fromName, toName);
+    nextSeq++;
+    if (nextSeq - firstSeq > MAX_MSGS)
+      firstSeq = nextSeq - MAX_MSGS;
+    notifyAll();    // wake up the waiting readers
+  }  // end of addMessage()
+
+
+  private void clearMessages()
+  {
+    for (int i=0; i < MAX_MSGS; i++)
+      messages[i] = null;
+    firstSeq = nextSeq;
+  }  // end of clearMessages()
+
+
+
+  synchronized public String read(String name, int uid, long waitTime)
+  /* Read all the visible messages since the last "read" message.
+     If there aren't any, wait for up to waitTime ms for one to
+     arrive (waitTime may be 0).
 
      A message may be invisible -- it may be addressed to a
      single person by using the message format:
@@ -127,44 +211,63 @@ public class ChatGroup
 
      Message of this kind are not added to the list returned
      to the client.
+
+     Returns null if the user is unknown, has timed out, or
+     leaves while the read is waiting, so the client can stop
+     reading instead of asking again straight away.
   */
   { StringBuffer msgs = new StringBuffer();
+    removeTimedOut();
     Chatter c = findUser(name, uid);
+    if (c == null)
+      return null;
 
-    if (c != null) {
-      int msgsIndex = c.getMsgsIndex();  // where read to last time
-      String msg;
-      for(int i=msgsIndex; i < messages.size(); i++) {
-        msg = (String) messages.get(i);
-        if (isVisibleMsg(msg, name))
-          msgs.append( msg + "\n" );
+    long endTime = System.currentTimeMillis() + waitTime;
+    long timeLeft = waitTime;
+    boolean removed = false;
+    c.startRead();
+    while (true) {
+      collectMessages(c, msgs);
+      if ((msgs.length() > 0) || (timeLeft <= 0))
+        break;
+      try {
+        wait(timeLeft);
+      }
+      catch(InterruptedException e)
+      {  break;  }
+      if (findUser(name, uid) == null) {   // removed while waiting
+        removed = true;
+        break;
       }
-      c.setMsgsIndex( messages.size() );  // update client's read index
+      timeLeft = endTime - System.currentTimeMillis();
     }
+    c.endRead();
+    c.setLastReadTime( System.currentTimeMillis() );
+    if (removed)
+      return null;
     return msgs.toString();
   }  // end of read()
 
 
-  private boolean isVisibleMsg(String msg, String name)
-  /* A message is visible if it has no "/ name" part, or 
-     "/ name" is the user, or the message is _from_ the user.
-  */
+  private void collectMessages(Chatter c, StringBuffer msgs)
+  /* Add the messages which c hasn't read yet, and can see,
+     to msgs, and update c's read position. */
   {
-    int index = msg.indexOf("/");
-    if (index == -1)  // no '/', so message is public
-      return true;
+    long seq = c.getNextSeq();   // where read to last time
+    if (seq < firstSeq) {     // some have been overwritten
+      msgs.append("-- " + (firstSeq - seq) + " messages were missed --\n");
+      seq = firstSeq;
+    }
 
-    // does have a "/ name" part
-    String toName = msg.substring(index+1).trim();
-    if (toName.equals(name))  // for this user
-      return true;
-    else {   // for another user
-      if (msg.startsWith("("+name))   // but from this user
-        return true;
-      else     // from someone else
-        return false;
+    String name = c.getUserName();
+    ChatMessage m;
+    for(; seq < nextSeq; seq++) {
+      m = messages[ (int)(seq % MAX_MSGS) ];
+      if (m.isVisibleTo(name))
+        msgs.append( m.getText() + "\n" );
     }
-  }  // end of isVisibleMsg()
+    c.setNextSeq(nextSeq);  // update client's read position
+  }  // end of collectMessages()
 
 
 
@@ -181,3 +284,28 @@ public class ChatGroup
 
 
 }  // end of ChatGroup class
+
+
+
+// --------------------------------------------------------------
+
+class ChatMessage
+// A chat message, and who it's from and to
+{
+  private String text;
+  private String fromName;
+  private String toName;   // null if the message is public
+
+  public ChatMessage(String txt, String from, String to)
+  {  text = txt;  fromName = from;  toName = to;  }
+
+  public String getText()
+  {  return text;  }
+
+  public boolean isVisibleTo(String name)
+  /* A message is visible if it has no "/ name" part, or
+     "/ name" is the user, or the message is _from_ the user.
+  */
+  {  return ((toName == null) || toName.equals(name) || fromName.equals(name));  }
+
+}  // end of ChatMessage
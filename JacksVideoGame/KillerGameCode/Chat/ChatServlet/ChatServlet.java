@@ -21,17 +21,24 @@
     * ChatServlet?cmd=msg&name=??&msg=?? + uid cookie
         // add a message to the server's list
 
-    * ChatServlet?cmd=read&name=??  + uid cookie
+    * ChatServlet?cmd=read&name=??[&wait=??]  + uid cookie
         // this retrieves all the visible messages stored on
-           the server since the last read
+           the server since the last read. If there aren't any,
+           the server waits up to wait secs (at most MAX_WAIT)
+           for one to arrive before replying (a long-poll).
 
   Most messages require a user name and a UID to identify 
   the client. The UID is allocated to the client when he
   sends a "hi" message.
 
   Server-side infomation includes details about each client
-  (name, uid, and number of messages read), and a list of
+  (name, uid, and the last message read), and the most recent
   chat messages. The information is stored in a ChatGroup object.
+
+  A waiting read holds onto its servlet thread (the Servlet 2.x
+  API has no way to suspend a request), so the servlet engine
+  needs a thread for each client, which is fine for a chat group.
+  The wait is kept well below the usual HTTP/proxy timeouts.
 */
 
 import javax.servlet.*;
@@ -41,6 +48,8 @@ import java.io.*;
 
 public class ChatServlet extends HttpServlet 
 {
+   private static final int MAX_WAIT = 25;   // secs, for a read
+
    private ChatGroup cg;   // for storing client information
 
    public void init() throws ServletException
@@ -53,7 +62,10 @@ public class ChatServlet extends HttpServlet
    // look at the cmd parameter to decide which message the client sent
    {
      String command = request.getParameter("cmd");
-     System.out.println("Command: " + command);
+     if (command == null)
+       command = "";
+     else if (!command.equals("read"))    // reads are too frequent to log
+       System.out.println("Command: " + command);
 
      if (command.equals("hi"))
        processHi(request, response);
@@ -132,6 +144,8 @@ public class ChatServlet extends HttpServlet
   // return uid value from cookie, or -1
   {
     Cookie[] cookies = request.getCookies();
+    if (cookies == null)    // no cookies sent
+      return -1;
     Cookie c;
     for(int i=0; i < cookies.length; i++) {
       c = cookies[i];
@@ -195,20 +209,27 @@ public class ChatServlet extends HttpServlet
   private void processRead(HttpServletRequest request,
                          HttpServletResponse response)
     throws IOException
-  /* Message format: ChatServlet?cmd=read&name=??  + uid cookie
+  /* Message format: ChatServlet?cmd=read&name=??[&wait=??]  + uid cookie
 
      All the visible messages stored by the server since 
-     the last read by this user are sent back to him.
+     the last read by this user are sent back to him. If there
+     are none, wait up to wait secs for some to arrive.
+
+     "no" is sent back if the user is unknown (e.g. they have
+     timed out), so the client knows to stop reading.
   */
-  { int uid = -1;   // default for failure
+  { String msgs = null;   // default for failure
     String userName = request.getParameter("name");
 
-    if (userName != null)
-      uid = getUidFromCookie(request);
+    if (userName != null) {
+      int uid = getUidFromCookie(request);
+      if (uid != -1)
+        msgs = cg.read(userName, uid, getWaitTime(request));
+    }
 
     PrintWriter output = response.getWriter();
-    if (uid != -1) {
-      output.print( cg.read(userName, uid) );   // already has a '\n'
+    if (msgs != null) {
+      output.print(msgs);   // already has a '\n'
       output.flush();
     }
     else
@@ -217,5 +238,19 @@ public class ChatServlet extends HttpServlet
   }  // end of processRead()
 
 
-} // end of ChatServlet class
+  private long getWaitTime(HttpServletRequest request)
+  // return the wait parameter in ms (0 if there isn't one), up to MAX_WAIT secs
+  {
+    String waitStr = request.getParameter("wait");
+    if (waitStr == null)
+      return 0;
+    try {
+      int secs = Integer.parseInt(waitStr);
+      return Math.max(0, Math.min(secs, MAX_WAIT)) * 1000L;
+    }
+    catch (NumberFormatException ex)
+    {  return 0;  }
+  }  // end of getWaitTime()
+
 
+} // end of ChatServlet class
@@ -3,8 +3,12 @@
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
 /* Store information about a single client:
-      the user's name, their UID, and the current number
-      of messages read from the chat messages list
+      the user's name, their UID, the sequence number of the
+      next chat message they will read, and when they last read.
+
+   numReading counts the reads the user has waiting in the
+   ChatGroup (a second read may arrive before the first has
+   returned), so they aren't timed out in the middle of one.
 
    The UID is a random integer between 0 and ID_MAX.
 */
@@ -15,13 +19,16 @@ public class Chatter
 
   private String userName;
   private int uid;
-  private int msgsIndex;
+  private long nextSeq;
+  private long lastReadTime;
+  private int numReading = 0;
 
 
-  public Chatter(String nm)
+  public Chatter(String nm, long seq)
   { userName = nm;
     uid = (int) Math.round( Math.random()* ID_MAX);
-    msgsIndex = 0;
+    nextSeq = seq;
+    lastReadTime = System.currentTimeMillis();
   }
 
   public String getUserName()
@@ -30,11 +37,26 @@ public class Chatter
   public int getUID()
   { return uid;  }
 
-  public int getMsgsIndex()
-  {  return msgsIndex;  }
+  public long getNextSeq()
+  {  return nextSeq;  }
+
+  public void setNextSeq(long seq)
+  {  nextSeq = seq;  }
+
+  public long getLastReadTime()
+  {  return lastReadTime;  }
+
+  public void setLastReadTime(long time)
+  {  lastReadTime = time;  }
+
+  public boolean isReading()
+  {  return (numReading > 0);  }
+
+  public void startRead()
+  {  numReading++;  }
 
-  public void setMsgsIndex(int newIndex)
-  {  msgsIndex = newIndex;  }
+  public void endRead()
+  {  numReading--;  }
 
   public boolean matches(String nm, int id)
   {  return (userName.equals(nm) && (uid == id));  }
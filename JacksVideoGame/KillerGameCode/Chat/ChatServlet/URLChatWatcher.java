@@ -2,13 +2,31 @@
 // URLChatWatcher.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
-/* A threaded URLChatWatcher object periodically sends a "read" 
+/* A threaded URLChatWatcher object repeatedly sends a "read" 
    message to the ChatServlet:
-      ChatServlet?cmd=read&name=??  + uid cookie
+      ChatServlet?cmd=read&name=??&wait=??  + uid cookie
 
   The response is all the visible messages that have not
   already been read, or "no".
 
+  The read is a long-poll: the servlet holds onto it until a new
+  message arrives, or WAIT_TIME secs pass, so the next read is sent
+  as soon as the response comes back. New messages are shown
+  straight away, and an idle client only sends a read every
+  WAIT_TIME secs, instead of polling every few secs.
+
+  If a read comes back empty well before the server's wait is
+  over (e.g. the server doesn't support waiting, or shortened it),
+  the watcher sleeps for the rest of MIN_POLL ms before reading
+  again, so it never polls faster than the old fixed rate.
+
+  A "no" response means the server doesn't know this user (e.g.
+  they have timed out), so more reads would be rejected too, and
+  watching is stopped.
+
+  If a read fails, it is tried again after ERROR_SLEEP ms,
+  up to MAX_ERRORS times in a row.
+
   The messages are displayed in the top-level client's 
   text area by calling its showMsg() method.
 
@@ -24,7 +42,10 @@ import java.net.*;
 
 public class URLChatWatcher extends Thread
 {
-  private static final int SLEEP_TIME = 2000;    // 2 secs between pollings
+  private static final int WAIT_TIME = 20;    // secs the server may hold a read
+  private static final int MIN_POLL = 2000;   // ms, shortest time between empty reads
+  private static final int ERROR_SLEEP = 2000;    // ms before retrying a failed read
+  private static final int MAX_ERRORS = 5;
   private static final String SERVER = "http://localhost:8100/servlet/ChatServlet";
 
   private URLChat client;
@@ -40,37 +61,43 @@ public class URLChatWatcher extends Thread
 
 
   public void run()
-  // Keep polling forever
-  { URL url;
-    URLConnection conn;
-    BufferedReader br;
-    String line, response;
-    StringBuffer resp;
+  // Keep reading forever
+  { String response;
+    int numErrors = 0;
+    long startTime, readTime;
 
     try {
       String readRequest = SERVER + "?cmd=read&name=" +  
-							URLEncoder.encode(userName, "UTF-8") ;
+							URLEncoder.encode(userName, "UTF-8") +
+                            "&wait=" + WAIT_TIME;
       while(true) {
-        Thread.sleep(SLEEP_TIME);    
- 
-        url  = new URL(readRequest);   // send a "read" message
-        conn = url.openConnection();
-    
-        // Set the cookie value to send
-        conn.setRequestProperty("Cookie", cookieStr);
-    
-	    br = new BufferedReader(
-              new InputStreamReader( conn.getInputStream() ));	
-        resp = new StringBuffer();    // build up the response
-        while ((line = br.readLine()) != null) {
-          if (!fromClient(line))   // if not from client
-            resp.append(line+"\n"); 
+        startTime = System.currentTimeMillis();
+        try {
+          response = readMessages(readRequest);
+          numErrors = 0;
+        }
+        catch(IOException e) {
+          System.out.println(e);  
+          if (++numErrors == MAX_ERRORS)
+            throw e;
+          Thread.sleep(ERROR_SLEEP);    // back off before trying again
+          continue;
         }
-        br.close();
+        readTime = System.currentTimeMillis() - startTime;
 
-        response = resp.toString();
-        if ((response != null) && !response.equals("\n"))
-          client.showMsg(response);    // show the response
+        if (response.equals("no\n")) {   // the server doesn't know us
+          client.showMsg("Server rejected read: watching terminated\n");
+          return;
+        }
+        if (response.length() == 0) {
+          if (readTime < MIN_POLL)      // came back early and empty
+            Thread.sleep(MIN_POLL - readTime);
+        }
+        else {
+          response = removeOwn(response);
+          if ((response.length() > 0) && !response.equals("\n"))
+            client.showMsg(response);    // show the response
+        }
       }
     }
     catch(Exception e)
@@ -80,6 +107,48 @@ public class URLChatWatcher extends Thread
   } // end of run()
 
 
+  private String readMessages(String readRequest) throws IOException
+  /* Send a "read" message, which returns when there are new
+     messages, or the server's wait is over. */
+  { URL url  = new URL(readRequest);
+    URLConnection conn = url.openConnection();
+    
+    // Set the cookie value to send
+    conn.setRequestProperty("Cookie", cookieStr);
+
+    // allow for the server's wait, but don't hang forever
+    conn.setReadTimeout((WAIT_TIME+10)*1000);
+    
+    BufferedReader br = new BufferedReader(
+              new InputStreamReader( conn.getInputStream() ));	
+    StringBuffer resp = new StringBuffer();    // build up the response
+    String line;
+    try {
+      while ((line = br.readLine()) != null)
+        resp.append(line+"\n"); 
+    }
+    finally {
+      br.close();
+    }
+    return resp.toString();
+  }  // end of readMessages()
+
+
+  private String removeOwn(String response)
+  // remove the lines (messages) sent by this client
+  { StringBuffer resp = new StringBuffer();
+    int start = 0;
+    int end;
+    while ((end = response.indexOf('\n', start)) != -1) {
+      String line = response.substring(start, end);
+      if (!fromClient(line))   // if not from client
+        resp.append(line+"\n"); 
+      start = end+1;
+    }
+    return resp.toString();
+  }  // end of removeOwn()
+
+
   private boolean fromClient(String line)
   // A line (message) is from a client if it begins with (Name)
   {
@@ -12,25 +12,46 @@
   ChatGroup handles the addition/removal of client details,
   the answering of "who" messages, and the broadcasting of
   a message to all the clients.
+
+  Broadcasting doesn't write to the clients' sockets, which
+  could block if a client is slow to read. The message is encoded
+  once, and added to each Chatter's send queue. The queues are
+  written out by tasks run by the writers executor, which uses
+  as many threads as there are clients with messages waiting.
+  So the group is only locked for as long as it takes to queue
+  the message, however slow the clients are.
 */
 
 import java.io.*;
+import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 public class ChatGroup
 {
   private ArrayList chatPeople;  // holds a list of Chatter objects
+  private ExecutorService writers;   // runs the Chatters' writer tasks
 
   public ChatGroup()
-  {  chatPeople = new ArrayList();  }
+  {  chatPeople = new ArrayList();
+     writers = Executors.newCachedThreadPool( new ThreadFactory() {
+       public Thread newThread(Runnable r)
+       {  Thread t = new Thread(r, "ChatWriter");
+          t.setDaemon(true);
+          return t;
+       }
+     });
+  }
 
 
-  synchronized public void addPerson(String cliAddr, int port, 
-									     PrintWriter out)
-  // add a new Chatter object to the list
-  { chatPeople.add( new Chatter(cliAddr, port, out));  
+  synchronized public Chatter addPerson(String cliAddr, int port, 
+									     Socket sock) throws IOException
+  // add a new Chatter object to the list, and return it
+  { Chatter c = new Chatter(cliAddr, port, sock, writers);
+    chatPeople.add(c);
     broadcast("Welcome a new chatter ("+cliAddr+", "+port+")");
+    return c;
   }
 
 
@@ -50,12 +71,14 @@ public class ChatGroup
 
   synchronized public void broadcast(String msg)
   /* Send msg to all the clients, including back to the
-     original sender. */
+     original sender. The message is only queued, so this
+     doesn't wait for any client. */
   {
+    byte[] encMsg = Chatter.encode(msg);
     Chatter c;
     for(int i=0; i < chatPeople.size(); i++) {
       c = (Chatter) chatPeople.get(i);
-      c.sendMessage(msg);
+      c.sendMessage(encMsg);
     }
   }  // end of broadcast()
 
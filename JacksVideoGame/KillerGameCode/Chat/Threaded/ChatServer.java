@@ -7,6 +7,13 @@
 
    Details about each client are maintained in a ChatGroup object
    which is referenced by each thread.
+
+   The handlers are run by a HandlerExecutor, which can use a
+   virtual thread for each client (with -virtual), and limits
+   the number of clients (with -max <number>).
+
+   Usage:
+     java ChatServer [ -virtual ] [ -max <number> ]
 */
 
 import java.net.*;
@@ -16,22 +23,33 @@ import java.io.*;
 public class ChatServer
 {
   static final int PORT = 1234;  // port for this server
+  private static final int BACKLOG = 1024;   // queued connection requests
+  private static final int ACCEPT_BACKOFF = 100;   // ms after a failed accept()
   
   private ChatGroup cg;
 
 
-  public ChatServer()
+  public ChatServer(HandlerExecutor executor)
   // wait for a client connection, spawn a thread, repeat
   {
     cg = new ChatGroup();
     try {
-      ServerSocket serverSock = new ServerSocket(PORT);
+      ServerSocket serverSock = new ServerSocket(PORT, BACKLOG);
       Socket clientSock;
 
       while (true) {
         System.out.println("Waiting for a client...");
-        clientSock = serverSock.accept();
-        new ChatServerHandler(clientSock, cg).start();
+        executor.waitForSlot();
+        try {
+          clientSock = serverSock.accept();
+        }
+        catch(IOException e) {    // e.g. out of file descriptors
+          executor.releaseSlot();
+          System.out.println("Accept failed: " + e);
+          Thread.sleep(ACCEPT_BACKOFF);    // then try again
+          continue;
+        }
+        executor.execute( new ChatServerHandler(clientSock, cg) );
       }
     }
     catch(Exception e)
@@ -42,6 +60,6 @@ public class ChatServer
   // -----------------------------------
 
   public static void main(String args[]) 
-  {  new ChatServer();  }
+  {  new ChatServer( HandlerExecutor.parseArgs(args) );  }
 
 } // end of ChatServer class
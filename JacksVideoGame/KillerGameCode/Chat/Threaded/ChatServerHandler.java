@@ -10,6 +10,10 @@
    The ChatGroup object handles message broadcasting
    via its broadcast() method.
 
+   Replies to this client (e.g. to 'who') are sent through its
+   Chatter object, so they are queued with the broadcast messages
+   rather than written to the socket at the same time.
+
    Possible client messages:
 		who				-- a list of users is returned
         bye             -- client is disconnecting
@@ -21,7 +25,7 @@ import java.net.*;
 import java.io.*;
 
 
-public class ChatServerHandler extends Thread
+public class ChatServerHandler implements Runnable
 {
   private Socket clientSock;    // client details
   private String cliAddr;
@@ -47,10 +51,9 @@ public class ChatServerHandler extends Thread
       // Get I/O streams from the socket
       BufferedReader in  = new BufferedReader( 
 	  		new InputStreamReader( clientSock.getInputStream() ) );
-      PrintWriter out = 
-			new PrintWriter( clientSock.getOutputStream(), true );  // autoflush
 
-      cg.addPerson(cliAddr, port, out);  // add client details to ChatGroup
+      Chatter out = cg.addPerson(cliAddr, port, clientSock);
+                                  // add client details to ChatGroup
 
       processClient(in, out);            // interact with client
  
@@ -65,7 +68,7 @@ public class ChatServerHandler extends Thread
   }  // end of run()
 
 
-   private void processClient(BufferedReader in, PrintWriter out)
+   private void processClient(BufferedReader in, Chatter out)
    /* Stop when the input stream closes (is null) or "bye" is sent
       Otherwise pass the input to doRequest(). */
    {
@@ -90,7 +93,7 @@ public class ChatServerHandler extends Thread
    }  // end of processClient()
 
 
-  private void doRequest(String line, PrintWriter out)
+  private void doRequest(String line, Chatter out)
   /*  The input line (client message) can be :
 			who				-- a list of users is returned
       or	any text		-- which is broadcast with
@@ -98,7 +101,7 @@ public class ChatServerHandler extends Thread
   */
   { if (line.trim().toLowerCase().equals("who")) {
       System.out.println("Processing 'who'");
-      out.println( cg.who() );
+      out.sendMessage( cg.who() );
     }
     else  // use ChatGroup object to broadcast the message
       cg.broadcast( "("+cliAddr+", "+port+"): " + line);
@@ -3,26 +3,54 @@
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
 /* Stores information about a single client:
-    the client's IP address, port, and output stream
+    the client's IP address, port, and socket
 
-  The output stream is used to send messages to the client.
+  The socket's output stream is used to send messages to the client.
 
   The address and port are used to uniquely identify the
   client (the client has no name).
+
+  Messages are not written straight to the socket, since a client
+  which is slow to read would block the sender (and the ChatGroup
+  while it is broadcasting). Instead, the encoded messages are added
+  to a queue, and a writer task (run by the ChatGroup's executor)
+  writes them out. The task only runs while there are messages
+  waiting, and writes all of them before flushing the stream.
+
+  The queue holds at most MAX_QUEUED messages. If it is full, the
+  client is not keeping up, so it is disconnected: its socket is
+  closed, which ends its ChatServerHandler, and removes it from
+  the ChatGroup.
 */
 
 import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 
-public class Chatter
+public class Chatter implements Runnable
 {
+  private static final int MAX_QUEUED = 256;   // messages waiting to be sent
+
   private String cliAddr;
   private int port;
-  private PrintWriter out;
+  private Socket sock;
+  private OutputStream out;
+  private Executor writers;    // runs the writer task
+
+  private LinkedList queue = new LinkedList();   // byte[] messages
+  private boolean writing = false;   // is a writer task running?
+  private boolean closed = false;
+
 
-  public Chatter(String cliAddr, int port, PrintWriter out)
+  public Chatter(String cliAddr, int port, Socket sock, Executor writers)
+    throws IOException
   { this.cliAddr = cliAddr;
-    this.port = port; this.out = out;
+    this.port = port;
+    this.sock = sock;
+    this.writers = writers;
+    out = new BufferedOutputStream( sock.getOutputStream() );
   }
 
 
@@ -32,10 +60,82 @@ public class Chatter
       return true;
     return false;
   } // end of matches()
- 
+
+
+  public static byte[] encode(String msg)
+  /* Encode msg as a line, in the same way as PrintWriter.println(),
+     so a message sent to many clients is only encoded once. */
+  {  return (msg + System.getProperty("line.separator")).getBytes();  }
+
 
   public void sendMessage(String msg)
-  {  out.println(msg);  }
+  {  sendMessage( encode(msg) );  }
+
+
+  synchronized public void sendMessage(byte[] msg)
+  /* Queue the encoded message, and start a writer task if one
+     isn't already running. This never blocks. */
+  {
+    if (closed)
+      return;
+    if (queue.size() == MAX_QUEUED) {
+      System.out.println("Chatter (" + cliAddr + ", " + port +
+                         ") is not reading; disconnecting");
+      closeDown();
+      return;
+    }
+    queue.add(msg);
+    if (!writing) {
+      writing = true;
+      writers.execute(this);
+    }
+  }  // end of sendMessage()
+
+
+
+  public void run()
+  /* The writer task: write the queued messages until the queue
+     is empty. Only the messages are locked, not the writing, so
+     more can be queued while this task is blocked on the socket. */
+  {
+    LinkedList batch;
+    while (true) {
+      synchronized(this) {
+        if (queue.isEmpty() || closed) {
+          writing = false;
+          return;
+        }
+        batch = queue;
+        queue = new LinkedList();
+      }
+
+      try {
+        while (!batch.isEmpty())
+          out.write( (byte[]) batch.removeFirst() );
+        out.flush();
+      }
+      catch(IOException e) {
+        synchronized(this) {
+          closeDown();
+          writing = false;
+        }
+        return;
+      }
+    }
+  }  // end of run()
+
+
+
+  synchronized public void closeDown()
+  // drop any waiting messages, and close the link to the client
+  {
+    closed = true;
+    queue.clear();
+    try {
+      sock.close();    // ends the ChatServerHandler's reading as well
+    }
+    catch(IOException e) {}
+  }  // end of closeDown()
 
 
   public String toString()
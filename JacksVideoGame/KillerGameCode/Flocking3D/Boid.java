@@ -71,13 +71,16 @@ public class Boid extends BranchGroup
 
   private TransformGroup boidTG = new TransformGroup();
   private Obstacles obstacles;
-  private BoundingSphere bs = new BoundingSphere();   // bounding sphere for boid
+  private Random rand;    // the flock's random number generator
   private float maxSpeed;
 
   private int perchTime = 0;
   private int perchInterval = 0;
   private boolean isPerching = false;
 
+  private int gridCell = -1;   // index of the boid's cell in its BoidsGrid
+  private boolean batchMove = false;   // is moveBoid() called by the behavior?
+
   // used for repeated calculations
   private Vector3f avoidOb = new Vector3f();    // for the obstacle avoidance velocity
   private Transform3D t3d = new Transform3D();  // for storing boid moves
@@ -91,14 +94,14 @@ public class Boid extends BranchGroup
     maxSpeed = MAX_SPEED*velFactor;    // to vary the maxSpeed
 	obstacles = obs;
     beh = bh;
+    rand = bh.getRandom();
 
 	boidTG.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
     boidTG.setCapability(TransformGroup.ALLOW_TRANSFORM_READ);
     addChild(boidTG);
 
-    boidPos.set( randPosn(), (float)(Math.random()*6.0), randPosn() ); 
+    boidPos.set( randPosn(), rand.nextFloat()*6.0f, randPosn() ); 
     boidVel.set( randVel(), randVel(), randVel()); 
-	bs.setRadius(BOID_RADIUS);   // set bounding sphere's radius
 
 	moveBoid();
 	boidTG.addChild( new BoidShape(boidColour) );  // add boid shape to TG
@@ -107,18 +110,20 @@ public class Boid extends BranchGroup
   
   private float randPosn()
   // return a float between -FLOOR_LEN/2 and FLOOR_LEN/2
-  {  return (float)(Math.random()*FLOOR_LEN - FLOOR_LEN/2);  }
+  {  return (float)(rand.nextFloat()*FLOOR_LEN - FLOOR_LEN/2);  }
 
 
   private float randVel()
   // return a float between -MAX_SPEED/2 and MAX_SPEED/2
-  {  return (float)(Math.random()*MAX_SPEED*2 - MAX_SPEED);  }
+  {  return (float)(rand.nextFloat()*MAX_SPEED*2 - MAX_SPEED);  }
 
   
 
-  private void moveBoid()
+  public void moveBoid()
   /* Boid movement is a rotation and a translation, which use
      the current boid velocity and position.
+     Called by FlockBehavior when the TransformGroup updates 
+     are being batched (see setBatchMove()).
   */
   { t3d.setIdentity();   // reset t3d
 	t3d.rotY( Math.atan2( boidVel.x, boidVel.z) );  // rotate around y-axis
@@ -150,7 +155,8 @@ public class Boid extends BranchGroup
     boidVel.set( calcNewVel() );
 	boidPos.add(boidVel);
     keepInBounds();
-	moveBoid();
+    if (!batchMove)
+	  moveBoid();
   } // end of animateBoid()
 
 
@@ -195,7 +201,7 @@ public class Boid extends BranchGroup
 
   private Vector3f avoidObstacles()
   /* The boid avoids obstacles by checking it's bounding sphere 
-     against all the obstacles. The avoidance velocity is stored in avoidOb. 
+     against the nearby obstacles. The avoidance velocity is stored in avoidOb. 
 
      We don't bother calculating a real rebound velocity, just move 
      away by some random amount in the x- and z- direction. 
@@ -204,12 +210,10 @@ public class Boid extends BranchGroup
      in the y- direction.
   */
   { avoidOb.set(0,0,0);   // reset
-    // update the BoundingSphere's position (but its radius stays the same)
-	bs.setCenter( new Point3d( (double)boidPos.x, (double)boidPos.y,
-									(double)boidPos.z) );
-    if ( obstacles.isOverlapping(bs)) { 
-      avoidOb.set( -(float)Math.random()*boidPos.x, 0.0f, 
-				   -(float)Math.random()*boidPos.z); 
+    // the bounding sphere is at the boid's position, with radius BOID_RADIUS
+    if ( obstacles.isOverlapping(boidPos.x, boidPos.y, boidPos.z, BOID_RADIUS)) { 
+      avoidOb.set( -rand.nextFloat()*boidPos.x, 0.0f, 
+				   -rand.nextFloat()*boidPos.z); 
       // scale to reduce distance moved away from the obstacle
       avoidOb.scale(AVOID_WEIGHT);
     }
@@ -284,4 +288,15 @@ public class Boid extends BranchGroup
   public Vector3f getBoidVel()
   { return boidVel;  }
 
+  // used by BoidsGrid to record which cell the boid is in
+  public int getGridCell()
+  { return gridCell;  }
+
+  public void setGridCell(int cell)
+  { gridCell = cell;  }
+
+  public void setBatchMove(boolean b)
+  // if true, animateBoid() doesn't update the boid's TransformGroup
+  { batchMove = b;  }
+
 } // end of Boid class
\ No newline at end of file
@@ -0,0 +1,158 @@
+
+// BoidsGrid.java
+
+/* A uniform grid spatial index for the boids in a BoidsList.
+
+   The scene volume is divided into cubic cells, each cellSize wide
+   (usually FlockBehavior.PROXIMITY). A search for flockmates only
+   needs to look at the cells which overlap the search sphere,
+   instead of examining every boid in the BoidsList.
+
+   Each cell is an ArrayList of boids, and each boid remembers
+   the index of the cell it is in (see Boid.getGridCell()).
+
+   The grid is rebuilt at the start of each FlockBehavior update,
+   then kept up-to-date by calling moveBoid() after a boid has moved,
+   and removeBoid() when a boid is eaten. This means that searches
+   always use the boids' current positions.
+
+   Positions outside the scene volume are clamped to the edge
+   cells, so boids that stray outside (e.g. perching boids at y == 0)
+   are still found.
+*/
+
+import java.util.*;
+import javax.vecmath.*;
+
+
+public class BoidsGrid
+{
+  private final static int FLOOR_LEN = 20;
+      // should be the same as the floor size in Boid, and be even
+  private final static float MAX_HEIGHT = 8.0f;   // top of the boid volume
+
+  private float cellSize;
+  private int numX, numY, numZ;   // number of cells along each axis
+  private ArrayList[] cells;      // of Boid objects
+
+
+  public BoidsGrid(float cellSize)
+  {
+    this.cellSize = cellSize;
+    numX = (int) Math.ceil(FLOOR_LEN/cellSize);
+    numY = (int) Math.ceil(MAX_HEIGHT/cellSize);
+    numZ = numX;
+
+    cells = new ArrayList[numX*numY*numZ];
+    for (int i=0; i < cells.length; i++)
+      cells[i] = new ArrayList();
+  } // end of BoidsGrid()
+
+
+
+  public void rebuild(BoidsList boidsList)
+  // empty the grid, and add all the boids in boidsList
+  {
+    for (int i=0; i < cells.length; i++)
+      cells[i].clear();
+
+    Boid[] boids = boidsList.getSnapshot();
+    for (int i=0; i < boids.length; i++) {
+      int cell = cellIndex( boids[i].getBoidPos() );
+      cells[cell].add(boids[i]);
+      boids[i].setGridCell(cell);
+    }
+  } // end of rebuild()
+
+
+
+  public void moveBoid(Boid b)
+  // move the boid to a new cell if its position has changed cells
+  {
+    int cell = cellIndex( b.getBoidPos() );
+    int oldCell = b.getGridCell();
+    if (cell != oldCell) {
+      if (oldCell != -1)
+        cells[oldCell].remove(b);
+      cells[cell].add(b);
+      b.setGridCell(cell);
+    }
+  } // end of moveBoid()
+
+
+
+  public void removeBoid(Boid b)
+  // remove the boid from the grid (e.g. because it has been eaten)
+  {
+    int cell = b.getGridCell();
+    if (cell != -1) {
+      cells[cell].remove(b);
+      b.setGridCell(-1);
+    }
+  } // end of removeBoid()
+
+
+
+  public int findNeighbours(Vector3f pos, float radius, ArrayList nbs)
+  /* Fill nbs with the boids that are less than radius away from
+     pos, and return how many were found. If pos is a boid's own
+     position then that boid will be included in nbs.
+  */
+  {
+    nbs.clear();
+    float radiusSq = radius*radius;
+
+    // the range of cells overlapping the search sphere
+    int minX = clampCell(pos.x - radius + FLOOR_LEN/2, numX);
+    int maxX = clampCell(pos.x + radius + FLOOR_LEN/2, numX);
+    int minY = clampCell(pos.y - radius, numY);
+    int maxY = clampCell(pos.y + radius, numY);
+    int minZ = clampCell(pos.z - radius + FLOOR_LEN/2, numZ);
+    int maxZ = clampCell(pos.z + radius + FLOOR_LEN/2, numZ);
+
+    ArrayList cell;
+    Boid b;
+    Vector3f bPos;
+    float dx, dy, dz;
+    for (int z=minZ; z <= maxZ; z++)
+      for (int y=minY; y <= maxY; y++)
+        for (int x=minX; x <= maxX; x++) {
+          cell = cells[(z*numY + y)*numX + x];
+          for (int i=0; i < cell.size(); i++) {
+            b = (Boid)cell.get(i);
+            bPos = b.getBoidPos();
+            dx = pos.x - bPos.x;
+            dy = pos.y - bPos.y;
+            dz = pos.z - bPos.z;
+            if ((dx*dx + dy*dy + dz*dz) < radiusSq)
+              nbs.add(b);
+          }
+        }
+    return nbs.size();
+  } // end of findNeighbours()
+
+
+
+  private int cellIndex(Vector3f pos)
+  // the index of the cell containing pos
+  {
+    int x = clampCell(pos.x + FLOOR_LEN/2, numX);
+    int y = clampCell(pos.y, numY);
+    int z = clampCell(pos.z + FLOOR_LEN/2, numZ);
+    return (z*numY + y)*numX + x;
+  } // end of cellIndex()
+
+
+  private int clampCell(float coord, int numCells)
+  /* Convert a coordinate (measured from the grid's minimum corner)
+     into a cell number between 0 and numCells-1 */
+  {
+    int c = (int) Math.floor(coord/cellSize);
+    if (c < 0)
+      return 0;
+    if (c >= numCells)
+      return numCells-1;
+    return c;
+  } // end of clampCell()
+
+} // end of BoidsGrid class
@@ -4,36 +4,111 @@
 // Sirinart Sakarin, March 2003, s4210315@calvin.coe.psu.ac.th
 
 
-/* An ArrayList for boids. 
-   The methods are synchronized so that boid removal cannot
-   affect the retrieval of a reference to a boid.
+/* A list of boids which can be read without locking.
+
+   The boids are stored in an array which is never changed once it
+   has been published. Readers get the current array with getSnapshot()
+   (or use getBoid()), and can iterate over it while other threads
+   add or remove boids.
+
+   add() copies the array and publishes the new copy. It is only
+   used when the flock is being built, so the copying doesn't matter.
+
+   removeBoid() does not change the array. Instead the boid is
+   queued, and all the queued boids are removed together by
+   applyRemovals(), which FlockBehavior calls at the start of each
+   update. So a predator eating prey never holds up the prey flock's
+   update, which may be iterating over the array at the same time.
 */
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
-public class BoidsList extends ArrayList
+public class BoidsList
 {
+  private volatile Boid[] boids;   // the current snapshot; don't change it
+
+  private ConcurrentLinkedQueue pendingRemovals = new ConcurrentLinkedQueue();
+  private AtomicInteger numPending = new AtomicInteger(0);
+
+
   public BoidsList(int num)
-  {  super(num);  }
+  {  boids = new Boid[0];  }
 
 
-  synchronized public Boid getBoid(int i)
-  // return the boid if it is visible; null otherwise
+  public Boid[] getSnapshot()
+  // the boids at the time of the call; the array must not be changed
+  {  return boids;  }
+
+
+  public int size()
+  // the number of boids in the current snapshot
+  {  return boids.length;  }
+
+
+  public Boid getBoid(int i)
+  // return the i'th boid in the current snapshot; null otherwise
   {
-    if (i < super.size())
-      return (Boid)get(i);
+    Boid[] bs = boids;
+    if (i < bs.length)
+      return bs[i];
     return null;
   }
 
 
- synchronized public boolean removeBoid(int i)
- // attempt to remove the i'th boid
- { if (i < super.size()) {
-      super.remove(i);
-      return true;
-   }
-   return false;
- }
+  public int getNumLive()
+  // the number of boids which will be left after applyRemovals()
+  {  return boids.length - numPending.get();  }
+
+
+
+  synchronized public void add(Boid b)
+  // add a boid by publishing a larger copy of the array
+  {
+    Boid[] bs = new Boid[boids.length+1];
+    System.arraycopy(boids, 0, bs, 0, boids.length);
+    bs[boids.length] = b;
+    boids = bs;
+  } // end of add()
+
+
+  public boolean removeBoid(Boid b)
+  /* Queue the boid for removal; it stays in the snapshot
+     until the next call to applyRemovals() */
+  {
+    pendingRemovals.add(b);
+    numPending.incrementAndGet();
+    return true;
+  } // end of removeBoid()
+
+
+
+  synchronized public int applyRemovals()
+  /* Publish a new snapshot without the queued boids.
+     Return the number of boids removed.
+  */
+  {
+    if (pendingRemovals.isEmpty())
+      return 0;
+
+    HashSet removed = new HashSet();
+    Object b;
+    while ((b = pendingRemovals.poll()) != null) {
+      removed.add(b);
+      numPending.decrementAndGet();
+    }
+
+    Boid[] bs = boids;
+    ArrayList kept = new ArrayList(bs.length);
+    for (int i=0; i < bs.length; i++)
+      if (!removed.contains(bs[i]))
+        kept.add(bs[i]);
+
+    boids = (Boid[]) kept.toArray( new Boid[kept.size()] );
+    return bs.length - boids.length;
+  } // end of applyRemovals()
 
 
-}  // end of BoidsList class
\ No newline at end of file
+}  // end of BoidsList class
@@ -0,0 +1,392 @@
+
+// FlockArrays.java
+
+/* A structure-of-arrays version of the flock, used by FlockBehavior
+   in ARRAYS_MODE and PARALLEL_MODE (see FlockBehavior.setUpdateMode()).
+
+   At the start of an update, load() copies the position and velocity
+   of every boid into flat float arrays. calcRules() then calculates
+   the cohesion, separation, and alignment velocities for all the
+   boids in a single pass over each pair of flockmates, storing the
+   results in more float arrays. The boids read their results back
+   with getCohesion(), getSeparation(), and getAlignment().
+
+   Flockmates are found using a counting-sort grid of PROXIMITY-wide
+   cells, stored as int arrays. Each pair of boids is examined only
+   once, and the pair's contribution is added to both boids.
+
+   Since every boid's rules are calculated from the positions at
+   the start of the update, the results do not depend on the order
+   that the boids are animated.
+
+   calcRulesParallel() splits the boids into ranges which are processed
+   by RulesTask objects in a ForkJoinPool. A task only writes to the 
+   tallies and results of the boids in its range, so each pair of 
+   flockmates is examined twice, once from each side. Each boid's
+   tallies are added up in the same order however the ranges are 
+   split, so the results do not depend on the number of cores.
+
+   The rules are the same as in FlockBehavior's cohesion(),
+   separation(), and alignment() methods.
+*/
+
+import java.util.concurrent.*;
+import javax.vecmath.*;
+
+
+public class FlockArrays
+{
+  private final static int FLOOR_LEN = 20;
+      // should be the same as the floor size in Boid, and be even
+  private final static float MAX_HEIGHT = 8.0f;   // top of the boid volume
+
+  private final static int TASK_SIZE = 256;
+     // max. number of boids handled by one RulesTask without splitting
+
+  private float proximity;
+  private int numX, numY, numZ;   // number of grid cells along each axis
+
+  private int numBoids = 0;
+  private Boid[] boids = new Boid[0];
+
+  // boid positions and velocities at the start of the update
+  private float[] px, py, pz;
+  private float[] vx, vy, vz;
+
+  // the rule tallies and results, 3 floats (x,y,z) per boid
+  private float[] posSum, sepSum, velSum;
+  private int[] numMates;
+  private float[] cohesion, separation, alignment;
+
+  // the grid: the boids in cell c are
+  //    cellBoids[ cellStart[c] ] .. cellBoids[ cellStart[c+1]-1 ]
+  private int[] boidCell;
+  private int[] cellStart;
+  private int[] cellBoids;
+
+
+  public FlockArrays(float proximity)
+  {
+    this.proximity = proximity;
+    numX = (int) Math.ceil(FLOOR_LEN/proximity);
+    numY = (int) Math.ceil(MAX_HEIGHT/proximity);
+    numZ = numX;
+    cellStart = new int[numX*numY*numZ + 1];
+    allocate(0);
+  } // end of FlockArrays()
+
+
+  private void allocate(int size)
+  // make arrays large enough for size boids
+  {
+    boids = new Boid[size];
+    px = new float[size];  py = new float[size];  pz = new float[size];
+    vx = new float[size];  vy = new float[size];  vz = new float[size];
+
+    posSum = new float[size*3];
+    sepSum = new float[size*3];
+    velSum = new float[size*3];
+    numMates = new int[size];
+    cohesion = new float[size*3];
+    separation = new float[size*3];
+    alignment = new float[size*3];
+
+    boidCell = new int[size];
+    cellBoids = new int[size];
+  } // end of allocate()
+
+
+
+  public int load(BoidsList boidsList)
+  /* Copy the positions and velocities of the boids into the
+     arrays, and sort the boids into the grid cells.
+     Return the number of boids.
+  */
+  {
+    Boid[] snapshot = boidsList.getSnapshot();
+    if (snapshot.length > boids.length)
+      allocate(snapshot.length + snapshot.length/2);   // leave room for growth
+
+    Boid b;
+    Vector3f pos, vel;
+    for (numBoids=0; numBoids < snapshot.length; numBoids++) {
+      b = snapshot[numBoids];
+      boids[numBoids] = b;
+      pos = b.getBoidPos();
+      vel = b.getBoidVel();
+      px[numBoids] = pos.x;  py[numBoids] = pos.y;  pz[numBoids] = pos.z;
+      vx[numBoids] = vel.x;  vy[numBoids] = vel.y;  vz[numBoids] = vel.z;
+    }
+    for (int i=numBoids; i < boids.length; i++)
+      boids[i] = null;    // don't hang onto eaten boids
+
+    sortIntoCells();
+    return numBoids;
+  } // end of load()
+
+
+  private void sortIntoCells()
+  // a counting sort of the boid indices into cellBoids[]
+  {
+    int numCells = cellStart.length-1;
+    for (int c=0; c <= numCells; c++)
+      cellStart[c] = 0;
+
+    for (int i=0; i < numBoids; i++) {   // count the boids in each cell
+      boidCell[i] = cellIndex(px[i], py[i], pz[i]);
+      cellStart[ boidCell[i]+1 ]++;
+    }
+    for (int c=0; c < numCells; c++)     // convert counts to start positions
+      cellStart[c+1] += cellStart[c];
+
+    for (int i=0; i < numBoids; i++) {   // fill the cells
+      int c = boidCell[i];
+      cellBoids[ cellStart[c] ] = i;
+      cellStart[c]++;
+    }
+    // each cellStart[c] now holds the old cellStart[c+1], so shift back
+    for (int c=numCells; c > 0; c--)
+      cellStart[c] = cellStart[c-1];
+    cellStart[0] = 0;
+  } // end of sortIntoCells()
+
+
+
+  public void calcRules(float cohesionWeight, float separationWeight,
+                                               float alignmentWeight)
+  /* Calculate the cohesion, separation, and alignment velocities
+     for every loaded boid.
+  */
+  {
+    int len = numBoids*3;
+    for (int k=0; k < len; k++) {
+      posSum[k] = 0;  sepSum[k] = 0;  velSum[k] = 0;
+    }
+    for (int i=0; i < numBoids; i++)
+      numMates[i] = 0;
+
+    for (int i=0; i < numBoids; i++)
+      tallyMates(i);
+
+    for (int i=0; i < numBoids; i++)
+      calcResults(i, cohesionWeight, separationWeight, alignmentWeight);
+  } // end of calcRules()
+
+
+
+  private void tallyMates(int i)
+  /* Add the contributions of every pair (i,j), where j > i and
+     j is closer than proximity, to the tallies of both boids.
+  */
+  {
+    float proxSq = proximity*proximity;
+    float x = px[i], y = py[i], z = pz[i];
+
+    int minX = clampCell(x - proximity + FLOOR_LEN/2, numX);
+    int maxX = clampCell(x + proximity + FLOOR_LEN/2, numX);
+    int minY = clampCell(y - proximity, numY);
+    int maxY = clampCell(y + proximity, numY);
+    int minZ = clampCell(z - proximity + FLOOR_LEN/2, numZ);
+    int maxZ = clampCell(z + proximity + FLOOR_LEN/2, numZ);
+
+    int i3 = i*3;
+    for (int cz=minZ; cz <= maxZ; cz++)
+      for (int cy=minY; cy <= maxY; cy++)
+        for (int cx=minX; cx <= maxX; cx++) {
+          int c = (cz*numY + cy)*numX + cx;
+          for (int k=cellStart[c]; k < cellStart[c+1]; k++) {
+            int j = cellBoids[k];
+            if (j <= i)
+              continue;   // the pair is (or was) handled by boid j
+            float dx = x - px[j];
+            float dy = y - py[j];
+            float dz = z - pz[j];
+            if ((dx*dx + dy*dy + dz*dz) < proxSq) {   // flockmates
+              int j3 = j*3;
+              numMates[i]++;
+              numMates[j]++;
+
+              posSum[i3] += px[j];  posSum[i3+1] += py[j];  posSum[i3+2] += pz[j];
+              posSum[j3] += x;      posSum[j3+1] += y;      posSum[j3+2] += z;
+
+              sepSum[i3] += dx;  sepSum[i3+1] += dy;  sepSum[i3+2] += dz;
+              sepSum[j3] -= dx;  sepSum[j3+1] -= dy;  sepSum[j3+2] -= dz;
+
+              velSum[i3] += vx[j];  velSum[i3+1] += vy[j];  velSum[i3+2] += vz[j];
+              velSum[j3] += vx[i];  velSum[j3+1] += vy[i];  velSum[j3+2] += vz[i];
+            }
+          }
+        }
+  } // end of tallyMates()
+
+
+
+  public void calcRulesParallel(float cohesionWeight, float separationWeight,
+                                float alignmentWeight, ForkJoinPool pool)
+  /* Calculate the same velocities as calcRules(), but using all
+     the threads in pool. */
+  {  pool.invoke( new RulesTask(0, numBoids, cohesionWeight, 
+                                separationWeight, alignmentWeight) );  }
+
+
+
+  private void tallyAllMates(int i)
+  /* Add up the contributions of all of boid i's flockmates into
+     its tallies. Only boid i's tallies are changed, so different
+     boids can be tallied at the same time.
+  */
+  {
+    float proxSq = proximity*proximity;
+    float x = px[i], y = py[i], z = pz[i];
+
+    int minX = clampCell(x - proximity + FLOOR_LEN/2, numX);
+    int maxX = clampCell(x + proximity + FLOOR_LEN/2, numX);
+    int minY = clampCell(y - proximity, numY);
+    int maxY = clampCell(y + proximity, numY);
+    int minZ = clampCell(z - proximity + FLOOR_LEN/2, numZ);
+    int maxZ = clampCell(z + proximity + FLOOR_LEN/2, numZ);
+
+    int n = 0;
+    float posX = 0, posY = 0, posZ = 0;
+    float sepX = 0, sepY = 0, sepZ = 0;
+    float velX = 0, velY = 0, velZ = 0;
+    for (int cz=minZ; cz <= maxZ; cz++)
+      for (int cy=minY; cy <= maxY; cy++)
+        for (int cx=minX; cx <= maxX; cx++) {
+          int c = (cz*numY + cy)*numX + cx;
+          for (int k=cellStart[c]; k < cellStart[c+1]; k++) {
+            int j = cellBoids[k];
+            if (j == i)
+              continue;
+            float dx = x - px[j];
+            float dy = y - py[j];
+            float dz = z - pz[j];
+            if ((dx*dx + dy*dy + dz*dz) < proxSq) {   // a flockmate
+              n++;
+              posX += px[j];  posY += py[j];  posZ += pz[j];
+              sepX += dx;     sepY += dy;     sepZ += dz;
+              velX += vx[j];  velY += vy[j];  velZ += vz[j];
+            }
+          }
+        }
+
+    int i3 = i*3;
+    numMates[i] = n;
+    posSum[i3] = posX;  posSum[i3+1] = posY;  posSum[i3+2] = posZ;
+    sepSum[i3] = sepX;  sepSum[i3+1] = sepY;  sepSum[i3+2] = sepZ;
+    velSum[i3] = velX;  velSum[i3+1] = velY;  velSum[i3+2] = velZ;
+  } // end of tallyAllMates()
+
+
+
+  private class RulesTask extends RecursiveAction
+  // calculate the rules for the boids from start to end-1
+  {
+    private int start, end;
+    private float cohesionWeight, separationWeight, alignmentWeight;
+
+    public RulesTask(int start, int end, float cw, float sw, float aw)
+    { this.start = start;  this.end = end;
+      cohesionWeight = cw;  separationWeight = sw;  alignmentWeight = aw;
+    }
+
+    protected void compute()
+    {
+      if (end - start <= TASK_SIZE) {
+        for (int i=start; i < end; i++) {
+          tallyAllMates(i);
+          calcResults(i, cohesionWeight, separationWeight, alignmentWeight);
+        }
+      }
+      else {   // split the range in two
+        int mid = (start + end)/2;
+        invokeAll( new RulesTask(start, mid, cohesionWeight, 
+                                 separationWeight, alignmentWeight),
+                   new RulesTask(mid, end, cohesionWeight, 
+                                 separationWeight, alignmentWeight) );
+      }
+    } // end of compute()
+
+  } // end of RulesTask class
+
+
+
+  private void calcResults(int i, float cohesionWeight,
+                           float separationWeight, float alignmentWeight)
+  // turn boid i's tallies into velocities
+  {
+    int i3 = i*3;
+    int n = numMates[i];
+    if (n == 0) {   // no flockmates, so no velocity changes
+      for (int k=i3; k < i3+3; k++) {
+        cohesion[k] = 0;  separation[k] = 0;  alignment[k] = 0;
+      }
+      return;
+    }
+
+    float inv = 1.0f/n;
+    // a small step towards the average position
+    cohesion[i3]   = (posSum[i3]*inv   - px[i]) * cohesionWeight;
+    cohesion[i3+1] = (posSum[i3+1]*inv - py[i]) * cohesionWeight;
+    cohesion[i3+2] = (posSum[i3+2]*inv - pz[i]) * cohesionWeight;
+
+    // a small step away, based on the average distance
+    float sepScale = inv*separationWeight;
+    separation[i3]   = sepSum[i3]*sepScale;
+    separation[i3+1] = sepSum[i3+1]*sepScale;
+    separation[i3+2] = sepSum[i3+2]*sepScale;
+
+    // a small change towards the average velocity
+    float aliScale = inv*alignmentWeight;
+    alignment[i3]   = velSum[i3]*aliScale;
+    alignment[i3+1] = velSum[i3+1]*aliScale;
+    alignment[i3+2] = velSum[i3+2]*aliScale;
+  } // end of calcResults()
+
+
+
+  // ---------------- access to the results -------------------
+
+  public int getNumBoids()
+  {  return numBoids;  }
+
+  public Boid getBoid(int i)
+  {  return boids[i];  }
+
+
+  public void getCohesion(int i, Vector3f v)
+  {  v.set(cohesion[i*3], cohesion[i*3+1], cohesion[i*3+2]);  }
+
+  public void getSeparation(int i, Vector3f v)
+  {  v.set(separation[i*3], separation[i*3+1], separation[i*3+2]);  }
+
+  public void getAlignment(int i, Vector3f v)
+  {  v.set(alignment[i*3], alignment[i*3+1], alignment[i*3+2]);  }
+
+
+
+  // ---------------------- grid cells -------------------------
+
+  private int cellIndex(float x, float y, float z)
+  // the index of the cell containing (x,y,z)
+  {
+    int cx = clampCell(x + FLOOR_LEN/2, numX);
+    int cy = clampCell(y, numY);
+    int cz = clampCell(z + FLOOR_LEN/2, numZ);
+    return (cz*numY + cy)*numX + cx;
+  } // end of cellIndex()
+
+
+  private int clampCell(float coord, int numCells)
+  /* Convert a coordinate (measured from the grid's minimum corner)
+     into a cell number between 0 and numCells-1 */
+  {
+    int c = (int) Math.floor(coord/proximity);
+    if (c < 0)
+      return 0;
+    if (c >= numCells)
+      return numCells-1;
+    return c;
+  } // end of clampCell()
+
+} // end of FlockArrays class
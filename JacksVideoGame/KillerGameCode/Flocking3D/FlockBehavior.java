@@ -10,6 +10,10 @@
    The BoidsList and BranchGroup are initialised by the subclasses of 
    FlockBehavior.
 
+   Boids removed from the BoidsList (i.e. eaten) are only taken out
+   of the list at the start of the next update (see
+   BoidsList.applyRemovals()).
+
    FlockBehavior executes every DELAY milliseconds, and calls 
    animateBoid() on each of the boids in its ArrayList.
 
@@ -19,6 +23,20 @@
           - alignment
    These rules are caled by each boid.
 
+   Flockmates are found with a BoidsGrid spatial index, so each rule
+   only examines the boids in the cells near the boid, rather than 
+   the entire BoidsList. The grid is rebuilt at the start of each update.
+
+   In ARRAYS_MODE and PARALLEL_MODE (see setUpdateMode()), the three 
+   rules for every boid are calculated together by a FlockArrays object
+   at the start of the update, and the rule methods just return those
+   results. In PARALLEL_MODE the calculations are split between the
+   cores using a ForkJoinPool.
+
+   All the flock's random numbers come from one Random object, so
+   a seeded flock will move in the same way each time it is stepped 
+   (e.g. by FlockTimer), whatever the number of cores.
+
    The design approach is that the behavior object will store
    rules which require an examination of flockmates (or other
    dynamically changing things in the system).
@@ -29,6 +47,7 @@
 
 import java.awt.event.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import javax.media.j3d.*;
 import javax.vecmath.*;
 
@@ -45,8 +64,15 @@ public class FlockBehavior extends Behavior
 
   private final static int DELAY = 50;
 
+  // ways of updating the flock
+  public final static int OBJECTS_MODE = 0;   // each boid applies the rules
+  public final static int ARRAYS_MODE = 1;    // FlockArrays applies the rules
+  public final static int PARALLEL_MODE = 2;  // ... using all the cores
+
   protected BoidsList boidsList;   // holds Boid subclass objects
   protected BranchGroup boidsBG;   // holds boid BGs
+  protected BoidsGrid boidsGrid;   // spatial index for the boids in boidsList
+  protected Random rand;           // used by the boids for random numbers
 
   private WakeupCondition timeOut;
 
@@ -57,10 +83,26 @@ public class FlockBehavior extends Behavior
   private Vector3f avgVel = new Vector3f();
   private Vector3f clearDist = new Vector3f();
 
+  // the most recent flockmates search
+  private ArrayList flockMates = new ArrayList();
+  private Vector3f flockMatesPos = null;   // the position object searched with
+  private Vector3f lastMatesPos = new Vector3f();  // its value at the time
+
+  // used when the flock is in arrays or parallel mode
+  private int updateMode = OBJECTS_MODE;
+  private FlockArrays flockArrays = null;
+  private int arrayBoid = -1;   // index of the boid being animated
+
 
   public FlockBehavior(int numBoids)
-  { boidsList = new BoidsList(numBoids);
+  {  this(numBoids, new Random());  }
+
+
+  public FlockBehavior(int numBoids, Random rand)
+  { this.rand = rand;
+    boidsList = new BoidsList(numBoids);
     boidsBG = new BranchGroup();
+    boidsGrid = new BoidsGrid(PROXIMITY);
     timeOut = new WakeupOnElapsedTime(DELAY);
   } // end of FlockBehavior()
 
@@ -72,14 +114,92 @@ public class FlockBehavior extends Behavior
   public void processStimulus(Enumeration en)
   // call animateBoids() on every visible boid
   {
+    animateBoids();
+	wakeupOn(timeOut);   	// schedule next update
+  } // end of processStimulus()
+
+
+  public void animateBoids()
+  /* Carry out one update of the flock. The grid is rebuilt first,
+     then each boid is moved to its new cell after it has been
+     animated, so later boids see the current flock positions.
+     Public so the flock can be timed without a scene (see FlockTimer).
+  */
+  {
+    boidsList.applyRemovals();   // remove the boids eaten since the last update
+    if (updateMode != OBJECTS_MODE) {
+      animateArrayBoids();
+      return;
+    }
+    boidsGrid.rebuild(boidsList);
+    Boid[] boids = boidsList.getSnapshot();
+    for (int i=0; i < boids.length; i++) {
+	  boids[i].animateBoid();
+      boidsGrid.moveBoid(boids[i]);
+      flockMatesPos = null;   // the cached flockmates are now out-of-date
+    }
+  } // end of animateBoids()
+
+
+  private void animateArrayBoids()
+  /* Carry out one update of the flock using FlockArrays. The
+     cohesion, separation, and alignment velocities for all the boids
+     are calculated first, then each boid is animated, and finally
+     all the boids' TransformGroups are updated together.
+
+     The velocities are calculated from the boid positions at the
+     start of the update, which are copied by FlockArrays.load(), and
+     are not affected by boid movement until the next update. This
+     allows them to be calculated in parallel.
+
+     boidsGrid is still maintained since the other flock uses it.
+  */
+  {
+    boidsGrid.rebuild(boidsList);
+    int numBoids = flockArrays.load(boidsList);
+    if (updateMode == PARALLEL_MODE)
+      flockArrays.calcRulesParallel(COHESION_WEIGHT, SEPERATION_WEIGHT, 
+                          ALIGNMENT_WEIGHT, ForkJoinPool.commonPool());
+    else
+      flockArrays.calcRules(COHESION_WEIGHT, SEPERATION_WEIGHT, 
+                                           ALIGNMENT_WEIGHT);
     Boid b;
-    int i = 0;
-	while((b = boidsList.getBoid(i)) != null) {
+    for (int i=0; i < numBoids; i++) {
+      b = flockArrays.getBoid(i);
+      arrayBoid = i;     // the rules will return boid i's results
+      b.setBatchMove(true);
 	  b.animateBoid();
-      i++;
+      boidsGrid.moveBoid(b);
     }
-	wakeupOn(timeOut);   	// schedule next update
-  } // end of processStimulus()
+    arrayBoid = -1;
+
+    for (int i=0; i < numBoids; i++)   // update all the TGs
+      flockArrays.getBoid(i).moveBoid();
+  } // end of animateArrayBoids()
+
+
+
+  public void setUpdateMode(int mode)
+  /* Choose between OBJECTS_MODE (the default), where each boid
+     applies the rules itself, ARRAYS_MODE, and PARALLEL_MODE. */
+  {
+    updateMode = mode;
+    if (mode != OBJECTS_MODE) {
+      if (flockArrays == null)
+        flockArrays = new FlockArrays(PROXIMITY);
+    }
+    else {
+      flockArrays = null;
+      Boid[] boids = boidsList.getSnapshot();
+      for (int i=0; i < boids.length; i++)   // boids move themselves
+        boids[i].setBatchMove(false);
+    }
+  } // end of setUpdateMode()
+
+
+  public int getUpdateMode()
+  {  return updateMode;  }
+
 
 
   public BoidsList getBoidsList()
@@ -89,6 +209,30 @@ public class FlockBehavior extends Behavior
   // used by WrapFlocking3D to add boids to the scene
   {  return boidsBG;  }
 
+  public BoidsGrid getBoidsGrid()
+  {  return boidsGrid;  }
+
+  public Random getRandom()
+  // used by the boids
+  {  return rand;  }
+
+
+
+  private ArrayList findFlockMates(Vector3f boidPos)
+  /* Return the boids within PROXIMITY of boidPos (including the
+     boid at boidPos). The three rules are called one after another
+     with the same boidPos, so the search result is reused until the
+     position changes, or a boid is moved in animateBoids().
+  */
+  {
+    if ((flockMatesPos != boidPos) || !boidPos.equals(lastMatesPos)) {
+      boidsGrid.findNeighbours(boidPos, PROXIMITY, flockMates);
+      flockMatesPos = boidPos;
+      lastMatesPos.set(boidPos);
+    }
+    return flockMates;
+  } // end of findFlockMates()
+
 
 
  // ------------ cohesion, separation, and alignment rules ---------
@@ -100,22 +244,16 @@ public class FlockBehavior extends Behavior
      The velocity is a small step from the boid's current
      position (stored in boidPos) towards the average position.
    */
-  { avgPosn.set(0,0,0);   // reset and default answer
-    int numFlockMates = 0;
-    Vector3f pos;
-    Boid b;
-
-    int i = 0;
-	while((b = boidsList.getBoid(i)) != null) {
-      distFrom.set(boidPos);
-      pos = b.getBoidPos();
-      distFrom.sub(pos);
-	  if(distFrom.length() < PROXIMITY) {   // is the boid a flockmate?
-        avgPosn.add(pos);		// add position to tally
-        numFlockMates++;
-      }
-      i++;
+  { if (arrayBoid != -1) {   // already calculated by flockArrays
+      flockArrays.getCohesion(arrayBoid, avgPosn);
+      return avgPosn;
     }
+
+    avgPosn.set(0,0,0);   // reset and default answer
+    ArrayList mates = findFlockMates(boidPos);
+    int numFlockMates = mates.size();
+    for (int i=0; i < numFlockMates; i++)
+      avgPosn.add( ((Boid)mates.get(i)).getBoidPos() );  // add position to tally
 	avgPosn.sub(boidPos);  // don't include the boid itself
     numFlockMates--;
 
@@ -137,20 +275,18 @@ public class FlockBehavior extends Behavior
      scaled so that the boid moves a little bit away instead
      of a mighty leap.
   */
-  { moveAway.set(0,0,0);  // reset
-    int numFlockMates = 0;
-    Vector3f pos;
-    Boid b;
+  { if (arrayBoid != -1) {
+      flockArrays.getSeparation(arrayBoid, moveAway);
+      return moveAway;
+    }
 
-    int i = 0;
-	while((b = boidsList.getBoid(i)) != null) {
+    moveAway.set(0,0,0);  // reset
+    ArrayList mates = findFlockMates(boidPos);
+    int numFlockMates = mates.size();
+    for (int i=0; i < numFlockMates; i++) {
       distFrom.set(boidPos);
-      distFrom.sub( b.getBoidPos() );
-	  if(distFrom.length() < PROXIMITY) {   // is the boid a flockmate?
-        moveAway.add(distFrom);	   // add distance away to tally
-        numFlockMates++; 
-      }	
-      i++;
+      distFrom.sub( ((Boid)mates.get(i)).getBoidPos() );
+      moveAway.add(distFrom);	   // add distance away to tally
     }
     numFlockMates--;    // don't count the boid's distance from itself
 	if(numFlockMates > 0) {
@@ -168,23 +304,17 @@ public class FlockBehavior extends Behavior
      The velocity is scaled so that the boid adjusts its velocity 
      gradually.
   */
-  { avgVel.set(0,0,0);  // reset
-    int numFlockMates = 0;
-    Vector3f pos;
-    Boid b;
-
-    int i = 0;
-	while((b = boidsList.getBoid(i)) != null) {
-      distFrom.set(boidPos);
-      pos = b.getBoidPos();
-      distFrom.sub(pos);
-	  if(distFrom.length() < PROXIMITY) {  // is the boid a flockmate?
-        avgVel.add(  ((Boid)boidsList.get(i)).getBoidVel() );  
-							// add its velcoity to the tally		
-        numFlockMates++;
-      }
-      i++;
+  { if (arrayBoid != -1) {
+      flockArrays.getAlignment(arrayBoid, avgVel);
+      return avgVel;
     }
+
+    avgVel.set(0,0,0);  // reset
+    ArrayList mates = findFlockMates(boidPos);
+    int numFlockMates = mates.size();
+    for (int i=0; i < numFlockMates; i++)
+      avgVel.add( ((Boid)mates.get(i)).getBoidVel() );  
+							// add its velocity to the tally
 	avgVel.sub(boidVel);  // don't include boid's own velocity
     numFlockMates--;
 
@@ -0,0 +1,119 @@
+
+// FlockTimer.java
+
+/* Time the flock updates for increasing numbers of boids.
+
+   The predator and prey behaviours are created without a scene,
+   and their animateBoids() methods are called directly, which is
+   the work done by processStimulus() every DELAY ms.
+
+   All the boids are prey, and there are no predators, so no boids
+   are eaten and the flock size stays the same during a run. 
+
+   Each flock size is timed three times: with the original boid-by-boid
+   update ("objects"), using FlockArrays ("arrays"), and using FlockArrays
+   with all the cores ("parallel").
+
+   The obstacles and flocks are created from the same seed each time,
+   and a checksum of the final boid positions is printed. Runs in
+   parallel mode give the same checksum whatever the number of cores.
+
+   Usage:
+     java FlockTimer [ NumTicks [ NumObstacles ] ]
+*/
+
+import java.text.DecimalFormat;
+import java.util.*;
+import javax.vecmath.*;
+
+
+public class FlockTimer
+{
+  private static final int[] FLOCK_SIZES =
+            {200, 500, 1000, 2000, 5000, 10000};
+  private static final int WARMUP_TICKS = 20;
+  private static final int NUM_TICKS = 100;
+  private static final int NUM_OBSTACLES = 20;
+  private static final int DELAY = 50;  // should be the same as in FlockBehavior
+  private static final long SEED = 42;
+
+  private static final String[] MODE_NAMES = {"objects ", "arrays  ", "parallel"};
+
+  private static DecimalFormat df = new DecimalFormat("0.###");  // 3 dp
+
+
+  public static void main(String args[])
+  {
+    int numTicks = NUM_TICKS;
+    int numObs = NUM_OBSTACLES;
+    try {
+      if (args.length >= 1)
+        numTicks = Integer.parseInt(args[0]);
+      if (args.length >= 2)
+        numObs = Integer.parseInt(args[1]);
+    }
+    catch(NumberFormatException e)
+    { System.out.println("Illegal argument; using defaults"); }
+
+    System.out.println("Ticks per size: " + numTicks);
+    for (int i=0; i < FLOCK_SIZES.length; i++) {
+      timeFlock(FLOCK_SIZES[i], numTicks, numObs, FlockBehavior.OBJECTS_MODE);
+      timeFlock(FLOCK_SIZES[i], numTicks, numObs, FlockBehavior.ARRAYS_MODE);
+      timeFlock(FLOCK_SIZES[i], numTicks, numObs, FlockBehavior.PARALLEL_MODE);
+    }
+  } // end of main()
+
+
+
+  private static void timeFlock(int numBoids, int numTicks, int numObs,
+                                                  int mode)
+  // report the average time for one update of the complete flock
+  {
+    Random rand = new Random(SEED);
+    Obstacles obs = new Obstacles(numObs, new Random(rand.nextLong()));
+    PredatorBehavior predBeh = 
+            new PredatorBehavior(0, obs, new Random(rand.nextLong()));
+    PreyBehavior preyBeh = 
+            new PreyBehavior(numBoids, obs, new Random(rand.nextLong()));
+    predBeh.setPreyBeh( preyBeh );
+    preyBeh.setPredBeh( predBeh );
+    predBeh.setUpdateMode(mode);
+    preyBeh.setUpdateMode(mode);
+
+    for (int i=0; i < WARMUP_TICKS; i++)
+      tick(predBeh, preyBeh);
+
+    long startTime = System.nanoTime();
+    for (int i=0; i < numTicks; i++)
+      tick(predBeh, preyBeh);
+    double tickTime = (System.nanoTime() - startTime)/(numTicks*1000000.0);
+
+    System.out.println("Boids: " + numBoids +
+        "  " + MODE_NAMES[mode] +
+        "  tick: " + df.format(tickTime) + " ms" +
+        "  (" + df.format(tickTime*100.0/DELAY) + "% of DELAY)" +
+        "  checksum: " + checksum(preyBeh.getBoidsList()) );
+  } // end of timeFlock()
+
+
+  private static float checksum(BoidsList boidsList)
+  // add up all the boid coordinates
+  {
+    float sum = 0;
+    Vector3f pos;
+    Boid[] boids = boidsList.getSnapshot();
+    for (int i=0; i < boids.length; i++) {
+      pos = boids[i].getBoidPos();
+      sum += pos.x + pos.y + pos.z;
+    }
+    return sum;
+  } // end of checksum()
+
+
+  private static void tick(PredatorBehavior predBeh, PreyBehavior preyBeh)
+  // the same order as the behaviours are added to the scene
+  { predBeh.animateBoids();
+    preyBeh.animateBoids();
+  }
+
+} // end of FlockTimer class
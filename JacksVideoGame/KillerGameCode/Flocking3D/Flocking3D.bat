@@ -1,5 +1,5 @@
 @echo off
 echo Executing Flocking3D application...
 
-java Flocking3D %1 %2 %3
+java Flocking3D %1 %2 %3 %4 %5
 echo Finished.
\ No newline at end of file
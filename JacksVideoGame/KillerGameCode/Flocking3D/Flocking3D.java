@@ -50,6 +50,8 @@ public class Flocking3D extends JFrame
     int numPreds = NUM_PREDATORS;
     int numPrey = NUM_PREY;
     int numObstacles = NUM_OBSTACLES;
+    int updateMode = FlockBehavior.OBJECTS_MODE;
+    long seed = System.currentTimeMillis();
 
     // simple extraction of command line args.
     if (args.length >= 1) {
@@ -68,17 +70,33 @@ public class Flocking3D extends JFrame
       { System.out.println("Illegal number of prey"); }
     }
 
-    if (args.length == 3) {
+    if (args.length >= 3) {
       try 
       { numObstacles = Integer.parseInt( args[2] ); }
       catch(NumberFormatException e)
       { System.out.println("Illegal number of obstacles"); }
     }
 
+    if (args.length >= 4) {
+      if (args[3].equals("arrays"))
+        updateMode = FlockBehavior.ARRAYS_MODE;    // use FlockArrays 
+      else if (args[3].equals("parallel"))
+        updateMode = FlockBehavior.PARALLEL_MODE;  // FlockArrays on all cores
+      else if (!args[3].equals("objects"))
+        System.out.println("Unknown update mode: " + args[3]);
+    }
+
+    if (args.length == 5) {
+      try 
+      { seed = Long.parseLong( args[4] ); }
+      catch(NumberFormatException e)
+      { System.out.println("Illegal seed"); }
+    }
+
     Container c = getContentPane();
     c.setLayout( new BorderLayout() );
     WrapFlocking3D w3d = 
-		new WrapFlocking3D(numPreds, numPrey, numObstacles);
+		new WrapFlocking3D(numPreds, numPrey, numObstacles, updateMode, seed);
     c.add(w3d, BorderLayout.CENTER);
 
     setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
@@ -4,6 +4,17 @@
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
 
+/* The obstacles are cylinders placed at random on the floor. Each
+   one is also stored as a BoundingBox in obsList, and its box
+   bounds are copied into float arrays for the overlap tests.
+
+   A static 2D grid over the floor is built once in the constructor.
+   Each GRID_CELL-wide cell lists the obstacles whose boxes overlap
+   it, so isOverlapping() only tests the obstacles near a boid.
+   The query uses floats and int arrays, so it does not allocate
+   any objects.
+*/
+
 import java.awt.*;
 import java.util.*;
 
@@ -18,14 +29,32 @@ public class Obstacles
       // should be the same as the floor size in CheckerFloor, and be even
   private final static float MAX_HEIGHT = 8.0f;  
   private final static float RADIUS = 0.3f;  
+  private final static float GRID_CELL = 1.0f;   // width of a grid cell
+  private final static int GRID_LEN = (int) Math.ceil(FLOOR_LEN/GRID_CELL);
+                                     // number of cells along each side
 
 
   private ArrayList obsList;   // of BoundingBox'es
   private BranchGroup obsBG;   // obstacles in the scene
+  private Random rand;
+
+  // the obstacles' box bounds (the bottoms are all at y == 0)
+  private float[] minX, maxX, maxY, minZ, maxZ;
+
+  // the grid: the obstacles in cell c are
+  //     cellObs[ cellStart[c] ] .. cellObs[ cellStart[c+1]-1 ]
+  private int[] cellStart;
+  private int[] cellObs;
   
 
   public Obstacles(int numObs)
+  {  this(numObs, new Random());  }
+
+
+  public Obstacles(int numObs, Random rand)
+  // rand is seeded when the obstacles must be the same each time
   {
+    this.rand = rand;
     System.out.println("Num. Obstacles: "+ numObs);     
 
     obsList = new ArrayList();
@@ -33,6 +62,10 @@ public class Obstacles
 
     Appearance blueApp = makeBlueApp();
  
+    minX = new float[numObs];  maxX = new float[numObs];
+    maxY = new float[numObs];
+    minZ = new float[numObs];  maxZ = new float[numObs];
+
     float x, z, height;
     Point3d lower, upper;
     BoundingBox bb;
@@ -40,22 +73,66 @@ public class Obstacles
       // random obstacle position, less than the maximum height
       x = randomFloorPosn();
       z = randomFloorPosn();
-      height = (float)(Math.random()*MAX_HEIGHT);  
+      height = rand.nextFloat()*MAX_HEIGHT;  
       lower = new Point3d( x-RADIUS, 0.0f, z-RADIUS );
       upper = new Point3d( x+RADIUS, height, z+RADIUS );
 
       bb = new BoundingBox(lower, upper);
       obsList.add(bb);
+      minX[i] = x-RADIUS;  maxX[i] = x+RADIUS;
+      maxY[i] = height;
+      minZ[i] = z-RADIUS;  maxZ[i] = z+RADIUS;
 
       obsBG.addChild( makeSceneOb(height,x,z, blueApp) );
     }
+    buildGrid(numObs);
   } // end of Obstacles()
 
 
+
+  private void buildGrid(int numObs)
+  /* Store each obstacle in every cell that its box overlaps. 
+     The cells are filled in two passes: the first counts the
+     obstacles for each cell, the second stores them.
+  */
+  {
+    cellStart = new int[GRID_LEN*GRID_LEN + 1];
+
+    for (int i=0; i < numObs; i++)    // count
+      for (int cz=cellNum(minZ[i]); cz <= cellNum(maxZ[i]); cz++)
+        for (int cx=cellNum(minX[i]); cx <= cellNum(maxX[i]); cx++)
+          cellStart[ cz*GRID_LEN + cx + 1 ]++;
+
+    for (int c=0; c < GRID_LEN*GRID_LEN; c++)  // counts --> start positions
+      cellStart[c+1] += cellStart[c];
+
+    cellObs = new int[ cellStart[GRID_LEN*GRID_LEN] ];
+    int[] next = new int[GRID_LEN*GRID_LEN];   // next free slot in each cell
+    System.arraycopy(cellStart, 0, next, 0, next.length);
+
+    for (int i=0; i < numObs; i++)    // store
+      for (int cz=cellNum(minZ[i]); cz <= cellNum(maxZ[i]); cz++)
+        for (int cx=cellNum(minX[i]); cx <= cellNum(maxX[i]); cx++)
+          cellObs[ next[cz*GRID_LEN + cx]++ ] = i;
+  } // end of buildGrid()
+
+
+  private int cellNum(float coord)
+  // the grid cell number for an x- or z- coordinate, clamped to the grid
+  {
+    int c = (int) Math.floor((coord + FLOOR_LEN/2)/GRID_CELL);
+    if (c < 0)
+      return 0;
+    if (c >= GRID_LEN)
+      return GRID_LEN-1;
+    return c;
+  } // end of cellNum()
+
+
   private float randomFloorPosn()
   // returns a float between -FLOOR_LEN/2 and FLOOR_LEN/2
   {
-    return (float)((Math.random()*FLOOR_LEN)-(FLOOR_LEN/2));
+    return (float)((rand.nextFloat()*FLOOR_LEN)-(FLOOR_LEN/2));
   }
 
 
@@ -96,15 +173,56 @@ public class Obstacles
   public boolean isOverlapping(BoundingSphere bs)
   // Does bs overlap any of the BoundingBox obstacles?
   {
-    BoundingBox bb;
-    for (int i=0; i < obsList.size(); i++) {
-      bb = (BoundingBox)obsList.get(i);
-      if( bb.intersect(bs) )
-        return true;
-    }
+    Point3d centre = new Point3d();
+    bs.getCenter(centre);
+    return isOverlapping((float)centre.x, (float)centre.y, (float)centre.z,
+                         (float)bs.getRadius());
+  } // end of isOverlapping()
+
+
+
+  public boolean isOverlapping(float x, float y, float z, float radius)
+  /* Does the sphere centered at (x,y,z) overlap any of the obstacles?
+     Only the obstacles in the grid cells under the sphere are tested. 
+     Used by the boids, since it doesn't allocate any objects.
+  */
+  {
+    float radiusSq = radius*radius;
+    int minCX = cellNum(x-radius);
+    int maxCX = cellNum(x+radius);
+    int minCZ = cellNum(z-radius);
+    int maxCZ = cellNum(z+radius);
+
+    for (int cz=minCZ; cz <= maxCZ; cz++)
+      for (int cx=minCX; cx <= maxCX; cx++) {
+        int c = cz*GRID_LEN + cx;
+        for (int k=cellStart[c]; k < cellStart[c+1]; k++)
+          if (sphereHitsBox(cellObs[k], x, y, z, radiusSq))
+            return true;
+      }
     return false;
   } // end of isOverlapping()
 
 
+  private boolean sphereHitsBox(int i, float x, float y, float z, 
+                                                     float radiusSq)
+  /* Is the point in obstacle i's box closest to (x,y,z) no further 
+     away than the sphere's radius? */
+  {
+    float dx = 0, dy = 0, dz = 0;
+
+    if (x < minX[i]) dx = minX[i] - x;
+    else if (x > maxX[i]) dx = x - maxX[i];
+
+    if (y < 0) dy = -y;
+    else if (y > maxY[i]) dy = y - maxY[i];
+
+    if (z < minZ[i]) dz = minZ[i] - z;
+    else if (z > maxZ[i]) dz = z - maxZ[i];
+
+    return (dx*dx + dy*dy + dz*dz) <= radiusSq;
+  } // end of sphereHitsBox()
+
+
 } // end of Obstacles class
 
@@ -27,17 +27,21 @@ public class PredatorBehavior extends FlockBehavior
   // scaling factor for the velocity calculated by findClosePrey() rule
   private final static float FIND_WEIGHT = 0.2f;
   
-  private BoidsList preyList;
   private PreyBehavior preyBeh;
 
   // used for repeated calculations
   private Vector3f preyPos = new Vector3f();
   private Vector3f distFrom = new Vector3f();
+  private ArrayList closePrey = new ArrayList();   // results of prey searches
   
 
   public PredatorBehavior(int numBoids, Obstacles obs)
+  {  this(numBoids, obs, new Random());  }
+
+
+  public PredatorBehavior(int numBoids, Obstacles obs, Random rand)
   {
-    super(numBoids);
+    super(numBoids, rand);
     System.out.println("Num. Predators: " + numBoids);
     createBoids(numBoids, obs);
   }
@@ -70,25 +74,15 @@ public class PredatorBehavior extends FlockBehavior
      and from its BoidsList.
      Return the number of prey eaten (usually 1 or 0).
      Called by animateBoid() in PredatorBoid.
+
+     The prey's BoidsGrid is used to find the nearby prey.
   */
-  { preyList = preyBeh.getBoidsList();
-    int numPrey = preyList.size();
-    int numEaten = 0;
-    PreyBoid b;
-
-    int i = 0;
-	while((b = (PreyBoid)preyList.getBoid(i)) != null) {
-      distFrom.set(boidPos);
-      distFrom.sub( b.getBoidPos() );
-	  if(distFrom.length() < PROXIMITY/3.0) {   // is boid v.close to the prey
-		preyBeh.eatBoid(i);   // found prey, so eat it
-        numPrey--;
-        numEaten++;
-	    System.out.println("numPrey: " + numPrey);
-      }
-      else 
-        i++;
-	}
+  { int numEaten = preyBeh.getBoidsGrid().findNeighbours(boidPos, 
+                                              PROXIMITY/3.0f, closePrey);
+    for (int i=0; i < numEaten; i++) {   // eat all the v.close prey
+      preyBeh.eatBoid( (PreyBoid)closePrey.get(i) );
+	  System.out.println("numPrey: " + preyBeh.getBoidsList().getNumLive());
+    }
     return numEaten;
   } // end of eatClosePrey()
 
@@ -101,22 +95,14 @@ public class PredatorBehavior extends FlockBehavior
      This is an extra velocity rule used by each PredatorBoid.
      Called by doVelocityRules() in PredatorBoid.
   */
-  { preyList = preyBeh.getBoidsList();  // get prey list
-    int numClosePrey = 0;
+  { int numClosePrey = preyBeh.getBoidsGrid().findNeighbours(boidPos,
+                                              PROXIMITY*1.5f, closePrey);  // see further
     preyPos.set(0,0,0);
-    Vector3f pos;
-    PreyBoid b;
 
-    int i = 0;
-	while((b = (PreyBoid)preyList.getBoid(i)) != null) {
-      pos = b.getBoidPos();
-      distFrom.set(pos);
+    for (int i=0; i < numClosePrey; i++) {
+      distFrom.set( ((PreyBoid)closePrey.get(i)).getBoidPos() );
       distFrom.sub(boidPos);
-	  if(distFrom.length() < PROXIMITY*1.5f) {  // see further
-        preyPos.add( distFrom );	 // add distance to tally 
-        numClosePrey++;
-      }
-      i++;
+      preyPos.add( distFrom );	 // add distance to tally 
     }
 	if (numClosePrey > 0) {
 	  preyPos.scale(1.0f/numClosePrey);  // calculate average position
@@ -26,17 +26,21 @@ public class PreyBehavior extends FlockBehavior
   // scaling factor for the velocity calculated by seePredators() rule
   private final static float FLEE_WEIGHT = 0.2f;
   
-  private BoidsList predsList;
   private PredatorBehavior predBeh;
 
   // used for repeated calculations
   private Vector3f avoidPred = new Vector3f();
   private Vector3f distFrom = new Vector3f();
+  private ArrayList closePreds = new ArrayList();   // results of predator searches
 
 
   public PreyBehavior(int numBoids, Obstacles obs)
+  {  this(numBoids, obs, new Random());  }
+
+
+  public PreyBehavior(int numBoids, Obstacles obs, Random rand)
   {
-    super(numBoids);
+    super(numBoids, rand);
     System.out.println("Num. Prey: " + numBoids);
     createBoids(numBoids, obs);
   }
@@ -74,35 +78,30 @@ public class PreyBehavior extends FlockBehavior
      This is an extra velocity rule, used by each PreyBoid by
      calling doVelocityRules()
   */
-  { predsList = predBeh.getBoidsList();  // refer to pred list
-    avoidPred.set(0,0,0);  // reset
-    Vector3f predPos;
-    PredatorBoid b;
-
-    int i = 0;
-	while((b = (PredatorBoid)predsList.getBoid(i)) != null) {
-      distFrom.set(boidPos);
-      predPos = b.getBoidPos();
-      distFrom.sub(predPos);
-	  if(distFrom.length() < PROXIMITY) {   // is the pred. boid close?
-        avoidPred.set(distFrom);
-        avoidPred.scale(FLEE_WEIGHT);
-        break;
-      }
-      i++;
+  { avoidPred.set(0,0,0);  // reset
+    // use the predators' grid to find the close predators
+    if (predBeh.getBoidsGrid().findNeighbours(boidPos, 
+                                           PROXIMITY, closePreds) > 0) {
+      distFrom.set(boidPos);   // flee from the first close predator
+      distFrom.sub( ((PredatorBoid)closePreds.get(0)).getBoidPos() );
+      avoidPred.set(distFrom);
+      avoidPred.scale(FLEE_WEIGHT);
 	}
 	return avoidPred;
   } // end of seePredators()
 
 
 
-  public void eatBoid(int i)
-  /* PreyBoid 'i' is to be eaten. This causes it to be
-     detached from the scene and removed from its BoidsList.
-     Called by eatFood() in PredatorBehavior. */
+  public void eatBoid(PreyBoid pb)
+  /* The PreyBoid is to be eaten. This causes it to be
+     detached from the scene and removed from its BoidsGrid.
+     It is queued for removal from the BoidsList, and will
+     be removed at the start of the next prey update.
+     Called by eatClosePrey() in PredatorBehavior. */
   { 
-     ((PreyBoid)boidsList.getBoid(i)).boidDetach(); 
-	 boidsList.removeBoid(i);
+     pb.boidDetach(); 
+	 boidsList.removeBoid(pb);
+     boidsGrid.removeBoid(pb);
   }
 
 
@@ -39,7 +39,8 @@ public class WrapFlocking3D extends JPanel
 
 
 
-  public WrapFlocking3D(int numPreds, int numPrey, int numObs)
+  public WrapFlocking3D(int numPreds, int numPrey, int numObs,
+                                          int updateMode, long seed)
   // A panel holding a 3D canvas: the usual way of linking Java 3D to Swing
   {
     setLayout( new BorderLayout() );
@@ -54,7 +55,7 @@ public class WrapFlocking3D extends JPanel
     canvas3D.requestFocus();
 
     su = new SimpleUniverse(canvas3D);
-    createSceneGraph(numPreds, numPrey, numObs);
+    createSceneGraph(numPreds, numPrey, numObs, updateMode, seed);
     initUserPosition();        // set user's viewpoint
     orbitControls(canvas3D);   // controls for moving the viewpoint
     
@@ -62,7 +63,8 @@ public class WrapFlocking3D extends JPanel
   } // end of WrapFlocking3D()
 
 
-  private void createSceneGraph(int numPreds, int numPrey, int numObs) 
+  private void createSceneGraph(int numPreds, int numPrey, int numObs,
+                                       int updateMode, long seed) 
   // initilise the scene
   { 
     sceneBG = new BranchGroup();
@@ -72,7 +74,7 @@ public class WrapFlocking3D extends JPanel
     addBackground();      // add the sky
     sceneBG.addChild( new CheckerFloor().getBG() );  // add the floor
 
-    addFlockingBoids(numPreds, numPrey, numObs);
+    addFlockingBoids(numPreds, numPrey, numObs, updateMode, seed);
   } // end of createSceneGraph()
 
 
@@ -148,19 +150,25 @@ public class WrapFlocking3D extends JPanel
   // ---------------------- flocking boids -----------------
 
 
-  private void addFlockingBoids(int numPreds, int numPrey, int numObs)
+  private void addFlockingBoids(int numPreds, int numPrey, int numObs,
+                                        int updateMode, long seed)
   { 
+    // the obstacles and flocks get their own random number generators
+    Random rand = new Random(seed);
+
     // create obstacles
-    Obstacles obs = new Obstacles(numObs);
+    Obstacles obs = new Obstacles(numObs, new Random(rand.nextLong()));
     sceneBG.addChild( obs.getObsBG() );  // add obstacles to the scene
 
     // make the predator manager
-    PredatorBehavior predBeh = new PredatorBehavior(numPreds, obs);
+    PredatorBehavior predBeh = new PredatorBehavior(numPreds, obs, 
+                                           new Random(rand.nextLong()));
     predBeh.setSchedulingBounds(bounds);
     sceneBG.addChild( predBeh.getBoidsBG() );  // add predators to the scene
 
     // make the prey manager
-    PreyBehavior preyBeh = new PreyBehavior(numPrey, obs);
+    PreyBehavior preyBeh = new PreyBehavior(numPrey, obs,
+                                           new Random(rand.nextLong()));
     preyBeh.setSchedulingBounds(bounds);
     sceneBG.addChild( preyBeh.getBoidsBG() );  // add prey to the scene
 
@@ -168,6 +176,10 @@ public class WrapFlocking3D extends JPanel
     predBeh.setPreyBeh( preyBeh );
     preyBeh.setPredBeh( predBeh );
 
+    // choose how the flocks are updated
+    predBeh.setUpdateMode( updateMode );
+    preyBeh.setUpdateMode( updateMode );
+
   } // end of addFlockingBoids()
 
 
@@ -0,0 +1,196 @@
+
+// ChunkedTerrain.java
+
+/* The floor of the landscape: the TerrainChunks around the user,
+   made as they come into view and detached when they're left far
+   behind, so the landscape has no edges, but there are never more
+   than (2*(VIEW_RADIUS+1)+1)^2 chunks in memory.
+
+   update() is called every frame by the TerrainUpdater behaviour
+   with the user's (x,z) position. Chunks are measured in rings
+   around the user's chunk (the number of chunks away along x or
+   z, whichever is larger), and each ring range gets a level of
+   detail (LOD): every height for the user's chunk and the ring
+   around it, every other one in ring 2, and so on out to ring
+   VIEW_RADIUS. The chunks morph from one LOD to another as the user
+   moves (see TerrainChunk).
+
+   Missing chunks in the view are made closest first, and then
+   the chunks whose LOD has changed start to morph, but only
+   MAX_BUILDS meshes are made each frame, since a new row of
+   chunks and their neighbours' LOD changes would otherwise all
+   be made in the frame when the user crosses into another chunk
+   (a mesh takes up to a few hundred microseconds). Chunks beyond
+   VIEW_RADIUS+1 are detached; the extra ring stops a chunk being
+   thrown away and remade as the user walks back and forth across
+   a chunk boundary.
+
+   getChunkHeights() gives a loaded chunk's heights to
+   HeightSampler, which works out the height of the floor at any
+   (x,z) from them.
+*/
+
+import java.util.*;
+
+import javax.media.j3d.*;
+
+
+public class ChunkedTerrain
+{
+  private final static int CHUNK_LEN = FractalTerrain.CHUNK_LEN;
+  private final static int VIEW_RADIUS = 5;     // in chunks
+  private final static int MAX_BUILDS = 4;      // new meshes per frame
+
+  // the LOD step for each ring, out to VIEW_RADIUS
+  private final static int[] RING_STEPS = {1, 1, 2, 4, 4, 8};
+
+  private FractalTerrain terrain;
+  private Appearance[] apps;
+  private double[] texBoundaries;
+  private BranchGroup floorBG;
+
+  private HashMap chunks = new HashMap();   // Long (chunk coords) --> TerrainChunk
+  private int userCX, userCZ;               // the user's chunk
+  private boolean placed = false;           // has update() been called?
+
+  // chunk keys, for the chunks which are too far away
+  private ArrayList farKeys = new ArrayList();
+
+
+  public ChunkedTerrain(FractalTerrain terrain, Appearance[] apps,
+                        double[] texBoundaries)
+  {
+    this.terrain = terrain;
+    this.apps = apps;
+    this.texBoundaries = texBoundaries;
+
+    floorBG = new BranchGroup();   // chunks are added and removed while it's live
+    floorBG.setCapability(Group.ALLOW_CHILDREN_READ);
+    floorBG.setCapability(Group.ALLOW_CHILDREN_WRITE);
+    floorBG.setCapability(Group.ALLOW_CHILDREN_EXTEND);
+  }  // end of ChunkedTerrain()
+
+
+  public BranchGroup getFloorBG()
+  {  return floorBG;  }
+
+
+
+  public void update(double x, double z, long time)
+  /* The user is at (x,z). If they've moved into another chunk,
+     set the LODs of the chunks, and detach the far ones. Make
+     some of the missing ones, start some morphs, and move the
+     morphs on. */
+  {
+    int ucx = FractalTerrain.floorDiv((int) Math.floor(x), CHUNK_LEN);
+    int ucz = FractalTerrain.floorDiv((int) Math.floor(z), CHUNK_LEN);
+    if (!placed || (ucx != userCX) || (ucz != userCZ)) {
+      userCX = ucx;
+      userCZ = ucz;
+      placed = true;
+      setSteps();
+    }
+    int numBuilds = addChunks(MAX_BUILDS);
+
+    Iterator it = chunks.values().iterator();
+    while (it.hasNext()) {
+      TerrainChunk chunk = (TerrainChunk) it.next();
+      if ((numBuilds < MAX_BUILDS) && chunk.needsMorph()) {
+        chunk.startMorph(time);
+        numBuilds++;
+      }
+      else
+        chunk.update(time);
+    }
+  }  // end of update()
+
+
+  public void fill(double x, double z)
+  /* Make all the chunks in view around (x,z) straight away, for
+     the start, before the scene is live. */
+  {
+    update(x, z, 0);
+    addChunks(Integer.MAX_VALUE);
+  }  // end of fill()
+
+
+
+  private void setSteps()
+  // give each chunk the LOD for its ring, or detach it
+  {
+    farKeys.clear();
+    Iterator it = chunks.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry e = (Map.Entry) it.next();
+      TerrainChunk chunk = (TerrainChunk) e.getValue();
+      int ring = ring(chunk.getChunkX(), chunk.getChunkZ());
+      if (ring > VIEW_RADIUS+1)
+        farKeys.add( e.getKey() );
+      else
+        chunk.setStep( RING_STEPS[Math.min(ring, VIEW_RADIUS)] );
+    }
+
+    for (int i=0; i < farKeys.size(); i++) {
+      TerrainChunk chunk = (TerrainChunk) chunks.remove( farKeys.get(i) );
+      chunk.detach();
+    }
+  }  // end of setSteps()
+
+
+
+  private int addChunks(int maxChunks)
+  /* Make up to maxChunks missing chunks in view, working outwards,
+     and return how many were made. */
+  {
+    int numMade = 0;
+    for (int ring=0; ring <= VIEW_RADIUS; ring++)
+      for (int cz=userCZ-ring; cz <= userCZ+ring; cz++)
+        for (int cx=userCX-ring; cx <= userCX+ring; cx++) {
+          if (ring(cx, cz) != ring)    // only visit the ring's edge
+            continue;
+          Long key = key(cx, cz);
+          if (!chunks.containsKey(key)) {
+            if (numMade == maxChunks)
+              return numMade;
+            TerrainChunk chunk = new TerrainChunk(cx, cz, terrain.makeChunk(cx, cz),
+                            RING_STEPS[ring], terrain, apps, texBoundaries);
+            chunks.put(key, chunk);
+            floorBG.addChild(chunk);
+            numMade++;
+          }
+        }
+    return numMade;
+  }  // end of addChunks()
+
+
+  private int ring(int cx, int cz)
+  // how many chunks (cx,cz) is from the user's chunk
+  {  return Math.max( Math.abs(cx - userCX), Math.abs(cz - userCZ) );  }
+
+
+  private static Long key(int cx, int cz)
+  {  return new Long( (((long) cx) << 32) | (cz & 0xFFFFFFFFL) );  }
+
+
+
+  public boolean isLoaded(double x, double z)
+  // is the chunk holding (x,z) in memory?
+  {
+    int cx = FractalTerrain.floorDiv((int) Math.floor(x), CHUNK_LEN);
+    int cz = FractalTerrain.floorDiv((int) Math.floor(z), CHUNK_LEN);
+    return chunks.containsKey( key(cx, cz) );
+  }
+
+
+  public float[] getChunkHeights(int cx, int cz)
+  // the heights of chunk (cx,cz), or null if it isn't loaded
+  {
+    TerrainChunk chunk = (TerrainChunk) chunks.get( key(cx, cz) );
+    return (chunk == null) ? null : chunk.getHeights();
+  }
+
+
+  public int getNumChunks()
+  {  return chunks.size();  }
+
+}  // end of ChunkedTerrain class
@@ -10,7 +10,10 @@
    value input from the command line (or a default value can
    be used).
 
-   The landscape is surrounded by dark blue walls.
+   The landscape has no edges, and is made in chunks around the
+   user as they walk. It is generated from a seed, which may
+   also be given on the command line, so a landscape can be
+   visited again.
 
    The user can 'walk' over the landscape using the
    similar left/right/front/back/turn/up/down moves
@@ -27,15 +30,17 @@ public class FractalLand3D extends JFrame
   private static final double MIN_FLAT = 1.6;   // rough
   private static final double MAX_FLAT = 2.5;   // very flat
 
+  private long seed = System.currentTimeMillis();   // if no seed is given
+
 
   public FractalLand3D(String[] args) 
   {
     super("3D Fractal Landscape");
 
     double flatness = processArgs(args);
-    System.out.println("Flatness: " + flatness);
+    System.out.println("Flatness: " + flatness + "; seed: " + seed);
 
-    WrapFractalLand3D w3d = new WrapFractalLand3D(flatness);
+    WrapFractalLand3D w3d = new WrapFractalLand3D(flatness, seed);
 
     Container c = getContentPane();
     c.setLayout( new BorderLayout() );
@@ -49,15 +54,22 @@ public class FractalLand3D extends JFrame
 
 
   private double processArgs(String[] args)
-  // 0 or 1 argument is acceptable
+  // 0, 1 or 2 arguments are acceptable
   {
     double flatness = DEF_FLAT;
-    if (args.length == 1)
-      flatness = getFlatness(args[0]);
-    else if (args.length > 1) {
-      System.out.println("Usage: java FractalLand3D [<Flatness>]");
+    if (args.length > 2) {
+      System.out.println("Usage: java FractalLand3D [<Flatness> [<Seed>]]");
       System.exit(0);
     }
+    if (args.length >= 1)
+      flatness = getFlatness(args[0]);
+    if (args.length == 2) {
+      try {
+        seed = Long.parseLong(args[1]);
+      }
+      catch (NumberFormatException ex)
+      { System.out.println("Incorrect format for Seed long; using " + seed);  }
+    }
     return flatness;
   }  // end of processArgs()
 
@@ -1 +1 @@
-// FractalMesh.java// Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th/*  Generates a fractal mesh for use as a landscape.  The mesh is centered at (0,0) on the (x,z) plane, and  extends WORLD_LEN/2 around that point.   The y coordinate represents the height.  The mesh is stored  in a 2D array, with z stored in the rows, x in the columns.  mesh[0][0] stores the back left most point of the mesh which  is negative z and x.  The number of mesh points is dictated by WORLD_LEN which is   2^x. The divideMesh() method is called x times so that the  resulting mesh contains cells of width/height of 1 umit.   The mesh is generated using an algorithm similar   to the one in:     "Fractal Terrain Generation -  Midpoint Displacement"     by Jason Shankel, section 4.18, pp.503-507     In 'Game Programming Gems', Mark DeLoura (ed.)     Charles River Media, 2000  ------  Top tip suggested by Tom Egan: replace Math.random() with  Random.nextDouble() in order to always generate the same random  landscape for a given flatness value. This requires a constant seed  for the Random object.  The necesary changes are commented out in the code, and explained  in Chapter 26.*/import java.io.*;import java.util.Random;import javax.vecmath.*;import java.text.DecimalFormat;public class FractalMesh{  private static final int WORLD_LEN = 64;  /* WORLD_LEN should be a power of 2 since it will be     halved repeatedly until a single mesh cell as a     width of 1 unit. */  // a height range of 10 units  private final static double MIN_HEIGHT = -2.0;  private final static double MAX_HEIGHT = 8.0;  private Point3d mesh[][];    // stores the mesh's (x,y,z) points  private DecimalFormat df;    // for output of mesh  private double flatness;  /* Amount used to reduce dHeight on each recursive     call to divideMesh(). A larger value makes     landscape smoother; smaller is more chaotic  */  private Random rnd;   // for generating random numbers   public FractalMesh(double flat)  {    flatness = flat;    mesh = new Point3d[WORLD_LEN+1][WORLD_LEN+1];    df = new DecimalFormat("0.##");  // 2 dp    rnd = new Random(1L);       // a fixed seed    makeMesh();  } // end of FractalMesh()  private void makeMesh()  /* Initialise the 4 corners of the mesh with random heights     within the MIN and MAX range. Then start recursively     generating midoints by calling divideMesh(). */  {    System.out.println("Building the landscape...please wait");    mesh[0][0] =    // back left      new Point3d( -WORLD_LEN/2, randomHeight(), -WORLD_LEN/2 );    mesh[0][WORLD_LEN] =    // back right      new Point3d( WORLD_LEN/2, randomHeight(), -WORLD_LEN/2 );    mesh[WORLD_LEN][0] =    // front left      new Point3d( -WORLD_LEN/2, randomHeight(), WORLD_LEN/2 );    mesh[WORLD_LEN][WORLD_LEN] =    // front right      new Point3d( WORLD_LEN/2, randomHeight(), WORLD_LEN/2 );    divideMesh( (MAX_HEIGHT-MIN_HEIGHT)/flatness, WORLD_LEN/2);  } // end of makeMesh()  private double randomHeight()  // between MIN_HEIGHT and MAX_HEIGHT  {  return (Math.random()*(MAX_HEIGHT-MIN_HEIGHT) + MIN_HEIGHT);       // return (rnd.nextDouble()*(MAX_HEIGHT-MIN_HEIGHT) + MIN_HEIGHT);              // to fix the randomness  }  private void divideMesh(double dHeight, int stepSize)  /* At each step, we must perform the diamond step for     the entire mesh before doing the square step. */  {    int xPt, zPt;    if (stepSize >= 1) {   // stop recursing once stepSize is < 1      // diamond step for all mid points at this level      zPt = stepSize;      while (zPt < WORLD_LEN+1) {        xPt = stepSize;        while (xPt < WORLD_LEN+1) {           mesh[zPt][xPt] = getDiamond(zPt, xPt, dHeight, stepSize);           xPt += (stepSize*2);        }        zPt += (stepSize*2);      }      // square step for all points surrounding diamonds      zPt = stepSize;      while (zPt < WORLD_LEN+1) {        mesh[zPt][0] = getSquare(zPt, 0, dHeight, stepSize);  // left column        xPt = stepSize;        while (xPt < WORLD_LEN+1) {           getSquares(zPt, xPt, dHeight, stepSize);  // back & right cells           xPt += (stepSize*2);        }        zPt += (stepSize*2);      }      xPt = stepSize;      while (xPt < WORLD_LEN+1) {        mesh[WORLD_LEN][xPt] =           getSquare(WORLD_LEN, xPt, dHeight, stepSize);  // front row        xPt += (stepSize*2);      }      divideMesh(dHeight/flatness, stepSize/2);    }  }  // end of divideMesh()  private void getSquares(int z, int x, double dHeight, int stepSize)  {    mesh[cCoord(z-stepSize)][x] =    // back           getSquare(cCoord(z-stepSize), x, dHeight, stepSize);    mesh[z][cCoord(x+stepSize)] =    // right           getSquare(z, cCoord(x+stepSize), dHeight, stepSize);  } // end of getSquares()    private Point3d getDiamond(int z, int x, double dHeight, int stepSize)  {    // System.out.println("getDiamond: " + z + ", " + x + " /" + stepSize);    Point3d leftBack = mesh[cCoord(z-stepSize)][cCoord(x-stepSize)];    Point3d rightBack = mesh[cCoord(z-stepSize)][cCoord(x+stepSize)];    Point3d leftFront = mesh[cCoord(z+stepSize)][cCoord(x-stepSize)];    Point3d rightFront = mesh[cCoord(z+stepSize)][cCoord(x+stepSize)];    double height =         calcHeight(leftBack, rightBack, leftFront, rightFront, dHeight);    double xWorld = x - (WORLD_LEN/2);    double zWorld = z - (WORLD_LEN/2);    return new Point3d(xWorld, height, zWorld);  } // end of getDiamond()  private Point3d getSquare(int z, int x, double dHeight, int stepSize)  {    // System.out.println("getSquare: " + z + ", " + x + " /" + stepSize);    Point3d back = mesh[cCoord(z-stepSize)][x];    Point3d front = mesh[cCoord(z+stepSize)][x];    Point3d left = mesh[z][cCoord(x-stepSize)];    Point3d right = mesh[z][cCoord(x+stepSize)];    double height = calcHeight(back, front, left, right, dHeight);    double xWorld = x - (WORLD_LEN/2);    double zWorld = z - (WORLD_LEN/2);    return new Point3d(xWorld, height, zWorld);  } // end of getSquare()    private int cCoord(int coordIdx)  /* If the coord index is less then o, greater then WORLD_LEN     then use the coord on the opposite edge of the mesh.  */  {    if (coordIdx < 0)      return WORLD_LEN + coordIdx;    else if (coordIdx > WORLD_LEN)      return coordIdx - WORLD_LEN;    else      return coordIdx;  } // end of cCoord()  private double calcHeight(Point3d back, Point3d front,                       Point3d left, Point3d right, double dHeight)  /* If the calculated height is < MIN_HEIGHT, set it to MIN_HEIGHT.     If the calculated height is > MAX_HEIGHT, then take modulo     MAX_HEIGHT.  */  {    double height = (back.y + front.y + left.y + right.y)/4.0f +											   randomRange(dHeight);    if (height < MIN_HEIGHT)      height = MIN_HEIGHT;    else if (height > MAX_HEIGHT)      height = height%MAX_HEIGHT;    return height;  }  // end of calcHeight()  private double randomRange(double h)  // between -h and h  {  return ((Math.random() * 2 * h) - h);       // return ((rnd.nextDouble() * 2 * h) - h);   // to fix the randomness  }  public Point3d[] getVertices()  /* Return the mesh as an array of vertices. Each group of 4 points     will be used to create a TexturedPlane object.      We order the points so a plane is specified in anti-clockwise order,     which will be used when a texture is placed on it.  */  { int numVerts = WORLD_LEN*WORLD_LEN*4;    Point3d vertices[] = new Point3d[numVerts];        int vPos = 0;    for(int z=0; z<WORLD_LEN; z++) {      for(int x=0; x<WORLD_LEN; x++) {        vertices[vPos++] = mesh[z+1][x];     // anti-clockwise creation        vertices[vPos++] = mesh[z+1][x+1];   // from bottom-left        vertices[vPos++] = mesh[z][x+1];        vertices[vPos++] = mesh[z][x];      }    }    return vertices;  }  // end of getVertices  // ---------------------- debugging ------------------  public void printMesh(int axis)  // axis values: x=0, y=1, z=2  {    File f = new File("mesh.txt");    PrintWriter pw = null;    try {      pw = new PrintWriter(new FileWriter(f),true);      if (axis == 0)        pw.println("---------- World X Coords ------------");      else if (axis == 1)        pw.println("---------- World Y Coords ------------");      else         pw.println("---------- World Z Coords ------------");      for(int z=0; z<WORLD_LEN+1; z++) {        for(int x=0; x<WORLD_LEN+1; x++)          if (axis == 0)            pw.print( df.format(mesh[z][x].x) + " ");          else if (axis == 1)            pw.print( df.format(mesh[z][x].y) + " ");          else           pw.print( df.format(mesh[z][x].z) + " ");        pw.println();      }      pw.println("--------------------------------------");      System.out.println("Mesh written to mesh.txt");    }    catch(Exception e)    {  System.out.println("Could not write mesh to mesh.txt");  }  }  // end of printMesh()}  // end of FractalMesh class
\ No newline at end of file
+// FractalMesh.java// Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th/*  Generates a fractal mesh for use as a landscape.  The mesh is centered at (0,0) on the (x,z) plane, and  extends worldLen/2 around that point.  The y coordinate represents the height.  The mesh heights are stored  in a float array, a row at a time, with z giving the row, x the  column, so the height at (x,z) is heights[z*(worldLen+1) + x].  heights[0] stores the back left most point of the mesh which  is negative z and x. The (x,z) coordinates aren't stored, since  they follow from the position in the array.  The number of mesh points is dictated by worldLen which is  2^x (WORLD_LEN by default). The mesh is divided x times so that the  resulting mesh contains cells of width/height of 1 umit.  The mesh is generated using an algorithm similar  to the one in:     "Fractal Terrain Generation -  Midpoint Displacement"     by Jason Shankel, section 4.18, pp.503-507     In 'Game Programming Gems', Mark DeLoura (ed.)     Charles River Media, 2000  ------  The same seed and flatness always give the same mesh (Tom Egan's  top tip, explained in Chapter 26, was to use a seeded Random rather  than Math.random()).  Each diamond and square step changes points which only depend on  the points made by earlier steps, so the rows of a step can be  calculated at the same time. divideMesh() splits them between  the threads of a ForkJoinPool, using PassTask objects. A  single Random would make the heights depend on the order the rows  were done in, so each row of each step has its own stream of  random numbers, split off from the seed using the row and the  step (using the SplitMix64 generator). So the mesh is the same  whatever the number of cores.  Small steps (e.g. all of the 64x64 mesh) are done by the calling  thread, since the threads would cost more than they save.  FractalMeshTimer times meshes of various sizes.*/import java.io.*;import java.util.concurrent.*;import java.text.DecimalFormat;public class FractalMesh{  private static final int WORLD_LEN = 64;  /* The default worldLen. It should be a power of 2 since it will be     halved repeatedly until a single mesh cell as a     width of 1 unit. */  private static final long DEF_SEED = 1L;  // a height range of 10 units  private final static double MIN_HEIGHT = -2.0;  private final static double MAX_HEIGHT = 8.0;  private final static int TASK_POINTS = 16384;     // max. number of points calculated by one PassTask without splitting  // for splitting random number streams from the seed  private final static long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;  private final static long ROW_GAMMA = 0xC2B2AE3D27D4EB4FL;  private int worldLen;  private int rowLen;          // worldLen+1 points in a row  private float heights[];     // the mesh's heights (y values)  private DecimalFormat df;    // for output of mesh  private double flatness;  /* Amount used to reduce dHeight on each call to divideMesh().     A larger value makes     landscape smoother; smaller is more chaotic  */  private long seed;  private ForkJoinPool pool;  public FractalMesh(double flat)  {  this(flat, DEF_SEED, WORLD_LEN, ForkJoinPool.commonPool());  }  public FractalMesh(double flat, long seed, int worldLen)  {  this(flat, seed, worldLen, ForkJoinPool.commonPool());  }  public FractalMesh(double flat, long seed, int worldLen, ForkJoinPool pool)  {    if ((worldLen < 2) || ((worldLen & (worldLen-1)) != 0))      throw new IllegalArgumentException("worldLen must be a power of 2: " + worldLen);    flatness = flat;    this.seed = seed;    this.worldLen = worldLen;    this.pool = pool;    rowLen = worldLen+1;    heights = new float[rowLen*rowLen];    df = new DecimalFormat("0.##");  // 2 dp    makeMesh();  } // end of FractalMesh()  private void makeMesh()  /* Initialise the 4 corners of the mesh with random heights     within the MIN and MAX range. Then generate the midpoints     by calling divideMesh() for smaller and smaller steps. */  {    long rnd = stream(0, 0);    // the corners' random numbers    heights[0] = (float) randomHeight(rnd += GOLDEN_GAMMA);   // back left    heights[worldLen] = (float) randomHeight(rnd += GOLDEN_GAMMA);   // back right    heights[worldLen*rowLen] = (float) randomHeight(rnd += GOLDEN_GAMMA);  // front left    heights[worldLen*rowLen + worldLen] =     // front right                           (float) randomHeight(rnd += GOLDEN_GAMMA);    double dHeight = (MAX_HEIGHT-MIN_HEIGHT)/flatness;    for (int stepSize = worldLen/2; stepSize >= 1; stepSize /= 2) {      divideMesh(dHeight, stepSize);      dHeight /= flatness;    }  } // end of makeMesh()  private double randomHeight(long rnd)  // between MIN_HEIGHT and MAX_HEIGHT  {  return (random(rnd)*(MAX_HEIGHT-MIN_HEIGHT) + MIN_HEIGHT);  }  private void divideMesh(double dHeight, int stepSize)  /* At each step, we must perform the diamond step for     the entire mesh before doing the square step.     The diamond step sets the middle of each square with sides     stepSize*2, in every other row from stepSize. The square step     sets the middles of the squares' sides, in every row from 0. */  {    int numDiamondRows = worldLen/(stepSize*2);    doPass(true, dHeight, stepSize, numDiamondRows, worldLen/(stepSize*2));    int numSquareRows = worldLen/stepSize + 1;    doPass(false, dHeight, stepSize, numSquareRows, worldLen/stepSize);  }  // end of divideMesh()  private void doPass(boolean isDiamond, double dHeight, int stepSize,                      int numRows, int pointsPerRow)  // do a diamond or square pass, in parallel if it's large enough  {    if (numRows*pointsPerRow <= TASK_POINTS)      doRows(isDiamond, dHeight, stepSize, 0, numRows);    else      pool.invoke( new PassTask(isDiamond, dHeight, stepSize, 0, numRows,                                Math.max(1, TASK_POINTS/pointsPerRow)) );  }  // end of doPass()  private void doRows(boolean isDiamond, double dHeight, int stepSize,                      int start, int end)  // calculate the points for the pass's rows from start to end-1  {    for (int row=start; row < end; row++) {      if (isDiamond)        diamondRow(stepSize + row*stepSize*2, dHeight, stepSize);      else        squareRow(row*stepSize, dHeight, stepSize);    }  }  // end of doRows()  private void diamondRow(int z, double dHeight, int stepSize)  // the middles of the squares centered on row z  {    long rnd = stream(stepSize*2, z);    int back = (z-stepSize)*rowLen;    int front = (z+stepSize)*rowLen;    for (int x=stepSize; x < worldLen; x += stepSize*2) {      double sum = heights[back + x-stepSize] + heights[back + x+stepSize] +                   heights[front + x-stepSize] + heights[front + x+stepSize];      heights[z*rowLen + x] = (float) calcHeight(sum, dHeight, rnd += GOLDEN_GAMMA);    }  } // end of diamondRow()  private void squareRow(int z, double dHeight, int stepSize)  /* The middles of the squares' sides on row z: between the     diamonds on a diamond row, or below and above them on the     others. A point on the edge of the mesh uses the point on     the opposite edge as its missing neighbour. */  {    long rnd = stream(stepSize*2 + 1, z);    boolean diamondRow = ((z/stepSize) % 2) == 1;    int back = cCoord(z-stepSize)*rowLen;    int front = cCoord(z+stepSize)*rowLen;    int row = z*rowLen;    for (int x = (diamondRow ? 0 : stepSize); x <= worldLen; x += stepSize*2) {      double sum = heights[back + x] + heights[front + x] +                   heights[row + cCoord(x-stepSize)] + heights[row + cCoord(x+stepSize)];      heights[row + x] = (float) calcHeight(sum, dHeight, rnd += GOLDEN_GAMMA);    }  } // end of squareRow()  private int cCoord(int coordIdx)  /* If the coord index is less then o, greater then worldLen     then use the coord on the opposite edge of the mesh.  */  {    if (coordIdx < 0)      return worldLen + coordIdx;    else if (coordIdx > worldLen)      return coordIdx - worldLen;    else      return coordIdx;  } // end of cCoord()  private double calcHeight(double sum, double dHeight, long rnd)  /* The average of the four heights in sum, displaced by up to dHeight.     If the calculated height is < MIN_HEIGHT, set it to MIN_HEIGHT.     If the calculated height is > MAX_HEIGHT, then take modulo     MAX_HEIGHT.  */  {    double height = sum/4.0 + randomRange(dHeight, rnd);    if (height < MIN_HEIGHT)      height = MIN_HEIGHT;    else if (height > MAX_HEIGHT)      height = height%MAX_HEIGHT;    return height;  }  // end of calcHeight()  private double randomRange(double h, long rnd)  // between -h and h  {  return ((random(rnd) * 2 * h) - h);  }  // ------------------ random number streams ---------------------  private long stream(int pass, int row)  /* The starting state for the random numbers of a row of a pass     (each step size has two passes, and the corners have their     own). The next number's state is made by adding GOLDEN_GAMMA. */  {  return mix(seed + pass*GOLDEN_GAMMA + row*ROW_GAMMA);  }  private static double random(long state)  // a number between 0 and 1 from a stream's state  {  return (mix(state) >>> 11) * 0x1.0p-53;  }  private static long mix(long z)  // the SplitMix64 finalizer  {    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;    return z ^ (z >>> 31);  }  // end of mix()  // ------------------------ parallel passes -------------------------  private class PassTask extends RecursiveAction  // calculate the rows from start to end-1 of a diamond or square pass  {    private boolean isDiamond;    private double dHeight;    private int stepSize, start, end, taskRows;    public PassTask(boolean isDiamond, double dHeight, int stepSize,                    int start, int end, int taskRows)    { this.isDiamond = isDiamond;  this.dHeight = dHeight;      this.stepSize = stepSize;      this.start = start;  this.end = end;  this.taskRows = taskRows;    }    protected void compute()    {      if (end - start <= taskRows)        doRows(isDiamond, dHeight, stepSize, start, end);      else {   // split the rows in two        int mid = (start + end)/2;        invokeAll( new PassTask(isDiamond, dHeight, stepSize, start, mid, taskRows),                   new PassTask(isDiamond, dHeight, stepSize, mid, end, taskRows) );      }    } // end of compute()  } // end of PassTask class  // ------------------------ access ---------------------------  public int getWorldLen()  {  return worldLen;  }  public float[] getHeights()  // (worldLen+1)*(worldLen+1) heights, row by row (z), back to front  {  return heights;  }  public float getHeight(int x, int z)  // the height at mesh point (x,z); (0,0) is the back left corner  {  return heights[z*rowLen + x];  }  // ---------------------- debugging ------------------  public void printMesh(int axis)  // axis values: x=0, y=1, z=2  {    File f = new File("mesh.txt");    PrintWriter pw = null;    try {      pw = new PrintWriter(new FileWriter(f),true);      if (axis == 0)        pw.println("---------- World X Coords ------------");      else if (axis == 1)        pw.println("---------- World Y Coords ------------");      else        pw.println("---------- World Z Coords ------------");      for(int z=0; z<worldLen+1; z++) {        for(int x=0; x<worldLen+1; x++)          if (axis == 0)            pw.print( df.format(x - worldLen/2) + " ");          else if (axis == 1)            pw.print( df.format(heights[z*rowLen + x]) + " ");          else           pw.print( df.format(z - worldLen/2) + " ");        pw.println();      }      pw.println("--------------------------------------");      System.out.println("Mesh written to mesh.txt");    }    catch(Exception e)    {  System.out.println("Could not write mesh to mesh.txt");  }  }  // end of printMesh()}  // end of FractalMesh class
\ No newline at end of file
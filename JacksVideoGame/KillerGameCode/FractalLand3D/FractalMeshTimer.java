@@ -0,0 +1,110 @@
+
+// FractalMeshTimer.java
+
+/* Time FractalMesh for mesh sizes from 64x64 to 8192x8192.
+
+   Each size is timed twice: with a ForkJoinPool of one thread
+   ("serial"), and with the common pool, which uses all the cores
+   ("parallel"). Each mesh is made a few times first, so the JIT
+   compiler has finished with the code, and then timed for at
+   least MIN_TIME ms (and at least MIN_RUNS runs).
+
+   All the meshes use the same seed and flatness, and a checksum
+   of each mesh's heights is printed, which should be the same for
+   both runs of a size, whatever the number of cores.
+
+   The largest mesh uses about 270MB, so the JVM may need a larger
+   heap, e.g.:
+     java -Xmx1g FractalMeshTimer
+
+   Usage:
+     java FractalMeshTimer [ MaxSize [ Flatness ] ]
+*/
+
+import java.text.DecimalFormat;
+import java.util.concurrent.ForkJoinPool;
+
+
+public class FractalMeshTimer
+{
+  private static final int MIN_SIZE = 64;
+  private static final int MAX_SIZE = 8192;
+  private static final double FLATNESS = 2.3;
+  private static final long SEED = 42;
+
+  private static final int WARMUP_RUNS = 3;
+  private static final int MIN_RUNS = 3;
+  private static final long MIN_TIME = 1000;   // ms
+
+  private static DecimalFormat df = new DecimalFormat("0.###");  // 3 dp
+
+
+  public static void main(String args[])
+  {
+    int maxSize = MAX_SIZE;
+    double flatness = FLATNESS;
+    try {
+      if (args.length >= 1)
+        maxSize = Integer.parseInt(args[0]);
+      if (args.length >= 2)
+        flatness = Double.parseDouble(args[1]);
+    }
+    catch(NumberFormatException e)
+    { System.out.println("Illegal argument; using defaults"); }
+
+    ForkJoinPool serialPool = new ForkJoinPool(1);
+    ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+    System.out.println("Flatness: " + flatness + "; seed: " + SEED +
+                       "; cores: " + Runtime.getRuntime().availableProcessors());
+
+    for (int size=MIN_SIZE; size <= maxSize; size *= 2) {
+      long serialSum = timeMesh(size, flatness, serialPool, "serial  ");
+      long parallelSum = timeMesh(size, flatness, parallelPool, "parallel");
+      if (serialSum != parallelSum)
+        System.out.println("  The meshes are different!");
+    }
+    serialPool.shutdown();
+  } // end of main()
+
+
+
+  private static long timeMesh(int size, double flatness,
+                               ForkJoinPool pool, String name)
+  /* Report the average time to make a mesh of size, and return
+     its checksum. */
+  {
+    FractalMesh mesh = null;
+    for (int i=0; i < WARMUP_RUNS; i++)
+      mesh = new FractalMesh(flatness, SEED, size, pool);
+
+    int numRuns = 0;
+    long startTime = System.nanoTime();
+    long endTime;
+    do {
+      mesh = null;    // so two large meshes aren't held at once
+      mesh = new FractalMesh(flatness, SEED, size, pool);
+      numRuns++;
+      endTime = System.nanoTime();
+    } while ((numRuns < MIN_RUNS) || (endTime - startTime < MIN_TIME*1000000L));
+
+    double meshTime = (endTime - startTime)/(numRuns*1000000.0);
+    double numPoints = (size+1.0)*(size+1.0);
+    long sum = checksum(mesh.getHeights());
+    System.out.println("Size: " + size + "x" + size + "  " + name +
+        "  mesh: " + df.format(meshTime) + " ms" +
+        "  (" + df.format(meshTime*1000000.0/numPoints) + " ns/point, " +
+        numRuns + " runs)  checksum: " + Long.toHexString(sum) );
+    return sum;
+  } // end of timeMesh()
+
+
+  private static long checksum(float[] heights)
+  // mix the bits of all the heights, so any difference shows
+  {
+    long sum = 0;
+    for (int i=0; i < heights.length; i++)
+      sum = sum*31 + Float.floatToIntBits(heights[i]);
+    return sum;
+  } // end of checksum()
+
+} // end of FractalMeshTimer class
@@ -0,0 +1,196 @@
+
+// FractalTerrain.java
+
+/* A fractal landscape which goes on forever, made with the same
+   midpoint displacement as FractalMesh, but calculated in pieces
+   (chunks) as they're needed, rather than all at once.
+
+   The floor is divided into root squares of ROOT_LEN units (the
+   size of FractalMesh's world), whose corners get random heights
+   between MIN_HEIGHT and MAX_HEIGHT. Each square is divided into
+   four, down to squares of 1 unit, adding a random displacement to
+   each new midpoint, which is reduced by flatness at each level.
+
+   Two things make the pieces fit together:
+
+     * The random numbers come from a hash of the seed and the
+       point's (x,z) coordinates, rather than from a sequence,
+       so a point gets the same height whenever it's calculated,
+       in whatever order.
+
+     * A new point on a square's edge is the average of the two
+       ends of the edge (plus its displacement), and not of four
+       points as in FractalMesh's square step, which would use
+       points from the squares on both sides. So the points along
+       an edge only depend on the edge's ends, and two chunks
+       which share an edge calculate the same heights for it.
+
+   makeChunk() calculates the heights of a CHUNK_LEN square, as a
+   float[] with (CHUNK_LEN+1)*(CHUNK_LEN+1) entries, row by row
+   (z is the row, x the column, as in FractalMesh). It finds the
+   chunk's corners with getHeight(), and then divides the chunk.
+
+   getHeight() finds the height at any point with integer (x,z),
+   by dividing only the squares which contain it, from the root
+   square down.
+*/
+
+
+public class FractalTerrain
+{
+  public final static int ROOT_LEN = 64;    // same as FractalMesh's WORLD_LEN
+  public final static int CHUNK_LEN = 16;   // must divide ROOT_LEN
+
+  // a height range of 10 units
+  public final static double MIN_HEIGHT = -2.0;
+  public final static double MAX_HEIGHT = 8.0;
+
+  private long seed;
+  private double[] dHeights;   // displacement range, indexed by step size
+
+
+  public FractalTerrain(double flatness, long seed)
+  {
+    this.seed = seed;
+
+    /* As in FractalMesh, the midpoints of the root squares are
+       displaced by up to (MAX_HEIGHT-MIN_HEIGHT)/flatness, and the
+       range is divided by flatness at each level after that. */
+    dHeights = new double[ROOT_LEN/2 + 1];
+    double dHeight = (MAX_HEIGHT-MIN_HEIGHT)/flatness;
+    for (int step = ROOT_LEN/2; step >= 1; step /= 2) {
+      dHeights[step] = dHeight;
+      dHeight /= flatness;
+    }
+  }  // end of FractalTerrain()
+
+
+
+  public float[] makeChunk(int cx, int cz)
+  /* Return the heights of the chunk whose back left corner is
+     at (cx*CHUNK_LEN, cz*CHUNK_LEN). */
+  {
+    int len = CHUNK_LEN+1;
+    float[] heights = new float[len*len];
+    int x0 = cx*CHUNK_LEN;
+    int z0 = cz*CHUNK_LEN;
+
+    heights[0] = (float) getHeight(x0, z0);   // the corners
+    heights[CHUNK_LEN] = (float) getHeight(x0+CHUNK_LEN, z0);
+    heights[CHUNK_LEN*len] = (float) getHeight(x0, z0+CHUNK_LEN);
+    heights[CHUNK_LEN*len + CHUNK_LEN] =
+                 (float) getHeight(x0+CHUNK_LEN, z0+CHUNK_LEN);
+
+    for (int step = CHUNK_LEN/2; step >= 1; step /= 2) {
+      int size = step*2;
+      for (int z=0; z <= CHUNK_LEN; z += step) {
+        boolean edgeRow = ((z % size) == 0);
+        for (int x = edgeRow ? step : 0; x <= CHUNK_LEN; x += (edgeRow ? size : step)) {
+          int i = z*len + x;
+          if (edgeRow)                // on a back or front edge
+            heights[i] = (float) calcHeight(
+                  heights[i-step] + heights[i+step], 2, x0+x, z0+z, step);
+          else if ((x % size) == 0)   // on a left or right edge
+            heights[i] = (float) calcHeight(
+                  heights[i-step*len] + heights[i+step*len], 2, x0+x, z0+z, step);
+          else                        // in the middle
+            heights[i] = (float) calcHeight(
+                  heights[i-step*len-step] + heights[i-step*len+step] +
+                  heights[i+step*len-step] + heights[i+step*len+step], 4,
+                  x0+x, z0+z, step);
+        }
+      }
+    }
+    return heights;
+  }  // end of makeChunk()
+
+
+
+  public double getHeight(int x, int z)
+  /* The height at (x,z), found by dividing the squares which
+     contain it, from its root square down, until it's a corner. */
+  {
+    int x0 = floorDiv(x, ROOT_LEN) * ROOT_LEN;   // the root square
+    int z0 = floorDiv(z, ROOT_LEN) * ROOT_LEN;
+    double hBL = rootHeight(x0, z0);     // back left, back right, ...
+    double hBR = rootHeight(x0+ROOT_LEN, z0);
+    double hFL = rootHeight(x0, z0+ROOT_LEN);
+    double hFR = rootHeight(x0+ROOT_LEN, z0+ROOT_LEN);
+
+    int size = ROOT_LEN;
+    while (true) {
+      if (x == x0) {
+        if (z == z0)  return hBL;
+        if (z == z0+size)  return hFL;
+      }
+      else if (x == x0+size) {
+        if (z == z0)  return hBR;
+        if (z == z0+size)  return hFR;
+      }
+      int step = size/2;
+      double back = calcHeight(hBL + hBR, 2, x0+step, z0, step);
+      double front = calcHeight(hFL + hFR, 2, x0+step, z0+size, step);
+      double left = calcHeight(hBL + hFL, 2, x0, z0+step, step);
+      double right = calcHeight(hBR + hFR, 2, x0+size, z0+step, step);
+      double mid = calcHeight(hBL + hBR + hFL + hFR, 4, x0+step, z0+step, step);
+
+      // move into the quarter holding (x,z)
+      if (x < x0+step) {
+        if (z < z0+step) {  hBR = back;  hFL = left;  hFR = mid;  }
+        else {  hBL = left;  hBR = mid;  hFR = front;  z0 += step;  }
+      }
+      else {
+        if (z < z0+step) {  hBL = back;  hFL = mid;  hFR = right;  }
+        else {  hBL = mid;  hBR = right;  hFL = front;  z0 += step;  }
+        x0 += step;
+      }
+      size = step;
+    }
+  }  // end of getHeight()
+
+
+  private double rootHeight(int x, int z)
+  // between MIN_HEIGHT and MAX_HEIGHT
+  {  return random(x, z)*(MAX_HEIGHT-MIN_HEIGHT) + MIN_HEIGHT;  }
+
+
+
+  private double calcHeight(double sum, int n, int x, int z, int step)
+  /* The average of n heights, displaced by the point's random
+     amount. As in FractalMesh, a height < MIN_HEIGHT is set to
+     MIN_HEIGHT, and one > MAX_HEIGHT is taken modulo MAX_HEIGHT. */
+  {
+    double dHeight = dHeights[step];
+    double height = sum/n + (random(x, z)*2*dHeight - dHeight);
+    if (height < MIN_HEIGHT)
+      height = MIN_HEIGHT;
+    else if (height > MAX_HEIGHT)
+      height = height%MAX_HEIGHT;
+    return height;
+  }  // end of calcHeight()
+
+
+
+  private double random(int x, int z)
+  /* A number between 0 and 1 for the point (x,z), made by mixing
+     the seed and the coordinates (using the finalizer of the
+     SplitMix64 generator), so it is the same every time. */
+  {
+    long h = seed + x*0x9E3779B97F4A7C15L + z*0xC2B2AE3D27D4EB4FL;
+    h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+    h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+    h = h ^ (h >>> 31);
+    return (h >>> 11) * 0x1.0p-53;
+  }  // end of random()
+
+
+  public static int floorDiv(int a, int b)
+  // a/b rounded down, for negative a as well
+  {
+    int q = a/b;
+    if ((a % b != 0) && ((a < 0) != (b < 0)))
+      q--;
+    return q;
+  }
+
+}  // end of FractalTerrain class
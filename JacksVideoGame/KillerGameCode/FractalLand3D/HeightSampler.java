@@ -0,0 +1,220 @@
+
+// HeightSampler.java
+
+/* Answers questions about the ground at any (x,z): its height, its
+   surface normal, and its slope, calculated from the heights of the
+   mesh points around (x,z), with no picking. It is used by
+   KeyBehavior to keep the viewpoint on the floor, and can be shared
+   by anything else that walks on the landscape.
+
+   The heights come from ChunkedTerrain's chunks, which hold the
+   heights of every mesh point (1 unit apart), or from the
+   FractalTerrain if (x,z) is in a chunk which hasn't been made.
+   So the answers are for the finest mesh, even where a far chunk
+   is drawn with less detail.
+
+   Each 1x1 square of the mesh is two triangles, split along the
+   diagonal from its front left to its back right corner, as drawn
+   by TerrainChunk (in PlaneEquation/PointHeight's terms, that's
+   the PR triangulation). The height at (x,z) is on the plane of
+   the triangle containing it, and the normal and slope are those
+   of the triangle's plane. cellHeight() and cellGradient() do
+   the calculation, and are also used by TerrainChunk.
+
+   The batch methods, getHeights() and sample(), remember the last
+   chunk used, so a group of points close together (e.g. the feet
+   of a creature, or a flock) only looks up each chunk once.
+
+   The sampler should be used from the behaviour thread, as it
+   reads the chunks which TerrainUpdater changes.
+*/
+
+import javax.vecmath.*;
+
+
+public class HeightSampler
+{
+  private final static int CHUNK_LEN = FractalTerrain.CHUNK_LEN;
+  private final static int LEN = CHUNK_LEN+1;   // points along a chunk's side
+
+  private ChunkedTerrain chunks;
+  private FractalTerrain terrain;
+
+  // the last chunk used by the batch methods
+  private int lastCX, lastCZ;
+  private float[] lastHeights = null;
+
+  // the corners of the square being sampled, set by findSquare()
+  private double hBL, hBR, hFL, hFR;
+  private double fx, fz;    // (x,z)'s position in the square, 0 to 1
+  private double[] grad = new double[2];
+
+
+  public HeightSampler(ChunkedTerrain chunks, FractalTerrain terrain)
+  {
+    this.chunks = chunks;
+    this.terrain = terrain;
+  }
+
+
+  public double getHeight(double x, double z)
+  // the height of the ground at (x,z)
+  {
+    findSquare(x, z, false);
+    return cellHeight(hBL, hBR, hFL, hFR, fx, fz);
+  }  // end of getHeight()
+
+
+  public double getHeight(double x, double z, Vector3f normal)
+  // the height at (x,z), with the ground's normal stored in normal
+  {
+    findSquare(x, z, false);
+    cellGradient(hBL, hBR, hFL, hFR, fx, fz, grad);
+    gradientToNormal(grad[0], grad[1], normal);
+    return cellHeight(hBL, hBR, hFL, hFR, fx, fz);
+  }  // end of getHeight()
+
+
+  public double getSlope(double x, double z)
+  /* How steep the ground is at (x,z): the height gained for each
+     unit moved directly uphill (0 is flat, 1 is 45 degrees). */
+  {
+    findSquare(x, z, false);
+    cellGradient(hBL, hBR, hFL, hFR, fx, fz, grad);
+    return Math.sqrt(grad[0]*grad[0] + grad[1]*grad[1]);
+  }  // end of getSlope()
+
+
+  public double getSlope(double x, double z, double dirX, double dirZ)
+  /* The height gained for each unit moved from (x,z) in the
+     (dirX,dirZ) direction (which needn't be normalized); negative
+     when going downhill. */
+  {
+    double len = Math.sqrt(dirX*dirX + dirZ*dirZ);
+    if (len == 0)
+      return 0;
+    findSquare(x, z, false);
+    cellGradient(hBL, hBR, hFL, hFR, fx, fz, grad);
+    return (grad[0]*dirX + grad[1]*dirZ)/len;
+  }  // end of getSlope()
+
+
+
+  // ------------------------ batch queries ---------------------------
+
+
+  public void getHeights(float[] xs, float[] zs, float[] heights, int num)
+  // the heights at (xs[i],zs[i]), for i from 0 to num-1
+  {
+    for (int i=0; i < num; i++) {
+      findSquare(xs[i], zs[i], true);
+      heights[i] = (float) cellHeight(hBL, hBR, hFL, hFR, fx, fz);
+    }
+  }  // end of getHeights()
+
+
+  public void sample(float[] xs, float[] zs, int num,
+                     float[] heights, float[] normals, float[] slopes)
+  /* The heights, normals and slopes at (xs[i],zs[i]), for i from 0
+     to num-1. normals holds 3 floats (x,y,z) for each point. Any
+     of the result arrays may be null, if it isn't wanted. */
+  {
+    for (int i=0; i < num; i++) {
+      findSquare(xs[i], zs[i], true);
+      if (heights != null)
+        heights[i] = (float) cellHeight(hBL, hBR, hFL, hFR, fx, fz);
+      if ((normals != null) || (slopes != null)) {
+        cellGradient(hBL, hBR, hFL, hFR, fx, fz, grad);
+        double gx = grad[0];  double gz = grad[1];
+        if (normals != null) {
+          double len = Math.sqrt(gx*gx + 1 + gz*gz);
+          normals[i*3] = (float)(-gx/len);
+          normals[i*3+1] = (float)(1/len);
+          normals[i*3+2] = (float)(-gz/len);
+        }
+        if (slopes != null)
+          slopes[i] = (float) Math.sqrt(gx*gx + gz*gz);
+      }
+    }
+  }  // end of sample()
+
+
+
+  // ----------------- the square holding (x,z) -------------------
+
+
+  private void findSquare(double x, double z, boolean useLast)
+  /* Store the heights of the corners of the mesh square holding
+     (x,z), and (x,z)'s position in it. If useLast is true, the
+     chunk from the last call is reused when (x,z) is in it. */
+  {
+    int ix = (int) Math.floor(x);
+    int iz = (int) Math.floor(z);
+    fx = x - ix;
+    fz = z - iz;
+    int cx = FractalTerrain.floorDiv(ix, CHUNK_LEN);
+    int cz = FractalTerrain.floorDiv(iz, CHUNK_LEN);
+
+    float[] heights;
+    if (useLast && (lastHeights != null) && (cx == lastCX) && (cz == lastCZ))
+      heights = lastHeights;
+    else {
+      heights = chunks.getChunkHeights(cx, cz);
+      if (heights == null) {    // not made, so work it out from scratch
+        hBL = terrain.getHeight(ix, iz);
+        hBR = terrain.getHeight(ix+1, iz);
+        hFL = terrain.getHeight(ix, iz+1);
+        hFR = terrain.getHeight(ix+1, iz+1);
+        return;
+      }
+      lastCX = cx;  lastCZ = cz;
+      lastHeights = heights;
+    }
+
+    int p = (iz - cz*CHUNK_LEN)*LEN + (ix - cx*CHUNK_LEN);
+    hBL = heights[p];      hBR = heights[p+1];
+    hFL = heights[p+LEN];  hFR = heights[p+LEN+1];
+  }  // end of findSquare()
+
+
+
+  // -------------------- triangle calculations ----------------------
+
+
+  public static double cellHeight(double hBL, double hBR, double hFL, double hFR,
+                                  double fx, double fz)
+  /* The height in a square with back left, back right, front left
+     and front right corner heights, at the fractions fx along x and
+     fz along z (0 to 1), on the triangle holding (fx,fz). */
+  {
+    if (fx + fz <= 1.0)    // back left triangle
+      return hBL + fx*(hBR - hBL) + fz*(hFL - hBL);
+    else                   // front right triangle
+      return hFR + (1.0-fx)*(hFL - hFR) + (1.0-fz)*(hBR - hFR);
+  }  // end of cellHeight()
+
+
+  public static void cellGradient(double hBL, double hBR, double hFL, double hFR,
+                                  double fx, double fz, double[] grad)
+  /* The change in height for each unit along x (grad[0]) and z
+     (grad[1]) on the triangle holding (fx,fz), in a 1x1 square. */
+  {
+    if (fx + fz <= 1.0) {    // back left triangle
+      grad[0] = hBR - hBL;
+      grad[1] = hFL - hBL;
+    }
+    else {                   // front right triangle
+      grad[0] = hFR - hFL;
+      grad[1] = hFR - hBR;
+    }
+  }  // end of cellGradient()
+
+
+  private static void gradientToNormal(double gx, double gz, Vector3f normal)
+  // the upwards normal of the plane with gradient (gx,gz)
+  {
+    normal.set((float) -gx, 1.0f, (float) -gz);
+    normal.normalize();
+  }
+
+}  // end of HeightSampler class
@@ -9,8 +9,9 @@
 
    When a move is requested by the user, KeyBehavior calculates
    the new position of the (x,z) coords, then asks the Landscape
-   object if it is on the floor. If it is then Landscape is used
-   to find the y-component (the floor height at that point).
+   object if it is on the floor (i.e. its chunk has been made). If
+   it is then the Landscape's HeightSampler is used to find the
+   y-component (the floor height at that point).
 */
 
 
@@ -49,6 +50,7 @@ public class KeyBehavior extends ViewPlatformBehavior
   private WakeupCondition keyPress;
 
   private Landscape land;         // used for checking/calculating moves
+  private HeightSampler ground;   // the floor's heights
   private double currLandHeight;  // floor height at current position
   private int zOffset;            // used when moving up/down
 
@@ -62,6 +64,7 @@ public class KeyBehavior extends ViewPlatformBehavior
   public KeyBehavior(Landscape ld, TransformGroup steerTG)
   {
     land = ld;
+    ground = land.getHeightSampler();
     zOffset = 0;   // user is standing on the floor at the start
     initViewPosition(steerTG);
 
@@ -162,7 +165,7 @@ public class KeyBehavior extends ViewPlatformBehavior
   /* Calculate the next position on the floor (x,?,z). Test if it
      is within the floor boundaries. 
 
-     If it is then ask Landscape to get the floor height for that (x,z). 
+     If it is then ask the HeightSampler for the floor height at that (x,z). 
 
      Then set the y value to a change so that the viewpoint will rest
      on the floor at (x,z)
@@ -172,9 +175,8 @@ public class KeyBehavior extends ViewPlatformBehavior
     if (!land.inLandscape(nextLoc.x, nextLoc.z))   // if not on landscape
        return;
 
-    // Landscape returns floor height at (x,z)
-    double floorHeight = land.getLandHeight(nextLoc.x, nextLoc.z, 
-													currLandHeight);
+    // the sampler returns floor height at (x,z)
+    double floorHeight = ground.getHeight(nextLoc.x, nextLoc.z);
     // Calculate the change from the current y-position.
     // Reset any offset upwards back to 0.
     double heightChg = floorHeight - currLandHeight -
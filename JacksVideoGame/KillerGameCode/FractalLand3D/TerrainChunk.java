@@ -0,0 +1,380 @@
+
+// TerrainChunk.java
+
+/* One CHUNK_LEN square of the landscape, made by ChunkedTerrain
+   from FractalTerrain's heights for it, and detached again when the
+   user has moved far away.
+
+   The chunk is drawn with a level of detail (LOD), which is the
+   step between the points used: 1 uses every height, 2 every
+   other one, and so on, so a step 8 chunk has 1/64th of the
+   triangles of a step 1 chunk.
+
+   Each square of the mesh is two triangles, split along the
+   diagonal from its front left to its back right corner; the
+   height of any point in a square can be found with
+   HeightSampler.cellHeight().
+
+   As in Landscape's original platifyFloor(), the squares are
+   divided up by their average height, and squares in the same
+   height range are placed in one Shape3D with that range's
+   texture (shared by all the chunks). The coordinates are
+   by-reference float[]s, so the heights can be changed in place.
+
+   When the LOD changes, the chunk geomorphs: each point slides
+   from the height of the coarser mesh at that (x,z) to its own
+   height (or back), over MORPH_TIME ms, so the detail fades in
+   or out instead of popping. The mesh with the smaller step is
+   used during the morph, since the coarser one is contained in it.
+
+   A skirt is hung down from each edge of the chunk, so there are
+   no cracks when a neighbouring chunk has a different LOD.
+*/
+
+import javax.media.j3d.*;
+
+
+public class TerrainChunk extends BranchGroup implements GeometryUpdater
+{
+  private final static int CHUNK_LEN = FractalTerrain.CHUNK_LEN;
+  private final static long MORPH_TIME = 500;      // ms
+  private final static float SKIRT_DEPTH = 2.0f;   // below the chunk's edges
+
+  private int cx, cz;            // chunk coordinates
+  private float[] heights;       // from FractalTerrain.makeChunk()
+  private FractalTerrain terrain;
+  private double[] texBoundaries;
+
+  private Shape3D[] bands;       // one shape per texture
+  private TriangleArray[] geoms;
+  private float[][] coords, targetYs, coarseYs;
+  private int updateBand;        // the band being changed by updateData()
+
+  // used while build() makes a mesh
+  private float[][] norms, texCoords;
+  private int[] nextVert;        // in each band
+  private float[] normals;       // at each point of the mesh
+  private int meshStep, coarseStep;
+
+  private int step;              // the current LOD
+  private int wantedStep;        // the LOD asked for by ChunkedTerrain
+
+  // while morphing between step and toStep
+  private boolean morphing = false;
+  private int toStep;
+  private long morphStart;
+  private float morph;           // how far between the coarse (0) and fine (1) heights
+
+
+  public TerrainChunk(int cx, int cz, float[] heights, int step,
+                      FractalTerrain terrain, Appearance[] apps,
+                      double[] texBoundaries)
+  {
+    this.cx = cx;
+    this.cz = cz;
+    this.heights = heights;
+    this.terrain = terrain;
+    this.texBoundaries = texBoundaries;
+    setCapability(BranchGroup.ALLOW_DETACH);
+
+    int numBands = apps.length;
+    bands = new Shape3D[numBands];
+    geoms = new TriangleArray[numBands];
+    coords = new float[numBands][];
+    targetYs = new float[numBands][];
+    coarseYs = new float[numBands][];
+    for (int i=0; i < numBands; i++) {
+      bands[i] = new Shape3D();
+      bands[i].setCapability(Shape3D.ALLOW_GEOMETRY_WRITE);
+      bands[i].setAppearance(apps[i]);
+      addChild(bands[i]);
+    }
+
+    this.step = step;
+    wantedStep = step;
+    build(step, step, 1.0f);
+  }  // end of TerrainChunk()
+
+
+  public int getChunkX()
+  {  return cx;  }
+
+  public int getChunkZ()
+  {  return cz;  }
+
+  public float[] getHeights()
+  {  return heights;  }
+
+
+  public void setStep(int step)
+  // ask for a new LOD; startMorph() will morph to it
+  {  wantedStep = step;  }
+
+
+
+  public boolean needsMorph()
+  {  return !morphing && (wantedStep != step);  }
+
+
+  public void update(long time)
+  /* Called every frame by ChunkedTerrain. Carry on with the
+     current morph, if there is one. */
+  {
+    if (morphing) {
+      float t = (float)(time - morphStart)/MORPH_TIME;
+      if (t >= 1.0f)
+        endMorph();
+      else
+        setMorph( (toStep < step) ? t : 1.0f-t );
+    }
+  }  // end of update()
+
+
+  public void startMorph(long time)
+  /* Start morphing to the wanted LOD, which makes a new mesh, so
+     ChunkedTerrain only starts a few each frame. A morph is
+     finished before a new one is started. */
+  {
+    if (needsMorph()) {
+      toStep = wantedStep;
+      morphStart = time;
+      morphing = true;
+      if (toStep < step)   // finer: the new mesh starts with the current heights
+        build(toStep, step, 0.0f);
+      else                 // coarser: flatten the current mesh to the new one
+        build(step, toStep, 1.0f);
+    }
+  }  // end of startMorph()
+
+
+  private void endMorph()
+  {
+    morphing = false;
+    if (toStep < step)
+      setMorph(1.0f);
+    else                  // replace the flattened mesh by the coarser one
+      build(toStep, toStep, 1.0f);
+    step = toStep;
+  }  // end of endMorph()
+
+
+
+  // ------------------------ geometry -----------------------------
+
+
+  private void build(int meshStep, int coarseStep, float m)
+  /* Make the triangles for a mesh with meshStep, and morph them
+     by m between the heights of the coarseStep mesh (0) and their
+     own (1). meshStep <= coarseStep. */
+  {
+    this.meshStep = meshStep;
+    this.coarseStep = coarseStep;
+    int n = CHUNK_LEN/meshStep;   // squares along each side
+    int len = CHUNK_LEN+1;
+    normals = makeNormals();
+
+    // the band for each square, and the vertices in each band
+    int[] squareBand = new int[n*n];
+    int[] numVerts = new int[bands.length];
+    for (int j=0; j < n; j++)
+      for (int i=0; i < n; i++) {
+        int p = j*meshStep*len + i*meshStep;   // back left corner
+        double avg = (heights[p] + heights[p+meshStep] +
+                      heights[p+meshStep*len] + heights[p+meshStep*len+meshStep])/4.0;
+        int band = findBand(avg);
+        squareBand[j*n + i] = band;
+        numVerts[band] += 6;
+        if ((i == 0) || (i == n-1) || (j == 0) || (j == n-1))  // skirts on its edges
+          numVerts[band] += 6 * (((i == 0) ? 1 : 0) + ((i == n-1) ? 1 : 0) +
+                                 ((j == 0) ? 1 : 0) + ((j == n-1) ? 1 : 0));
+      }
+
+    texCoords = new float[bands.length][];
+    norms = new float[bands.length][];
+    for (int b=0; b < bands.length; b++) {
+      coords[b] = new float[numVerts[b]*3];
+      norms[b] = new float[numVerts[b]*3];
+      texCoords[b] = new float[numVerts[b]*2];
+      targetYs[b] = new float[numVerts[b]];
+      coarseYs[b] = new float[numVerts[b]];
+    }
+
+    nextVert = new int[bands.length];
+    for (int j=0; j < n; j++)
+      for (int i=0; i < n; i++) {
+        int b = squareBand[j*n + i];
+        int x = i*meshStep;  int z = j*meshStep;
+        int s = meshStep;
+
+        // front left, front right, back right; front left, back right, back left
+        addVertex(b, x, z+s);  addVertex(b, x+s, z+s);  addVertex(b, x+s, z);
+        addVertex(b, x, z+s);  addVertex(b, x+s, z);    addVertex(b, x, z);
+
+        /* The skirts face outwards, so go along each edge with the
+           outside on the right when looking down. */
+        if (j == 0)     // back edge: from right to left
+          addSkirt(b, x+s, z, x, z);
+        if (j == n-1)   // front edge: from left to right
+          addSkirt(b, x, z+s, x+s, z+s);
+        if (i == 0)     // left edge: from back to front
+          addSkirt(b, x, z, x, z+s);
+        if (i == n-1)   // right edge: from front to back
+          addSkirt(b, x+s, z+s, x+s, z);
+      }
+
+    for (int b=0; b < bands.length; b++) {
+      if (numVerts[b] == 0) {
+        geoms[b] = null;
+        bands[b].setGeometry(null);
+        continue;
+      }
+      geoms[b] = new TriangleArray(numVerts[b],
+                      GeometryArray.COORDINATES | GeometryArray.NORMALS |
+                      GeometryArray.TEXTURE_COORDINATE_2 | GeometryArray.BY_REFERENCE);
+      geoms[b].setCapability(GeometryArray.ALLOW_REF_DATA_WRITE);
+      geoms[b].setCoordRefFloat(coords[b]);
+      geoms[b].setNormalRefFloat(norms[b]);
+      geoms[b].setTexCoordRefFloat(0, texCoords[b]);
+    }
+    setMorph(m);   // fills in the y coordinates
+    for (int b=0; b < bands.length; b++)
+      if (geoms[b] != null)
+        bands[b].setGeometry(geoms[b]);
+    norms = null;  texCoords = null;  normals = null;
+  }  // end of build()
+
+
+
+  private void addSkirt(int b, int x1, int z1, int x2, int z2)
+  // a strip below the edge from (x1,z1) to (x2,z2): two triangles
+  {
+    addSkirtVertex(b, x1, z1, 0);  addSkirtVertex(b, x1, z1, SKIRT_DEPTH);
+    addSkirtVertex(b, x2, z2, SKIRT_DEPTH);
+    addSkirtVertex(b, x1, z1, 0);  addSkirtVertex(b, x2, z2, SKIRT_DEPTH);
+    addSkirtVertex(b, x2, z2, 0);
+  }  // end of addSkirt()
+
+
+  private void addVertex(int b, int x, int z)
+  // one copy of the texture for each unit square
+  {  int v = storeVertex(b, x, z, 0);
+     texCoords[b][v*2] = x;
+     texCoords[b][v*2+1] = CHUNK_LEN - z;
+  }
+
+
+  private void addSkirtVertex(int b, int x, int z, float drop)
+  // a skirt's texture runs along the edge and down
+  {  int v = storeVertex(b, x, z, drop);
+     texCoords[b][v*2] = x + z;
+     texCoords[b][v*2+1] = -drop;
+  }
+
+
+  private int storeVertex(int b, int x, int z, float drop)
+  /* Store the next vertex of band b, at (x,z) in the chunk, drop
+     units below the surface, and return its number. Its y coordinate
+     is set by setMorph(). */
+  {
+    int v = nextVert[b]++;
+    coords[b][v*3] = cx*CHUNK_LEN + x;
+    coords[b][v*3+2] = cz*CHUNK_LEN + z;
+    targetYs[b][v] = heights[z*(CHUNK_LEN+1) + x] - drop;
+    coarseYs[b][v] = (float) coarseHeight(x, z) - drop;
+
+    int ni = ((z/meshStep)*(CHUNK_LEN/meshStep + 1) + x/meshStep)*3;
+    norms[b][v*3] = normals[ni];
+    norms[b][v*3+1] = normals[ni+1];
+    norms[b][v*3+2] = normals[ni+2];
+    return v;
+  }  // end of storeVertex()
+
+
+
+  private double coarseHeight(int x, int z)
+  // the height at (x,z) of the mesh with coarseStep
+  {
+    int x0 = (x == CHUNK_LEN) ? CHUNK_LEN-coarseStep : (x/coarseStep)*coarseStep;
+    int z0 = (z == CHUNK_LEN) ? CHUNK_LEN-coarseStep : (z/coarseStep)*coarseStep;
+    int len = CHUNK_LEN+1;
+    int p = z0*len + x0;
+    return HeightSampler.cellHeight(heights[p], heights[p+coarseStep],
+                  heights[p+coarseStep*len], heights[p+coarseStep*len+coarseStep],
+                  (double)(x-x0)/coarseStep, (double)(z-z0)/coarseStep);
+  }  // end of coarseHeight()
+
+
+
+  private float[] makeNormals()
+  /* A normal for each point of the mesh, from the heights meshStep
+     away on either side. The heights beyond the chunk's edges come
+     from the FractalTerrain, so the lighting matches the neighbours'. */
+  {
+    int n = CHUNK_LEN/meshStep + 1;
+    float[] normals = new float[n*n*3];
+    for (int j=0; j < n; j++)
+      for (int i=0; i < n; i++) {
+        int x = i*meshStep;  int z = j*meshStep;
+        double dx = height(x-meshStep, z) - height(x+meshStep, z);
+        double dz = height(x, z-meshStep) - height(x, z+meshStep);
+        double dy = 2*meshStep;
+        double len = Math.sqrt(dx*dx + dy*dy + dz*dz);
+        int ni = (j*n + i)*3;
+        normals[ni] = (float)(dx/len);
+        normals[ni+1] = (float)(dy/len);
+        normals[ni+2] = (float)(dz/len);
+      }
+    return normals;
+  }  // end of makeNormals()
+
+
+  private double height(int x, int z)
+  // the height at (x,z) relative to the chunk, which may be outside it
+  {
+    if ((x >= 0) && (x <= CHUNK_LEN) && (z >= 0) && (z <= CHUNK_LEN))
+      return heights[z*(CHUNK_LEN+1) + x];
+    return terrain.getHeight(cx*CHUNK_LEN + x, cz*CHUNK_LEN + z);
+  }
+
+
+  private int findBand(double avgHeight)
+  // which texture the square gets, as in Landscape's old findHeightIdx()
+  {
+    for (int i=0; i < texBoundaries.length; i++)
+      if (avgHeight < texBoundaries[i])
+        return i;
+    return texBoundaries.length-1;
+  }
+
+
+
+  // ------------------------ morphing -----------------------------
+
+
+  private void setMorph(float m)
+  // set the y coordinates to m of the way from the coarse heights to the fine ones
+  {
+    morph = m;
+    for (int b=0; b < geoms.length; b++)
+      if (geoms[b] != null) {
+        updateBand = b;
+        if (geoms[b].isLive())
+          geoms[b].updateData(this);   // calls updateData() below
+        else
+          updateData(geoms[b]);
+      }
+  }  // end of setMorph()
+
+
+  public void updateData(Geometry geometry)
+  // change the y coordinates of band updateBand
+  {
+    float[] c = coords[updateBand];
+    float[] ty = targetYs[updateBand];
+    float[] cy = coarseYs[updateBand];
+    float m = morph;
+    for (int v=0; v < ty.length; v++)
+      c[v*3+1] = cy[v] + m*(ty[v] - cy[v]);
+  }  // end of updateData()
+
+}  // end of TerrainChunk class
@@ -0,0 +1,48 @@
+
+// TerrainUpdater.java
+
+/* Wakes up every frame, and passes the user's position (the
+   position of the viewpoint's TransformGroup) to the Landscape,
+   so it can make and morph the chunks of the floor around them.
+
+   This isn't done by KeyBehavior, since the morphs carry on
+   between key presses.
+*/
+
+import java.util.Enumeration;
+
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+
+public class TerrainUpdater extends Behavior
+{
+  private Landscape land;
+  private TransformGroup viewTG;
+  private WakeupCondition eachFrame;
+
+  private Transform3D t3d = new Transform3D();
+  private Vector3d posn = new Vector3d();
+
+
+  public TerrainUpdater(Landscape ld, TransformGroup viewTG)
+  {
+    land = ld;
+    this.viewTG = viewTG;
+    eachFrame = new WakeupOnElapsedFrames(0);
+  }
+
+
+  public void initialize()
+  {  wakeupOn(eachFrame);  }
+
+
+  public void processStimulus(Enumeration criteria)
+  {
+    viewTG.getTransform(t3d);
+    t3d.get(posn);
+    land.update(posn.x, posn.z);
+    wakeupOn(eachFrame);
+  }  // end of processStimulus()
+
+}  // end of TerrainUpdater class
@@ -6,9 +6,10 @@
    of textured squares. Squares at different heights are
    textured in different ways.
 
-   The landscape is surrounded by blue walls, and is poorly lit to
-   suggest evening; the sky is a dark blue. LinearFog obscures
-   the distance.
+   The landscape goes on forever (it's made in chunks around the
+   user, updated every frame by TerrainUpdater), and is poorly lit
+   to suggest evening; the sky is a dark blue. LinearFog obscures
+   the distance, and hides the far chunks being made.
 
    The user can 'walk' over the landscape using the
    similar left/right/front/back/turn/up/down moves
@@ -32,7 +33,8 @@ public class WrapFractalLand3D extends JPanel
   private final static int PWIDTH = 512;   // size of panel
   private final static int PHEIGHT = 512; 
 
-  private static final int BOUNDSIZE = 100;  // larger than world
+  private static final double BOUNDSIZE = Double.MAX_VALUE;
+     // the world has no edges, so the environment nodes must reach everywhere
 
   private Color3f skyColour = new Color3f(0.17f, 0.07f, 0.45f);
      // used for the Background and LinearFog nodes
@@ -41,10 +43,10 @@ public class WrapFractalLand3D extends JPanel
   private BranchGroup sceneBG;
   private BoundingSphere bounds;   // for environment nodes
 
-  private Landscape land;   // creates the floor and walls
+  private Landscape land;   // creates the floor
 
 
-  public WrapFractalLand3D(double flatness)
+  public WrapFractalLand3D(double flatness, long seed)
   {
     setLayout( new BorderLayout() );
     setOpaque( false );
@@ -58,14 +60,14 @@ public class WrapFractalLand3D extends JPanel
     canvas3D.requestFocus();
     su = new SimpleUniverse(canvas3D);
 
-    createSceneGraph(flatness);
+    createSceneGraph(flatness, seed);
     createUserControls();
 
     su.addBranchGraph( sceneBG );
   } // end of WrapFractalLand3D()
 
 
-  void createSceneGraph(double flatness) 
+  void createSceneGraph(double flatness, long seed) 
   // initilise the scene
   { 
     sceneBG = new BranchGroup();
@@ -75,10 +77,16 @@ public class WrapFractalLand3D extends JPanel
     addBackground();  // add the sky
     addFog();         // add the fog; comment this line out to switch off fog
     
-    // create the landscape: the floor and walls
-    land = new Landscape(flatness);
+    // create the landscape: the floor
+    land = new Landscape(flatness, seed);
     sceneBG.addChild( land.getLandBG() );   
 
+    // make the floor around the user as they move
+    TransformGroup steerTG = su.getViewingPlatform().getViewPlatformTransform();
+    TerrainUpdater updater = new TerrainUpdater(land, steerTG);
+    updater.setSchedulingBounds(bounds);
+    sceneBG.addChild( updater );
+
     sceneBG.compile();   // fix the scene
   } // end of createScene()
 
@@ -106,7 +114,7 @@ public class WrapFractalLand3D extends JPanel
   
   private void addFog()
   // linear fog
-  { LinearFog fogLinear = new LinearFog( skyColour, 15.0f, 30.0f);
+  { LinearFog fogLinear = new LinearFog( skyColour, 20.0f, 70.0f);
     fogLinear.setInfluencingBounds( bounds );  // same as background
     sceneBG.addChild( fogLinear );
   }  // end of addFog()
@@ -123,8 +131,8 @@ public class WrapFractalLand3D extends JPanel
   {
     // original clips are 10 and 0.1; keep ratio between 100-1000
     View view = su.getViewer().getView();
-    view.setBackClipDistance(20);      // can see a long way
-    view.setFrontClipDistance(0.05);   // can see close things
+    view.setBackClipDistance(80);      // can see a long way, to the fog
+    view.setFrontClipDistance(0.08);   // can see close things
 
     ViewingPlatform vp = su.getViewingPlatform();
     TransformGroup steerTG = vp.getViewPlatformTransform();
@@ -0,0 +1,46 @@
+
+// BufferPool.java
+
+/* A pool of direct ByteBuffers of the same size, so buffers can
+   be reused rather than allocated for each client or message.
+
+   A BufferPool is used by a single ScoreSelector thread, so it
+   isn't synchronized. At most MAX_FREE buffers are kept for reuse.
+*/
+
+import java.nio.*;
+import java.util.*;
+
+
+public class BufferPool
+{
+  private static final int MAX_FREE = 256;
+
+  private int bufSize;
+  private ArrayList freeBufs = new ArrayList();
+
+
+  public BufferPool(int size)
+  {  bufSize = size;  }
+
+
+  public ByteBuffer get()
+  // return an empty buffer
+  {
+    int n = freeBufs.size();
+    if (n == 0)
+      return ByteBuffer.allocateDirect(bufSize);
+    ByteBuffer buf = (ByteBuffer) freeBufs.remove(n-1);
+    buf.clear();
+    return buf;
+  }  // end of get()
+
+
+  public void release(ByteBuffer buf)
+  // return buf to the pool
+  {
+    if (freeBufs.size() < MAX_FREE)
+      freeBufs.add(buf);
+  }
+
+}  // end of BufferPool class
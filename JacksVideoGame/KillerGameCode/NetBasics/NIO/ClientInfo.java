@@ -6,10 +6,21 @@
    sending strings to the client.
 
    Since client input is non-blocking then the arrival of data
-   does not mean that it comprises a complete message. 
-
-   The ongoing message is maintained in inBuffer until
-   a '\n' is detected and then the complete string is returned.
+   does not mean that it comprises a complete message. It may
+   also contain several messages, or end part way through one.
+
+   readMessages() splits the input into '\n'-terminated lines, and
+   passes each one to SelectScoreServer.doRequest(). The bytes of an
+   incomplete message are kept in a buffer from the BufferPool until
+   the rest of the message arrives. A message longer than BUFSIZ
+   closes the link.
+
+   Output is non-blocking as well. The replies are queued, and as
+   much as possible is written straight away. If the channel can't
+   take it all, the selector is asked to report when the channel is
+   writable (OP_WRITE), and writeMessages() carries on from there.
+   A client which lets more than MAX_QUEUED replies build up is
+   closed, since it isn't reading them.
 */
 
 
@@ -18,32 +29,39 @@ import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.nio.charset.*;
-// import java.util.*;
+import java.util.*;
 
 
 public class ClientInfo
 {
-  private static final int BUFSIZ = 1024;  // max size of a message
+  public static final int BUFSIZ = 1024;  // max size of a message
+  private static final int MAX_QUEUED = 64;   // max waiting replies
+
+  private static final Charset charset = Charset.forName("ISO-8859-1");
 
   private SocketChannel channel;
+  private SelectionKey key;
   private SelectScoreServer ss;
-  private ByteBuffer inBuffer;
+  private BufferPool pool;
+
+  private ByteBuffer partialMsg = null;   // an incomplete message
+  private LinkedList outQueue = new LinkedList();   // ByteBuffers to send
+  private boolean waitingToWrite = false;   // is OP_WRITE being watched?
 
-  private Charset charset;     // for decoding bytes --> string
-  private CharsetDecoder decoder;
+  private byte[] lineBytes = new byte[BUFSIZ];   // for decoding a message
 
 
-  public ClientInfo(SocketChannel chan, SelectScoreServer ss)
+
+  public ClientInfo(SocketChannel chan, SelectionKey key,
+                           SelectScoreServer ss, BufferPool pool)
   {
     channel = chan;
+    this.key = key;
     this.ss = ss;
-    inBuffer = ByteBuffer.allocateDirect(BUFSIZ);
-    inBuffer.clear();
-
-    charset = Charset.forName("ISO-8859-1");
-    decoder = charset.newDecoder();
+    this.pool = pool;
 
-    showClientDetails();
+    if (ss.isVerbose())
+      showClientDetails();
   } // end of ClientInfo()
 
 
@@ -61,94 +79,160 @@ public class ClientInfo
 
   public void closeDown()
   {
+    key.cancel();
     try {
       channel.close();
     }
     catch(IOException e)
     { System.out.println(e); }
-  }
+
+    if (partialMsg != null) {
+      pool.release(partialMsg);
+      partialMsg = null;
+    }
+    outQueue.clear();
+  }  // end of closeDown()
 
 
 
-  public String readMessage()
-  /* readMessage() is called when there are bytes waiting
-     to be read, but this may not be a complete message.
-     The message is stored in inBuffer until a '\n' is detected.
+  public void readMessages(ByteBuffer buf)
+  /* readMessages() is called when there are bytes waiting
+     to be read. buf is a buffer shared by all the clients,
+     so any incomplete message left at the end is copied out
+     into partialMsg.
   */
-  { 
-    String inputMsg = null;
+  {
+    buf.clear();
+    if (partialMsg != null) {   // start with the incomplete message
+      partialMsg.flip();
+      buf.put(partialMsg);
+      pool.release(partialMsg);
+      partialMsg = null;
+    }
+
     try {
-      int numBytesRead = channel.read(inBuffer);
+      int numBytesRead = channel.read(buf);
       if (numBytesRead == -1) {     // channel has gone
-        channel.close();
-        ss.removeChannel(channel); // tell SelectScoreServer
+        closeDown();
+        return;
       }
-      else
-        inputMsg = getMessage(inBuffer);
     }
     catch (IOException e)
-    {  System.out.println("rm: " + e); 
-       ss.removeChannel(channel); // tell SelectScoreServer
+    {  if (ss.isVerbose())
+         System.out.println("rm: " + e);
+       closeDown();
+       return;
     }
 
-    return inputMsg;
-  }  // end of readMessage()
+    buf.flip();
+    getMessages(buf);
+    if (!channel.isOpen())    // closed by a "bye" or an error
+      return;
+
+    if (buf.hasRemaining()) {   // save the incomplete message
+      if (buf.remaining() >= BUFSIZ) {
+        System.out.println("Message too long; closing client");
+        closeDown();
+      }
+      else {
+        partialMsg = pool.get();
+        partialMsg.put(buf);
+      }
+    }
+  }  // end of readMessages()
 
 
 
-  private String getMessage(ByteBuffer buf)
+  private void getMessages(ByteBuffer buf)
+  /* Pass each complete message in buf to the server, leaving
+     buf's position at the start of any incomplete message.
+     The bytes are decoded as ISO-8859-1, so each byte is one char.
+  */
   {
-    String msg = null;
-    int posn = buf.position();   // current buffer sizes
+    int start = buf.position();
     int limit = buf.limit();
-    // System.out.println("Position: " + posn + ";  limit: " + limit);
-
-    buf.position(0);    // set range of bytes in buffer for translation
-    buf.limit(posn);
-    try {
-      CharBuffer cb = decoder.decode(buf);
-      msg = cb.toString();
-    }
-    catch(CharacterCodingException cce)
-    { System.out.println( cce );  }
-
-    System.out.println("Current msg: " + msg);
-    buf.limit(limit);    // reset buffer to full range of bytes
-    buf.position(posn);
-    
-    if (msg.endsWith("\n")) {    // we assume '\n' is the last char
-      buf.clear();
-      return msg;
+    int len;
+    for (int i = start; i < limit; i++) {
+      if (buf.get(i) == '\n') {
+        len = i - start;
+        if (len > BUFSIZ) {
+          System.out.println("Message too long; closing client");
+          closeDown();
+          return;
+        }
+        buf.get(lineBytes, 0, len);
+        buf.get();    // skip the '\n'
+        ss.doRequest( new String(lineBytes, 0, len, charset), this );
+        if (!channel.isOpen())
+          return;
+        start = i+1;
+      }
     }
-    return null;
-  }  // end of getMessage()
+  }  // end of getMessages()
 
 
 
-  public boolean sendMessage(String msg)
+  public void sendMessage(String msg)
+  // queue msg, which is sent as ISO-8859-1 bytes
   {
     String fullMsg = msg + "\r\n";
+    sendReply( ByteBuffer.wrap( fullMsg.getBytes(charset) ));
+  }  // end of sendMessage()
 
-    ByteBuffer outBuffer = ByteBuffer.allocateDirect(BUFSIZ);
-    outBuffer.clear();
-    outBuffer.put( fullMsg.getBytes() );
-    outBuffer.flip();
 
-    boolean msgSent = false;
+  public void sendReply(ByteBuffer reply)
+  /* Queue the bytes in reply, and write as many of the queued
+     bytes as possible. reply must not be changed by the caller
+     afterwards. */
+  {
+    if (!channel.isOpen())
+      return;
+    if (outQueue.size() == MAX_QUEUED) {
+      System.out.println("Client not reading replies; closing client");
+      closeDown();
+      return;
+    }
+    outQueue.add(reply);
+    if (outQueue.size() == 1)   // not already waiting for OP_WRITE
+      writeMessages();
+  }  // end of sendReply()
+
+
+
+  public void writeMessages()
+  /* Write the queued replies until they are all sent, or the
+     channel can't take any more. Called by sendReply(), and by
+     the ScoreSelector when the channel becomes writable.
+  */
+  {
+    ByteBuffer buf;
     try {
-      // send the data, don't assume it goes all at once
-      while( outBuffer.hasRemaining() )
-        channel.write(outBuffer);
-      msgSent = true;
+      while (!outQueue.isEmpty()) {
+        buf = (ByteBuffer) outQueue.getFirst();
+        channel.write(buf);
+        if (buf.hasRemaining())   // the channel is full
+          break;
+        outQueue.removeFirst();
+      }
     }
     catch(IOException e)
-    { System.out.println(e);  
-      ss.removeChannel(channel); // tell SelectScoreServer
+    { if (ss.isVerbose())
+        System.out.println(e);
+      closeDown();
+      return;
     }
-    
-    return msgSent;
-  }  // end of sendMessage()
+
+    if (outQueue.isEmpty()) {   // all sent, so stop watching for OP_WRITE
+      if (waitingToWrite) {
+        key.interestOps(SelectionKey.OP_READ);
+        waitingToWrite = false;
+      }
+    }
+    else if (!waitingToWrite) {
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      waitingToWrite = true;
+    }
+  }  // end of writeMessages()
 
 
 }  // end of ClientInfo class
-
@@ -2,9 +2,22 @@
 // HighScores.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
+/* This version used with the SelectScoreServer class
+   is called by many ScoreSelector threads at the same time.
+
+   The scores are kept in a Leaderboard, which stores the best score
+   of every player, not just the top-10. Its queries don't lock, and
+   its updates only lock a part of the leaderboard, so the methods
+   here aren't synchronized, and readers and writers don't block
+   each other.
+
+   The scores are saved by a ScoreStore, which appends each new
+   best score to a log, and has its own thread for writing to disk.
+   The log can be replayed in any order, since a player only keeps
+   their best score.
+*/
 
 import java.io.*;
-// import java.net.*;
 import java.util.*;
 
 
@@ -12,132 +25,110 @@ import java.util.*;
 public class HighScores
 // Maintains the collection of high scores
 {
-  private ScoreInfo scores[];
-  private int numScores;       // number of scores in the array
+  private static final int MAX_SCORES = 10;    // for the 'get' reply
+  private static final int NUM_AROUND = 5;     // for the 'around' reply
 
-  private static final int MAX_SCORES = 10;
-  private static String SCORE_FN = "scores.txt";
+  private Leaderboard board;
+  private ScoreStore store;
 
   public HighScores()
   {
-    scores = new ScoreInfo[MAX_SCORES];
-    numScores = 0;
-    loadScores();
+    board = new Leaderboard();
+    store = new ScoreStore(this);
+    store.load();
   }
 
 
   public String toString()
   // The returned string is "HIGH$$ name1 & score1 & .... nameN & scoreN & "
   {
-    String details = "HIGH$$ ";
-    for(int i = 0; i < numScores; i++)
-      details += scores[i].getName() + " & " + scores[i].getScore() + " & ";
-    System.out.println("details: " + details);
-    return details;
+    ScoreInfo[] top = board.getTop(MAX_SCORES);
+    StringBuffer details = new StringBuffer("HIGH$$ ");
+    for(int i = 0; i < top.length; i++)
+      details.append(top[i].getName() + " & " + top[i].getScore() + " & ");
+    return details.toString();
   }
 
 
+  public String getRank(String name)
+  /* The returned string is "RANK$$ name & rank & score & ", where
+     rank is 1 for the best player, or 0 if name is unknown. */
+  {
+    name = name.trim();
+    ScoreInfo si = board.getPlayer(name);
+    if (si == null)
+      return "RANK$$ " + name + " & 0 & 0 & ";
+    return "RANK$$ " + name + " & " + board.getRank(name) + " & " +
+                                             si.getScore() + " & ";
+  }  // end of getRank()
+
+
+  public String getAround(String name)
+  /* The returned string is "AROUND$$ rank & name1 & score1 & ...",
+     listing up to NUM_AROUND players either side of name, and rank
+     is the position of name1. There are no players if name is unknown. */
+  {
+    name = name.trim();
+    ScoreInfo[] around = board.getAround(name, NUM_AROUND);
+    if ((around == null) || (around.length == 0))
+      return "AROUND$$ 0 & ";
+    StringBuffer details = new StringBuffer("AROUND$$ ");
+    details.append( board.getRank(around[0].getName()) + " & ");
+    for(int i = 0; i < around.length; i++)
+      details.append(around[i].getName() + " & " + around[i].getScore() + " & ");
+    return details.toString();
+  }  // end of getAround()
+
+
   public void addScore(String line)
   // The line should be "name & score &"
+  {
+     ScoreInfo si = parseScore(line);
+     if ((si != null) && board.submit(si.getName(), si.getScore()))
+       store.append(si.getName(), si.getScore());    // save the new score
+  }  // end of addScore()
+
+
+  void loadScore(String line)
+  // add a score read in by the ScoreStore, without saving it again
+  {
+     ScoreInfo si = parseScore(line);
+     if (si != null)
+       board.submit(si.getName(), si.getScore());
+  }  // end of loadScore()
+
+
+  private ScoreInfo parseScore(String line)
+  // The line should be "name & score &"; returns null if it isn't
   {
      StringTokenizer st = new StringTokenizer(line, "&");
      try {
        String name = st.nextToken().trim();
        int score = Integer.parseInt( st.nextToken().trim() );
-       addScore(name, score);
-       saveScores();    // save after each update
+       return new ScoreInfo(name, score);
      }
      catch(Exception e)
-     {  System.out.println("Problem parsing new score:\n" + e);  }
-  }  // end of addScore()
+     {  System.out.println("Problem parsing new score:\n" + e);
+        return null;
+     }
+  }  // end of parseScore()
 
 
 
-  public void addScore(String name, int scr)
+  String getScoreLines()
+  // Returns a "name & score &" line for each player, for the ScoreStore
   {
-    int i = 0;
-
-    while ((i < numScores) && (scores[i].getScore() >= scr))
-      i++;
-
-    if (i == MAX_SCORES) {   // array is full and new score is smaller than existing ones
-      System.out.println("Score too small to be added to full array");
-      return;      // do not add new score
-    }
+    ScoreInfo[] all = board.getAll();
+    StringBuffer lines = new StringBuffer();
+    for (int i=0; i < all.length; i++)
+      lines.append(all[i].getName() + " & " + all[i].getScore() + " &\n");
+    return lines.toString();
+  }  // end of getScoreLines()
 
-    if (numScores == MAX_SCORES)     // full array, so 'remove' current smallest
-      numScores--;
-      
-    // move smaller scores to the right in the array
-    for(int j = numScores-1; j >= i; j--)
-      scores[j+1] = scores[j];
-
-    // add in new score
-    scores[i] = new ScoreInfo(name, scr);
-
-    numScores++;
-  }  // end of addScore()
 
-
-
-  private void loadScores()
-  /* We assume a score consists of "name & score &" on a line
-     The scores are read in from SCORE_FN.
-  */
-  {
-    String line;
-    try {
-      BufferedReader in = 
-			new BufferedReader(new FileReader(SCORE_FN));
-      while ((line = in.readLine()) != null)
-        addScore(line);
-      in.close();
-    }
-    catch(IOException e)
-    {  System.out.println(e);  }
-  }  // end of loadScores()
-
-
-  public void saveScores()
-  /* We write out "name & score &" to each line of the file
-     The scores are written to SCORE_FN.
-  */
-  {
-    String line;
-    try {
-      PrintWriter out = new PrintWriter(
-			new BufferedWriter( new FileWriter(SCORE_FN) ), true);
-      for (int i=0; i < numScores; i++) {
-         line = scores[i].getName() + " & " + scores[i].getScore() + " &";
-         out.println(line);
-      }
-      out.close();
-    }
-    catch(IOException e)
-    {  System.out.println(e);  }
-  }  // end of saveScores()
+  public void saveScores() throws IOException
+  // Wait until all the new scores have been saved.
+  {  store.flush();  }
 
 
 }  // end of HighScores class
-
-
-
-// --------------------------------------------------------------
-
-class ScoreInfo
-// Maintains the name and score details
-{
-  private String name;
-  private int score;
-
-  public ScoreInfo(String n, int s)
-  {  name = n;  score = s;  }
-
-  public String getName()
-  {  return name;  }
-
-  public int getScore()
-  {  return score;  }
-
-}  // end of ScoreInfo
-
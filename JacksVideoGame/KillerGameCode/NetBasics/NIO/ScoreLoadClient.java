@@ -0,0 +1,272 @@
+
+// ScoreLoadClient.java
+
+/* A load generator for SelectScoreServer. It opens many client
+   connections from a single thread, using one selector, and keeps
+   every client busy sending requests.
+
+   Each client first sends "get\nget\n" in a single write, and checks
+   that two replies come back (i.e. that pipelined messages aren't
+   merged or lost). After that, it repeatedly sends a score and a 'get'
+   together, and waits for the 'get' reply before sending again.
+
+   At the end, the number of connected clients, the requests per
+   second, and the average and maximum round-trip times are printed.
+
+   Usage:
+     java ScoreLoadClient [ numClients [ seconds [ host ] ] ]
+
+   The default is 1000 clients for 10 seconds, on localhost.
+   Large numbers of clients may need the file descriptor limit
+   raised (e.g. ulimit -n) on both the client and server machines.
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+
+public class ScoreLoadClient
+{
+  private static final int PORT = 1234;     // server details
+  private static final String HOST = "localhost";
+
+  private static final int CONNECT_BATCH = 500;   // connections opened at once
+
+  private static final Charset charset = Charset.forName("ISO-8859-1");
+
+  private Selector selector;
+  private ByteBuffer readBuffer = ByteBuffer.allocateDirect(16*1024);
+  private ByteBuffer checkMsg = ByteBuffer.wrap("get\nget\n".getBytes(charset));
+
+  // statistics
+  private int numConnected = 0;
+  private int numFailed = 0;
+  private int numPipelineOK = 0;
+  private int numPipelineBad = 0;
+  private long numReplies = 0;
+  private long totalLatency = 0;   // in ns
+  private long maxLatency = 0;
+
+
+  public ScoreLoadClient(int numClients, int seconds, String host)
+  {
+    try {
+      selector = Selector.open();
+      InetSocketAddress addr = new InetSocketAddress(host, PORT);
+
+      System.out.println("Connecting " + numClients + " clients to " +
+                                                host + ":" + PORT);
+      connectClients(addr, numClients);
+      System.out.println("Connected: " + numConnected + "; failed: " + numFailed);
+
+      long endTime = System.currentTimeMillis() + seconds*1000L;
+      long startTime = System.nanoTime();
+      runClients(endTime);
+      long runTime = System.nanoTime() - startTime;
+
+      report(runTime);
+      selector.close();
+    }
+    catch(IOException e)
+    {  System.out.println(e);  }
+  }  // end of ScoreLoadClient()
+
+
+
+  private void connectClients(InetSocketAddress addr, int numClients)
+    throws IOException
+  /* Open the connections in batches, so the server's backlog
+     isn't swamped, and send the pipelining check on each one. */
+  {
+    SocketChannel chan;
+    int numStarted = 0;
+    int numPending = 0;
+    while ((numStarted < numClients) || (numPending > 0)) {
+      while ((numStarted < numClients) && (numPending < CONNECT_BATCH)) {
+        chan = SocketChannel.open();
+        chan.configureBlocking(false);
+        chan.socket().setTcpNoDelay(true);
+        chan.connect(addr);
+        chan.register(selector, SelectionKey.OP_CONNECT, new LoadClient(chan, numStarted));
+        numStarted++;
+        numPending++;
+      }
+
+      selector.select(1000);
+      Iterator it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        SelectionKey key = (SelectionKey) it.next();
+        it.remove();
+        LoadClient lc = (LoadClient) key.attachment();
+        if (key.isConnectable()) {
+          numPending--;
+          try {
+            lc.chan.finishConnect();
+            numConnected++;
+            key.interestOps(SelectionKey.OP_READ);
+            lc.send( checkMsg.duplicate(), 2 );
+          }
+          catch(IOException e) {
+            numFailed++;
+            lc.close(key);
+          }
+        }
+        else if (key.isReadable())    // reply to the pipelining check
+          lc.read(key);
+      }
+    }
+  }  // end of connectClients()
+
+
+
+  private void runClients(long endTime) throws IOException
+  // read replies and send new requests until endTime
+  {
+    while (System.currentTimeMillis() < endTime) {
+      selector.select(100);
+      Iterator it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        SelectionKey key = (SelectionKey) it.next();
+        it.remove();
+        if (key.isValid() && key.isReadable())
+          ((LoadClient) key.attachment()).read(key);
+      }
+    }
+  }  // end of runClients()
+
+
+
+  private void report(long runTime)
+  {
+    double secs = runTime/1e9;
+    System.out.println("Clients connected:  " + numConnected + " (" +
+                                           numFailed + " failed)");
+    System.out.println("Pipelining checks:  " + numPipelineOK + " ok, " +
+                   numPipelineBad + " bad, " +
+                   (numConnected - numPipelineOK - numPipelineBad) + " unanswered");
+    System.out.println("Replies received:   " + numReplies + " in " +
+                                  ((int)(secs*10))/10.0 + " secs");
+    if (numReplies > 0) {
+      System.out.println("Requests/sec:       " + (int)(numReplies*2/secs) +
+                         " (each score + get counts as 2)");
+      System.out.println("Average round trip: " +
+              (totalLatency/numReplies)/1000 + " us");
+      System.out.println("Max round trip:     " + maxLatency/1000 + " us");
+    }
+  }  // end of report()
+
+
+
+  // -----------------------------------------------------------
+
+  private class LoadClient
+  // the state of one connection
+  {
+    SocketChannel chan;
+    int id;
+    int count = 0;            // number of scores sent
+    int repliesWanted = 0;    // replies still due for the last send
+    boolean checking = true;  // waiting for the pipelining check?
+    long sendTime;            // when the last requests were sent
+    int partialLen = 0;       // bytes of an incomplete reply
+
+    public LoadClient(SocketChannel c, int i)
+    {  chan = c;  id = i; }
+
+
+    public void send(ByteBuffer msg, int numReplies) throws IOException
+    /* The messages are short, so a single write is almost always
+       enough; if not, keep writing. */
+    {
+      repliesWanted = numReplies;
+      sendTime = System.nanoTime();
+      while (msg.hasRemaining())
+        chan.write(msg);
+    }
+
+
+    public void read(SelectionKey key)
+    // count the complete replies, then send more requests
+    {
+      readBuffer.clear();
+      try {
+        int n = chan.read(readBuffer);
+        if (n == -1) {
+          close(key);
+          return;
+        }
+        for (int i=0; i < n; i++) {
+          if (readBuffer.get(i) == '\n') {   // end of a reply
+            repliesWanted--;
+            partialLen = 0;
+          }
+          else
+            partialLen++;
+        }
+        if (repliesWanted > 0)
+          return;
+
+        long latency = System.nanoTime() - sendTime;
+        if (checking) {
+          checking = false;
+          if ((repliesWanted == 0) && (partialLen == 0))
+            numPipelineOK++;
+          else
+            numPipelineBad++;
+        }
+        else {
+          numReplies++;
+          totalLatency += latency;
+          if (latency > maxLatency)
+            maxLatency = latency;
+        }
+
+        count++;
+        String msg = "score load" + id + " & " + count + " &\nget\n";
+        send( ByteBuffer.wrap(msg.getBytes(charset)), 1 );   // only 'get' replies
+      }
+      catch(IOException e)
+      {  close(key);  }
+    }  // end of read()
+
+
+    public void close(SelectionKey key)
+    {
+      key.cancel();
+      try {
+        chan.close();
+      }
+      catch(IOException e) {}
+    }
+
+  }  // end of LoadClient class
+
+
+  // -----------------------------------------------------------
+
+  public static void main(String args[])
+  {
+    int numClients = 1000;
+    int seconds = 10;
+    String host = HOST;
+    try {
+      if (args.length > 0)
+        numClients = Integer.parseInt(args[0]);
+      if (args.length > 1)
+        seconds = Integer.parseInt(args[1]);
+    }
+    catch(NumberFormatException e)
+    {  System.out.println("Usage: java ScoreLoadClient [ numClients [ seconds [ host ] ] ]");
+       System.exit(0);
+    }
+    if (args.length > 2)
+      host = args[2];
+
+    new ScoreLoadClient(numClients, seconds, host);
+  }  // end of main()
+
+}  // end of ScoreLoadClient class
@@ -0,0 +1,113 @@
+
+// ScoreSelector.java
+
+/* A ScoreSelector thread looks after a share of the clients of a
+   SelectScoreServer, using its own Selector.
+
+   New channels are passed over by the server's accepting thread
+   with addChannel(), and registered with the selector by this
+   thread (a channel can't be registered while the selector is
+   blocked in select()).
+
+   Each channel's SelectionKey has its ClientInfo object attached,
+   so there is no need for a map from channels to clients.
+
+   All the clients share one direct buffer for reading, and one
+   BufferPool, since they are only used by this thread.
+*/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class ScoreSelector implements Runnable
+{
+  private static final int READ_BUFSIZ = 16*1024;
+
+  private SelectScoreServer ss;
+  private Selector selector;
+  private ConcurrentLinkedQueue newChannels = new ConcurrentLinkedQueue();
+
+  private ByteBuffer readBuffer;   // shared by all the clients
+  private BufferPool pool;         // for incomplete messages
+
+  private volatile int numClients = 0;
+
+
+  public ScoreSelector(SelectScoreServer ss) throws IOException
+  {
+    this.ss = ss;
+    selector = Selector.open();
+    readBuffer = ByteBuffer.allocateDirect(READ_BUFSIZ);
+    pool = new BufferPool(ClientInfo.BUFSIZ);
+  }  // end of ScoreSelector()
+
+
+  public void addChannel(SocketChannel channel)
+  // called by the server's accepting thread
+  {
+    newChannels.add(channel);
+    selector.wakeup();    // so the channel is registered soon
+  }
+
+
+  public int getNumClients()
+  {  return numClients;  }
+
+
+
+  public void run()
+  {
+    SelectionKey key;
+    ClientInfo ci;
+    while (true) {
+      try {
+        selector.select();     // wait for ready channels
+        registerChannels();
+
+        Iterator it = selector.selectedKeys().iterator();   // get iterator for keys
+        while (it.hasNext()) {       // look at each key
+          key = (SelectionKey) it.next();   // get a key
+          it.remove();                      // remove it
+          ci = (ClientInfo) key.attachment();
+          if (key.isValid() && key.isReadable())    // data to be read?
+            ci.readMessages(readBuffer);
+          if (key.isValid() && key.isWritable())    // room to write more?
+            ci.writeMessages();
+          if (!key.isValid())    // the client has closed
+            numClients--;
+        }
+      }
+      catch(IOException e)
+      {  System.out.println(e); }
+    }
+  }  // end of run()
+
+
+
+  private void registerChannels()
+  // Add the socket channels for new clients to the selector
+  {
+    SocketChannel channel;
+    while ((channel = (SocketChannel) newChannels.poll()) != null) {
+      try {
+        channel.configureBlocking(false);   // use non-blocking
+        channel.socket().setTcpNoDelay(true);   // replies are small
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach( new ClientInfo(channel, key, ss, pool) );   // store info
+        numClients++;
+      }
+      catch (IOException e)
+      {  System.out.println( e );
+         try {
+           channel.close();
+         }
+         catch (IOException ex) {}
+      }
+    }
+  }  // end of registerChannels()
+
+}  // end of ScoreSelector class
@@ -2,153 +2,219 @@
 // SelectScoreServer.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
-/* A non-blocking  sequential server that stores a client's score
-   (and name) in a list of top-10 high scores.
+/* A non-blocking server that stores a client's score
+   (and name) in a leaderboard of every player's best score,
+   and returns the top-10 high scores.
 
    Understood input messages:
 		get					   -- returns the high score list
         score name & score &   -- add the score for name
+		rank name			   -- returns name's position and best score
+		around name			   -- returns the players near name
 		bye					   -- terminates the client link
 
+   Each message is a line ending with '\n'. A client may send
+   several messages at once (e.g. "get\nget\n") without waiting
+   for the replies.
+
    The list is maintained in a file SCORFN, and loaded when the
    server starts.
    The server is terminated with a ctrl-C
 
-   Derived from SelectSockets.java 
+   Derived from SelectSockets.java
+
+   The main thread accepts new socket channels from clients, and
+   passes each one to a ScoreSelector. There is one ScoreSelector
+   (a thread with its own selector) for each core by default. A
+   ScoreSelector uses non-blocking reading and writing of its channels.
+
+   doRequest() is called by all the ScoreSelector threads. HighScores
+   uses a Leaderboard, which can be read and updated by many threads
+   without them blocking each other. The 'get' reply is only built
+   when the top-10 may have changed, and the same bytes are sent to
+   every client that asks for them.
 
-   We use non-blocking detection of new socket channel
-   connections from clients _and_ use non-blocking reading
-   of those channels.
+   Usage:
+     java SelectScoreServer [ NumSelectors ] [ -v ]
 
+   -v prints the details of each client and message.
 */
 
 import java.io.*;
 import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
-// import java.nio.charset.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 
 public class SelectScoreServer
 {
   private static final int PORT_NUMBER = 1234;
+  private static final int BACKLOG = 1024;   // queued connection requests
+  private static final int ACCEPT_BACKOFF = 100;   // ms to wait after a failed accept
 
   private HighScores hs;
-  private HashMap clients;   // map of channels to ClientInfo objects
+  private ScoreSelector[] selectors;
+  private boolean verbose;
 
+  private volatile ByteBuffer scoresReply = null;
+      // the encoded 'get' reply; null when it must be rebuilt
+  private AtomicLong numUpdates = new AtomicLong();   // 'score' messages processed
 
-  public SelectScoreServer()
+
+  public SelectScoreServer(int numSelectors, boolean verbose)
   {
+    this.verbose = verbose;
     hs = new HighScores();
-    clients = new HashMap();
+
+    selectors = new ScoreSelector[numSelectors];
     try {
-      System.out.println("Listening on port " + PORT_NUMBER);
+      for (int i=0; i < numSelectors; i++) {
+        selectors[i] = new ScoreSelector(this);
+        new Thread(selectors[i], "ScoreSelector-" + i).start();
+      }
+
+      System.out.println("Listening on port " + PORT_NUMBER +
+                         " with " + numSelectors + " selector(s)");
 
       // set up server channel and socket
       ServerSocketChannel serverChannel = ServerSocketChannel.open();
-      serverChannel.configureBlocking (false);   // use non-blocking mode
-
       ServerSocket serverSocket = serverChannel.socket();
-      serverSocket.bind( new InetSocketAddress(PORT_NUMBER) );    // set port for listening
-
-      Selector selector = Selector.open();
-      serverChannel.register(selector, 
-						SelectionKey.OP_ACCEPT);   // register channel with selector
-
-      while (true) {
-        // System.out.println("No. of clients: " + clients.size());
-        selector.select();     // wait for ready channels
-        Iterator it = selector.selectedKeys().iterator();   // get iterator for keys
-        SelectionKey key;
-        while (it.hasNext()) {       // look at each key
-          key = (SelectionKey) it.next();   // get a key
-          it.remove();                      // remove it
-          if (key.isAcceptable())       // a new connection?
-            newChannel(key, selector);
-          else if (key.isReadable())    // data to be read?
-            readFromChannel(key);
-          else
-            System.out.println("Did not process key: " + key);
-        }
-      }
+      serverSocket.setReuseAddress(true);
+      serverSocket.bind( new InetSocketAddress(PORT_NUMBER), BACKLOG );
+
+      acceptClients(serverChannel);
     }
-    catch(IOException e) 
+    catch(IOException e)
     {  System.out.println(e); }
   } // end of SelectScoreServer()
 
 
-  private void newChannel(SelectionKey key, Selector selector)
-  // Add the socket channel for a new client to the selector
-  {
-    try {
-      ServerSocketChannel server = (ServerSocketChannel) key.channel();
-      SocketChannel channel = server.accept();           // get the channel
-      channel.configureBlocking (false);                 // use non-blocking
-      channel.register(selector, SelectionKey.OP_READ);  // register it with selector
-
-      clients.put(channel, 
-				new ClientInfo(channel, this) );   // store info
-    }
-    catch (IOException e)
-    {  System.out.println( e ); }
-  }  // end of newChannel()
-
-
+  private void acceptClients(ServerSocketChannel serverChannel)
+  /* Wait for new clients (the server channel is left in blocking
+     mode), and hand them out to the selectors in turn.
 
-  private void readFromChannel(SelectionKey key)
-  // process input that is waiting on a channel
+     A failed accept() (e.g. when the server has run out of file
+     descriptors) is reported, and the loop waits ACCEPT_BACKOFF ms
+     before trying again, so the server carries on accepting once
+     some clients have left. */
   {
-    SocketChannel channel = (SocketChannel) key.channel();
-    ClientInfo ci = (ClientInfo) clients.get(channel);
-    if (ci == null)
-      System.out.println("No client info for channel " + channel);
-    else {
-      String msg = ci.readMessage();
-      if (msg != null) {
-        System.out.println("Read message: " + msg);
-        if (msg.trim().equals("bye")) {
-          ci.closeDown();
-          clients.remove(channel);  // delete ci from hash map
+    int next = 0;
+    SocketChannel channel;
+    while (true) {
+      try {
+        channel = serverChannel.accept();    // get the channel
+      }
+      catch(IOException e) {
+        System.out.println("Accept failed: " + e);
+        try {
+          Thread.sleep(ACCEPT_BACKOFF);
+        }
+        catch(InterruptedException ex) {}
+        continue;
+      }
+
+      try {
+        selectors[next].addChannel(channel);
+      }
+      catch(RuntimeException e)    // e.g. the selector has closed
+      { System.out.println("Could not add client: " + e);
+        try {
+          channel.close();
         }
-        else 
-          doRequest(msg, ci);
+        catch(IOException ex) {}
       }
+      next = (next+1) % selectors.length;
     }
-  } // end of readFromChannel()
+  }  // end of acceptClients()
 
 
 
-  private void doRequest(String line, ClientInfo ci)
+  public void doRequest(String line, ClientInfo ci)
   /*  The input line can be one of:
              "score name & score &"
       or     "get"
+      or     "rank name"
+      or     "around name"
+      or     "bye"
+      Called by the ScoreSelector threads.
   */
   {
-    if (line.trim().toLowerCase().equals("get")) {
-      System.out.println("Processing 'get'");
-      ci.sendMessage( hs.toString() );
+    if (verbose)
+      System.out.println("Read message: " + line);
+
+    String cmd = line.trim();
+    if (cmd.equalsIgnoreCase("get")) {
+      ci.sendReply( getScoresReply() );
     }
-    else if ((line.length() >= 6) &&     // "score "
-        (line.substring(0,5).toLowerCase().equals("score"))) {
-      System.out.println("Processing 'score'");
-      hs.addScore( line.substring(5) );    // cut the score keyword
+    else if ((cmd.length() >= 6) &&     // "score "
+        (cmd.substring(0,5).equalsIgnoreCase("score"))) {
+      hs.addScore( cmd.substring(5) );    // cut the score keyword
+      numUpdates.incrementAndGet();
+      scoresReply = null;   // the 'get' reply may have changed
     }
-    else
+    else if ((cmd.length() >= 5) &&     // "rank "
+        (cmd.substring(0,4).equalsIgnoreCase("rank")))
+      ci.sendMessage( hs.getRank( cmd.substring(4) ));
+    else if ((cmd.length() >= 7) &&     // "around "
+        (cmd.substring(0,6).equalsIgnoreCase("around")))
+      ci.sendMessage( hs.getAround( cmd.substring(6) ));
+    else if (cmd.equalsIgnoreCase("bye"))
+      ci.closeDown();
+    else if (verbose)
       System.out.println("Ignoring input line");
   }  // end of doRequest()
 
 
-  public void removeChannel(SocketChannel chan)
-  // called by ClientInfo object when channel is closed
-  {  clients.remove(chan);  }
+  private ByteBuffer getScoresReply()
+  /* Return a read-only view of the encoded 'get' reply, rebuilding
+     it if the scores have changed. Scores may be added while the
+     reply is being built, so it's only kept if there were none. */
+  {
+    ByteBuffer reply = scoresReply;
+    if (reply == null) {
+      synchronized (this) {
+        if ((reply = scoresReply) == null) {
+          long updates = numUpdates.get();
+          String msg = hs.toString() + "\r\n";
+          reply = ByteBuffer.wrap( msg.getBytes( Charset.forName("ISO-8859-1") ));
+          scoresReply = reply;
+          if (numUpdates.get() != updates)   // reply may be out of date
+            scoresReply = null;
+        }
+      }
+    }
+    return reply.asReadOnlyBuffer();   // each client needs its own position
+  }  // end of getScoresReply()
+
+
+  public boolean isVerbose()
+  {  return verbose;  }
 
 
   // --------------------------------------------
 
-  public static void main(String[] argv)
-  {  new SelectScoreServer();  }
+  public static void main(String[] args)
+  {
+    int numSelectors = Runtime.getRuntime().availableProcessors();
+    boolean verbose = false;
+    for (int i=0; i < args.length; i++) {
+      if (args[i].equals("-v"))
+        verbose = true;
+      else {
+        try {
+          numSelectors = Integer.parseInt(args[i]);
+        }
+        catch(NumberFormatException e)
+        { System.out.println("Illegal number of selectors: " + args[i]); }
+      }
+    }
+    if (numSelectors < 1)
+      numSelectors = 1;
+    new SelectScoreServer(numSelectors, verbose);
+  }  // end of main()
 
 
 } // end of SelectScoreServer class
-
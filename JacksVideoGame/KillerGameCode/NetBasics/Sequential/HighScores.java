@@ -2,6 +2,12 @@
 // HighScores.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
+/* The scores are saved by a ScoreStore, which appends each new
+   high score to a log, and has its own thread for writing to disk.
+   So toString() and addScore() are synchronized, since the
+   ScoreStore thread reads the scores when it compacts the log.
+*/
+
 
 import java.io.*;
 import java.util.*;
@@ -14,17 +20,19 @@ public class HighScores
   private int numScores;       // number of scores in the array
 
   private static final int MAX_SCORES = 10;
-  private static String SCORE_FN = "scores.txt";
+
+  private ScoreStore store;
 
   public HighScores()
   {
     scores = new ScoreInfo[MAX_SCORES];
     numScores = 0;
-    loadScores();
+    store = new ScoreStore(this);
+    store.load();
   }
 
 
-  public String toString()
+  synchronized public String toString()
   // The returned string is "HIGH$$ name1 & score1 & .... nameN & scoreN & "
   {
     String details = "HIGH$$ ";
@@ -35,23 +43,43 @@ public class HighScores
   }
 
 
-  public void addScore(String line)
+  synchronized public void addScore(String line)
   // The line should be "name & score &"
+  {
+     ScoreInfo si = parseScore(line);
+     if ((si != null) && addScore(si.getName(), si.getScore()))
+       store.append(si.getName(), si.getScore());    // save the new score
+  }  // end of addScore()
+
+
+  void loadScore(String line)
+  // add a score read in by the ScoreStore, without saving it again
+  {
+     ScoreInfo si = parseScore(line);
+     if (si != null)
+       addScore(si.getName(), si.getScore());
+  }  // end of loadScore()
+
+
+  private ScoreInfo parseScore(String line)
+  // The line should be "name & score &"; returns null if it isn't
   {
      StringTokenizer st = new StringTokenizer(line, "&");
      try {
        String name = st.nextToken().trim();
        int score = Integer.parseInt( st.nextToken().trim() );
-       addScore(name, score);
-       saveScores();    // save after each update
+       return new ScoreInfo(name, score);
      }
      catch(Exception e)
-     {  System.out.println("Problem parsing new score:\n" + e);  }
-  }  // end of addScore()
+     {  System.out.println("Problem parsing new score:\n" + e);
+        return null;
+     }
+  }  // end of parseScore()
 
 
 
-  public void addScore(String name, int scr)
+  private boolean addScore(String name, int scr)
+  // returns false if the score is too small to be added
   {
     int i = 0;
 
@@ -60,7 +88,7 @@ public class HighScores
 
     if (i == MAX_SCORES) {   // array is full and new score is smaller than existing ones
       System.out.println("Score too small to be added to full array");
-      return;      // do not add new score
+      return false;      // do not add new score
     }
 
     if (numScores == MAX_SCORES)     // full array, so 'remove' current smallest
@@ -74,46 +102,26 @@ public class HighScores
     scores[i] = new ScoreInfo(name, scr);
 
     numScores++;
+    return true;
   }  // end of addScore()
 
 
 
-  private void loadScores()
-  /* We assume a score consists of "name & score &" on a line
-     The scores are read in from SCORE_FN.
-  */
+  synchronized String getScoreLines()
+  // Returns a "name & score &" line for each score, for the ScoreStore
   {
-    String line;
-    try {
-      BufferedReader in = 
-			new BufferedReader(new FileReader(SCORE_FN));
-      while ((line = in.readLine()) != null)
-        addScore(line);
-      in.close();
-    }
-    catch(IOException e)
-    {  System.out.println(e);  }
-  }  // end of loadScores()
+    StringBuffer lines = new StringBuffer();
+    for (int i=0; i < numScores; i++)
+      lines.append(scores[i].getName() + " & " + scores[i].getScore() + " &\n");
+    return lines.toString();
+  }  // end of getScoreLines()
 
 
-  public void saveScores()
-  /* We write out "name & score &" to each line of the file
-     The scores are written to SCORE_FN.
-  */
-  {
-    String line;
-    try {
-      PrintWriter out = new PrintWriter(
-			new BufferedWriter( new FileWriter(SCORE_FN) ), true);
-      for (int i=0; i < numScores; i++) {
-         line = scores[i].getName() + " & " + scores[i].getScore() + " &";
-         out.println(line);
-      }
-      out.close();
-    }
-    catch(IOException e)
-    {  System.out.println(e);  }
-  }  // end of saveScores()
+  public void saveScores() throws IOException
+  /* Wait until all the new scores have been saved. This isn't
+     synchronized, since the ScoreStore thread may need to lock
+     this object before it can finish saving. */
+  {  store.flush();  }
 
 
 }  // end of HighScores class
@@ -138,4 +146,3 @@ class ScoreInfo
   {  return score;  }
 
 }  // end of ScoreInfo
-
@@ -53,7 +53,11 @@ public class ScoreServer
         // Close client connection
         clientSock.close();
         System.out.println("Client connection closed\n");
-        hs.saveScores();      // backup high scores after each client has finished
+        try {
+          hs.saveScores();    // wait until the client's scores are on disk
+        }
+        catch(IOException e)
+        {  System.out.println("Scores not saved yet: " + e);  }
       }
     }
     catch(Exception e)
@@ -111,4 +115,3 @@ public class ScoreServer
   {  new ScoreServer();  }
 
 } // end of ScoreServer class
-
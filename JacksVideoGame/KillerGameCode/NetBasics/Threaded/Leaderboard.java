@@ -0,0 +1,452 @@
+
+// Leaderboard.java
+
+/* A leaderboard which keeps the best score for every player (there
+   may be millions), and answers these queries in O(log n) time:
+      getTop(n)          -- the n best players
+      getRank(name)      -- a player's position (1 is the best)
+      getAround(name, k) -- the k players above and below a player
+
+   The players are spread over NUM_SHARDS shards, chosen by the hash
+   of their name. Each shard keeps its players in a tree ordered by
+   score (highest first), then name. Each tree node stores the size
+   of its subtree, so the number of players before a given score,
+   or the player at a given position, can be found in one pass down
+   the tree.
+
+   The trees are treaps which are never changed once built: an update
+   copies the nodes on the path to the change, and then replaces the
+   shard's (volatile) root. So a reader takes the current root, and
+   has a consistent snapshot of the shard without any locking, and
+   without blocking the writers. Writers lock only their own shard,
+   so updates for players in different shards happen in parallel.
+
+   Each shard also has a map from names to best scores. Every update
+   gives the shard a new version number, which is stored with the
+   root (in a Snapshot) and with the player's map entry (in an Entry).
+   A query about a player needs their score and a tree which agree,
+   so Shard.find() checks that the entry isn't newer than the
+   snapshot; if it is, the shard is being updated, and the pair is
+   read again with the shard locked.
+
+   Queries over several shards read each shard's root separately,
+   so they may mix snapshots taken a few microseconds apart.
+*/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class Leaderboard
+{
+  private static final int NUM_SHARDS = 16;
+
+  private Shard[] shards;
+
+
+  public Leaderboard()
+  {
+    shards = new Shard[NUM_SHARDS];
+    for (int i=0; i < NUM_SHARDS; i++)
+      shards[i] = new Shard(i);
+  }
+
+
+  private Shard getShard(String name)
+  {  return shards[ (name.hashCode() & 0x7fffffff) % NUM_SHARDS ];  }
+
+
+  public boolean submit(String name, int score)
+  /* Record the score for name, if it's better than the player's
+     previous best (or the player is new). Returns true if the
+     leaderboard changed. */
+  {  return getShard(name).submit(name, score);  }
+
+
+  public ScoreInfo getPlayer(String name)
+  // the player's best score, or null if they're unknown
+  {
+    Entry e = (Entry) getShard(name).scores.get(name);
+    if (e == null)
+      return null;
+    return new ScoreInfo(name, e.score);
+  }
+
+
+  public int getNumPlayers()
+  {
+    int total = 0;
+    for (int i=0; i < NUM_SHARDS; i++)
+      total += size(shards[i].getRoot());
+    return total;
+  }
+
+
+
+  public ScoreInfo[] getTop(int n)
+  /* Return the n best players (or fewer if there aren't n), by
+     merging the first n players of each shard. */
+  {
+    ScoreInfo[][] lists = new ScoreInfo[NUM_SHARDS][];
+    for (int i=0; i < NUM_SHARDS; i++)
+      lists[i] = getRange(shards[i].getRoot(), 0, n);
+    return merge(lists, n);
+  }  // end of getTop()
+
+
+
+  public int getRank(String name)
+  /* Return the player's position (1 is the best), or 0 if the
+     player isn't on the leaderboard. Players with the same score
+     are ordered by name. */
+  {
+    Shard home = getShard(name);
+    Object[] found = home.find(name);
+    if (found == null)
+      return 0;
+    Node homeRoot = (Node) found[0];
+    int score = ((Entry) found[1]).score;
+
+    int count = 0;    // the players before (score,name) in all the shards
+    for (int i=0; i < NUM_SHARDS; i++) {
+      Node root = (shards[i] == home) ? homeRoot : shards[i].getRoot();
+      count += countBefore(root, score, name);
+    }
+    return count + 1;
+  }  // end of getRank()
+
+
+
+  public ScoreInfo[] getAround(String name, int k)
+  /* Return the player and up to k players either side of them
+     (in leaderboard order), or null if the player is unknown.
+     The k players just before the player on the whole leaderboard
+     must be among the k just before them in their own shard, and
+     the same for the players after, so only 2k+1 players from
+     each shard need to be looked at.
+  */
+  {
+    Shard home = getShard(name);
+    Object[] found = home.find(name);
+    if (found == null)
+      return null;
+    Node homeRoot = (Node) found[0];
+    int score = ((Entry) found[1]).score;
+
+    ScoreInfo[][] lists = new ScoreInfo[NUM_SHARDS][];
+    int pos;
+    for (int i=0; i < NUM_SHARDS; i++) {
+      Node root = (shards[i] == home) ? homeRoot : shards[i].getRoot();
+      pos = countBefore(root, score, name);
+      lists[i] = getRange(root, Math.max(0, pos-k), pos + k+1);
+    }
+    ScoreInfo[] all = merge(lists, Integer.MAX_VALUE);
+
+    // find the player's place in the merged list
+    int mid = 0;
+    while ((mid < all.length) &&
+           (compare(all[mid].getScore(), all[mid].getName(), score, name) < 0))
+      mid++;
+    int start = Math.max(0, mid-k);
+    int end = Math.min(all.length, mid+k+1);
+
+    ScoreInfo[] around = new ScoreInfo[end-start];
+    System.arraycopy(all, start, around, 0, end-start);
+    return around;
+  }  // end of getAround()
+
+
+
+  public ScoreInfo[] getAll()
+  // Return every player, in leaderboard order (used for saving)
+  {
+    ScoreInfo[][] lists = new ScoreInfo[NUM_SHARDS][];
+    for (int i=0; i < NUM_SHARDS; i++) {
+      Node root = shards[i].getRoot();
+      lists[i] = getRange(root, 0, size(root));
+    }
+    return merge(lists, Integer.MAX_VALUE);
+  }  // end of getAll()
+
+
+
+  private ScoreInfo[] merge(ScoreInfo[][] lists, int max)
+  // merge the sorted lists, keeping at most max players
+  {
+    int total = 0;
+    for (int i=0; i < lists.length; i++)
+      total += lists[i].length;
+    ScoreInfo[] result = new ScoreInfo[ Math.min(total, max) ];
+
+    int[] next = new int[lists.length];   // next player in each list
+    int best;
+    ScoreInfo si, bestSI;
+    for (int r=0; r < result.length; r++) {
+      best = -1;
+      bestSI = null;
+      for (int i=0; i < lists.length; i++) {
+        if (next[i] < lists[i].length) {
+          si = lists[i][next[i]];
+          if ((bestSI == null) ||
+              (compare(si.getScore(), si.getName(),
+                       bestSI.getScore(), bestSI.getName()) < 0)) {
+            best = i;
+            bestSI = si;
+          }
+        }
+      }
+      result[r] = bestSI;
+      next[best]++;
+    }
+    return result;
+  }  // end of merge()
+
+
+
+  // ------------------- tree operations -----------------------
+  // These don't change the nodes, so they are safe to use with
+  // any root, without locking.
+
+  private static int compare(int score1, String name1, int score2, String name2)
+  // higher scores come first, then names in alphabetical order
+  {
+    if (score1 != score2)
+      return (score1 > score2) ? -1 : 1;
+    return name1.compareTo(name2);
+  }
+
+
+  private static int size(Node t)
+  {  return (t == null) ? 0 : t.size;  }
+
+
+  private static int countBefore(Node t, int score, String name)
+  // the number of nodes in t before (score,name)
+  {
+    int count = 0;
+    while (t != null) {
+      if (compare(score, name, t.score, t.name) <= 0)
+        t = t.left;
+      else {
+        count += size(t.left) + 1;
+        t = t.right;
+      }
+    }
+    return count;
+  }  // end of countBefore()
+
+
+  private static ScoreInfo[] getRange(Node t, int start, int end)
+  /* The players at positions start to end-1 in t. The path down to
+     position start is kept on a stack, holding the nodes still to
+     be visited after it, and the range is then read with one
+     in-order walk, instead of a search for each position. */
+  {
+    end = Math.min(end, size(t));
+    if (start >= end)
+      return new ScoreInfo[0];
+
+    ArrayList stack = new ArrayList();
+    int pos = start;
+    int leftSize;
+    while (t != null) {     // find the node at position start
+      leftSize = size(t.left);
+      if (pos < leftSize) {
+        stack.add(t);    // visited after its left subtree
+        t = t.left;
+      }
+      else if (pos == leftSize) {
+        stack.add(t);
+        break;
+      }
+      else {
+        pos -= leftSize + 1;
+        t = t.right;
+      }
+    }
+
+    ScoreInfo[] range = new ScoreInfo[end-start];
+    Node n;
+    for (int i = 0; i < range.length; i++) {
+      n = (Node) stack.remove(stack.size()-1);
+      range[i] = new ScoreInfo(n.name, n.score);
+      for (t = n.right; t != null; t = t.left)   // n's successors
+        stack.add(t);
+    }
+    return range;
+  }  // end of getRange()
+
+
+
+  // -----------------------------------------------------------
+
+  private static class Shard
+  // the players whose names hash to this shard
+  {
+    private volatile Snapshot snap = new Snapshot(null, 0);
+    private ConcurrentHashMap scores = new ConcurrentHashMap();   // name --> Entry
+    private Random rand;    // for the treap priorities
+
+
+    public Shard(int i)
+    {  rand = new Random(i);  }
+
+
+    public Node getRoot()
+    {  return snap.root;  }
+
+
+    public Object[] find(String name)
+    /* Return the shard's root and name's Entry, from the same
+       version of the shard, or null if name isn't in the shard. */
+    {
+      Snapshot s = snap;
+      Entry e = (Entry) scores.get(name);
+      if ((e != null) && (e.version > s.version)) {
+        synchronized(this) {     // an update is half done, so wait for it
+          s = snap;
+          e = (Entry) scores.get(name);
+        }
+      }
+      if (e == null)
+        return null;
+      return new Object[] { s.root, e };
+    }  // end of find()
+
+
+    synchronized public boolean submit(String name, int score)
+    {
+      Entry old = (Entry) scores.get(name);
+      if ((old != null) && (old.score >= score))
+        return false;     // not an improvement
+
+      Snapshot s = snap;
+      Node t = s.root;
+      if (old != null)
+        t = delete(t, old.score, name);
+      t = insert(t, new Node(name, score, rand.nextInt(), null, null));
+
+      long version = s.version + 1;
+      scores.put(name, new Entry(score, version));
+      snap = new Snapshot(t, version);     // publish the new tree
+      return true;
+    }  // end of submit()
+
+
+    private Node insert(Node t, Node x)
+    // return a copy of t with x added
+    {
+      if (t == null)
+        return x;
+      if (x.pri > t.pri) {    // x goes above t
+        Node[] parts = split(t, x.score, x.name);
+        return new Node(x.name, x.score, x.pri, parts[0], parts[1]);
+      }
+      if (compare(x.score, x.name, t.score, t.name) < 0)
+        return t.copy(insert(t.left, x), t.right);
+      else
+        return t.copy(t.left, insert(t.right, x));
+    }  // end of insert()
+
+
+    private Node[] split(Node t, int score, String name)
+    // split t into the nodes before (score,name), and the rest
+    {
+      if (t == null)
+        return new Node[] { null, null };
+      Node[] parts;
+      if (compare(t.score, t.name, score, name) < 0) {
+        parts = split(t.right, score, name);
+        parts[0] = t.copy(t.left, parts[0]);
+      }
+      else {
+        parts = split(t.left, score, name);
+        parts[1] = t.copy(parts[1], t.right);
+      }
+      return parts;
+    }  // end of split()
+
+
+    private Node delete(Node t, int score, String name)
+    // return a copy of t without the (score,name) node
+    {
+      if (t == null)
+        return null;
+      int cmp = compare(score, name, t.score, t.name);
+      if (cmp < 0)
+        return t.copy(delete(t.left, score, name), t.right);
+      else if (cmp > 0)
+        return t.copy(t.left, delete(t.right, score, name));
+      else
+        return join(t.left, t.right);
+    }  // end of delete()
+
+
+    private Node join(Node a, Node b)
+    // join two treaps, where every node in a comes before those in b
+    {
+      if (a == null)
+        return b;
+      if (b == null)
+        return a;
+      if (a.pri > b.pri)
+        return a.copy(a.left, join(a.right, b));
+      else
+        return b.copy(join(a, b.left), b.right);
+    }  // end of join()
+
+  }  // end of Shard class
+
+
+
+  // -----------------------------------------------------------
+
+  private static class Snapshot
+  // a shard's tree, and the number of updates that made it
+  {
+    final Node root;
+    final long version;
+
+    public Snapshot(Node r, long v)
+    {  root = r;  version = v;  }
+  }
+
+
+  private static class Entry
+  // a player's best score, and the shard version which added it
+  {
+    final int score;
+    final long version;
+
+    public Entry(int s, long v)
+    {  score = s;  version = v;  }
+  }
+
+
+
+  // -----------------------------------------------------------
+
+  private static class Node
+  // an unchangeable treap node
+  {
+    final String name;
+    final int score;
+    final int pri;       // the treap priority: higher is nearer the root
+    final Node left, right;
+    final int size;      // number of nodes in this subtree
+
+    public Node(String n, int s, int p, Node l, Node r)
+    {
+      name = n;  score = s;  pri = p;
+      left = l;  right = r;
+      size = Leaderboard.size(l) + Leaderboard.size(r) + 1;
+    }
+
+    public Node copy(Node l, Node r)
+    // a copy of this node with new children
+    {  return new Node(name, score, pri, l, r);  }
+
+  }  // end of Node class
+
+
+}  // end of Leaderboard class
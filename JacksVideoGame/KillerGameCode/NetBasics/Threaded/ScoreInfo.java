@@ -0,0 +1,19 @@
+
+// ScoreInfo.java
+
+class ScoreInfo
+// Maintains the name and score details
+{
+  private String name;
+  private int score;
+
+  public ScoreInfo(String n, int s)
+  {  name = n;  score = s;  }
+
+  public String getName()
+  {  return name;  }
+
+  public int getScore()
+  {  return score;  }
+
+}  // end of ScoreInfo
@@ -0,0 +1,283 @@
+
+// SoakClient.java
+
+/* A soak test for ThreadedScoreServer. It opens numClients
+   connections from a single thread (using one selector), and
+   keeps them open for the given number of seconds.
+
+   numActive of the clients send a "get" message every
+   ACTIVE_INTERVAL ms, and wait for the reply. The rest stay
+   connected but idle, like players who are reading the screen.
+
+   Every REPORT_INTERVAL secs, the number of connected clients,
+   the replies per second, and the average round trip time are
+   printed. The server prints its own count of live clients and
+   the heap it is using, and should be run with -virtual for
+   large numbers of clients:
+        java ThreadedScoreServer -virtual -max 60000
+
+   Usage:
+     java SoakClient [ numClients [ numActive [ seconds [ host ] ] ] ]
+
+   The default is 1000 clients, 100 of them active, for 60 seconds,
+   on localhost.
+
+   Each client needs a port on the client machine, and a loopback
+   address only has about 28000 of them, so when the host is
+   127.0.0.1 the connections are spread over NUM_LOOPBACK addresses
+   (127.0.0.1, 127.0.0.2, ...), which all reach the local server.
+   Both the client and server will need a large file descriptor
+   limit (e.g. ulimit -n 100000).
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+
+public class SoakClient
+{
+  private static final int PORT = 1234;     // server details
+  private static final String HOST = "127.0.0.1";
+
+  private static final int NUM_LOOPBACK = 4;
+  private static final int CONNECT_BATCH = 500;   // connections opened at once
+  private static final int ACTIVE_INTERVAL = 1000;   // ms between messages
+  private static final int REPORT_INTERVAL = 5;   // secs
+
+  private Selector selector;
+  private ByteBuffer readBuffer = ByteBuffer.allocateDirect(16*1024);
+  private byte[] getMsg = "get\n".getBytes();
+
+  private ArrayList actives = new ArrayList();   // active Soakers
+
+  // statistics
+  private int numConnected = 0;
+  private int numFailed = 0;
+  private int numClosed = 0;
+  private long numReplies = 0;
+  private long totalLatency = 0;   // in ns
+
+
+
+  public SoakClient(int numClients, int numActive, int seconds, String host)
+  {
+    try {
+      selector = Selector.open();
+      System.out.println("Connecting " + numClients + " clients (" +
+                         numActive + " active) to " + host + ":" + PORT);
+      connectClients(host, numClients, numActive);
+      System.out.println("Connected: " + numConnected + "; failed: " + numFailed);
+
+      runClients( System.currentTimeMillis() + seconds*1000L );
+      selector.close();
+    }
+    catch(IOException e)
+    {  System.out.println(e);  }
+  }  // end of SoakClient()
+
+
+
+  private void connectClients(String host, int numClients, int numActive)
+    throws IOException
+  // open the connections in batches, so the server's backlog isn't swamped
+  {
+    int numStarted = 0;
+    int numPending = 0;
+    SocketChannel chan;
+    SelectionKey key;
+    while ((numStarted < numClients) || (numPending > 0)) {
+      while ((numStarted < numClients) && (numPending < CONNECT_BATCH)) {
+        chan = SocketChannel.open();
+        chan.configureBlocking(false);
+        try {
+          chan.connect( new InetSocketAddress(getHost(host, numStarted), PORT) );
+          chan.register(selector, SelectionKey.OP_CONNECT,
+                        new Soaker(chan, numStarted < numActive));
+          numPending++;
+        }
+        catch(IOException e) {   // e.g. out of ports or file descriptors
+          numFailed++;
+          chan.close();
+        }
+        numStarted++;
+      }
+
+      selector.select(1000);
+      Iterator it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        key = (SelectionKey) it.next();
+        it.remove();
+        Soaker s = (Soaker) key.attachment();
+        if (key.isConnectable()) {
+          numPending--;
+          try {
+            s.chan.finishConnect();
+            numConnected++;
+            s.connected = true;
+            key.interestOps(SelectionKey.OP_READ);
+            if (s.active)
+              actives.add(s);
+          }
+          catch(IOException e) {
+            numFailed++;
+            s.close(key);
+          }
+        }
+      }
+    }
+  }  // end of connectClients()
+
+
+  private String getHost(String host, int i)
+  // spread the connections to the local machine over several addresses
+  {
+    if (host.equals("127.0.0.1"))
+      return "127.0.0." + (1 + i%NUM_LOOPBACK);
+    return host;
+  }
+
+
+
+  private void runClients(long endTime) throws IOException
+  /* Send messages from the active clients, read the replies,
+     and report every REPORT_INTERVAL secs. */
+  {
+    long now = System.currentTimeMillis();
+    long nextReport = now + REPORT_INTERVAL*1000;
+    long lastReplies = 0;
+    Iterator it;
+    SelectionKey key;
+    while (now < endTime) {
+      for (int i=0; i < actives.size(); i++)
+        ((Soaker) actives.get(i)).sendIfDue(now);
+
+      selector.select(50);
+      it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        key = (SelectionKey) it.next();
+        it.remove();
+        if (key.isValid() && key.isReadable())
+          ((Soaker) key.attachment()).read(key);
+      }
+
+      now = System.currentTimeMillis();
+      if (now >= nextReport) {
+        long replies = numReplies - lastReplies;
+        System.out.println("Connected: " + (numConnected - numClosed) +
+            "; replies/sec: " + replies/REPORT_INTERVAL +
+            "; avg round trip: " +
+            ((replies == 0) ? 0 : totalLatency/replies/1000) + " us");
+        lastReplies = numReplies;
+        totalLatency = 0;
+        nextReport += REPORT_INTERVAL*1000;
+      }
+    }
+  }  // end of runClients()
+
+
+
+  // -----------------------------------------------------------
+
+  private class Soaker
+  // the state of one connection
+  {
+    SocketChannel chan;
+    boolean active;
+    boolean connected = false;
+    boolean waiting = false;   // for a reply
+    long sendTime;             // in ns
+    long nextSend;             // in ms
+
+    public Soaker(SocketChannel c, boolean act)
+    {  chan = c;  active = act;
+       // spread the active clients' messages over the interval
+       nextSend = System.currentTimeMillis() +
+                  (long)(Math.random()*ACTIVE_INTERVAL);
+    }
+
+
+    public void sendIfDue(long now)
+    {
+      if (waiting || (now < nextSend) || !chan.isOpen())
+        return;
+      try {
+        ByteBuffer msg = ByteBuffer.wrap(getMsg);
+        sendTime = System.nanoTime();
+        while (msg.hasRemaining())
+          chan.write(msg);
+        waiting = true;
+        nextSend = now + ACTIVE_INTERVAL;
+      }
+      catch(IOException e)
+      {  close( chan.keyFor(selector) );  }
+    }  // end of sendIfDue()
+
+
+    public void read(SelectionKey key)
+    {
+      readBuffer.clear();
+      try {
+        int n = chan.read(readBuffer);
+        if (n == -1) {
+          close(key);
+          return;
+        }
+        for (int i=0; i < n; i++) {
+          if ((readBuffer.get(i) == '\n') && waiting) {   // end of the reply
+            waiting = false;
+            numReplies++;
+            totalLatency += System.nanoTime() - sendTime;
+          }
+        }
+      }
+      catch(IOException e)
+      {  close(key);  }
+    }  // end of read()
+
+
+    public void close(SelectionKey key)
+    {
+      if (key != null)
+        key.cancel();
+      try {
+        chan.close();
+      }
+      catch(IOException e) {}
+      if (connected)
+        numClosed++;
+      connected = false;
+    }
+
+  }  // end of Soaker class
+
+
+  // -----------------------------------------------------------
+
+  public static void main(String args[])
+  {
+    int numClients = 1000;
+    int numActive = 100;
+    int seconds = 60;
+    String host = HOST;
+    try {
+      if (args.length > 0)
+        numClients = Integer.parseInt(args[0]);
+      if (args.length > 1)
+        numActive = Integer.parseInt(args[1]);
+      if (args.length > 2)
+        seconds = Integer.parseInt(args[2]);
+    }
+    catch(NumberFormatException e)
+    {  System.out.println("Usage: java SoakClient [ numClients [ numActive [ seconds [ host ] ] ] ]");
+       System.exit(0);
+    }
+    if (args.length > 3)
+      host = args[3];
+
+    new SoakClient(numClients, numActive, seconds, host);
+  }  // end of main()
+
+}  // end of SoakClient class
@@ -8,6 +8,8 @@
    Understood input messages:
 	get						-- returns the high score list
     score name & score &	-- add the score for name
+	rank name				-- returns name's position and best score
+	around name				-- returns the players near name
 	bye						-- terminates the client link
 */
 
@@ -15,7 +17,7 @@ import java.io.*;
 import java.net.*;
 
 
-public class ThreadedScoreHandler extends Thread
+public class ThreadedScoreHandler implements Runnable
 {
   private Socket clientSock;
   private String cliAddr;
@@ -79,6 +81,8 @@ public class ThreadedScoreHandler extends Thread
   /*  The input line can be one of:
              "score name & score &"
       or     "get"
+      or     "rank name"
+      or     "around name"
   */
   {
     if (line.trim().toLowerCase().equals("get")) {
@@ -90,9 +94,19 @@ public class ThreadedScoreHandler extends Thread
       System.out.println("Processing 'score'");
       hs.addScore( line.substring(5) );    // cut the score keyword
     }
+    else if ((line.length() >= 5) &&     // "rank "
+        (line.substring(0,4).toLowerCase().equals("rank"))) {
+      System.out.println("Processing 'rank'");
+      out.println( hs.getRank( line.substring(4) ));    // cut the rank keyword
+    }
+    else if ((line.length() >= 7) &&     // "around "
+        (line.substring(0,6).toLowerCase().equals("around"))) {
+      System.out.println("Processing 'around'");
+      out.println( hs.getAround( line.substring(6) ));    // cut the around keyword
+    }
     else
       System.out.println("Ignoring input line");
   }  // end of doRequest()
 
 
-}  // end of ThreadedScoreHandler class
\ No newline at end of file
+}  // end of ThreadedScoreHandler class
\ No newline at end of file
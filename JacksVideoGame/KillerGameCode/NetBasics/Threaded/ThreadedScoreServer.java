@@ -3,7 +3,8 @@
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
 /* A threaded server that stores a client's score (and name) in a
-   list of top-10 high scores.
+   leaderboard of every player's best score, and returns the top-10
+   high scores.
 
    The list is maintained in a file SCORFN, and loaded when the
    server starts.
@@ -12,36 +13,55 @@
    The server processes a client by creating a 
    ThreadedScoreHandler object.
 
+   The handlers are run by a HandlerExecutor, which can use a
+   virtual thread for each client (with -virtual), and limits
+   the number of clients (with -max <number>).
+
+   Usage:
+     java ThreadedScoreServer [ -virtual ] [ -max <number> ]
+
    Derived from ThreadedEchoServer.java (Listing 3-5, p.161) in
       Core Java 2, Volume II -- Advanced Features
       Horstmann and Cornell
       Sun Microsystems Press, 2000, 4th Edition
 */
 
-// import java.io.*;
+import java.io.*;
 import java.net.*;
 
 
 public class ThreadedScoreServer
 {
   private static final int PORT = 1234;
+  private static final int BACKLOG = 1024;   // queued connection requests
+  private static final int ACCEPT_BACKOFF = 100;   // ms after a failed accept()
+
   private HighScores hs;
 
 
-  public ThreadedScoreServer()
+  public ThreadedScoreServer(HandlerExecutor executor)
   // Concurrently process clients forever
   {
     hs = new HighScores();
     try {
-      ServerSocket serverSock = new ServerSocket(PORT);
+      ServerSocket serverSock = new ServerSocket(PORT, BACKLOG);
       Socket clientSock;
       String cliAddr;
 
       while (true) {
         System.out.println("Waiting for a client...");
-        clientSock = serverSock.accept();
+        executor.waitForSlot();
+        try {
+          clientSock = serverSock.accept();
+        }
+        catch(IOException e) {    // e.g. out of file descriptors
+          executor.releaseSlot();
+          System.out.println("Accept failed: " + e);
+          Thread.sleep(ACCEPT_BACKOFF);    // then try again
+          continue;
+        }
         cliAddr = clientSock.getInetAddress().getHostAddress();
-        new ThreadedScoreHandler(clientSock, cliAddr, hs).start();
+        executor.execute( new ThreadedScoreHandler(clientSock, cliAddr, hs) );
       }
     }
     catch(Exception e)
@@ -52,7 +72,7 @@ public class ThreadedScoreServer
   // -----------------------------------
 
   public static void main(String args[]) 
-  {  new ThreadedScoreServer();  }
+  {  new ThreadedScoreServer( HandlerExecutor.parseArgs(args) );  }
 
 } // end of ThreadedScoreServer class
 
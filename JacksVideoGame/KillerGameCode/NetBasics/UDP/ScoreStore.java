@@ -0,0 +1,429 @@
+
+// ScoreStore.java
+
+/* The disk storage for a HighScores object. It replaces rewriting
+   SCORE_FN after every new score, which makes the server wait for the
+   disk, and leaves an empty (or half-written) file if the server
+   dies part way through.
+
+   The store has two files:
+
+     SCORE_FN (scores.txt): a snapshot of the high scores, with one
+        "name & score &" line for each score. The first line may be
+        "# seq N", which means that the snapshot includes every log
+        record up to sequence number N.
+
+     LOG_FN (scores.log): an append-only log, with one line for
+        each new score added since the snapshot:
+             "name & score & seq & crc"
+        seq is the record's sequence number, and crc is a CRC-32
+        (in hex) of the rest of the line.
+
+   append() only adds a record to a pending buffer, so it returns
+   straight away. The flusher thread writes all the pending records
+   with a single write() and a single force() (fsync) call, after
+   waiting up to GROUP_WAIT ms for more records to arrive. So a
+   burst of new scores is saved in a few disk operations (a group
+   commit), rather than one each. A score may be lost if the machine
+   crashes less than GROUP_WAIT ms (plus the fsync time) after it
+   was added; flush() waits until everything appended has been saved.
+
+   A record only counts as saved once force() has returned. If the
+   write or the force fails (e.g. the disk is full), the log is cut
+   back to where the batch started, the batch is put back at the
+   front of the pending buffer, and the flusher tries again after
+   RETRY_WAIT ms. Meanwhile flush() throws the IOException, instead
+   of telling its caller that the scores are safe.
+
+   When the log has more than MAX_LOG_RECORDS records (or more records
+   than there are scores in the snapshot, if that's larger), it is compacted:
+   the current scores are written to SNAP_FN (scores.tmp), which is
+   forced to disk and then renamed to SCORE_FN, and the log is emptied.
+
+   Crash recovery (in load()):
+     - If SCORE_FN is missing but SNAP_FN exists, the server died in
+       the middle of a rename, so SNAP_FN is complete and is used.
+       If both exist, SNAP_FN is an unfinished snapshot and is deleted.
+     - The log records are replayed onto the snapshot, skipping any
+       already in it (seq <= N). Replay stops at the first incomplete
+       line or bad CRC (from a partly written batch), and the log is
+       cut back to that point.
+
+   A store is used by a single HighScores object. The store's methods
+   are synchronized, since append() is called by the server threads
+   while the flusher thread is writing.
+*/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.zip.*;
+
+
+public class ScoreStore implements Runnable
+{
+  private static final String SCORE_FN = "scores.txt";
+  private static final String SNAP_FN = "scores.tmp";
+  private static final String LOG_FN = "scores.log";
+
+  private static final int GROUP_WAIT = 10;   // ms to wait for a batch to fill
+  private static final int MAX_BATCH = 500;   // records per write
+  private static final int MAX_LOG_RECORDS = 1000;   // before compaction
+  private static final int RETRY_WAIT = 1000;   // ms between failed writes
+
+  private HighScores hs;
+  private RandomAccessFile logFile;
+  private FileChannel logChannel;
+  private int numLogRecords = 0;
+  private int snapSize = 0;     // number of scores in the snapshot
+
+  private StringBuffer pending = new StringBuffer();   // unwritten records
+  private int numPending = 0;
+  private long lastSeq = 0;     // seq of the last appended record
+  private long savedSeq = 0;    // seq of the last record forced to disk
+  private IOException saveError = null;   // from the last failed write, if any
+
+  private CRC32 crc = new CRC32();
+
+
+
+  public ScoreStore(HighScores hs)
+  {  this.hs = hs;  }
+
+
+
+  // ---------------------- recovery ---------------------------
+
+  public void load()
+  /* Load the snapshot and replay the log into the HighScores object,
+     then start the flusher thread. Called once, by the HighScores
+     constructor, before there are any clients. */
+  {
+    File scoreFile = new File(SCORE_FN);
+    File snapFile = new File(SNAP_FN);
+    if (snapFile.exists()) {
+      if (!scoreFile.exists()) {
+        System.out.println("Using snapshot " + SNAP_FN);
+        snapFile.renameTo(scoreFile);
+      }
+      else
+        snapFile.delete();    // incomplete snapshot
+    }
+
+    long snapSeq = loadSnapshot();
+    try {
+      replayLog(snapSeq);
+    }
+    catch(IOException e)
+    {  System.out.println(e);  }
+    savedSeq = lastSeq;
+
+    Thread t = new Thread(this, "ScoreStore");
+    t.setDaemon(true);
+    t.start();
+
+    Runtime.getRuntime().addShutdownHook( new Thread() {
+      public void run()
+      {  // save pending scores when the server is stopped
+        try {
+          flush();
+        }
+        catch(IOException e)
+        {  System.out.println("Scores not saved: " + e);  }
+      }
+    });
+  }  // end of load()
+
+
+
+  private long loadSnapshot()
+  /* Read the "name & score &" lines from SCORE_FN, and return the
+     seq of the last log record included in it (0 if not known). */
+  {
+    long snapSeq = 0;
+    String line;
+    try {
+      BufferedReader in = new BufferedReader(new FileReader(SCORE_FN));
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("# seq "))
+          snapSeq = Long.parseLong( line.substring(6).trim() );
+        else if (line.trim().length() > 0) {
+          hs.loadScore(line);
+          snapSize++;
+        }
+      }
+      in.close();
+    }
+    catch(FileNotFoundException e)
+    {  System.out.println("No scores file: " + SCORE_FN);  }
+    catch(Exception e)
+    {  System.out.println(e);  }
+    lastSeq = snapSeq;
+    return snapSeq;
+  }  // end of loadSnapshot()
+
+
+
+  private void replayLog(long snapSeq) throws IOException
+  /* Add the log records which come after the snapshot. A partly
+     written record ends the log, and is cut off so new records
+     are appended after the last good one. */
+  {
+    logFile = new RandomAccessFile(LOG_FN, "rw");
+    logChannel = logFile.getChannel();
+
+    byte[] data = new byte[(int) logFile.length()];
+    logFile.readFully(data);
+
+    int start = 0;
+    int numReplayed = 0;
+    String line;
+    long seq;
+    for (int i = 0; i < data.length; i++) {
+      if (data[i] == '\n') {
+        line = new String(data, start, i-start, "ISO-8859-1");
+        seq = checkRecord(line);
+        if (seq < 0)   // bad record, so the log ends here
+          break;
+        if (seq > snapSeq) {
+          hs.loadScore(line);
+          numReplayed++;
+        }
+        if (seq > lastSeq)
+          lastSeq = seq;
+        numLogRecords++;
+        start = i+1;
+      }
+    }
+
+    if (start < data.length) {
+      System.out.println("Discarding " + (data.length - start) +
+                         " bytes from the end of " + LOG_FN);
+      logChannel.truncate(start);
+      logChannel.force(false);
+    }
+    logChannel.position(start);
+
+    if (numReplayed > 0)
+      System.out.println("Replayed " + numReplayed + " scores from " + LOG_FN);
+  }  // end of replayLog()
+
+
+
+  private long checkRecord(String line)
+  /* Return the seq of the "name & score & seq & crc" record, or -1
+     if it's badly formed or the CRC is wrong. */
+  {
+    int pos = line.lastIndexOf('&');
+    if (pos == -1)
+      return -1;
+    try {
+      long fileCRC = Long.parseLong(line.substring(pos+1).trim(), 16);
+      String body = line.substring(0, pos+1);
+      if (fileCRC != calcCRC(body))
+        return -1;
+      StringTokenizer st = new StringTokenizer(body, "&");
+      st.nextToken();   // name
+      st.nextToken();   // score
+      return Long.parseLong( st.nextToken().trim() );
+    }
+    catch(Exception e)
+    {  return -1;  }
+  }  // end of checkRecord()
+
+
+  private long calcCRC(String s) throws UnsupportedEncodingException
+  {
+    crc.reset();
+    crc.update( s.getBytes("ISO-8859-1") );
+    return crc.getValue();
+  }
+
+
+
+  // ---------------------- appending --------------------------
+
+  synchronized public long append(String name, int score)
+  /* Add a record for a new score to the pending buffer, and return
+     its seq. The top-10 HighScores (Sequential and UDP) call this
+     with their object locked, so the records are in the same order
+     as the changes to the scores. The Leaderboard versions (Threaded
+     and NIO) don't lock, so two players' records may be logged in a
+     different order from their updates; that's safe because replaying
+     the log in any order gives the same best score for each player. */
+  {
+    lastSeq++;
+    String body = name + " & " + score + " & " + lastSeq + " &";
+    try {
+      pending.append(body).append(' ').
+              append( Long.toHexString(calcCRC(body)) ).append('\n');
+    }
+    catch(UnsupportedEncodingException e)
+    {  System.out.println(e);  }
+    numPending++;
+    if (numPending == 1 || numPending == MAX_BATCH)
+      notifyAll();    // wake the flusher
+    return lastSeq;
+  }  // end of append()
+
+
+
+  synchronized public void flush() throws IOException
+  /* Wait until all the appended records have been forced to disk.
+     If the flusher can't write them, the error is thrown; the
+     records stay pending, and may be saved by a later attempt. */
+  {
+    long seq = lastSeq;
+    notifyAll();
+    while (savedSeq < seq) {
+      if (saveError != null)
+        throw saveError;
+      try {
+        wait();
+      }
+      catch(InterruptedException e) {}
+    }
+  }  // end of flush()
+
+
+
+  public void run()
+  /* The flusher thread: write the pending records in batches, and
+     compact the log when it gets too long. */
+  {
+    String batch;
+    int batchSize;
+    long batchSeq;
+    while (true) {
+      synchronized(this) {
+        try {
+          while (numPending == 0)
+            wait();
+          if (numPending < MAX_BATCH)
+            wait(GROUP_WAIT);    // let more records join the batch
+        }
+        catch(InterruptedException e) {}
+        batch = pending.toString();
+        batchSize = numPending;
+        batchSeq = lastSeq;
+        pending.setLength(0);
+        numPending = 0;
+      }
+
+      IOException error = writeBatch(batch);   // the disk I/O doesn't hold the lock
+      if (error == null) {
+        numLogRecords += batchSize;
+        synchronized(this) {
+          savedSeq = batchSeq;
+          saveError = null;
+          notifyAll();    // wake any flush() callers
+        }
+        if (numLogRecords > Math.max(MAX_LOG_RECORDS, snapSize))
+          compact();
+      }
+      else {
+        synchronized(this) {
+          pending.insert(0, batch);   // try again, before the newer records
+          numPending += batchSize;
+          saveError = error;
+          notifyAll();    // so flush() callers see the error
+        }
+        try {
+          Thread.sleep(RETRY_WAIT);
+        }
+        catch(InterruptedException e) {}
+      }
+    }
+  }  // end of run()
+
+
+
+  private IOException writeBatch(String batch)
+  /* Write the batch to the end of the log and force it to disk.
+     Return null if that worked, or the error if it didn't, after
+     cutting off any part of the batch that was written, so the
+     retry starts from the same place. */
+  {
+    long startPos = 0;
+    try {
+      startPos = logChannel.position();
+      ByteBuffer buf = ByteBuffer.wrap( batch.getBytes("ISO-8859-1") );
+      while (buf.hasRemaining())
+        logChannel.write(buf);
+      logChannel.force(false);
+      return null;
+    }
+    catch(IOException e) {
+      System.out.println("Could not save scores: " + e);
+      try {
+        logChannel.position(startPos);
+        logChannel.truncate(startPos);
+      }
+      catch(IOException ex) {}   // the retry overwrites the partial batch
+      return e;
+    }
+  }  // end of writeBatch()
+
+
+
+  private void compact()
+  /* Write a snapshot of the scores to SNAP_FN, force it to disk, and
+     rename it to SCORE_FN. Then the log can be emptied, since every
+     record in it is included in the snapshot. Only the flusher thread
+     writes to the log, so no records arrive in the log meanwhile.
+
+     The seq is read before the scores, so every record up to snapSeq
+     has been added to the scores that are copied. If the HighScores
+     methods aren't synchronized, some later scores may be copied as
+     well, which is only safe if replaying them again makes no
+     difference (as with the Leaderboard). */
+  {
+    String lines;
+    long snapSeq;
+    synchronized(hs) {    // no changes to synchronized HighScores meanwhile
+      synchronized(this) {
+        snapSeq = lastSeq;
+      }
+      lines = hs.getScoreLines();
+    }
+
+    File scoreFile = new File(SCORE_FN);
+    File snapFile = new File(SNAP_FN);
+    try {
+      FileOutputStream out = new FileOutputStream(snapFile);
+      out.write( ("# seq " + snapSeq + "\n" + lines).getBytes("ISO-8859-1") );
+      out.getFD().sync();
+      out.close();
+
+      if (!snapFile.renameTo(scoreFile)) {
+        // some OSes (e.g. Windows) won't rename onto an existing file
+        scoreFile.delete();
+        if (!snapFile.renameTo(scoreFile)) {
+          System.out.println("Could not rename " + SNAP_FN);
+          return;
+        }
+      }
+
+      logChannel.truncate(0);
+      logChannel.position(0);
+      logChannel.force(false);
+      numLogRecords = 0;
+      snapSize = countLines(lines);
+    }
+    catch(IOException e)
+    {  System.out.println("Could not compact scores: " + e);  }
+  }  // end of compact()
+
+
+  private int countLines(String lines)
+  {
+    int count = 0;
+    for (int i=0; i < lines.length(); i++)
+      if (lines.charAt(i) == '\n')
+        count++;
+    return count;
+  }  // end of countLines()
+
+
+}  // end of ScoreStore class
@@ -71,8 +71,7 @@ public class ScoreUDPServer
         serverSock.receive( receivePacket );
 
         processClient(receivePacket);
- 
-        hs.saveScores();      // backup high scores after each package has finished
+        // new scores are saved in batches by the HighScores' ScoreStore
       }
     }
     catch(IOException ioe)
@@ -10,7 +10,13 @@
 
    The methods defined here are called by the TourWatcher, in 
    response to move/rotation messages received from the 
-   server.
+   server. The server now sends the sprite's absolute position
+   and rotation.
+
+   These are not set straight away, but added to a MotionBuffer
+   with addState() (or by the SnapshotClient), and the VisitorMover
+   behaviour calls updatePosition() at every frame, to move the
+   sprite smoothly between them, a little in the past.
 */
 
 
@@ -19,6 +25,10 @@ public class DistTourSprite extends Sprite3D
   private final static double MOVERATE = 0.3;
   private final static double ROTATE_AMT = Math.PI / 16.0;
 
+  private MotionBuffer motion = new MotionBuffer(false);
+  private double[] state = new double[3];
+  private double[] lastState = new double[3];   // the state set last
+
 
   public DistTourSprite(String userName, String fnm, Obstacles obs,
 								double xPosn, double zPosn)
@@ -49,4 +59,36 @@ public class DistTourSprite extends Sprite3D
   public void rotCounterClock()
   { doRotateY(ROTATE_AMT); }  // counter-clockwise
 
+
+  public void setState(double xPosn, double zPosn, double rotRadians)
+  /* Move the sprite to (xPosn,zPosn), with rotation rotRadians.
+     The rotation is undone first, since setPosition() moves the
+     sprite along its own (rotated) axes. */
+  { setCurrRotation(0);
+    setPosition(xPosn, zPosn);
+    setCurrRotation(rotRadians);
+  }  // end of setState()
+
+
+  public MotionBuffer getMotion()
+  {  return motion;  }
+
+
+  public void addState(double xPosn, double zPosn, double rotRadians)
+  // the sprite's state now, e.g. from an "at" message
+  {  motion.addState(System.currentTimeMillis(), xPosn, zPosn, rotRadians);  }
+
+
+  public void updatePosition(long now)
+  // move the sprite to its state INTERP_DELAY ms ago, if that has changed
+  {
+    if (!motion.getState(now - MotionBuffer.INTERP_DELAY, state))
+      return;
+    if ((state[0] == lastState[0]) && (state[1] == lastState[1]) &&
+        (state[2] == lastState[2]))
+      return;
+    setState(state[0], state[1], state[2]);
+    System.arraycopy(state, 0, lastState, 0, 3);
+  }  // end of updatePosition()
+
 }  // end of DistTourSprite
\ No newline at end of file
@@ -0,0 +1,213 @@
+
+// HandlerExecutor.java
+
+/* Runs a handler for each client connection of a thread-per-client
+   server, and keeps count of the connections.
+
+   There are two modes:
+     threads  -- each handler gets a new platform thread (as the
+                 servers have always done)
+     virtual  -- each handler gets a virtual thread (Java 21 or later)
+                 Virtual threads are cheap to create and block, so
+                 tens of thousands of clients can be served, most of
+                 them idle. On an older JVM, platform threads with
+                 a small (SMALL_STACK) stack are used instead.
+
+   There is a bound on the number of live connections (maxClients).
+   The server calls waitForSlot() before accepting a client, so when
+   the bound is reached, new clients wait in the server socket's
+   backlog until an old client leaves. If the accept() fails, the
+   server gives the slot back with releaseSlot().
+
+   The number of live connections, the peak, the total, and the heap
+   in use are printed every REPORT_INTERVAL secs, if they've changed.
+
+   A server's main() passes its command line to parseArgs():
+       [ -virtual ] [ -max <number of clients> ]
+*/
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class HandlerExecutor
+{
+  private static final int DEFAULT_MAX_CLIENTS = 10000;
+  private static final long SMALL_STACK = 128*1024;   // bytes
+  private static final int REPORT_INTERVAL = 10;   // secs
+
+  private boolean useVirtual;
+  private int maxClients;
+  private Executor virtualExecutor = null;   // null if virtual threads are unavailable
+
+  private Semaphore slots;
+  private AtomicInteger numLive = new AtomicInteger(0);
+  private AtomicInteger peakLive = new AtomicInteger(0);
+  private AtomicLong numTotal = new AtomicLong(0);
+  private int threadCount = 0;   // for naming threads
+
+
+
+  public HandlerExecutor(boolean useVirtual, int maxClients)
+  {
+    this.useVirtual = useVirtual;
+    this.maxClients = maxClients;
+    slots = new Semaphore(maxClients);
+
+    if (useVirtual) {
+      virtualExecutor = makeVirtualExecutor();
+      if (virtualExecutor == null)
+        System.out.println("Virtual threads need Java 21 or later; " +
+            "using platform threads with " + SMALL_STACK/1024 + "K stacks");
+    }
+    System.out.println("Handler mode: " + (useVirtual ? "virtual" : "threads") +
+                       "; max clients: " + maxClients);
+    startReporter();
+  }  // end of HandlerExecutor()
+
+
+
+  public static HandlerExecutor parseArgs(String[] args)
+  // create a HandlerExecutor from "[ -virtual ] [ -max <number> ]"
+  {
+    boolean useVirtual = false;
+    int maxClients = DEFAULT_MAX_CLIENTS;
+    for (int i=0; i < args.length; i++) {
+      if (args[i].equals("-virtual"))
+        useVirtual = true;
+      else if (args[i].equals("-max") && (i+1 < args.length)) {
+        try {
+          maxClients = Integer.parseInt(args[++i]);
+        }
+        catch(NumberFormatException e)
+        {  System.out.println("Illegal max clients: " + args[i]);  }
+      }
+      else
+        System.out.println("Unknown argument: " + args[i] +
+                           "; use [ -virtual ] [ -max <number> ]");
+    }
+    return new HandlerExecutor(useVirtual, Math.max(1, maxClients));
+  }  // end of parseArgs()
+
+
+
+  private Executor makeVirtualExecutor()
+  /* Call Executors.newVirtualThreadPerTaskExecutor() using reflection,
+     so this class still compiles and runs on older JVMs. */
+  {
+    try {
+      Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor",
+                                           new Class[0]);
+      return (Executor) m.invoke(null, new Object[0]);
+    }
+    catch(Exception e)
+    {  return null;  }
+  }  // end of makeVirtualExecutor()
+
+
+
+  public void waitForSlot() throws InterruptedException
+  // block until there is room for another client
+  {  slots.acquire();  }
+
+
+  public void releaseSlot()
+  /* Give back a slot from waitForSlot() which wasn't used, because
+     no client was accepted; execute() gives back the others. */
+  {  slots.release();  }
+
+
+
+  public void execute(final Runnable handler)
+  /* Run the handler for a newly accepted client, in the current mode.
+     waitForSlot() must have been called first; the slot is freed
+     when the handler's run() finishes. */
+  {
+    int live = numLive.incrementAndGet();
+    numTotal.incrementAndGet();
+    int peak;
+    while (live > (peak = peakLive.get()))
+      if (peakLive.compareAndSet(peak, live))
+        break;
+
+    Runnable task = new Runnable() {
+      public void run()
+      {
+        try {
+          handler.run();
+        }
+        finally {
+          numLive.decrementAndGet();
+          slots.release();
+        }
+      }
+    };
+
+    try {
+      if (virtualExecutor != null)
+        virtualExecutor.execute(task);
+      else if (useVirtual)
+        new Thread(null, task, "Handler-" + (threadCount++), SMALL_STACK).start();
+      else
+        new Thread(task, "Handler-" + (threadCount++)).start();
+    }
+    catch(Throwable t) {    // e.g. an OutOfMemoryError from too many threads
+      System.out.println("Could not start handler: " + t);
+      numLive.decrementAndGet();
+      slots.release();
+    }
+  }  // end of execute()
+
+
+
+  public int getNumLive()
+  {  return numLive.get();  }
+
+  public int getPeakLive()
+  {  return peakLive.get();  }
+
+  public long getNumTotal()
+  {  return numTotal.get();  }
+
+  public int getMaxClients()
+  {  return maxClients;  }
+
+
+  public String toString()
+  {
+    Runtime rt = Runtime.getRuntime();
+    long usedMB = (rt.totalMemory() - rt.freeMemory())/(1024*1024);
+    return "Clients: " + numLive.get() + " live (peak " + peakLive.get() +
+           ", total " + numTotal.get() + ", max " + maxClients +
+           "); heap used: " + usedMB + " MB";
+  }  // end of toString()
+
+
+
+  private void startReporter()
+  // print the connection counts every REPORT_INTERVAL secs, if they've changed
+  {
+    Thread t = new Thread("HandlerReporter") {
+      public void run()
+      {
+        long lastTotal = 0;
+        int lastLive = 0;
+        while (true) {
+          try {
+            Thread.sleep(REPORT_INTERVAL*1000);
+          }
+          catch(InterruptedException e) {}
+          if ((numTotal.get() != lastTotal) || (numLive.get() != lastLive)) {
+            lastTotal = numTotal.get();
+            lastLive = numLive.get();
+            System.out.println(HandlerExecutor.this);
+          }
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+  }  // end of startReporter()
+
+}  // end of HandlerExecutor class
@@ -0,0 +1,137 @@
+
+// MotionBuffer.java
+
+/* Holds the latest few known states (x, z, rotation) of a
+   visitor's sprite, each with the local time it applies to,
+   so the sprite can be drawn moving smoothly between them.
+
+   The states arrive a few times a second, at uneven intervals
+   (because of network jitter), and some never arrive (if they
+   are sent over UDP). So the sprite isn't drawn at its newest
+   state, but at where it was INTERP_DELAY ms ago, which is
+   usually between two known states, and can be interpolated.
+
+   If the states stop arriving for a while (e.g. some datagrams
+   are lost), the render time passes the newest state. The sprite
+   then carries on in the same direction at the same speed
+   (extrapolation), for at most MAX_EXTRAPOLATE ms, and waits
+   there. The next state moves it back onto the right path.
+
+   Extrapolation is only switched on for states which may be
+   lost. Over TCP, a gap means that the sprite has stopped moving,
+   so it should stop at its newest state.
+
+   The methods are synchronized, since states are added by a
+   network thread, and read by the rendering behaviour.
+*/
+
+
+public class MotionBuffer
+{
+  public static final int INTERP_DELAY = 150;   // ms; 1.5 server ticks
+  private static final int MAX_EXTRAPOLATE = 200;   // ms
+  private static final int SIZE = 8;    // number of states kept
+
+  // a circular buffer of states, in time order
+  private long[] times = new long[SIZE];
+  private double[] xs = new double[SIZE];
+  private double[] zs = new double[SIZE];
+  private double[] rots = new double[SIZE];
+  private int newest = -1;    // index of the newest state
+  private int count = 0;
+
+  private boolean extrapolate;
+
+
+  public MotionBuffer(boolean extrapolate)
+  {  this.extrapolate = extrapolate;  }
+
+
+  synchronized public void setExtrapolate(boolean b)
+  {  extrapolate = b;  }
+
+
+  synchronized public void addState(long time, double x, double z, double rot)
+  /* Add a state which applies at the local time, time. A state
+     older than the newest one is ignored, and one at the same
+     time replaces it. */
+  {
+    if (count > 0) {
+      if (time < times[newest])
+        return;
+      if (time == times[newest]) {
+        xs[newest] = x;  zs[newest] = z;  rots[newest] = rot;
+        return;
+      }
+    }
+    newest = (newest+1) % SIZE;
+    times[newest] = time;
+    xs[newest] = x;  zs[newest] = z;  rots[newest] = rot;
+    if (count < SIZE)
+      count++;
+  }  // end of addState()
+
+
+
+  synchronized public boolean getState(long renderTime, double[] state)
+  /* Store the sprite's state at renderTime in state[] (x, z, rot).
+     Returns false if there are no states yet. */
+  {
+    if (count == 0)
+      return false;
+
+    int older = (newest - count + 1 + SIZE) % SIZE;
+    if ((count == 1) || (renderTime <= times[older])) {
+      setState(state, older);
+      return true;
+    }
+
+    if (renderTime >= times[newest]) {
+      int prev = (newest - 1 + SIZE) % SIZE;
+      long t = Math.min(renderTime - times[newest], MAX_EXTRAPOLATE);
+      if (!extrapolate || (t == 0))
+        setState(state, newest);
+      else    // carry on from the newest, at the speed between prev and it
+        blend(state, prev, newest,
+              1.0 + ((double) t)/(times[newest] - times[prev]));
+      return true;
+    }
+
+    // find the two states either side of renderTime
+    int i = older;
+    int next = (i+1) % SIZE;
+    while (times[next] < renderTime) {
+      i = next;
+      next = (i+1) % SIZE;
+    }
+    blend(state, i, next,
+          ((double)(renderTime - times[i]))/(times[next] - times[i]));
+    return true;
+  }  // end of getState()
+
+
+  synchronized public boolean getNewest(double[] state)
+  // the newest state, without any interpolation
+  {
+    if (count == 0)
+      return false;
+    setState(state, newest);
+    return true;
+  }  // end of getNewest()
+
+
+
+  private void setState(double[] state, int i)
+  {  state[0] = xs[i];  state[1] = zs[i];  state[2] = rots[i];  }
+
+
+  private void blend(double[] state, int a, int b, double frac)
+  // a weighting of states a and b; frac > 1 goes past b
+  {
+    state[0] = xs[a] + (xs[b] - xs[a])*frac;
+    state[1] = zs[a] + (zs[b] - zs[a])*frac;
+    state[2] = rots[a] + (rots[b] - rots[a])*frac;
+       // the rotation isn't wrapped at 2 PI, so this is safe
+  }  // end of blend()
+
+}  // end of MotionBuffer class
@@ -0,0 +1,117 @@
+
+// NetSimulator.java
+
+/* Sends datagrams through a simulated bad network, so the
+   snapshot channel can be tried out on a single machine.
+
+   Each datagram is dropped with probability sim.loss, and the
+   rest are delayed by sim.latency ms, plus a random amount of
+   up to sim.jitter ms. The jitter means that datagrams can
+   arrive out of order, as on a real network. The settings are
+   read from system properties, e.g.
+
+      java -Dsim.loss=0.2 -Dsim.latency=80 -Dsim.jitter=40 TourServer
+
+   Without them, send() sends each datagram straight away.
+
+   Both SnapshotServer and SnapshotClient send through here, so
+   the simulation affects the datagrams sent by whichever end
+   has the properties set (or both directions, if they are in
+   the same JVM, as in SnapshotTest).
+*/
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+
+public class NetSimulator
+{
+  private static double loss = getDouble("sim.loss");     // 0 to 1
+  private static int latency = (int) getDouble("sim.latency");   // ms
+  private static int jitter = (int) getDouble("sim.jitter");     // ms
+
+  private static Random rand = new Random();
+  private static Timer timer = null;    // sends the delayed datagrams
+
+  // statistics
+  private static long numSent = 0;
+  private static long numDropped = 0;
+
+
+
+  public static void send(DatagramSocket sock, DatagramPacket packet)
+                                                      throws IOException
+  {
+    if (!isOn()) {
+      sock.send(packet);
+      return;
+    }
+
+    synchronized(NetSimulator.class) {
+      numSent++;
+      if (rand.nextDouble() < loss) {
+        numDropped++;
+        return;
+      }
+      if (timer == null)
+        timer = new Timer(true);   // a daemon thread
+    }
+
+    // copy the packet, since the caller may reuse its buffer
+    byte[] data = new byte[packet.getLength()];
+    System.arraycopy(packet.getData(), packet.getOffset(), data, 0, data.length);
+    final DatagramSocket s = sock;
+    final DatagramPacket p = new DatagramPacket(data, data.length,
+                                   packet.getAddress(), packet.getPort());
+    long delay = latency;
+    if (jitter > 0)
+      delay += rand.nextInt(jitter+1);
+
+    timer.schedule( new TimerTask() {
+      public void run()
+      { try {
+          s.send(p);
+        }
+        catch(IOException e) {}   // the socket has been closed
+      }
+    }, delay);
+  }  // end of send()
+
+
+
+  public static boolean isOn()
+  {  return (loss > 0) || (latency > 0) || (jitter > 0);  }
+
+
+  public static void setConditions(double l, int lat, int jit)
+  // change the simulated network, e.g. from a test program
+  {  loss = l;  latency = lat;  jitter = jit;  }
+
+
+  public static String getStats()
+  {
+    if (!isOn())
+      return "no network simulation";
+    return "loss " + loss + ", latency " + latency + " ms, jitter " +
+           jitter + " ms: " + numDropped + " of " + numSent +
+           " datagrams dropped";
+  }  // end of getStats()
+
+
+
+  private static double getDouble(String prop)
+  {
+    String val = System.getProperty(prop);
+    if (val == null)
+      return 0;
+    try {
+      return Double.parseDouble(val);
+    }
+    catch(NumberFormatException e)
+    { System.out.println("Bad " + prop + " value: " + val);
+      return 0;
+    }
+  }  // end of getDouble()
+
+}  // end of NetSimulator class
@@ -0,0 +1,286 @@
+
+// SnapshotClient.java
+
+/* The client end of the snapshot channel (see TourWire).
+
+   Created when the server's S_UDP frame arrives, with the token
+   which identifies this client's datagrams. It sends U_ACK
+   datagrams every HELLO_INTERVAL ms until the first snapshot
+   arrives (so the server learns the client's address), and then
+   one straight after each snapshot, to acknowledge it.
+
+   Each snapshot only holds the differences from an earlier one
+   (baseSeq), so the last HISTORY snapshots are kept, as the
+   complete state they lead to. A snapshot older than the newest
+   one received is ignored, since it arrived out of order.
+
+   The sprites' states go to their MotionBuffers, which are added
+   with track() when the sprite is created (by its S_DETAILS frame)
+   and removed with untrack(). The state of every tracked sprite is
+   added at each snapshot, even if it hasn't changed, so the
+   buffers know the sprites are still, rather than their states
+   being lost.
+
+   The times in the buffers are local times. The server's time in
+   each snapshot is changed into one using clockOffset, the smallest
+   difference between the local time a snapshot arrived and the time
+   it was sent. The smallest is from the least delayed snapshot, so
+   the network jitter doesn't get into the sprites' movements.
+
+   Once a snapshot has arrived (isActive() returns true), the
+   client's own sprite position is sent with sendMove() instead of
+   over TCP. Each move is sent straight away, and again every
+   CLIENT_TICK ms for RESEND_TIME ms afterwards (with the same
+   moveSeq, so the server ignores repeats), so the last position
+   reaches the server even if a datagram is lost.
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+
+
+public class SnapshotClient
+{
+  private static final int HISTORY = 32;
+  private static final int HELLO_INTERVAL = 200;   // ms
+  private static final int MAX_HELLOS = 25;
+  private static final int CLIENT_TICK = 100;    // ms
+  private static final int RESEND_TIME = 500;    // ms
+
+  private DatagramSocket sock;
+  private InetSocketAddress server;
+  private int token;
+
+  private HashMap motions = new HashMap();   // (Integer id, MotionBuffer) pairs
+  private int[] seqs = new int[HISTORY];
+  private HashMap[] states = new HashMap[HISTORY];
+  private int latestSeq = -1;
+  private long clockOffset = Long.MAX_VALUE;
+  private boolean active = false;    // has a snapshot arrived?
+
+  // the client's own sprite
+  private int moveSeq = 0;
+  private float moveX, moveZ, moveRot;
+  private long moveTime = 0;
+
+  private byte[] sendBytes = new byte[25];
+
+  // statistics
+  private long numSnapshots = 0;
+  private long numBytes = 0;
+  private long numLate = 0;
+  private long numNoBase = 0;
+  private long numMissed = 0;
+
+
+
+  public SnapshotClient(String host, int port, int token) throws IOException
+  {
+    this.token = token;
+    server = new InetSocketAddress(host, port);
+    sock = new DatagramSocket();
+    Arrays.fill(seqs, -1);
+    startReceiver();
+    startTicker();
+  }  // end of SnapshotClient()
+
+
+  synchronized public void track(int id, MotionBuffer motion)
+  {  motions.put(new Integer(id), motion);  }
+
+  synchronized public void untrack(int id)
+  {  motions.remove(new Integer(id));  }
+
+  synchronized public boolean isActive()
+  {  return active;  }
+
+
+  public void close()
+  {  sock.close();  }
+
+
+
+  // ------------------------ receiving -----------------------
+
+  private void startReceiver()
+  {
+    Thread t = new Thread("SnapshotClient") {
+      public void run()
+      {
+        byte[] bytes = new byte[TourWire.MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (true) {
+          try {
+            packet.setLength(bytes.length);
+            sock.receive(packet);
+            buf.clear();
+            buf.limit( packet.getLength() );
+            if (buf.get() == TourWire.U_SNAPSHOT) {
+              if (readSnapshot(buf))
+                sendDatagram();     // acknowledge it
+            }
+          }
+          catch(BufferUnderflowException e)
+          {  System.out.println("Bad snapshot");  }
+          catch(IOException e)    // the socket has been closed
+          {  break;  }
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+  }  // end of startReceiver()
+
+
+
+  synchronized private boolean readSnapshot(ByteBuffer buf)
+  /* Rebuild the complete state from the snapshot's baseline and
+     the differences in it, and pass the tracked sprites' states to
+     their MotionBuffers. Returns false if the snapshot can't be used. */
+  {
+    int seq = buf.getInt();
+    int baseSeq = buf.getInt();
+    long serverTime = buf.getInt();
+    int count = buf.getShort();
+
+    if (seq <= latestSeq) {    // out of order
+      numLate++;
+      return false;
+    }
+
+    HashMap state;
+    if (baseSeq == -1)
+      state = new HashMap();
+    else if (seqs[baseSeq % HISTORY] == baseSeq)
+      state = new HashMap( states[baseSeq % HISTORY] );
+    else {   // shouldn't happen, since the server only uses acknowledged ones
+      numNoBase++;
+      return false;
+    }
+
+    for (int i=0; i < count; i++) {
+      Integer id = new Integer( buf.getInt() );
+      int flags = buf.get();
+      if ((flags & TourWire.F_GONE) != 0) {
+        state.remove(id);
+        continue;
+      }
+      float[] old = (float[]) state.get(id);
+      float[] s = (old == null) ? new float[3] : (float[]) old.clone();
+      if ((flags & TourWire.F_X) != 0) s[0] = buf.getFloat();
+      if ((flags & TourWire.F_Z) != 0) s[1] = buf.getFloat();
+      if ((flags & TourWire.F_ROT) != 0) s[2] = buf.getFloat();
+      state.put(id, s);
+    }
+
+    if (latestSeq != -1)
+      numMissed += seq - latestSeq - 1;
+    latestSeq = seq;
+    seqs[seq % HISTORY] = seq;
+    states[seq % HISTORY] = state;
+    active = true;
+    numSnapshots++;
+    numBytes += buf.limit();
+
+    long now = System.currentTimeMillis();
+    if (now - serverTime < clockOffset)
+      clockOffset = now - serverTime;
+    long time = serverTime + clockOffset;
+
+    Iterator it = motions.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry e = (Map.Entry) it.next();
+      float[] s = (float[]) state.get( e.getKey() );
+      if (s != null)
+        ((MotionBuffer) e.getValue()).addState(time, s[0], s[1], s[2]);
+    }
+    return true;
+  }  // end of readSnapshot()
+
+
+
+  // ------------------------ sending -----------------------
+
+  synchronized public void sendMove(double x, double z, double rot)
+  // send the client's sprite position
+  {
+    moveSeq++;
+    moveX = (float) x;  moveZ = (float) z;  moveRot = (float) rot;
+    moveTime = System.currentTimeMillis();
+    sendDatagram();
+  }  // end of sendMove()
+
+
+
+  private void startTicker()
+  // send hellos until a snapshot arrives, and repeat recent moves
+  {
+    Thread t = new Thread("SnapshotTicker") {
+      public void run()
+      {
+        int numHellos = 0;
+        while (true) {
+          try {
+            Thread.sleep(active ? CLIENT_TICK : HELLO_INTERVAL);
+          }
+          catch(InterruptedException e) {}
+          if (sock.isClosed())
+            break;
+          synchronized(SnapshotClient.this) {
+            if (!active) {
+              if (numHellos < MAX_HELLOS) {
+                sendDatagram();
+                numHellos++;
+              }
+            }
+            else if ((moveTime != 0) &&
+                     (System.currentTimeMillis() - moveTime < RESEND_TIME))
+              sendDatagram();
+          }
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+  }  // end of startTicker()
+
+
+
+  synchronized private void sendDatagram()
+  /* Send a U_MOVE if the client's sprite has moved recently, or
+     a U_ACK; both acknowledge the newest snapshot. */
+  {
+    ByteBuffer buf = ByteBuffer.wrap(sendBytes);
+    boolean recentMove = (moveTime != 0) &&
+              (System.currentTimeMillis() - moveTime < RESEND_TIME);
+    buf.put((byte) (recentMove ? TourWire.U_MOVE : TourWire.U_ACK));
+    buf.putInt(token);
+    buf.putInt(latestSeq);
+    buf.putInt(moveSeq);
+    if (recentMove) {
+      buf.putFloat(moveX);
+      buf.putFloat(moveZ);
+      buf.putFloat(moveRot);
+    }
+    try {
+      NetSimulator.send(sock, new DatagramPacket(sendBytes, buf.position(),
+                                     server.getAddress(), server.getPort()));
+    }
+    catch(IOException e) {}   // the socket has been closed
+  }  // end of sendDatagram()
+
+
+
+  synchronized public String getStats()
+  {
+    if (numSnapshots == 0)
+      return "no snapshots received";
+    return numSnapshots + " snapshots received (average " +
+           (numBytes/numSnapshots) + " bytes), " + numMissed + " missed, " +
+           numLate + " out of order, " + numNoBase + " without a baseline";
+  }  // end of getStats()
+
+}  // end of SnapshotClient class
@@ -0,0 +1,203 @@
+
+// SnapshotServer.java
+
+/* The server end of the snapshot channel (see TourWire).
+
+   A thread reads the clients' datagrams from UDP_PORT, and passes
+   them to the TourGroup, which looks up the client by its token.
+   A U_MOVE holds the client's sprite position, and both kinds of
+   datagram acknowledge the newest snapshot the client has.
+
+   At each tick, the TourGroup calls sendSnapshot() for each client
+   using the channel, instead of sending it "at" messages over TCP.
+
+   Sending the differences from an acknowledged snapshot (rather
+   than from the last one sent) means a lost snapshot doesn't
+   matter: the next one is built from the same baseline, so it
+   holds all the changes the lost one did, and the client can use
+   it on its own. When nothing is lost, a snapshot only holds the
+   sprites which moved in the last tick or so.
+
+   Since the client can't tell a lost snapshot from one which
+   wasn't sent, a few empty snapshots (IDLE_TICKS) are sent after
+   the sprites stop, to tell the client that they are still.
+
+   A snapshot holds at most MAX_ENTRIES sprites, to fit in one
+   datagram; any others are sent in the next one.
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+
+
+public class SnapshotServer
+{
+  private static final int MAX_ENTRIES =
+       (TourWire.MAX_DATAGRAM - 15) / 17;  // header, and (id flags x z rot)
+  private static final int IDLE_TICKS = 5;
+
+  private DatagramSocket sock;
+  private TourGroup tg;
+  private long startTime;
+
+  private byte[] sendBytes = new byte[TourWire.MAX_DATAGRAM];
+  private HashSet ids = new HashSet();   // used by sendSnapshot()
+  private ArrayList gone = new ArrayList();
+
+  // statistics
+  private long numSnapshots = 0;
+  private long numBytes = 0;
+
+
+  public SnapshotServer(TourGroup tg, int port) throws SocketException
+  {
+    this.tg = tg;
+    sock = new DatagramSocket(port);
+    startTime = System.currentTimeMillis();
+    startReceiver();
+  }  // end of SnapshotServer()
+
+
+
+  private void startReceiver()
+  // read client datagrams, and pass them to the TourGroup
+  {
+    Thread t = new Thread("SnapshotReceiver") {
+      public void run()
+      {
+        byte[] bytes = new byte[64];
+        DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (true) {
+          try {
+            packet.setLength(bytes.length);
+            sock.receive(packet);
+            buf.clear();
+            buf.limit( packet.getLength() );
+            int type = buf.get();
+            int token = buf.getInt();
+            int ackSeq = buf.getInt();
+            int moveSeq = buf.getInt();
+            if (type == TourWire.U_MOVE)
+              tg.udpReceived(token, packet.getSocketAddress(), ackSeq,
+                     moveSeq, buf.getFloat(), buf.getFloat(), buf.getFloat());
+            else if (type == TourWire.U_ACK)
+              tg.udpReceived(token, packet.getSocketAddress(), ackSeq,
+                                                       -1, 0, 0, 0);
+          }
+          catch(BufferUnderflowException e)
+          {  System.out.println("Bad datagram from " + packet.getSocketAddress());  }
+          catch(IOException e)
+          { System.out.println(e);
+            break;
+          }
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+  }  // end of startReceiver()
+
+
+
+  public void sendSnapshot(TouristInfo ti)
+  /* Send ti the positions of the sprites in its range, which are
+     different from those in the snapshot it last acknowledged.
+     Called with the TourGroup's lock held. */
+  {
+    UdpPeer peer = ti.udp;
+    if (peer.addr == null)    // no datagram from the client yet
+      return;
+
+    int baseSeq = peer.getBaseSeq();
+    HashMap state = (baseSeq == -1) ? new HashMap() :
+                                      new HashMap( peer.getState(baseSeq) );
+
+    ByteBuffer buf = ByteBuffer.wrap(sendBytes);
+    buf.put((byte) TourWire.U_SNAPSHOT);
+    buf.putInt(0);       // seq, filled in below
+    buf.putInt(baseSeq);
+    buf.putInt( (int)(System.currentTimeMillis() - startTime) );
+    int countPos = buf.position();
+    buf.putShort((short) 0);
+    int count = 0;
+
+    // the sprites in range which are new or have changed
+    ids.clear();
+    TouristInfo other;
+    Iterator it = ti.seen.iterator();
+    while (it.hasNext()) {
+      other = (TouristInfo) it.next();
+      Integer id = new Integer(other.id);
+      ids.add(id);
+      float x = (float) other.x;
+      float z = (float) other.z;
+      float rot = (float) other.rot;
+      float[] old = (float[]) state.get(id);
+      int flags = TourWire.F_X | TourWire.F_Z | TourWire.F_ROT;
+      if (old != null) {
+        if (old[0] == x) flags &= ~TourWire.F_X;
+        if (old[1] == z) flags &= ~TourWire.F_Z;
+        if (old[2] == rot) flags &= ~TourWire.F_ROT;
+      }
+      if ((flags == 0) || (count == MAX_ENTRIES))
+        continue;
+      buf.putInt(other.id);
+      buf.put((byte) flags);
+      if ((flags & TourWire.F_X) != 0) buf.putFloat(x);
+      if ((flags & TourWire.F_Z) != 0) buf.putFloat(z);
+      if ((flags & TourWire.F_ROT) != 0) buf.putFloat(rot);
+      state.put(id, new float[] {x, z, rot});
+      count++;
+    }
+
+    // the sprites which have gone out of range
+    gone.clear();
+    it = state.keySet().iterator();
+    while (it.hasNext()) {
+      Object id = it.next();
+      if (!ids.contains(id))
+        gone.add(id);
+    }
+    for (int i=0; (i < gone.size()) && (count < MAX_ENTRIES); i++) {
+      buf.putInt( ((Integer) gone.get(i)).intValue() );
+      buf.put((byte) TourWire.F_GONE);
+      state.remove( gone.get(i) );
+      count++;
+    }
+
+    if (count > 0)
+      peer.idleTicks = 0;
+    else if (baseSeq == -1)   // nothing to tell the client about
+      return;
+    else if (peer.idleTicks >= IDLE_TICKS)  // it knows the sprites are still
+      return;
+    else
+      peer.idleTicks++;
+
+    int seq = peer.addSnapshot(state);
+    buf.putInt(1, seq);
+    buf.putShort(countPos, (short) count);
+    try {
+      NetSimulator.send(sock,
+               new DatagramPacket(sendBytes, buf.position(), peer.addr));
+      numSnapshots++;
+      numBytes += buf.position();
+    }
+    catch(IOException e)
+    {  System.out.println("Snapshot to " + ti.userName + ": " + e);  }
+  }  // end of sendSnapshot()
+
+
+
+  public String getStats()
+  {
+    if (numSnapshots == 0)
+      return "no snapshots sent";
+    return numSnapshots + " snapshots sent, average " +
+                   (numBytes/numSnapshots) + " bytes";
+  }  // end of getStats()
+
+}  // end of SnapshotServer class
@@ -0,0 +1,278 @@
+
+// SnapshotTest.java
+
+/* A test of the snapshot channel and the MotionBuffer, through
+   a simulated bad network (see NetSimulator), without Java 3D.
+
+   A TourServer is started in this JVM, with two clients: a mover,
+   which walks around a circle of radius RADIUS, sending its position
+   every MOVE_INTERVAL ms (like a user holding down a movement key),
+   and an observer standing nearby, which gets the mover's positions
+   in snapshots.
+
+   Every FRAME ms, the observer works out where it would draw the
+   mover, in two ways:
+     * interpolated: from its MotionBuffer, INTERP_DELAY ms in the
+       past, as a DistTourSprite does;
+     * newest: at the newest position received, as a DistTourSprite
+       did before.
+
+   At the end, each drawn path is compared with the mover's real
+   path, delayed by whatever lag fits it best. The error shows how
+   far the drawn sprite is from where it should be, and the largest
+   jump between frames how smoothly it moves (the real path moves
+   a steady SPEED*FRAME/1000 each frame).
+
+   Usage:
+     java SnapshotTest [ loss [ latency [ jitter [ seconds ] ] ] ]
+
+   The default is 10% loss, 50 ms latency, 30 ms jitter, for 20 secs.
+   The datagrams in both directions go through the simulation.
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.text.DecimalFormat;
+import java.util.*;
+
+
+public class SnapshotTest
+{
+  private static final String HOST = "localhost";
+
+  private static final double RADIUS = 2.0;
+  private static final double OMEGA = 1.0;    // radians/sec
+  private static final double SPEED = RADIUS*OMEGA;   // units/sec
+  private static final int MOVE_INTERVAL = 33;   // ms
+  private static final int FRAME = 20;    // ms
+  private static final int WARM_UP = 2000;    // ms before measuring
+  private static final int MAX_LAG = 1000;    // ms
+
+  private long startTime;
+  private int moverID = -1;     // set by the observer's reader
+  private MotionBuffer motion = new MotionBuffer(true);
+
+  private DecimalFormat df = new DecimalFormat("0.###");
+
+
+
+  public SnapshotTest(int seconds) throws Exception
+  {
+    startServer();
+
+    startTime = System.currentTimeMillis();
+    TestClient observer = new TestClient("observer", 1.0, 0.5);
+    TestClient mover = new TestClient("mover", RADIUS, 0);
+
+    // wait for both snapshot channels to work
+    long giveUp = System.currentTimeMillis() + 10000;
+    while (!(observer.isActive() && mover.isActive() && (moverID != -1))) {
+      if (System.currentTimeMillis() > giveUp) {
+        System.out.println("The snapshot channels didn't start");
+        System.exit(1);
+      }
+      mover.moveTo( System.currentTimeMillis() );
+      Thread.sleep(MOVE_INTERVAL);
+    }
+
+    // the mover's thread
+    final TestClient m = mover;
+    Thread t = new Thread() {
+      public void run()
+      { while (true) {
+          m.moveTo( System.currentTimeMillis() );
+          try {
+            Thread.sleep(MOVE_INTERVAL);
+          }
+          catch(InterruptedException e) {}
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+
+    // render the observer's view of the mover
+    int numFrames = (seconds*1000 - WARM_UP)/FRAME;
+    long[] times = new long[numFrames];
+    double[][] interp = new double[numFrames][3];
+    double[][] newest = new double[numFrames][3];
+    Thread.sleep(WARM_UP);
+    for (int i=0; i < numFrames; i++) {
+      long now = System.currentTimeMillis();
+      times[i] = now;
+      motion.getState(now - MotionBuffer.INTERP_DELAY, interp[i]);
+      motion.getNewest(newest[i]);
+      Thread.sleep(FRAME);
+    }
+
+    report("interpolated", times, interp);
+    report("newest", times, newest);
+    System.out.println("Observer: " + observer.snaps.getStats());
+    System.out.println("Mover: " + mover.snaps.getStats());
+    System.out.println("Network: " + NetSimulator.getStats());
+    System.exit(0);
+  }  // end of SnapshotTest()
+
+
+
+  private void startServer() throws InterruptedException
+  // run a TourServer in this JVM, so it uses the same NetSimulator
+  {
+    Thread t = new Thread() {
+      public void run()
+      {  new TourServer( HandlerExecutor.parseArgs(new String[0]) );  }
+    };
+    t.setDaemon(true);
+    t.start();
+    Thread.sleep(500);   // let it open its ports
+  }  // end of startServer()
+
+
+  private double realX(long time)
+  {  return RADIUS * Math.cos( OMEGA*(time - startTime)/1000.0 );  }
+
+  private double realZ(long time)
+  {  return RADIUS * Math.sin( OMEGA*(time - startTime)/1000.0 );  }
+
+
+
+  private void report(String name, long[] times, double[][] path)
+  /* Print the RMS distance between path and the real path at the
+     lag which fits best, and the largest jump between frames. */
+  {
+    double bestErr = Double.MAX_VALUE;
+    int bestLag = 0;
+    for (int lag=0; lag <= MAX_LAG; lag += 5) {
+      double sum = 0;
+      for (int i=0; i < times.length; i++) {
+        double dx = path[i][0] - realX(times[i] - lag);
+        double dz = path[i][1] - realZ(times[i] - lag);
+        sum += dx*dx + dz*dz;
+      }
+      double err = Math.sqrt(sum/times.length);
+      if (err < bestErr) {
+        bestErr = err;
+        bestLag = lag;
+      }
+    }
+
+    double maxJump = 0;
+    int numStill = 0;
+    for (int i=1; i < times.length; i++) {
+      double dx = path[i][0] - path[i-1][0];
+      double dz = path[i][1] - path[i-1][1];
+      double jump = Math.sqrt(dx*dx + dz*dz);
+      if (jump > maxJump)
+        maxJump = jump;
+      if (jump == 0)
+        numStill++;
+    }
+
+    System.out.println(name + ": error " + df.format(bestErr) +
+        " at lag " + bestLag + " ms; largest jump " + df.format(maxJump) +
+        " (steady " + df.format(SPEED*FRAME/1000.0) + "); still in " +
+        numStill + " of " + times.length + " frames");
+  }  // end of report()
+
+
+
+  // ------------------------------------------------------------
+
+  private class TestClient
+  /* A binary client with a snapshot channel. Its reader thread
+     tracks the mover's sprite in the observer. */
+  {
+    private String name;
+    private Socket sock;
+    private WireLink link;
+    private SnapshotClient snaps = null;
+
+    public TestClient(String name, double x, double z) throws IOException
+    {
+      this.name = name;
+      sock = new Socket(HOST, TourServer.PORT);
+      link = new WireLink(sock);
+      if (!link.offerBinary(sock, 2000)) {
+        System.out.println("The server doesn't use binary frames");
+        System.exit(1);
+      }
+      TourWire.sendUdpRequest(link);
+      TourWire.sendCreate(link, name, x, z);
+
+      Thread t = new Thread() {
+        public void run()
+        {  readFrames();  }
+      };
+      t.setDaemon(true);
+      t.start();
+    }  // end of TestClient()
+
+
+    synchronized public boolean isActive()
+    {  return (snaps != null) && snaps.isActive();  }
+
+
+    synchronized public void moveTo(long time)
+    {
+      double rot = OMEGA*(time - startTime)/1000.0;
+      if (isActive())
+        snaps.sendMove(realX(time), realZ(time), rot);
+      else
+        TourWire.sendAt(link, realX(time), realZ(time), rot);
+    }  // end of moveTo()
+
+
+    private void readFrames()
+    {
+      try {
+        ByteBuffer frame;
+        while ((frame = link.readFrame()) != null) {
+          int type = frame.get();
+          if (type == TourWire.S_UDP) {
+            int token = frame.getInt();
+            int port = frame.getInt();
+            synchronized(this) {
+              snaps = new SnapshotClient(HOST, port, token);
+            }
+          }
+          else if ((type == TourWire.S_DETAILS) && name.equals("observer")) {
+            int id = frame.getInt();
+            if (WireLink.getString(frame).equals("mover")) {
+              motion.addState(System.currentTimeMillis(), frame.getFloat(),
+                                      frame.getFloat(), frame.getFloat());
+              snaps.track(id, motion);
+              moverID = id;
+            }
+          }
+        }
+      }
+      catch(IOException e)
+      {  System.out.println(name + ": " + e);  }
+    }  // end of readFrames()
+
+  }  // end of TestClient class
+
+
+
+  // ------------------------------------------------------------
+
+  public static void main(String args[]) throws Exception
+  {
+    double loss = 0.1;
+    int latency = 50;
+    int jitter = 30;
+    int seconds = 20;
+    if (args.length > 0)
+      loss = Double.parseDouble(args[0]);
+    if (args.length > 1)
+      latency = Integer.parseInt(args[1]);
+    if (args.length > 2)
+      jitter = Integer.parseInt(args[2]);
+    if (args.length > 3)
+      seconds = Integer.parseInt(args[3]);
+    NetSimulator.setConditions(loss, latency, jitter);
+    new SnapshotTest(seconds);
+  }  // end of main()
+
+}  // end of SnapshotTest class
@@ -0,0 +1,110 @@
+
+// SpatialGrid.java
+
+/* A grid of square cells over the XZ plane, used by TourGroup
+   to find the tourists near a given position without looking
+   at every tourist.
+
+   Each cell is cellSize wide, and holds an ArrayList of the
+   TouristInfo objects whose (x,z) position is inside it. Only the
+   cells with tourists in them are stored, in a HashMap keyed on
+   the cell's (column, row), so the world can be any size.
+
+   If cellSize is at least the search range, a search only has
+   to look at the 3x3 block of cells around the position.
+
+   SpatialGrid is not synchronized; it is only used inside
+   TourGroup's synchronized methods.
+*/
+
+import java.util.*;
+
+
+public class SpatialGrid
+{
+  private double cellSize;
+  private HashMap cells;   // Long cell key --> ArrayList of TouristInfo
+
+
+  public SpatialGrid(double cellSize)
+  {  this.cellSize = cellSize;
+     cells = new HashMap();
+  }
+
+
+  public void add(TouristInfo ti)
+  // add ti to the cell containing its current position
+  {
+    ti.cellX = toCell(ti.x);
+    ti.cellZ = toCell(ti.z);
+    Long key = cellKey(ti.cellX, ti.cellZ);
+    ArrayList cell = (ArrayList) cells.get(key);
+    if (cell == null) {
+      cell = new ArrayList();
+      cells.put(key, cell);
+    }
+    cell.add(ti);
+  }  // end of add()
+
+
+  public void remove(TouristInfo ti)
+  // remove ti from the cell it was last added to
+  {
+    Long key = cellKey(ti.cellX, ti.cellZ);
+    ArrayList cell = (ArrayList) cells.get(key);
+    if (cell != null) {
+      cell.remove(ti);
+      if (cell.isEmpty())
+        cells.remove(key);    // don't keep empty cells
+    }
+  }  // end of remove()
+
+
+  public void update(TouristInfo ti)
+  // move ti to a new cell if its position has left the old one
+  {
+    if ((toCell(ti.x) != ti.cellX) || (toCell(ti.z) != ti.cellZ)) {
+      remove(ti);
+      add(ti);
+    }
+  }  // end of update()
+
+
+  public void getNear(double x, double z, double range, ArrayList near)
+  /* Add the tourists within range of (x,z) to near, including
+     any tourist at (x,z) itself. */
+  {
+    int cx0 = toCell(x - range);
+    int cx1 = toCell(x + range);
+    int cz0 = toCell(z - range);
+    int cz1 = toCell(z + range);
+    double range2 = range*range;
+
+    ArrayList cell;
+    TouristInfo ti;
+    double dx, dz;
+    for (int cx = cx0; cx <= cx1; cx++)
+      for (int cz = cz0; cz <= cz1; cz++) {
+        cell = (ArrayList) cells.get( cellKey(cx, cz) );
+        if (cell == null)
+          continue;
+        for (int i=0; i < cell.size(); i++) {
+          ti = (TouristInfo) cell.get(i);
+          dx = ti.x - x;
+          dz = ti.z - z;
+          if (dx*dx + dz*dz <= range2)
+            near.add(ti);
+        }
+      }
+  }  // end of getNear()
+
+
+  private int toCell(double coord)
+  {  return (int) Math.floor(coord/cellSize);  }
+
+
+  private Long cellKey(int cx, int cz)
+  {  return new Long( (((long) cx) << 32) | (cz & 0xffffffffL) );  }
+
+
+}  // end of SpatialGrid class
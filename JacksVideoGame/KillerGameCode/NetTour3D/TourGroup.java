@@ -4,59 +4,169 @@
 
 /* Maintains info about all the current clients.
 
-  A single TourGroup object is used by all the 
+  A single TourGroup object is used by all the
   TourServerHandler threads, so methods which
   manipulate the tourPeople ArrayList must be synchronised
   so that concurrent updates are prevented.
 
-  TourGroup handles 
+  TourGroup handles
     * the addition/removal of client details
-    * broadcasting, but not to the original sender
+    * the position of each client's sprite, and which other
+      clients can see it
+    * broadcasting, to the clients who can see the sender
     * sendTo() for communication with one client
 
+  Area of interest:
+  A client is only told about the sprites within VIEW_RANGE of
+  its own sprite, so the traffic doesn't grow with the square of
+  the number of clients. The sprites are kept in a SpatialGrid,
+  so finding the ones near a sprite only looks at a few cells.
+
+  The clients send their sprite's absolute position ("at" messages)
+  after every move, but these are not passed on straight away.
+  Every TICK_TIME ms, tick() sends each client one batch of messages,
+  as text lines or binary frames (see TourWire), holding:
+     * a "detailsFor" line for every sprite which has come into
+       range (which creates the sprite on that client),
+     * an "at" line for every sprite in range which has moved
+       since the last tick (however many moves it made),
+     * a "bye" line for every sprite which has gone out of
+       range (which removes the sprite).
+  A sprite has to move LEAVE_RANGE away before it is removed, so
+  a sprite moving back and forth on the edge of the view range
+  isn't removed and created over and over.
+
+  Snapshot channel:
+  A binary client can ask for a snapshot channel (see TourWire),
+  with enableUdp(). Once its first datagram has arrived, the
+  positions of the sprites in its range are sent to it in a
+  snapshot datagram at each tick (see SnapshotServer), rather
+  than in "at" messages. Its own positions arrive in datagrams,
+  and are passed to udpReceived(), which finds the client by the
+  token in the datagram. The "detailsFor" and "bye" messages still
+  go over the TCP link, since they mustn't be lost.
+
+  Writing:
+  None of the methods write to the clients' links while the group
+  is locked, since a client which is slow to read would hold up
+  the ticks for everyone. The messages are built under the lock,
+  and handed to each TouristInfo's send queue, which is written
+  out by a task run by the writers executor. A client whose queue
+  fills up is disconnected (see TouristInfo).
+
   Very similar to ChatGroup in the multithreaded Chat server.
 */
 
-import java.io.*;
+import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 public class TourGroup
 {
-  private ArrayList tourPeople;    
+  private static final double VIEW_RANGE = 5.0;   // the floor is 20 by 20
+  private static final double LEAVE_RANGE = VIEW_RANGE * 1.25;
+  private static final int TICK_TIME = 100;   // ms, 10 ticks/sec
+
+  private ArrayList tourPeople;
           // holds a list of TouristInfo objects
+  private SpatialGrid grid;       // of the created tourists
+  private boolean changed = false;   // since the last tick
+  private int nextID = 1;    // for identifying tourists in binary frames
+
+  private SnapshotServer snaps = null;   // null if there's no UDP port
+  private HashMap udpTourists = new HashMap();
+          // (Integer token, TouristInfo) pairs, for clients using snapshots
+  private Random rand = new Random();
+
+  private ExecutorService writers;   // runs the TouristInfos' writer tasks
+
+  private ArrayList near = new ArrayList();    // used by tick()
+  private HashSet nearSet = new HashSet();
 
 
   public TourGroup()
-  {  tourPeople = new ArrayList();  }
+  {  tourPeople = new ArrayList();
+     grid = new SpatialGrid(LEAVE_RANGE);
+     writers = Executors.newCachedThreadPool( new ThreadFactory() {
+       public Thread newThread(Runnable r)
+       {  Thread t = new Thread(r, "TourWriter");
+          t.setDaemon(true);
+          return t;
+       }
+     });
+     try {
+       snaps = new SnapshotServer(this, TourWire.UDP_PORT);
+     }
+     catch(SocketException e)
+     {  System.out.println("No snapshot channel: " + e);  }
+     startTicker();
+  }
 
 
-  synchronized public void addPerson(String cliAddr, int port, PrintWriter out)
-  {  tourPeople.add( new TouristInfo(cliAddr, port, out));  }
+  synchronized public TouristInfo addPerson(String cliAddr, int port,
+                                           Socket sock, WireLink link)
+  {  TouristInfo ti = new TouristInfo(cliAddr, port, sock, link,
+                                      nextID++, writers);
+     tourPeople.add(ti);
+     return ti;
+  }
 
 
-  synchronized public void delPerson(String cliAddr, int port,
-													String byeMsg)
-  // remove tourist and send 'bye' msg to all the others
-  { TouristInfo c;
+  synchronized public void createTourist(TouristInfo ti, String userName,
+                                                 double x, double z)
+  /* The client has created its sprite at (x,z). It will be sent
+     to the clients in range at the next tick. */
+  {
+    if (ti.isCreated())
+      return;
+    ti.userName = userName;
+    ti.x = x;  ti.z = z;  ti.rot = 0;
+    grid.add(ti);
+    changed = true;
+  }  // end of createTourist()
+
+
+  synchronized public void moveTourist(TouristInfo ti, double x, double z,
+                                                         double rot)
+  // record the sprite's new position; it will be sent at the next tick
+  {
+    if (!ti.isCreated())
+      return;
+    ti.x = x;  ti.z = z;  ti.rot = rot;
+    ti.moved = true;
+    changed = true;
+  }  // end of moveTourist()
+
+
+  synchronized public void delPerson(TouristInfo ti)
+  // remove tourist and send a 'bye' msg to all the clients who can see it
+  {
+    if (!tourPeople.remove(ti))
+      return;
+    if (ti.isCreated())
+      grid.remove(ti);
+    if (ti.udp != null)
+      udpTourists.remove( new Integer(ti.udp.token) );
+
+    TouristInfo c;
     for(int i=0; i < tourPeople.size(); i++) {
       c = (TouristInfo) tourPeople.get(i);
-      if (c.matches(cliAddr, port)) {
-        tourPeople.remove(i);
-        broadcast(cliAddr, port, byeMsg);
-        break;
+      if (c.seen.remove(ti)) {
+        c.addBye(ti);
+        c.sendBatch();
       }
     }
   }  // end of delPerson()
 
 
-  synchronized public void broadcast(String cliAddr, int port, String msg)
-  // broadcast to everyone but original msg sender
+  synchronized public void broadcast(TouristInfo from, String msg)
+  // broadcast to everyone who can see the msg sender
   {
     TouristInfo c;
     for(int i=0; i < tourPeople.size(); i++) {
       c = (TouristInfo) tourPeople.get(i);
-      if (!c.matches(cliAddr, port))
+      if (c.seen.contains(from))
         c.sendMessage(msg);
     }
   }  // end of broadcast()
@@ -76,4 +186,157 @@ public class TourGroup
   }  // end of sendTo()
 
 
+
+  // ---------------------- snapshots ---------------------------
+
+
+  synchronized public int enableUdp(TouristInfo ti)
+  /* The client has asked for a snapshot channel. Return the token
+     for its datagrams, or -1 if there's no channel. */
+  {
+    if (snaps == null)
+      return -1;
+    if (ti.udp == null) {
+      Integer token;
+      do {
+        token = new Integer( rand.nextInt(Integer.MAX_VALUE) );
+      } while (udpTourists.containsKey(token));
+      ti.udp = new UdpPeer( token.intValue() );
+      udpTourists.put(token, ti);
+    }
+    return ti.udp.token;
+  }  // end of enableUdp()
+
+
+
+  synchronized public void udpReceived(int token, SocketAddress addr,
+                         int ackSeq, int moveSeq, double x, double z, double rot)
+  /* A datagram from a client: it has received snapshot ackSeq, and
+     if moveSeq isn't -1, its sprite is at (x,z) with rotation rot.
+     The position is ignored if a newer one has already arrived. */
+  {
+    TouristInfo ti = (TouristInfo) udpTourists.get( new Integer(token) );
+    if (ti == null)    // unknown, or the client has gone
+      return;
+    UdpPeer peer = ti.udp;
+    peer.addr = addr;   // where to send its snapshots
+    peer.ack(ackSeq);
+    if (moveSeq > peer.lastMoveSeq) {
+      peer.lastMoveSeq = moveSeq;
+      moveTourist(ti, x, z, rot);
+    }
+  }  // end of udpReceived()
+
+
+  public String getSnapshotStats()
+  {  return (snaps == null) ? "no snapshot channel" : snaps.getStats();  }
+
+
+
+  // ---------------------- ticks ---------------------------
+
+
+  private void startTicker()
+  // call tick() every TICK_TIME ms
+  {
+    Thread t = new Thread("TourTicker") {
+      public void run()
+      {
+        while (true) {
+          try {
+            Thread.sleep(TICK_TIME);
+          }
+          catch(InterruptedException e) {}
+          tick();
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+  }  // end of startTicker()
+
+
+
+  synchronized private void tick()
+  /* Queue each client the changes to the sprites in its range
+     since the last tick, as a single message, and send a snapshot
+     to the clients using them. Nothing is sent over TCP if no
+     sprite has been created or moved. */
+  {
+    if (!changed && udpTourists.isEmpty())
+      return;
+    boolean wasChanged = changed;
+    changed = false;
+
+    TouristInfo ti;
+    if (wasChanged) {
+      for(int i=0; i < tourPeople.size(); i++) {
+        ti = (TouristInfo) tourPeople.get(i);
+        if (ti.moved)
+          grid.update(ti);
+      }
+    }
+
+    for(int i=0; i < tourPeople.size(); i++) {
+      ti = (TouristInfo) tourPeople.get(i);
+      if (ti.isCreated()) {
+        if (wasChanged) {
+          addChanges(ti);
+          ti.sendBatch();
+        }
+        if (ti.usesSnapshots())
+          snaps.sendSnapshot(ti);
+      }
+    }
+
+    for(int i=0; i < tourPeople.size(); i++)
+      ((TouristInfo) tourPeople.get(i)).moved = false;
+  }  // end of tick()
+
+
+
+  private void addChanges(TouristInfo ti)
+  /* Add a message to ti's batch for each sprite which has come
+     into its view range, moved inside it, or left it. The moves
+     are left out if ti gets snapshots. */
+  {
+    near.clear();
+    nearSet.clear();
+    grid.getNear(ti.x, ti.z, LEAVE_RANGE, near);
+
+    TouristInfo other;
+    double dx, dz;
+    for(int i=0; i < near.size(); i++) {
+      other = (TouristInfo) near.get(i);
+      if (other == ti)
+        continue;
+      if (ti.seen.contains(other)) {
+        nearSet.add(other);
+        if (other.moved && !ti.usesSnapshots())
+          ti.addAt(other);
+      }
+      else {
+        dx = other.x - ti.x;
+        dz = other.z - ti.z;
+        if (dx*dx + dz*dz <= VIEW_RANGE*VIEW_RANGE) {   // has come into view
+          ti.seen.add(other);
+          nearSet.add(other);
+          ti.addDetails(other);
+        }
+      }
+    }
+
+    if (ti.seen.size() > nearSet.size()) {   // some have left
+      Iterator it = ti.seen.iterator();
+      while (it.hasNext()) {
+        other = (TouristInfo) it.next();
+        if (!nearSet.contains(other)) {
+          it.remove();
+          ti.addBye(other);
+        }
+      }
+    }
+  }  // end of addChanges()
+
+
 }  // end of TourGroup class
@@ -0,0 +1,297 @@
+
+// TourLoadClient.java
+
+/* A load test for TourServer. It connects numTourists simulated
+   tourists from a single thread (using one selector). Each one
+   is created at a random spot on the floor, and then walks around
+   at random, sending an "at" message every MOVE_INTERVAL ms, like
+   a user holding down a movement key.
+
+   The tourists use binary frames (see WireLink and TourWire),
+   unless the client is started with -Dwire=text.
+
+   Every REPORT_INTERVAL secs, the number of messages sent, and
+   the messages and bytes received from the server per second are
+   printed. Since the server only sends each tourist the changes
+   to the sprites near it, once per tick, the bytes received should
+   grow about linearly with the number of tourists, not with its
+   square.
+
+   Usage:
+     java [ -Dwire=text ] TourLoadClient [ numTourists [ seconds [ host ] ] ]
+
+   The default is 200 tourists, for 30 seconds, on localhost.
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+
+public class TourLoadClient
+{
+  private static final int PORT = 5555;     // server details
+  private static final String HOST = "localhost";
+
+  private static final double FLOOR_LEN = 20.0;   // as in CheckerFloor
+  private static final double MOVERATE = 0.3;     // as in TourSprite
+  private static final int MOVE_INTERVAL = 50;    // ms between moves
+  private static final int REPORT_INTERVAL = 5;   // secs
+
+  private Selector selector;
+  private ByteBuffer readBuffer = ByteBuffer.allocateDirect(64*1024);
+  private ArrayList walkers = new ArrayList();
+  private boolean useBinary = WireLink.wantBinary();
+  private ByteBuffer writeBuffer = ByteBuffer.allocate(TourWire.MAX_FRAME);
+
+  // statistics
+  private long numSent = 0;
+  private long numMsgs = 0;
+  private long numBytes = 0;
+
+
+
+  public TourLoadClient(int numTourists, int seconds, String host)
+  {
+    try {
+      selector = Selector.open();
+      for (int i=0; i < numTourists; i++)
+        walkers.add( new Walker("t" + i, host) );
+      System.out.println("Connected " + numTourists + " tourists to " +
+              host + ":" + PORT + " using " + (useBinary ? "binary" : "text"));
+      runTourists( System.currentTimeMillis() + seconds*1000L );
+      for (int i=0; i < walkers.size(); i++)
+        ((Walker) walkers.get(i)).close();
+      selector.close();
+    }
+    catch(IOException e)
+    {  System.out.println(e);  }
+  }  // end of TourLoadClient()
+
+
+
+  private void runTourists(long endTime) throws IOException
+  // move the tourists, read the replies, and report
+  {
+    long now = System.currentTimeMillis();
+    long nextMove = now;
+    long nextReport = now + REPORT_INTERVAL*1000;
+    long lastSent = 0, lastMsgs = 0, lastBytes = 0;
+    Iterator it;
+    SelectionKey key;
+    while (now < endTime) {
+      if (now >= nextMove) {
+        for (int i=0; i < walkers.size(); i++)
+          ((Walker) walkers.get(i)).step();
+        nextMove += MOVE_INTERVAL;
+      }
+
+      selector.select( Math.max(1, nextMove - now) );
+      it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        key = (SelectionKey) it.next();
+        it.remove();
+        if (key.isValid() && key.isReadable())
+          ((Walker) key.attachment()).read(key);
+      }
+
+      now = System.currentTimeMillis();
+      if (now >= nextReport) {
+        System.out.println("Sent/sec: " + (numSent - lastSent)/REPORT_INTERVAL +
+            "; received msgs/sec: " + (numMsgs - lastMsgs)/REPORT_INTERVAL +
+            "; received KB/sec: " + (numBytes - lastBytes)/REPORT_INTERVAL/1024);
+        lastSent = numSent;  lastMsgs = numMsgs;  lastBytes = numBytes;
+        nextReport += REPORT_INTERVAL*1000;
+      }
+    }
+  }  // end of runTourists()
+
+
+
+  // -----------------------------------------------------------
+
+  private class Walker
+  // one simulated tourist
+  {
+    SocketChannel chan;
+    double x, z, rot;
+    boolean binary = false;
+    int frameLeft = -2;    // bytes of the current frame still to come,
+                           // or -2/-1 while reading its length
+    int lenHi;             // the first length byte
+
+    public Walker(String name, String host) throws IOException
+    {
+      chan = SocketChannel.open( new InetSocketAddress(host, PORT) );
+      x = (Math.random()-0.5) * (FLOOR_LEN-2);
+      z = (Math.random()-0.5) * (FLOOR_LEN-2);
+      rot = Math.random() * 2 * Math.PI;
+      if (useBinary)
+        binary = offerBinary();
+
+      if (binary) {
+        writeBuffer.clear();
+        int start = WireLink.startFrame(writeBuffer, TourWire.C_CREATE);
+        WireLink.putString(writeBuffer, name);
+        writeBuffer.putFloat((float) x);
+        writeBuffer.putFloat((float) z);
+        WireLink.endFrame(writeBuffer, start);
+        send(writeBuffer);
+      }
+      else
+        send("create " + name + " " + x + " " + z);
+      chan.configureBlocking(false);
+      chan.register(selector, SelectionKey.OP_READ, this);
+    }
+
+
+    private boolean offerBinary() throws IOException
+    // send the offer, and read the one-line reply (the server sends nothing before it)
+    {
+      send(WireLink.OFFER);
+      numSent--;
+      ByteBuffer b = ByteBuffer.allocate(1);
+      StringBuffer reply = new StringBuffer();
+      while (true) {
+        b.clear();
+        if (chan.read(b) == -1)
+          return false;
+        if (b.get(0) == '\n')
+          break;
+        reply.append((char) b.get(0));
+      }
+      return reply.toString().equals(WireLink.OFFER);
+    }  // end of offerBinary()
+
+
+    public void step()
+    // walk forward, turning now and again, and staying on the floor
+    {
+      if (Math.random() < 0.1)
+        rot += (Math.random() < 0.5) ? Math.PI/16.0 : -Math.PI/16.0;
+      double nx = x + MOVERATE*Math.sin(rot);
+      double nz = z + MOVERATE*Math.cos(rot);
+      if ((Math.abs(nx) > FLOOR_LEN/2 - 1) || (Math.abs(nz) > FLOOR_LEN/2 - 1))
+        rot += Math.PI;     // turn back
+      else {
+        x = nx;  z = nz;
+      }
+      try {
+        if (binary) {
+          writeBuffer.clear();
+          int start = WireLink.startFrame(writeBuffer, TourWire.C_AT);
+          writeBuffer.putFloat((float) x);
+          writeBuffer.putFloat((float) z);
+          writeBuffer.putFloat((float) rot);
+          WireLink.endFrame(writeBuffer, start);
+          send(writeBuffer);
+        }
+        else
+          send("at " + x + " " + z + " " + rot);
+      }
+      catch(IOException e)
+      {  close();  }
+    }  // end of step()
+
+
+    private void send(String msg) throws IOException
+    {  send( ByteBuffer.wrap( (msg + "\n").getBytes() ) );  }
+
+
+    private void send(ByteBuffer buf) throws IOException
+    {
+      if (buf.position() > 0)   // a frame built in buf
+        buf.flip();
+      while (buf.hasRemaining())
+        chan.write(buf);
+      numSent++;
+    }
+
+
+    public void read(SelectionKey key)
+    {
+      readBuffer.clear();
+      try {
+        int n = chan.read(readBuffer);
+        if (n == -1) {
+          close();
+          return;
+        }
+        numBytes += n;
+        if (binary)
+          countFrames(n);
+        else {
+          for (int i=0; i < n; i++)
+            if (readBuffer.get(i) == '\n')
+              numMsgs++;
+        }
+      }
+      catch(IOException e)
+      {  close();  }
+    }  // end of read()
+
+
+    private void countFrames(int n)
+    // count the frames in the n bytes just read, using their lengths
+    {
+      int i = 0;
+      while (i < n) {
+        if (frameLeft == -2)    // first length byte
+          { lenHi = readBuffer.get(i++) & 0xff;  frameLeft = -1; }
+        else if (frameLeft == -1) {   // second length byte
+          frameLeft = (lenHi << 8) | (readBuffer.get(i++) & 0xff);
+          numMsgs++;
+          if (frameLeft == 0)
+            frameLeft = -2;
+        }
+        else {    // skip the frame's contents
+          int skip = Math.min(frameLeft, n-i);
+          frameLeft -= skip;
+          i += skip;
+          if (frameLeft == 0)
+            frameLeft = -2;
+        }
+      }
+    }  // end of countFrames()
+
+
+    public void close()
+    {
+      SelectionKey key = chan.keyFor(selector);
+      if (key != null)
+        key.cancel();
+      try {
+        chan.close();
+      }
+      catch(IOException e) {}
+    }
+
+  }  // end of Walker class
+
+
+  // -----------------------------------------------------------
+
+  public static void main(String args[])
+  {
+    int numTourists = 200;
+    int seconds = 30;
+    String host = HOST;
+    try {
+      if (args.length > 0)
+        numTourists = Integer.parseInt(args[0]);
+      if (args.length > 1)
+        seconds = Integer.parseInt(args[1]);
+    }
+    catch(NumberFormatException e)
+    {  System.out.println("Usage: java TourLoadClient [ numTourists [ seconds [ host ] ] ]");
+       System.exit(0);
+    }
+    if (args.length > 2)
+      host = args[2];
+
+    new TourLoadClient(numTourists, seconds, host);
+  }  // end of main()
+
+}  // end of TourLoadClient class
@@ -9,6 +9,13 @@
    which is referenced by each thread.
 
    Very similar to the multithreaded Chat server.
+
+   The handlers are run by a HandlerExecutor, which can use a
+   virtual thread for each client (with -virtual), and limits
+   the number of clients (with -max <number>).
+
+   Usage:
+     java TourServer [ -virtual ] [ -max <number> ]
 */
 
 import java.net.*;
@@ -18,21 +25,32 @@ import java.io.*;
 public class TourServer
 {
   static final int PORT = 5555;
+  private static final int BACKLOG = 1024;   // queued connection requests
+  private static final int ACCEPT_BACKOFF = 100;   // ms after a failed accept()
   
   private TourGroup tg;
 
-  public TourServer()
+  public TourServer(HandlerExecutor executor)
   // wait for a client connection, spawn a thread, repeat
   {
     tg = new TourGroup();
     try {
-      ServerSocket serverSock = new ServerSocket(PORT);
+      ServerSocket serverSock = new ServerSocket(PORT, BACKLOG);
       Socket clientSock;
 
       while (true) {
         System.out.println("Waiting for a client...");
-        clientSock = serverSock.accept();
-        new TourServerHandler(clientSock, tg).start();
+        executor.waitForSlot();
+        try {
+          clientSock = serverSock.accept();
+        }
+        catch(IOException e) {    // e.g. out of file descriptors
+          executor.releaseSlot();
+          System.out.println("Accept failed: " + e);
+          Thread.sleep(ACCEPT_BACKOFF);    // then try again
+          continue;
+        }
+        executor.execute( new TourServerHandler(clientSock, tg) );
       }
     }
     catch(Exception e)
@@ -43,7 +61,7 @@ public class TourServer
   // -----------------------------------
 
   public static void main(String args[]) 
-  {  new TourServer();  }
+  {  new TourServer( HandlerExecutor.parseArgs(args) );  }
 
 } // end of TourServer class
 
@@ -8,33 +8,47 @@
    object, which is referenced by all the threads.
 
    The TourGroup object handles message broadcasting
-   via its broadcast() method.
+   via its broadcast() method, and sends each client the
+   positions of the sprites near it.
 
    Possible client messages:
       * create name xPosn zPosn   -- a new client wishes to join the world
 
+      * at xPosn zPosn rotRadians
+            -- the client's sprite has moved to (xPosn,zPosn),
+               and is rotated by rotRadians
+
 	  * detailsFor toAddr toPort xPosn zPosn rotRadians
             -- pass on info about this client's sprite to 
-               the client at (toAddr,toPort)
+               the client at (toAddr,toPort). The TourGroup now
+               sends sprite details itself, but older clients may
+               still send this message.
 
       * bye           -- client is disconnecting
 
       * <text>        -- broadcast text with the client's name at its front
 
+   The client may start by offering to use binary frames
+   (see WireLink), and then sends the same messages as frames
+   (see TourWire). A binary client can also ask for a snapshot
+   channel (C_UDP), which is set up by the TourGroup.
+
    Very similar to ChatServerHandler in the multithreaded Chat server.
 */
 
 import java.net.*;
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 
-public class TourServerHandler extends Thread
+public class TourServerHandler implements Runnable
 {
   private Socket clientSock;
   private String cliAddr;
   private String userName;
   private int port;
+  private TouristInfo tInfo;   // this client's details in the TourGroup
 
   private TourGroup tg;    // shared by all threads
 
@@ -51,46 +65,58 @@ public class TourServerHandler extends Thread
 
 
   public void run()
-  // process messages from the client
+  /* Process messages from the client. The client is removed from
+     the TourGroup, and its socket closed, however processing ends
+     (even if a message causes an unexpected exception). */
   {
     try {
-      // Get I/O streams from the socket
-      BufferedReader in  = new BufferedReader( 
-	  		new InputStreamReader( clientSock.getInputStream() ) );
-      PrintWriter out = 
-			new PrintWriter( clientSock.getOutputStream(), true );  // autoflush
+      // Get a text/binary link from the socket
+      WireLink link = new WireLink(clientSock);
 
-      tg.addPerson(cliAddr, port, out);   // add client details to TourGroup
+      tInfo = tg.addPerson(cliAddr, port, clientSock, link);   // add client details to TourGroup
 
-      processClient(in, out);        // interact with client
- 
+      processClient(link);        // interact with client
+    }
+    catch(Exception e)
+    {  System.out.println(e);  }
+    finally {
       // the client has finished when execution reaches here
-      tg.delPerson(cliAddr, port, userName + " bye");         // remove client details
-      clientSock.close();
+      if (tInfo != null)
+        tg.delPerson(tInfo);         // remove client details
+      try {
+        clientSock.close();
+      }
+      catch(IOException e) {}
       System.out.println("Client " + userName + " (" + 
                  cliAddr + ", " +  port +  ") connection closed");
     }
-    catch(Exception e)
-    {  System.out.println(e);  }
   }  // end of run()
 
 
-   private void processClient(BufferedReader in, PrintWriter out)
+   private void processClient(WireLink link)
    /* Stop when the input stream closes (is null) or "bye" is sent
-      Otherwise pass the input to doRequest(). */
+      Otherwise pass the input to doRequest(), or to doFrame()
+      once the link has switched to binary frames. */
    {
      String line;
+     ByteBuffer frame;
      boolean done = false;
      try {
        while (!done) {
-         if((line = in.readLine()) == null)
+         if (link.isBinaryIn()) {
+           if ((frame = link.readFrame()) == null)
+             done = true;
+           else
+             done = doFrame(frame);
+         }
+         else if((line = link.readLine()) == null)
            done = true;
          else {
            // System.out.println(userName + " received msg: " + line);
            if (line.trim().equals("bye"))
              done = true;
-           else 
-             doRequest(line.trim(), out);
+           else if (!link.acceptOffer(line.trim()))
+             doRequest(line.trim());
          }
        }
      }
@@ -99,9 +125,54 @@ public class TourServerHandler extends Thread
    }  // end of processClient()
 
 
-  private void doRequest(String line, PrintWriter out)
+  private boolean doFrame(ByteBuffer frame)
+  /* Deal with a binary frame, which holds the same information as
+     one of the text messages. Returns true for a C_BYE frame. */
+  {
+    try {
+      switch (frame.get()) {
+        case TourWire.C_CREATE:
+          String name = WireLink.getString(frame);
+          double xPosn = frame.getFloat();
+          double zPosn = frame.getFloat();
+          if (!tInfo.isCreated()) {
+            userName = name;
+            tg.createTourist(tInfo, userName, xPosn, zPosn);
+          }
+          break;
+        case TourWire.C_AT:
+          double x = frame.getFloat();
+          double z = frame.getFloat();
+          double rot = frame.getFloat();
+          tg.moveTourist(tInfo, x, z, rot);
+          break;
+        case TourWire.C_BYE:
+          return true;
+        case TourWire.C_TEXT:
+          doRequest( WireLink.getString(frame).trim() );
+          break;
+        case TourWire.C_UDP:
+          int token = tg.enableUdp(tInfo);
+          if (token != -1) {
+            ByteBuffer buf = ByteBuffer.allocate(TourWire.MAX_FRAME);
+            TourWire.putUdp(buf, token, TourWire.UDP_PORT);
+            tInfo.sendFrames(buf);    // after any queued messages
+          }   // else no reply, so the client carries on using TCP
+          break;
+        default:    // a newer message; skip it
+          break;
+      }
+    }
+    catch(BufferUnderflowException e)
+    {  System.out.println("Bad frame from " + userName);  }
+    return false;
+  }  // end of doFrame()
+
+
+  private void doRequest(String line)
   /*  The input line can be :
             create ...      -- there is a new client
+            at ...          -- the client's sprite has moved
 			detailsFor ...
       or	text		    -- which is broadcast, with the client's
 							   name at its front 
@@ -109,10 +180,12 @@ public class TourServerHandler extends Thread
   {
     if (line.startsWith("create"))
       sendCreate(line);
+    else if (line.startsWith("at "))
+      moveTo(line);
     else if (line.startsWith("detailsFor"))
       sendDetails(line);
     else  // use TourGroup object to broadcast the message
-      tg.broadcast(cliAddr, port, userName + " " + line);
+      tg.broadcast(tInfo, userName + " " + line);
   }  // end of doRequest()
 
 
@@ -124,20 +197,42 @@ public class TourServerHandler extends Thread
 
      Message format: create name xPosn zPosn
 
-     Store the user's name, extracted from the "create" message
+     Store the user's name, extracted from the "create" message.
+     The TourGroup tells this client about the sprites near it,
+     and the clients near it about this client's sprite, at its
+     next tick, so there's no need to ask the other clients for
+     their details.
   */
   { StringTokenizer st = new StringTokenizer(line);
-    st.nextToken();                  // skip 'create' word
-    userName = st.nextToken();
-    String xPosn = st.nextToken();   // don't parse
-    String zPosn = st.nextToken();   // don't parse
+    try {
+      st.nextToken();                  // skip 'create' word
+      String name = st.nextToken();
+      double xPosn = Double.parseDouble( st.nextToken() );
+      double zPosn = Double.parseDouble( st.nextToken() );
+      userName = name;
+      tg.createTourist(tInfo, userName, xPosn, zPosn);
+    }
+    catch(Exception e)
+    {  System.out.println("Bad create message: " + line);  }
+  } // end of sendCreate()
 
-    // request details from other clients
-    tg.broadcast(cliAddr, port, "wantDetails " + cliAddr + " " + port);
 
-    // tell other clients about the new one
-    tg.broadcast(cliAddr, port, "create " + userName + " "+xPosn+" "+zPosn);
-  } // end of sendCreate()
+
+  private void moveTo(String line)
+  /* Message format: at xPosn zPosn rotRadians
+     Record the sprite's new position in the TourGroup, which
+     passes it on at its next tick. */
+  { StringTokenizer st = new StringTokenizer(line);
+    try {
+      st.nextToken();                  // skip 'at' word
+      double xPosn = Double.parseDouble( st.nextToken() );
+      double zPosn = Double.parseDouble( st.nextToken() );
+      double rotRadians = Double.parseDouble( st.nextToken() );
+      tg.moveTourist(tInfo, xPosn, zPosn, rotRadians);
+    }
+    catch(Exception e)
+    {  System.out.println("Bad at message: " + line);  }
+  } // end of moveTo()
 
 
 
@@ -6,17 +6,24 @@
    when the sprite is moved or rotated.
 
    Net-related additions:
-     * a PrintWriter stream connected to the server so the 
-       sprite can send creation, movement, and rotation commands to it.
+     * a WireLink connected to the server so the sprite can send
+       creation, movement, and rotation commands to it (as text
+       or binary frames, see TourWire).
 
-       They will be passed to the other clients by the server,
-       so the client's sprite on those machines will be updated.
+       After each move or rotation, the sprite's new position and
+       rotation are sent in an "at" message. The server passes the
+       latest position on to the clients near the sprite a few times
+       a second, so the client's sprite on those machines will be
+       updated.
+
+       Once the client's snapshot channel is working, the position
+       is sent over that instead (see SnapshotClient).
 
      * extra arguments in the constructor to set the
        sprite's (x,z) position
 */
 
-import java.io.*;
+import javax.vecmath.*;
 
 
 public class TourSprite extends Sprite3D
@@ -24,49 +31,64 @@ public class TourSprite extends Sprite3D
   private final static double MOVERATE = 0.3;
   private final static double ROTATE_AMT = Math.PI / 16.0;
 
-  PrintWriter out;    // for sending commands to the server
+  WireLink link;    // for sending commands to the server
+  private SnapshotClient snaps = null;
 
 
   public TourSprite(String userName, String fnm, Obstacles obs,
-							double xPosn, double zPosn, PrintWriter o)
+							double xPosn, double zPosn, WireLink l)
   { super(userName, fnm, obs);
     setPosition(xPosn, zPosn);
-    out = o;
-    out.println("create " + userName + " " + xPosn + " " + zPosn);
+    link = l;
+    TourWire.sendCreate(link, userName, xPosn, zPosn);
   }  // end of TourSprite()
 
 
   // moves
   public boolean moveForward()
-  { out.println("forward");
-    return moveBy(0.0, MOVERATE); 
-  }
+  {  return sendMove( moveBy(0.0, MOVERATE) );  }
 
   public boolean moveBackward()
-  { out.println("back");
-    return moveBy(0.0, -MOVERATE); 
-  }
+  {  return sendMove( moveBy(0.0, -MOVERATE) );  }
 
   public boolean moveLeft()
-  { out.println("left");
-    return moveBy(-MOVERATE,0.0); 
-  }
+  {  return sendMove( moveBy(-MOVERATE,0.0) );  }
 
   public boolean moveRight()
-  { out.println("right");
-    return moveBy(MOVERATE,0.0); 
-  }
+  {  return sendMove( moveBy(MOVERATE,0.0) );  }
 
 
   // rotations in Y-axis only
   public void rotClock()
-  { out.println("rotClock");
-    doRotateY(-ROTATE_AMT); // clockwise
+  { doRotateY(-ROTATE_AMT); // clockwise
+    sendPosition();
   }
 
   public void rotCounterClock()
-  { out.println("rotCClock");
-    doRotateY(ROTATE_AMT);  // counter-clockwise
+  { doRotateY(ROTATE_AMT);  // counter-clockwise
+    sendPosition();
+  }
+
+
+  public void setSnapshots(SnapshotClient s)
+  {  snaps = s;  }
+
+
+  private boolean sendMove(boolean moved)
+  // only tell the server about moves which happened
+  { if (moved)
+      sendPosition();
+    return moved;
   }
 
+
+  private void sendPosition()
+  // Msg format: at xPosn zPosn rotRadians
+  { Point3d currLoc = getCurrLoc();
+    if ((snaps != null) && snaps.isActive())
+      snaps.sendMove(currLoc.x, currLoc.z, getCurrRotation());
+    else
+      TourWire.sendAt(link, currLoc.x, currLoc.z, getCurrRotation());
+  }  // end of sendPosition()
+
 }  // end of TourSprite
@@ -14,6 +14,10 @@
     * detailsFor userName xPosn zPosn rotRadians
          // another client sends details about itself to this client
 
+    * <name> at xPosn zPosn rotRadians
+         // the sprite of <name> has moved to (xPosn,zPosn),
+            with rotation rotRadians
+
     * <name> <command>
          // <command> can be one of:
             forward | back | left | right | rotCClock | rotClock | bye
@@ -31,36 +35,65 @@
    For each 'detailsFor' message received, a new sprite will be 
    created.
 
+   The server only tells this client about the sprites near its own
+   sprite. It sends a 'detailsFor' message when a sprite comes
+   into range, 'at' messages while it moves, and a 'bye' message
+   when it goes out of range (as well as when its client leaves).
+   Several of these messages may arrive together, once per server
+   tick.
+
    The other commands are mostly to move the sprites representing
    other clients.
+
+   If the link has switched to binary frames, the same messages
+   arrive as TourWire frames. These identify a visitor by the id
+   which came in its S_DETAILS frame, rather than by name.
+
+   An S_UDP frame starts the snapshot channel (see SnapshotClient).
+   The positions of the visitors then arrive in snapshots, and go
+   straight into their sprites' MotionBuffers, which are tracked by
+   the SnapshotClient from their S_DETAILS frame until their S_BYE.
 */
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
 import java.util.*;
 
 
 public class TourWatcher extends Thread
 {
   private HashMap visitors;   // stores (user name, sprite object) pairs
+  private HashMap visitorNames;   // stores (Integer id, user name) pairs
   private WrapNetTour3D w3d;
-  private BufferedReader in;
+  private WireLink link;
   private Obstacles obs;
+  private SnapshotClient snaps = null;
 
 
-  public TourWatcher(WrapNetTour3D w3d, BufferedReader i, Obstacles obs)
+  public TourWatcher(WrapNetTour3D w3d, WireLink l, Obstacles obs)
   { this.w3d = w3d;
-    in = i;  
+    link = l;  
     this.obs = obs;
     visitors = new HashMap();   // no visitors yet
+    visitorNames = new HashMap();
   }
 
 
   public void run()
   // read server messages and act on them.
   { String line;
+    ByteBuffer frame;
     try {
-      while ((line = in.readLine()) != null) {
+      while (true) {
+        if (link.isBinaryIn()) {
+          if ((frame = link.readFrame()) == null)
+            break;
+          doFrame(frame);
+          continue;
+        }
+        if ((line = link.readLine()) == null)
+          break;
         // System.out.println( line);
         if (line.startsWith("create"))
           createVisitor( line.trim() );
@@ -161,8 +194,71 @@ public class TourWatcher extends Thread
   }  // end of receiveDetails()
 
 
+  private void doFrame(ByteBuffer frame)
+  /* Deal with a binary frame from the server, which holds the
+     same information as one of the text messages. */
+  {
+    int type = frame.get();
+    if (type == TourWire.S_DETAILS) {
+      Integer id = new Integer( frame.getInt() );
+      String userName = WireLink.getString(frame);
+      double xPosn = frame.getFloat();
+      double zPosn = frame.getFloat();
+      double rotRadians = frame.getFloat();
+      if (visitors.containsKey(userName))
+        System.out.println("Duplicate name -- ignoring it");
+      else {
+        System.out.println("Making sprite for " + userName);
+        DistTourSprite dtSprite = 
+			w3d.addVisitor(userName, xPosn, zPosn, rotRadians);
+        visitors.put( userName, dtSprite);
+        visitorNames.put(id, userName);
+        if (snaps != null) {
+          dtSprite.getMotion().setExtrapolate(true);   // snapshots may be lost
+          snaps.track(id.intValue(), dtSprite.getMotion());
+        }
+      }
+    }
+    else if (type == TourWire.S_AT) {
+      String userName = (String) visitorNames.get( new Integer(frame.getInt()) );
+      DistTourSprite dtSprite = getVisitor(userName);
+      if (dtSprite != null)
+        dtSprite.addState(frame.getFloat(), frame.getFloat(), frame.getFloat());
+    }
+    else if (type == TourWire.S_BYE) {
+      int id = frame.getInt();
+      String userName = (String) visitorNames.remove( new Integer(id) );
+      DistTourSprite dtSprite = getVisitor(userName);
+      if (dtSprite != null) {
+        System.out.println("Removing info on " + userName);
+        if (snaps != null)
+          snaps.untrack(id);
+        w3d.removeVisitor(dtSprite);
+        visitors.remove(userName);
+      }
+    }
+    else if (type == TourWire.S_TEXT)
+      doCommand( WireLink.getString(frame).trim() );
+    else if (type == TourWire.S_UDP) {
+      int token = frame.getInt();
+      int port = frame.getInt();
+      snaps = w3d.startSnapshots(token, port);
+    }
+    // else a newer message; skip it
+  }  // end of doFrame()
+
+
+  private DistTourSprite getVisitor(String userName)
+  {
+    if (userName == null)
+      return null;
+    return (DistTourSprite) visitors.get(userName);
+  }
+
+
   private void doCommand(String line)
   /* Message formats:
+		<name> at xPosn zPosn rotRadians
 		<name> <command>
      where <command> can be one of:
         forward | back | left | right | rotCClock | rotClock | bye
@@ -180,7 +276,13 @@ public class TourWatcher extends Thread
     if (dtSprite == null)
       System.out.println(userName + " is not here");
     else {
-      if (command.equals("forward"))
+      if (command.equals("at")) {
+        double xPosn = Double.parseDouble( st.nextToken() );
+        double zPosn = Double.parseDouble( st.nextToken() );
+        double rotRadians = Double.parseDouble( st.nextToken() );
+        dtSprite.addState(xPosn, zPosn, rotRadians);
+      }
+      else if (command.equals("forward"))
         dtSprite.moveForward();
       else if (command.equals("back"))
         dtSprite.moveBackward();
@@ -194,7 +296,7 @@ public class TourWatcher extends Thread
         dtSprite.rotClock();
       else if (command.equals("bye")) {
         System.out.println("Removing info on " + userName);
-        dtSprite.detach();
+        w3d.removeVisitor(dtSprite);
         visitors.remove(userName);
       }
       else
@@ -0,0 +1,228 @@
+
+// TourWire.java
+
+/* The NetTour3D messages, in text and as binary frames
+   (see WireLink for the framing).
+
+   Client to server:
+      text                           binary frame fields
+      create name xPosn zPosn        C_CREATE  name x z
+      at xPosn zPosn rotRadians      C_AT      x z rot
+      bye                            C_BYE
+      <text>                         C_TEXT    text
+                                     C_UDP
+
+   Server to client:
+      detailsFor name xPosn zPosn rotRadians
+                                     S_DETAILS id name x z rot
+      name at xPosn zPosn rotRadians S_AT      id x z rot
+      name bye                       S_BYE     id
+      <text line>                    S_TEXT    line
+                                     S_UDP     token port
+
+   The positions and rotation are 4-byte floats in the frames.
+   The server gives each tourist an int id, and sends it in the
+   S_DETAILS frame, so the later frames about that tourist don't
+   need its name. The text messages use the name instead.
+
+   The methods here send the client's messages in whichever mode
+   the link is in, and build the server's frames.
+
+   Snapshot channel:
+   A binary client can ask for its sprite positions to come over
+   UDP instead, by sending C_UDP. The server replies with S_UDP,
+   holding a token which identifies the client in its datagrams,
+   and the server's UDP port. The sprites still come into and go
+   out of the client's range with S_DETAILS and S_BYE frames over
+   the TCP link, but their positions then arrive in snapshot
+   datagrams, and the client sends its own position in datagrams
+   too. A datagram is a type byte, followed by:
+
+   Client to server:
+      U_ACK   token ackSeq moveSeq            (also the first contact)
+      U_MOVE  token ackSeq moveSeq x z rot
+   Server to client:
+      U_SNAPSHOT  seq baseSeq serverTime count
+                  count * (id flags [x] [z] [rot])
+
+   A snapshot only holds the sprites which differ from the snapshot
+   baseSeq, which is the newest one the client has acknowledged
+   (-1 for none). flags says which of x, z, and rot follow, or
+   F_GONE if the sprite has left the client's range. See
+   SnapshotServer and SnapshotClient.
+*/
+
+import java.nio.*;
+import java.text.DecimalFormat;
+
+
+public class TourWire
+{
+  // client to server
+  public static final int C_CREATE = 1;
+  public static final int C_AT = 2;
+  public static final int C_BYE = 3;
+  public static final int C_TEXT = 4;
+  public static final int C_UDP = 5;
+
+  // server to client
+  public static final int S_DETAILS = 10;
+  public static final int S_AT = 11;
+  public static final int S_BYE = 12;
+  public static final int S_TEXT = 13;
+  public static final int S_UDP = 14;
+
+  // datagrams
+  public static final int UDP_PORT = 5556;
+  public static final int U_ACK = 1;
+  public static final int U_MOVE = 2;
+  public static final int U_SNAPSHOT = 3;
+
+  // snapshot entry flags
+  public static final int F_X = 1;
+  public static final int F_Z = 2;
+  public static final int F_ROT = 4;
+  public static final int F_GONE = 8;
+
+  public static final int MAX_DATAGRAM = 1400;   // bytes, less than a typical MTU
+
+  public static final int MAX_FRAME = 2+1+4+12 + WireLink.maxStringSize();
+
+  private static DecimalFormat df = new DecimalFormat("0.###");  // shorter text
+
+
+  // ------------------- client to server ---------------------
+
+  public static void sendCreate(WireLink link, String name,
+                                         double xPosn, double zPosn)
+  {
+    synchronized(link) {
+      if (link.isBinaryOut()) {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_FRAME);
+        int start = WireLink.startFrame(buf, C_CREATE);
+        WireLink.putString(buf, name);
+        buf.putFloat((float) xPosn);
+        buf.putFloat((float) zPosn);
+        WireLink.endFrame(buf, start);
+        link.write(buf);
+      }
+      else
+        link.writeLine("create " + name + " " + xPosn + " " + zPosn);
+    }
+  }  // end of sendCreate()
+
+
+  public static void sendAt(WireLink link, double xPosn, double zPosn,
+                                                  double rotRadians)
+  {
+    synchronized(link) {
+      if (link.isBinaryOut()) {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_FRAME);
+        int start = WireLink.startFrame(buf, C_AT);
+        buf.putFloat((float) xPosn);
+        buf.putFloat((float) zPosn);
+        buf.putFloat((float) rotRadians);
+        WireLink.endFrame(buf, start);
+        link.write(buf);
+      }
+      else
+        link.writeLine("at " + df.format(xPosn) + " " + df.format(zPosn) +
+                                           " " + df.format(rotRadians) );
+    }
+  }  // end of sendAt()
+
+
+  public static void sendBye(WireLink link)
+  {
+    synchronized(link) {
+      if (link.isBinaryOut()) {
+        ByteBuffer buf = ByteBuffer.allocate(3);
+        WireLink.endFrame(buf, WireLink.startFrame(buf, C_BYE));
+        link.write(buf);
+      }
+      else
+        link.writeLine("bye");
+    }
+  }  // end of sendBye()
+
+
+  public static void sendText(WireLink link, String text)
+  // any other message, e.g. "detailsFor" for an old server
+  {
+    synchronized(link) {
+      if (link.isBinaryOut()) {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_FRAME);
+        int start = WireLink.startFrame(buf, C_TEXT);
+        WireLink.putString(buf, text);
+        WireLink.endFrame(buf, start);
+        link.write(buf);
+      }
+      else
+        link.writeLine(text);
+    }
+  }  // end of sendText()
+
+
+  public static void sendUdpRequest(WireLink link)
+  // ask for the snapshot channel; only binary links have one
+  {
+    ByteBuffer buf = ByteBuffer.allocate(3);
+    WireLink.endFrame(buf, WireLink.startFrame(buf, C_UDP));
+    link.write(buf);
+  }  // end of sendUdpRequest()
+
+
+
+  // ------------------- server to client ---------------------
+  // these add a frame to buf, which must have MAX_FRAME bytes free
+
+  public static void putDetails(ByteBuffer buf, int id, String name,
+                                  double xPosn, double zPosn, double rotRadians)
+  {
+    int start = WireLink.startFrame(buf, S_DETAILS);
+    buf.putInt(id);
+    WireLink.putString(buf, name);
+    buf.putFloat((float) xPosn);
+    buf.putFloat((float) zPosn);
+    buf.putFloat((float) rotRadians);
+    WireLink.endFrame(buf, start);
+  }  // end of putDetails()
+
+
+  public static void putAt(ByteBuffer buf, int id,
+                           double xPosn, double zPosn, double rotRadians)
+  {
+    int start = WireLink.startFrame(buf, S_AT);
+    buf.putInt(id);
+    buf.putFloat((float) xPosn);
+    buf.putFloat((float) zPosn);
+    buf.putFloat((float) rotRadians);
+    WireLink.endFrame(buf, start);
+  }  // end of putAt()
+
+
+  public static void putBye(ByteBuffer buf, int id)
+  {
+    int start = WireLink.startFrame(buf, S_BYE);
+    buf.putInt(id);
+    WireLink.endFrame(buf, start);
+  }  // end of putBye()
+
+
+  public static void putText(ByteBuffer buf, String line)
+  {
+    int start = WireLink.startFrame(buf, S_TEXT);
+    WireLink.putString(buf, line);
+    WireLink.endFrame(buf, start);
+  }  // end of putText()
+
+
+  public static void putUdp(ByteBuffer buf, int token, int port)
+  {
+    int start = WireLink.startFrame(buf, S_UDP);
+    buf.putInt(token);
+    buf.putInt(port);
+    WireLink.endFrame(buf, start);
+  }  // end of putUdp()
+
+}  // end of TourWire class
@@ -3,29 +3,89 @@
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
 /* Stores information about a single client:
-    the client's IP address, port, and output stream
+    the client's IP address, port, and link
 
-  The output stream is used to send messages to the client.
+  The link is used to send messages to the client, as text
+  lines or binary frames (see TourWire).
 
   The address and port are used to uniquely identify the
   client (the client has no name).
 
+  Once the client has sent its "create" message, it also has
+  a name, and the (x,z) position and rotation of its sprite,
+  which are updated by its "at" messages. moved is set when the
+  position has changed since the last TourGroup tick. id identifies
+  the client in binary frames.
+
+  At each tick, the TourGroup adds the changes this client needs
+  to know about with addDetails(), addAt() and addBye(), and
+  sendBatch() sends them all at once.
+
+  Nothing is written to the link by the TourGroup, since a client
+  which is slow to read would block it, and every other client
+  with it. Instead, sendBatch() and sendMessage() encode the
+  messages and add them to a queue, and a writer task (run by the
+  TourGroup's executor) writes them out. The task only runs while
+  there are messages waiting, and writes all of them at once.
+
+  The queue holds at most MAX_QUEUED messages (about 10 secs of
+  ticks). If it is full, the client is not keeping up, so it is
+  disconnected: its socket is closed, which ends its
+  TourServerHandler, and removes it from the TourGroup.
+
+  cellX and cellZ are the client's cell in the TourGroup's
+  SpatialGrid. seen holds the other clients whose sprites are
+  in this client's world (i.e. the ones in its view range).
+
+  udp holds the client's snapshot channel details, if it has
+  asked for one (see SnapshotServer); its sprites' positions are
+  then sent over that instead of in "at" messages.
+
   Very similar to Chatter in the multithreaded Chat server.
 */
 
 
 import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 
-public class TouristInfo
+public class TouristInfo implements Runnable
 {
+  private static final int MAX_QUEUED = 100;   // messages waiting to be sent
+
   String cliAddr;
   int port;
-  PrintWriter out;
+  WireLink link;
+  int id;
+
+  String userName = null;    // null until the client is created
+  double x, z, rot;
+  boolean moved = false;
+  int cellX, cellZ;
+  HashSet seen = new HashSet();   // of TouristInfo
+  UdpPeer udp = null;
+
+  private StringBuffer textBatch = new StringBuffer();
+  private ByteBuffer binBatch = ByteBuffer.allocate(1024);
+
+  private Socket sock;
+  private Executor writers;    // runs the writer task
+  private LinkedList queue = new LinkedList();   // encoded messages, as byte[]s
+  private boolean writing = false;   // is a writer task running?
+  private boolean closed = false;
+  private ByteBuffer outBuf = ByteBuffer.allocate(1024);   // used by the writer task
+
 
-  public TouristInfo(String cliAddr, int port, PrintWriter out)
+  public TouristInfo(String cliAddr, int port, Socket sock, WireLink link,
+                                            int id, Executor writers)
   { this.cliAddr = cliAddr;
-    this.port = port; this.out = out;
+    this.port = port;
+    this.sock = sock;  this.link = link;
+    this.id = id;
+    this.writers = writers;
   }
 
   public boolean matches(String ca, int p)
@@ -35,15 +95,163 @@ public class TouristInfo
     return false;
   }
 
+  public boolean isCreated()
+  {  return (userName != null);  }
+
+  public boolean usesSnapshots()
+  // has the client got a working snapshot channel?
+  {  return (udp != null) && (udp.addr != null);  }
+
   public void sendMessage(String msg)
   { // System.out.println("sendMessage to (" + cliAddr + "," +
 	//					port + ") : " + msg);
-    out.println(msg);  
+    if (link.isBinaryOut()) {
+      ByteBuffer buf = ByteBuffer.allocate(TourWire.MAX_FRAME);
+      TourWire.putText(buf, msg);
+      sendFrames(buf);
+    }
+    else
+      send( (msg + "\n").getBytes() );
+  }
+
+
+  public void sendFrames(ByteBuffer buf)
+  // send the frames built in buf (from 0 to its position)
+  {
+    byte[] bytes = new byte[buf.position()];
+    System.arraycopy(buf.array(), 0, bytes, 0, bytes.length);
+    send(bytes);
   }
 
 
+  // the other client's sprite has come into range
+  public void addDetails(TouristInfo other)
+  {
+    if (link.isBinaryOut()) {
+      binBatch = WireLink.ensureRoom(binBatch, TourWire.MAX_FRAME);
+      TourWire.putDetails(binBatch, other.id, other.userName,
+                                    other.x, other.z, other.rot);
+    }
+    else
+      textBatch.append("detailsFor " + other.userName + " " + other.x + " " +
+                                       other.z + " " + other.rot + "\n");
+  }  // end of addDetails()
+
+
+  // the other client's sprite has moved
+  public void addAt(TouristInfo other)
+  {
+    if (link.isBinaryOut()) {
+      binBatch = WireLink.ensureRoom(binBatch, TourWire.MAX_FRAME);
+      TourWire.putAt(binBatch, other.id, other.x, other.z, other.rot);
+    }
+    else
+      textBatch.append(other.userName + " at " + other.x + " " +
+                                 other.z + " " + other.rot + "\n");
+  }  // end of addAt()
+
+
+  // the other client's sprite has left, or gone out of range
+  public void addBye(TouristInfo other)
+  {
+    if (link.isBinaryOut()) {
+      binBatch = WireLink.ensureRoom(binBatch, TourWire.MAX_FRAME);
+      TourWire.putBye(binBatch, other.id);
+    }
+    else
+      textBatch.append(other.userName + " bye\n");
+  }  // end of addBye()
+
+
+  public void sendBatch()
+  // send the added messages, as a single message
+  {
+    if (binBatch.position() > 0) {
+      sendFrames(binBatch);
+      binBatch.clear();
+    }
+    if (textBatch.length() > 0) {
+      send( textBatch.toString().getBytes() );   // already ends with '\n'
+      textBatch.setLength(0);
+    }
+  }  // end of sendBatch()
+
+
+
+  // ---------------------- the send queue ---------------------------
+
+
+  synchronized private void send(byte[] msg)
+  /* Queue the encoded message, and start a writer task if one
+     isn't already running. This never blocks. */
+  {
+    if (closed)
+      return;
+    if (queue.size() == MAX_QUEUED) {
+      System.out.println("Tourist (" + cliAddr + ", " + port +
+                         ") is not reading; disconnecting");
+      closeDown();
+      return;
+    }
+    queue.add(msg);
+    if (!writing) {
+      writing = true;
+      writers.execute(this);
+    }
+  }  // end of send()
+
+
+
+  public void run()
+  /* The writer task: write the queued messages until the queue
+     is empty. Only the messages are locked, not the writing, so
+     more can be queued while this task is blocked on the socket. */
+  {
+    LinkedList batch;
+    byte[] msg;
+    while (true) {
+      synchronized(this) {
+        if (queue.isEmpty() || closed) {
+          writing = false;
+          return;
+        }
+        batch = queue;
+        queue = new LinkedList();
+      }
+
+      outBuf.clear();
+      while (!batch.isEmpty()) {
+        msg = (byte[]) batch.removeFirst();
+        outBuf = WireLink.ensureRoom(outBuf, msg.length);
+        outBuf.put(msg);
+      }
+      link.write(outBuf);     // a single write and flush
+      if (link.checkError()) {
+        synchronized(this) {
+          closeDown();
+          writing = false;
+        }
+        return;
+      }
+    }
+  }  // end of run()
+
+
+
+  synchronized public void closeDown()
+  // drop any waiting messages, and close the link to the client
+  {
+    closed = true;
+    queue.clear();
+    try {
+      sock.close();    // ends the TourServerHandler's reading as well
+    }
+    catch(IOException e) {}
+  }  // end of closeDown()
+
+
   // public String toString()
   // {  return cliAddr + " & " + port + " & ";  }
 
 
-}  // end of TouristInfo class
\ No newline at end of file
+}  // end of TouristInfo class
@@ -0,0 +1,79 @@
+
+// UdpPeer.java
+
+/* The snapshot channel details of a client which has asked for
+   one (see TourWire and SnapshotServer).
+
+   token identifies the client's datagrams, and addr is where
+   they come from, which is where its snapshots are sent (null
+   until its first datagram arrives).
+
+   The last HISTORY snapshots sent to the client are kept, as the
+   state of every sprite the client should know about once it has
+   received that snapshot: a HashMap of (Integer id, float[] {x,z,rot})
+   pairs. The newest one which the client has acknowledged
+   (ackedSeq) is the baseline for the next snapshot, which only
+   holds the differences from it.
+
+   lastMoveSeq is the newest U_MOVE from the client, so older
+   ones which arrive late, or repeats, can be ignored.
+
+   The TourGroup's lock is held while using these fields.
+*/
+
+import java.net.*;
+import java.util.*;
+
+
+public class UdpPeer
+{
+  private static final int HISTORY = 32;   // 3 secs of snapshots
+
+  int token;
+  SocketAddress addr = null;
+  int lastMoveSeq = -1;
+  int idleTicks = 0;    // snapshots sent with nothing in them
+
+  private int nextSeq = 0;
+  private int ackedSeq = -1;
+  private int[] seqs = new int[HISTORY];
+  private HashMap[] states = new HashMap[HISTORY];
+
+
+  public UdpPeer(int token)
+  {  this.token = token;
+     Arrays.fill(seqs, -1);
+  }
+
+
+  public void ack(int seq)
+  // the client has received snapshot seq
+  {
+    if ((seq > ackedSeq) && (seqs[seq % HISTORY] == seq))
+      ackedSeq = seq;
+  }
+
+
+  public int getBaseSeq()
+  // the snapshot to send the differences from; -1 for none
+  {
+    if ((ackedSeq >= 0) && (seqs[ackedSeq % HISTORY] == ackedSeq))
+      return ackedSeq;
+    return -1;     // none acknowledged, or too long ago
+  }
+
+
+  public HashMap getState(int seq)
+  {  return states[seq % HISTORY];  }
+
+
+  public int addSnapshot(HashMap state)
+  // store the state after the next snapshot, and return its seq
+  {
+    int seq = nextSeq++;
+    seqs[seq % HISTORY] = seq;
+    states[seq % HISTORY] = state;
+    return seq;
+  }
+
+}  // end of UdpPeer class
@@ -0,0 +1,49 @@
+
+// VisitorMover.java
+
+/* A behaviour which moves the visitors' sprites at every frame,
+   to where their MotionBuffers say they were INTERP_DELAY ms ago.
+
+   The sprites are added and removed by WrapNetTour3D, as the
+   TourWatcher creates and removes them, so the list is
+   synchronized.
+*/
+
+import java.util.*;
+import javax.media.j3d.*;
+
+
+public class VisitorMover extends Behavior
+{
+  private WakeupCondition nextFrame;
+  private ArrayList sprites;   // of DistTourSprite
+
+
+  public VisitorMover()
+  {  nextFrame = new WakeupOnElapsedFrames(0);
+     sprites = new ArrayList();
+  }
+
+
+  synchronized public void addSprite(DistTourSprite dtSprite)
+  {  sprites.add(dtSprite);  }
+
+  synchronized public void removeSprite(DistTourSprite dtSprite)
+  {  sprites.remove(dtSprite);  }
+
+
+  public void initialize( )
+  {  wakeupOn( nextFrame );  }
+
+
+  public void processStimulus(Enumeration criteria)
+  {
+    long now = System.currentTimeMillis();
+    synchronized(this) {
+      for (int i=0; i < sprites.size(); i++)
+        ((DistTourSprite) sprites.get(i)).updatePosition(now);
+    }
+    wakeupOn( nextFrame );
+  } // end of processStimulus()
+
+}  // end of VisitorMover class
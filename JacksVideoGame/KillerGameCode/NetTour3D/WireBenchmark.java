@@ -0,0 +1,175 @@
+
+// WireBenchmark.java
+
+/* Compares the text and binary encodings of the NetTour3D
+   messages which are sent most often: the server's "at" updates
+   about other tourists' sprites (see TourWire).
+
+   NUM_UPDATES updates, for NUM_TOURISTS tourists at random
+   positions, are encoded into a byte array in each format, in
+   batches of BATCH_SIZE (as sent at each TourGroup tick), and then
+   read back and parsed in the same way as TourWatcher does. The
+   sockets are left out, so only the encoding costs are measured.
+
+   The bytes per update, and the encoding and parsing times per
+   update, are printed for each round; the first rounds include
+   JIT compilation.
+
+   Usage:
+     java WireBenchmark [ numRounds ]
+*/
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+
+public class WireBenchmark
+{
+  private static final int NUM_UPDATES = 200000;
+  private static final int NUM_TOURISTS = 300;
+  private static final int BATCH_SIZE = 50;
+
+  private String[] names = new String[NUM_TOURISTS];
+  private double[] xs = new double[NUM_UPDATES];
+  private double[] zs = new double[NUM_UPDATES];
+  private double[] rots = new double[NUM_UPDATES];
+
+  private HashMap nameMap = new HashMap();   // name --> Integer id
+  private HashMap idMap = new HashMap();     // Integer id --> name
+
+  private double checkSum;    // stops the parsing being optimized away
+
+
+
+  public WireBenchmark(int numRounds)
+  {
+    Random rand = new Random(42);
+    for (int i=0; i < NUM_TOURISTS; i++) {
+      names[i] = "tourist" + i;
+      nameMap.put(names[i], new Integer(i));
+      idMap.put(new Integer(i), names[i]);
+    }
+    for (int i=0; i < NUM_UPDATES; i++) {
+      xs[i] = (rand.nextDouble()-0.5)*20;
+      zs[i] = (rand.nextDouble()-0.5)*20;
+      rots[i] = rand.nextDouble()*2*Math.PI;
+    }
+
+    try {
+      for (int r=1; r <= numRounds; r++) {
+        System.out.println("Round " + r);
+        runText();
+        runBinary();
+      }
+    }
+    catch(IOException e)
+    {  System.out.println(e);  }
+  }  // end of WireBenchmark()
+
+
+
+  private void runText() throws IOException
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(64*NUM_UPDATES);
+    WireLink out = new WireLink(null, bos);
+
+    long start = System.nanoTime();
+    StringBuffer batch = new StringBuffer();
+    for (int i=0; i < NUM_UPDATES; i++) {    // as in TouristInfo.addAt()
+      batch.append(names[i % NUM_TOURISTS] + " at " + xs[i] + " " +
+                                     zs[i] + " " + rots[i] + "\n");
+      if ((i+1) % BATCH_SIZE == 0) {
+        batch.setLength( batch.length()-1 );
+        out.writeLine( batch.toString() );
+        batch.setLength(0);
+      }
+    }
+    long encodeTime = System.nanoTime() - start;
+    byte[] bytes = bos.toByteArray();
+
+    WireLink in = new WireLink(new ByteArrayInputStream(bytes), null);
+    start = System.nanoTime();
+    String line;
+    StringTokenizer st;
+    while ((line = in.readLine()) != null) {   // as in TourWatcher.doCommand()
+      st = new StringTokenizer(line.trim());
+      Object id = nameMap.get( st.nextToken() );
+      st.nextToken();    // skip 'at' word
+      double xPosn = Double.parseDouble( st.nextToken() );
+      double zPosn = Double.parseDouble( st.nextToken() );
+      double rotRadians = Double.parseDouble( st.nextToken() );
+      checkSum += xPosn + zPosn + rotRadians + ((id == null) ? 0 : 1);
+    }
+    long parseTime = System.nanoTime() - start;
+
+    report("text  ", bytes.length, encodeTime, parseTime);
+  }  // end of runText()
+
+
+
+  private void runBinary() throws IOException
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(32*NUM_UPDATES);
+    WireLink out = new WireLink(null, bos);
+
+    long start = System.nanoTime();
+    ByteBuffer batch = ByteBuffer.allocate(1024);
+    for (int i=0; i < NUM_UPDATES; i++) {    // as in TouristInfo.addAt()
+      batch = WireLink.ensureRoom(batch, TourWire.MAX_FRAME);
+      TourWire.putAt(batch, i % NUM_TOURISTS, xs[i], zs[i], rots[i]);
+      if ((i+1) % BATCH_SIZE == 0) {
+        out.write(batch);
+        batch.clear();
+      }
+    }
+    long encodeTime = System.nanoTime() - start;
+    byte[] bytes = bos.toByteArray();
+
+    WireLink in = new WireLink(new ByteArrayInputStream(bytes), null);
+    start = System.nanoTime();
+    ByteBuffer frame;
+    while ((frame = in.readFrame()) != null) {   // as in TourWatcher.doFrame()
+      if (frame.get() == TourWire.S_AT) {
+        Object name = idMap.get( new Integer(frame.getInt()) );
+        double xPosn = frame.getFloat();
+        double zPosn = frame.getFloat();
+        double rotRadians = frame.getFloat();
+        checkSum += xPosn + zPosn + rotRadians + ((name == null) ? 0 : 1);
+      }
+    }
+    long parseTime = System.nanoTime() - start;
+
+    report("binary", bytes.length, encodeTime, parseTime);
+  }  // end of runBinary()
+
+
+
+  private void report(String format, int numBytes, long encodeTime, long parseTime)
+  {
+    System.out.println("  " + format + ": " +
+        ((double) numBytes / NUM_UPDATES) + " bytes/update; encode " +
+        (encodeTime / NUM_UPDATES) + " ns/update; parse " +
+        (parseTime / NUM_UPDATES) + " ns/update");
+  }  // end of report()
+
+
+  // -----------------------------------------------------------
+
+  public static void main(String args[])
+  {
+    int numRounds = 5;
+    if (args.length > 0) {
+      try {
+        numRounds = Integer.parseInt(args[0]);
+      }
+      catch(NumberFormatException e)
+      {  System.out.println("Usage: java WireBenchmark [ numRounds ]");
+         System.exit(0);
+      }
+    }
+    WireBenchmark wb = new WireBenchmark(numRounds);
+    System.out.println("(checksum " + (long) wb.checkSum + ")");
+  }  // end of main()
+
+}  // end of WireBenchmark class
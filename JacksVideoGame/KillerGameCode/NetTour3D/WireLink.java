@@ -0,0 +1,301 @@
+
+// WireLink.java
+
+/* A link to the other end of a socket, which can carry either
+   text lines (the original protocol, still useful for debugging)
+   or binary frames.
+
+   A binary frame is:
+        length (2 bytes)  type (1 byte)  fields ...
+   where length counts the type and the fields. The fields have
+   fixed widths (a byte, an int, or a float), except for strings,
+   which are a length byte followed by up to 255 bytes of UTF-8.
+   A receiver can skip a frame whose type it doesn't know, by using
+   its length, so newer message types can be added without breaking
+   older clients.
+
+   A frame is built in a ByteBuffer, with startFrame(), the usual
+   ByteBuffer put methods, putString(), and endFrame(). Several
+   frames can be built in the same buffer, and sent with one call
+   to write().
+
+   Negotiation:
+   Both ends start in text mode. A client which wants to use binary
+   frames sends the line OFFER ("binary <VERSION>"). If the server
+   supports that version, it replies with OFFER, and both ends switch
+   to frames: the client's output straight after sending the offer
+   (if it knows the server supports it) or after the reply, and the
+   server's output after the reply. A server which doesn't, replies
+   "text", and the link stays in text mode.
+
+   Input and output switch separately (binaryIn and binaryOut),
+   since each end switches them at a different point in the stream.
+
+   The input is read from a BufferedInputStream a byte at a time in
+   text mode (not through a BufferedReader), so no frame bytes are
+   read ahead into a text buffer when the link switches mode.
+
+   The write methods are synchronized, so different threads can send
+   on the same link. Like PrintWriter, they don't throw exceptions;
+   after a write fails, the rest are ignored, and checkError()
+   returns true. A thread which has to check the mode and then
+   send should hold the link's lock while it does both.
+
+   Clients use binary frames unless they're started with
+   -Dwire=text
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+
+
+public class WireLink
+{
+  public static final int VERSION = 1;
+  public static final String OFFER = "binary " + VERSION;
+
+  private static final int MAX_STRING = 255;   // bytes
+
+  private InputStream in;
+  private OutputStream out;
+  private boolean binaryIn = false;
+  private boolean binaryOut = false;
+  private boolean writeFailed = false;
+
+  private byte[] lineBytes = new byte[256];    // for reading lines
+  private ByteBuffer inBuf = ByteBuffer.allocate(1024);   // for reading frames
+
+
+  public WireLink(Socket sock) throws IOException
+  {  this( sock.getInputStream(), sock.getOutputStream() );  }
+
+
+  public WireLink(InputStream is, OutputStream os)
+  {  in = new BufferedInputStream(is);
+     out = new BufferedOutputStream(os);
+  }
+
+
+  public static boolean wantBinary()
+  // the client uses binary frames unless -Dwire=text
+  {  return !"text".equals( System.getProperty("wire") );  }
+
+
+  public boolean isBinaryIn()
+  {  return binaryIn;  }
+
+  public void setBinaryIn(boolean b)
+  {  binaryIn = b;  }
+
+  public boolean isBinaryOut()
+  {  return binaryOut;  }
+
+  synchronized public void setBinaryOut(boolean b)
+  {  binaryOut = b;  }
+
+
+
+  // --------------------- negotiation -------------------------
+
+  public boolean offerBinary(Socket sock, int timeout) throws IOException
+  /* Called by a client which doesn't know if the server supports
+     binary frames. Send the offer, and wait up to timeout ms for the
+     reply. If it's OFFER, switch both directions to binary. */
+  {
+    writeLine(OFFER);
+    int oldTimeout = sock.getSoTimeout();
+    sock.setSoTimeout(timeout);
+    String reply = null;
+    try {
+      reply = readLine();
+    }
+    catch(SocketTimeoutException e)     // an old server, which didn't reply
+    {  System.out.println("No reply to binary offer; using text");  }
+    sock.setSoTimeout(oldTimeout);
+
+    if (OFFER.equals(reply)) {
+      setBinaryOut(true);
+      binaryIn = true;
+    }
+    return binaryIn;
+  }  // end of offerBinary()
+
+
+  public boolean acceptOffer(String line)
+  /* Called by a server with a line from the client. If it is an
+     offer, reply to it, and switch to binary frames if it's for
+     this VERSION. Returns true if the line was an offer. */
+  {
+    if (!line.startsWith("binary "))
+      return false;
+    synchronized(this) {
+      if (line.equals(OFFER)) {
+        writeLine(OFFER);
+        binaryOut = true;
+        binaryIn = true;
+      }
+      else
+        writeLine("text");    // a version we don't know
+    }
+    return true;
+  }  // end of acceptOffer()
+
+
+
+  // --------------------- text mode -------------------------
+
+  public String readLine() throws IOException
+  // read a line, without its line terminator; null at the end of the stream
+  {
+    int len = 0;
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) {
+        if (len == 0)
+          return null;
+        break;
+      }
+      if (len == lineBytes.length) {
+        byte[] bigger = new byte[len*2];
+        System.arraycopy(lineBytes, 0, bigger, 0, len);
+        lineBytes = bigger;
+      }
+      lineBytes[len++] = (byte) b;
+    }
+    if ((len > 0) && (lineBytes[len-1] == '\r'))
+      len--;
+    return new String(lineBytes, 0, len);
+  }  // end of readLine()
+
+
+  synchronized public void writeLine(String line)
+  // write a line and flush it, like PrintWriter.println() with autoflush
+  {
+    if (writeFailed)
+      return;
+    try {
+      out.write( (line + "\n").getBytes() );
+      out.flush();
+    }
+    catch(IOException e)
+    {  writeFailed = true;  }
+  }  // end of writeLine()
+
+
+  public boolean checkError()
+  // has a write failed?
+  {  return writeFailed;  }
+
+
+
+  // --------------------- binary mode -------------------------
+
+  public ByteBuffer readFrame() throws IOException
+  /* Read a frame; null at the end of the stream. The returned buffer
+     is positioned at the frame's type byte, and is reused by the
+     next call. */
+  {
+    int hi = in.read();
+    int lo = in.read();
+    if ((hi == -1) || (lo == -1))
+      return null;
+    int len = (hi << 8) | lo;
+
+    if (inBuf.capacity() < len)
+      inBuf = ByteBuffer.allocate( Math.max(len, inBuf.capacity()*2) );
+    byte[] bytes = inBuf.array();
+    int n, pos = 0;
+    while (pos < len) {
+      if ((n = in.read(bytes, pos, len-pos)) == -1)
+        return null;
+      pos += n;
+    }
+    inBuf.clear();
+    inBuf.limit(len);
+    return inBuf;
+  }  // end of readFrame()
+
+
+  synchronized public void write(ByteBuffer buf)
+  // write the frames built in buf (from 0 to its position), and flush them
+  {
+    if (writeFailed)
+      return;
+    try {
+      out.write(buf.array(), 0, buf.position());
+      out.flush();
+    }
+    catch(IOException e)
+    {  writeFailed = true;  }
+  }  // end of write()
+
+
+  public static int startFrame(ByteBuffer buf, int type)
+  /* Start a frame in buf, by leaving room for its length and
+     adding its type. Returns the frame's start, for endFrame(). */
+  {
+    int start = buf.position();
+    buf.putShort((short) 0);   // filled in by endFrame()
+    buf.put((byte) type);
+    return start;
+  }
+
+
+  public static void endFrame(ByteBuffer buf, int start)
+  // fill in the length of the frame which started at start
+  {  buf.putShort(start, (short) (buf.position() - start - 2));  }
+
+
+  public static ByteBuffer ensureRoom(ByteBuffer buf, int n)
+  // return buf, or a bigger copy of it, with room for n more bytes
+  {
+    if (buf.remaining() >= n)
+      return buf;
+    ByteBuffer bigger = ByteBuffer.allocate( Math.max(buf.capacity()*2,
+                                                      buf.position()+n) );
+    buf.flip();
+    bigger.put(buf);
+    return bigger;
+  }  // end of ensureRoom()
+
+
+  public static void putString(ByteBuffer buf, String s)
+  // a length byte, then up to MAX_STRING bytes of UTF-8
+  {
+    byte[] bytes;
+    try {
+      bytes = s.getBytes("UTF-8");
+    }
+    catch(UnsupportedEncodingException e)
+    {  bytes = s.getBytes();  }
+    int len = Math.min(bytes.length, MAX_STRING);
+    buf.put((byte) len);
+    buf.put(bytes, 0, len);
+  }  // end of putString()
+
+
+  public static String getString(ByteBuffer buf)
+  /* Read a string added by putString(). Throws a
+     BufferUnderflowException if its length byte says it runs
+     past the end of the frame. */
+  {
+    int len = buf.get() & 0xff;
+    if (len > buf.remaining())
+      throw new BufferUnderflowException();
+    String s;
+    try {
+      s = new String(buf.array(), buf.position(), len, "UTF-8");
+    }
+    catch(UnsupportedEncodingException e)
+    {  s = new String(buf.array(), buf.position(), len);  }
+    buf.position( buf.position() + len );
+    return s;
+  }  // end of getString()
+
+
+  public static int maxStringSize()
+  // the most bytes that putString() adds
+  {  return MAX_STRING + 1;  }
+
+}  // end of WireLink class
@@ -11,7 +11,15 @@
      * closeLink() to break the link with the server and exit;
 
      * addVisitor() for creating distributed tourist(s),
-       called by TourWatcher when the server sends it a request;
+       called by TourWatcher when the server sends it a request,
+       and removeVisitor() for removing them;
+
+     * a VisitorMover behaviour, which moves the distributed
+       tourists smoothly between the positions the server sends;
+
+     * startSnapshots() for starting the snapshot channel, which
+       the client asks for unless it's started with -Dudp=off
+       (see SnapshotClient);
 
      * sendDetails() for sending sprite info to the server
 
@@ -55,9 +63,12 @@ public class WrapNetTour3D extends JPanel
   private Obstacles obs;
   private TourSprite bob;   // the tourist
 
+  private static final int OFFER_WAIT = 2000;   // ms to wait for a binary reply
+
   private Socket sock;
-  private BufferedReader in;     // IO for the client
-  private PrintWriter out;  
+  private WireLink link;     // IO for the client
+  private SnapshotClient snaps = null;   // the snapshot channel, if any
+  private VisitorMover mover;
   private DecimalFormat df;   // for simpler output
 
 
@@ -103,6 +114,10 @@ public class WrapNetTour3D extends JPanel
     addBackground();      // add the sky
     sceneBG.addChild( new CheckerFloor().getBG() );  // add the floor
 
+    mover = new VisitorMover();     // moves the visitors' sprites
+    mover.setSchedulingBounds( bounds );
+    sceneBG.addChild( mover );
+
     makeScenery(tourFnm);      // add scenery and obstacles
 
     makeContact();     // contact server (after Obstacles object created)
@@ -205,7 +220,10 @@ public class WrapNetTour3D extends JPanel
   // create sprite for this client
   {
     bob = new TourSprite(userName, "Coolrobo.3ds", obs, 
-								xPosn, zPosn, out);   // sprite
+								xPosn, zPosn, link);   // sprite
+    synchronized(this) {
+      bob.setSnapshots(snaps);   // if the channel has already started
+    }
     sceneBG.addChild( bob.getBG() );
 
     ViewingPlatform vp = su.getViewingPlatform();
@@ -234,6 +252,7 @@ public class WrapNetTour3D extends JPanel
 			new DistTourSprite(userName, "Coolrobo.3ds", obs, xPosn, zPosn);
      if (rotRadians != 0)
        dtSprite.setCurrRotation( rotRadians);
+     dtSprite.addState(xPosn, zPosn, rotRadians);   // its first known state
 
      BranchGroup sBG = dtSprite.getBG();
 
@@ -249,10 +268,18 @@ public class WrapNetTour3D extends JPanel
      else
        System.out.println("Visitor Sprite is now live");
 
+     mover.addSprite(dtSprite);
      return dtSprite;
    } // end of addVisitor()
 
 
+  public void removeVisitor(DistTourSprite dtSprite)
+  // remove a visitor's sprite from the world
+  {  mover.removeSprite(dtSprite);
+     dtSprite.detach();
+  }
+
+
 
 
   // ------------------------- network related --------------------------
@@ -260,15 +287,20 @@ public class WrapNetTour3D extends JPanel
     
   private void makeContact()
   /* Contact the server, and set up a TourWatcher to monitor the
-     server. */
+     server. Use binary frames if the server supports them, unless
+     the client was started with -Dwire=text. */
   {
     try {
       sock = new Socket(HOST, PORT);
-      in  = new BufferedReader( 
-		  		new InputStreamReader( sock.getInputStream() ) );
-      out = new PrintWriter( sock.getOutputStream(), true );  // autoflush
-
-      new TourWatcher(this, in, obs).start();    // start watching for server msgs
+      link = new WireLink(sock);
+      if (WireLink.wantBinary())
+        link.offerBinary(sock, OFFER_WAIT);
+      System.out.println("Using " + (link.isBinaryOut() ? "binary" : "text") +
+                                                    " messages");
+      if (link.isBinaryOut() && !"off".equals(System.getProperty("udp")))
+        TourWire.sendUdpRequest(link);    // the reply is read by the TourWatcher
+
+      new TourWatcher(this, link, obs).start();    // start watching for server msgs
     }
     catch(Exception e)
     { System.out.println("No contact with server");
@@ -284,8 +316,12 @@ public class WrapNetTour3D extends JPanel
      TourWatcher thread as well. */
   {
     try {
-      out.println("bye");    // tell server that client is disconnecting
+      TourWire.sendBye(link);    // tell server that client is disconnecting
       sock.close();
+      synchronized(this) {
+        if (snaps != null)
+          snaps.close();
+      }
     }
     catch(Exception e)
     {  System.out.println("Link terminated"); }
@@ -295,6 +331,24 @@ public class WrapNetTour3D extends JPanel
 
 
 
+  synchronized public SnapshotClient startSnapshots(int token, int port)
+  /* Called by the TourWatcher when the server's S_UDP frame arrives.
+     Returns null if the channel can't be started, in which case
+     everything stays on the TCP link. */
+  {
+    try {
+      snaps = new SnapshotClient(HOST, port, token);
+      if (bob != null)
+        bob.setSnapshots(snaps);
+      System.out.println("Started snapshot channel");
+    }
+    catch(IOException e)
+    {  System.out.println("No snapshot channel: " + e);  }
+    return snaps;
+  }  // end of startSnapshots()
+
+
+
   public void sendDetails(String cliAddr, String strPort)
   /* Send details of local sprite to the client at location 
     (cliAddr, strPort).
@@ -308,7 +362,7 @@ public class WrapNetTour3D extends JPanel
 						df.format(currLoc.x) + " " +
 						df.format(currLoc.z) + " " + 
 						df.format(currRotation) );
-     out.println(msg);
+     TourWire.sendText(link, msg);
   }  // end of sendDetails()
 
 
@@ -6,7 +6,13 @@
 
    The points are stored in a LineArray using a BY_REFERENCE geometry.
 
-   Only the line's coordinates are changed.
+   Only the line's coordinates are changed (and the colours, when
+   a line is fired again).
+
+   The lines are moved by a ParticleArrays object, as groups of two
+   staggered vertices (the second end of a line starts one update
+   ahead of the first); the updater only copies its results into
+   the coordinates and colours.
 
    The GeometryUpdater and Behavior subclasses are inner classes of
    LineParticles. This allows the updater to directly access the 
@@ -23,8 +29,6 @@ public class LineParticles extends Shape3D
 {
   private final static int LINEWIDTH = 3;
 
-  private static final float GRAVITY = 9.8f;
-  private static final float TIMESTEP = 0.05f;
   private static final float XZ_VELOCITY = 2.0f; 
   private static final float Y_VELOCITY = 8.0f; 
 
@@ -35,9 +39,11 @@ public class LineParticles extends Shape3D
   private LineArray lineParts;  // Geometry holding the coords and colours
   private PartclesControl partBeh;   // the Behaviour triggering the updates
 
-  private float[] cs, vels, accs, cols;     // we must use floats unfortunately
+  private float[] cs, cols;     // we must use floats unfortunately
   private int numPoints;
 
+  private ParticleArrays parts;   // moves the lines
+
 
   public LineParticles(int nps, int delay) 
   {
@@ -74,13 +80,13 @@ public class LineParticles extends Shape3D
   private void createGeometry()
   { 
     cs = new float[numPoints*3];   // to store each (x,y,z)
-    vels = new float[numPoints*3];
-    accs = new float[numPoints*3];
     cols = new float[numPoints*3];
 
-    // step in 6's == two (x,y,z) coords == one line
-    for(int i=0; i < numPoints*3; i=i+6)
-      initTwoParticles(i);
+    // two vertices for each line, both starting at the origin
+    parts = new ParticleArrays(numPoints/2,
+                     new float[] {0.0f, 0.0f, 0.0f,  0.0f, 0.0f, 0.0f},
+                     XZ_VELOCITY, Y_VELOCITY, System.currentTimeMillis());
+    parts.setStaggered(true);   // the second end is one update ahead
 
     // store the coordinates and colours in the LineArray
     lineParts.setCoordRefFloat(cs);    // use BY_REFERENCE
@@ -90,58 +96,6 @@ public class LineParticles extends Shape3D
   }  // end of createGeometry()
 
 
-  private void initTwoParticles(int i)
-  /* Initialise coords in cs[] i to i+5 (2 points / 1 line).
-     We do things in 2 point groups since they are the two ends of
-     a line.
-  */
-  { cs[i] = 0.0f; cs[i+1] = 0.0f; cs[i+2] = 0.0f;   // (x,y,z) at origin
-
-    // random velocity in XZ plane with combined vector XZ_VELOCITY
-    double xvel = Math.random()*XZ_VELOCITY;
-    double zvel = Math.sqrt((XZ_VELOCITY*XZ_VELOCITY) - (xvel*xvel));
-    vels[i] = (float)((Math.random() < 0.5) ? -xvel : xvel);    // x vel
-    vels[i+2] = (float)((Math.random() < 0.5) ? -zvel : zvel);  // z vel
-    // y velocity
-    vels[i+1] = (float)(Math.random() * Y_VELOCITY);
-    
-    // unchanging accelerations, downwards in y direction
-    accs[i] = 0.0f; accs[i+1] = -GRAVITY; accs[i+2] = 0.0f;
-
-    // next particle starts the same, but is one update advanced
-    cs[i+3] = cs[i]; cs[i+4] = cs[i+1]; cs[i+5] = cs[i+2];
-    vels[i+3] = vels[i]; vels[i+4] = vels[i+1]; vels[i+5] = vels[i+2];
-    accs[i+3] = accs[i]; accs[i+4] = accs[i+1]; accs[i+5] = accs[i+2];
-    updateParticle(i+3);
-
-    // set initial colours for the first particle
-    Color3f col = (Math.random() < 0.5) ? yellow : red;
-    cols[i] = col.x;   cols[i+1] = col.y; cols[i+2] = col.z;
-    // the next particle has the same colours
-    cols[i+3] = col.x; cols[i+4] = col.y; cols[i+5] = col.z;
-
-  }  // end of initTwoParticles()
-
-
-  private void updateParticle(int i)
-  /* Calculate the particle's new position and velocity (treating 
-     is as a projectile). The acceleration is constant.
-  */
-  {
-    cs[i] += vels[i] * TIMESTEP +
-                      0.5 * accs[i] * TIMESTEP * TIMESTEP;     // x coord
-    cs[i+1] += vels[i+1] * TIMESTEP +
-                      0.5 * accs[i+1] * TIMESTEP * TIMESTEP;   // y coord
-    cs[i+2] += vels[i+2] * TIMESTEP +
-                      0.5 * accs[i+2] * TIMESTEP * TIMESTEP;   // z coord
-
-    // calculate new velocities
-    vels[i] += accs[i] * TIMESTEP;      // x vel
-    vels[i+1] += accs[i+1] * TIMESTEP;  // y vel
-    vels[i+2] += accs[i+2] * TIMESTEP;  // z vel
-  } // end of updateParticle()
-
-
   private void createAppearance()
   {
     Appearance app = new Appearance();
@@ -162,24 +116,32 @@ public class LineParticles extends Shape3D
   {
     public void updateData(Geometry geo)
     /* An update of the geometry is triggered by the system.
-       Rather than use geo, we directly access the cs[] array
-       back in LineParticles. 
+       Rather than use geo, we directly access the cs[] and cols[]
+       arrays back in LineParticles. ParticleArrays moves the
+       lines and fills cs[].
     */
     { // GeometryArray ga = (GeometryArray) geo;
       // float cds[] = ga.getCoordRefFloat();
 
-      // step in 6's == two (x,y,z) coords == one line
-      for(int i=0; i < numPoints*3; i=i+6) {
-        if ((cs[i+1] < 0.0f) && (cs[i+4] < 0.0f))   
-        // both particles in the line have dropped below the y-axis
-          initTwoParticles(i);   // re-initialise them
-        else {       // update the two particles
-          updateParticle(i);
-          updateParticle(i+3);
-        }
-      }
+      parts.update(cs);
+      updateColours( parts.getAges(), parts.getTags() );
     }  // end of updateData()
 
+
+    private void updateColours(int[] ages, float[] tags)
+    /* A line which has just been fired is given a random colour,
+       yellow or red, chosen using its tag. Both ends have the same
+       colour.
+    */
+    { for(int j=0; j < numPoints/2; j++)
+        if (ages[j] == 0) {
+          Color3f col = (tags[j] < 0.5f) ? yellow : red;
+          int i = j*6;
+          cols[i] = col.x;   cols[i+1] = col.y; cols[i+2] = col.z;
+          cols[i+3] = col.x; cols[i+4] = col.y; cols[i+5] = col.z;
+        }
+    }  // end of updateColours()
+
   } // end of LinesUpdater class
 
 
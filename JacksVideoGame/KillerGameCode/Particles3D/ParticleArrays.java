@@ -0,0 +1,329 @@
+
+// ParticleArrays.java
+
+/* The simulation shared by PointParticles, LineParticles and
+   QuadParticles. The particles are stored as a structure of
+   arrays (one float array for each of x, y, z, and the velocity
+   components), instead of the interleaved (x,y,z) arrays used by
+   the geometries, and update() moves them all on by TIMESTEP,
+   and writes their coordinates into the geometry's array.
+
+   A particle is a group of groupSize vertices which move together:
+   1 for a point, 2 for the ends of a line, and 4 for the corners of
+   a quad. The vertices share the group's velocity, and start at
+   the group's offsets from the origin. If setStaggered() is used,
+   vertex k starts k updates ahead of vertex 0 along the same path
+   (so a line's ends trail each other). If setJitter() is used,
+   each vertex is nudged randomly on every update (so a quad
+   changes shape as it flies). A group is fired from the origin
+   again once all its vertices have fallen below the y-axis, with
+   a random velocity: xzVel across the floor, and up to yVel
+   upwards. All the groups start below the floor, so
+   they're fired by the first update.
+
+   The groups are updated in blocks of BLOCK_SIZE. The moves of a
+   block are done in a simple loop over the arrays, with no
+   branches or method calls, which the JIT compiler can turn into
+   SIMD instructions, before the fallen groups in the block are
+   refired, and the coordinates copied. When there is more than
+   one block, the blocks are split between the threads of a
+   ForkJoinPool, using StepTask objects.
+
+   Math.random() shares one generator between all the threads, so
+   each block has its own stream of random numbers instead, made
+   from the seed, the update number and the block number (using
+   the SplitMix64 generator). So the same seed always gives the
+   same particles, whatever the number of cores.
+
+   getAges() and getTags() give the geometries the number of updates
+   since each group was fired, and a random number (0 to 1) chosen
+   when it was fired, for colouring the particles.
+
+   ParticleTimer times updates for large numbers of particles.
+*/
+
+import java.util.concurrent.*;
+
+
+public class ParticleArrays
+{
+  private static final float GRAVITY = 9.8f;
+  private static final float TIMESTEP = 0.05f;
+
+  private final static int BLOCK_SIZE = 8192;
+     // number of groups updated by one StepTask without splitting
+
+  // for splitting random number streams from the seed
+  private final static long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  private final static long BLOCK_GAMMA = 0xC2B2AE3D27D4EB4FL;
+
+  private int numGroups, groupSize, numBlocks;
+  private float[] offsets;         // groupSize (x,y,z) starting offsets
+  private float xzVel, yVel;
+
+  private boolean staggered = false;
+  private float jitter = 0.0f;
+
+  // vertex positions, groupSize for each group, one after another
+  private float[] x, y, z;
+
+  // group velocities (of vertex 0, if staggered), ages, and tags
+  private float[] vx, vy, vz;
+  private int[] ages;
+  private float[] tags;
+
+  private long seed;
+  private long numUpdates = 0;
+  private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+
+  public ParticleArrays(int numGroups, float[] offsets,
+                        float xzVel, float yVel, long seed)
+  {
+    this.numGroups = numGroups;
+    this.offsets = offsets;
+    this.xzVel = xzVel;
+    this.yVel = yVel;
+    this.seed = seed;
+    groupSize = offsets.length/3;
+    numBlocks = (numGroups + BLOCK_SIZE-1)/BLOCK_SIZE;
+
+    int numVerts = numGroups*groupSize;
+    x = new float[numVerts];
+    y = new float[numVerts];
+    z = new float[numVerts];
+    for (int v=0; v < numVerts; v++)
+      y[v] = -1.0f;     // below the floor, so fired by the first update
+
+    vx = new float[numGroups];
+    vy = new float[numGroups];
+    vz = new float[numGroups];
+    ages = new int[numGroups];
+    tags = new float[numGroups];
+  }  // end of ParticleArrays()
+
+
+  public void setStaggered(boolean b)
+  // vertex k starts k updates ahead of vertex 0
+  {  staggered = b;  }
+
+  public void setJitter(float range)
+  // move each vertex randomly by up to range in x, y and z on each update
+  {  jitter = range;  }
+
+  public void setPool(ForkJoinPool p)
+  // the threads for updating several blocks (the common pool by default)
+  {  pool = p;  }
+
+
+  public int getNumGroups()
+  {  return numGroups;  }
+
+  public int[] getAges()
+  // the number of updates since each group was fired
+  {  return ages;  }
+
+  public float[] getTags()
+  // a random number (0 to 1) for each group, chosen when it's fired
+  {  return tags;  }
+
+
+
+  public void update(float[] coords)
+  /* Move all the particles on by TIMESTEP, refiring the fallen ones,
+     and copy the vertex coordinates into coords, as (x,y,z)s (unless
+     it's null). */
+  {
+    if ((numBlocks <= 1) || (pool == null))
+      for (int b=0; b < numBlocks; b++)
+        stepBlock(b, coords);
+    else
+      pool.invoke( new StepTask(0, numBlocks, coords) );
+    numUpdates++;
+  }  // end of update()
+
+
+  private void stepBlock(int block, float[] coords)
+  // update the groups in block, and copy their coordinates
+  {
+    int start = block*BLOCK_SIZE;
+    int end = Math.min(start+BLOCK_SIZE, numGroups);
+    long rnd = stream(numUpdates, block);
+
+    if ((groupSize == 1) && (jitter == 0.0f))
+      movePoints(start, end);
+    else
+      rnd = moveGroups(start, end, rnd);
+
+    refire(start, end, rnd);
+
+    if (coords != null)
+      for (int v=start*groupSize; v < end*groupSize; v++) {
+        coords[v*3] = x[v];
+        coords[v*3+1] = y[v];
+        coords[v*3+2] = z[v];
+      }
+  }  // end of stepBlock()
+
+
+
+  // ------------------------ moving --------------------------
+
+
+  private void movePoints(int start, int end)
+  /* Move single vertex groups as projectiles, with a constant
+     acceleration (gravity). The loop is kept simple, so it can
+     be vectorized. */
+  {
+    float dt = TIMESTEP;
+    float dy = -0.5f*GRAVITY*TIMESTEP*TIMESTEP;   // gravity's part of the move
+    float dv = -GRAVITY*TIMESTEP;
+
+    for (int i=start; i < end; i++) {
+      x[i] += vx[i]*dt;
+      y[i] += vy[i]*dt + dy;
+      z[i] += vz[i]*dt;
+      vy[i] += dv;
+      ages[i]++;
+    }
+  }  // end of movePoints()
+
+
+  private long moveGroups(int start, int end, long rnd)
+  /* Move each group's vertices by the same amount (but a staggered
+     vertex is k updates ahead, so it's moving more quickly
+     downwards), adding any jitter. Returns the random stream's
+     state after the jitter. */
+  {
+    float dt = TIMESTEP;
+    float dy = -0.5f*GRAVITY*TIMESTEP*TIMESTEP;
+    float dv = -GRAVITY*TIMESTEP;
+    float leadDY = staggered ? -GRAVITY*TIMESTEP*TIMESTEP : 0.0f;
+        // the extra drop of each vertex ahead
+    float range = jitter*2.0f;
+
+    for (int g=start; g < end; g++) {
+      float mx = vx[g]*dt;
+      float my = vy[g]*dt + dy;
+      float mz = vz[g]*dt;
+      vy[g] += dv;
+      ages[g]++;
+
+      int v = g*groupSize;
+      for (int k=0; k < groupSize; k++, v++) {
+        x[v] += mx;
+        y[v] += my + k*leadDY;
+        z[v] += mz;
+        if (jitter != 0.0f) {
+          x[v] += (float)(random(rnd += GOLDEN_GAMMA)*range) - jitter;
+          y[v] += (float)(random(rnd += GOLDEN_GAMMA)*range) - jitter;
+          z[v] += (float)(random(rnd += GOLDEN_GAMMA)*range) - jitter;
+        }
+      }
+    }
+    return rnd;
+  }  // end of moveGroups()
+
+
+
+  private void refire(int start, int end, long rnd)
+  // fire the groups whose vertices have all dropped below the y-axis
+  {
+    for (int g=start; g < end; g++) {
+      int v = g*groupSize;
+      boolean fallen = true;
+      for (int k=0; k < groupSize; k++)
+        if (y[v+k] >= 0.0f) {
+          fallen = false;
+          break;
+        }
+      if (fallen)
+        rnd = fire(g, rnd);
+    }
+  }  // end of refire()
+
+
+  private long fire(int g, long rnd)
+  /* Start group g from the origin with a random velocity: xzVel
+     in the XZ plane, and up to yVel upwards. Returns the random
+     stream's state after the group's numbers. */
+  {
+    double xvel = random(rnd += GOLDEN_GAMMA)*xzVel;
+    double zvel = Math.sqrt((xzVel*xzVel) - (xvel*xvel));
+    long signs = mix(rnd += GOLDEN_GAMMA);
+    vx[g] = (float)(((signs & 1) == 0) ? -xvel : xvel);
+    vz[g] = (float)(((signs & 2) == 0) ? -zvel : zvel);
+    vy[g] = (float)(random(rnd += GOLDEN_GAMMA)*yVel);
+    tags[g] = (float) random(rnd += GOLDEN_GAMMA);
+    ages[g] = 0;
+
+    float dt = TIMESTEP;
+    int v = g*groupSize;
+    for (int k=0; k < groupSize; k++, v++) {
+      x[v] = offsets[k*3];
+      y[v] = offsets[k*3+1];
+      z[v] = offsets[k*3+2];
+      if (staggered) {   // k updates along the path
+        float t = k*dt;
+        x[v] += vx[g]*t;
+        y[v] += vy[g]*t - 0.5f*GRAVITY*t*t;
+        z[v] += vz[g]*t;
+      }
+    }
+    return rnd;
+  }  // end of fire()
+
+
+
+  // ------------------ random number streams ---------------------
+
+
+  private long stream(long update, int block)
+  /* The starting state for the random numbers of a block during
+     an update. The next number's state is made by adding GOLDEN_GAMMA. */
+  {  return mix(seed + update*GOLDEN_GAMMA + block*BLOCK_GAMMA);  }
+
+
+  private static double random(long state)
+  // a number between 0 and 1 from a stream's state
+  {  return (mix(state) >>> 11) * 0x1.0p-53;  }
+
+
+  private static long mix(long z)
+  // the SplitMix64 finalizer
+  {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }  // end of mix()
+
+
+
+  // ------------------------ parallel updates -------------------------
+
+
+  private class StepTask extends RecursiveAction
+  // update the blocks from start to end-1
+  {
+    private int start, end;
+    private float[] coords;
+
+    public StepTask(int start, int end, float[] coords)
+    { this.start = start;  this.end = end;
+      this.coords = coords;
+    }
+
+    protected void compute()
+    {
+      if (end - start == 1)
+        stepBlock(start, coords);
+      else {   // split the blocks in two
+        int mid = (start + end)/2;
+        invokeAll( new StepTask(start, mid, coords),
+                   new StepTask(mid, end, coords) );
+      }
+    } // end of compute()
+
+  } // end of StepTask class
+
+}  // end of ParticleArrays class
@@ -0,0 +1,183 @@
+
+// ParticleTimer.java
+
+/* Time the point fountain's updates for increasing numbers of
+   particles, without a scene: the work done by PointParticles'
+   updater every time PartclesControl wakes up.
+
+   Each size is timed three times: with the original update, which
+   loops over interleaved (x,y,z) arrays and calls Math.random()
+   when a particle is fired ("original"), and with ParticleArrays,
+   using a ForkJoinPool of one thread ("serial") and the common
+   pool, which uses all the cores ("parallel").
+
+   The fountains run for WARMUP_TICKS updates first, so the JIT
+   compiler has finished with the code and the particles are
+   spread out along their paths, and then NUM_TICKS updates are
+   timed. The number of updates per second is printed; the
+   fountain is redrawn at most every 20 ms (see WrapParticles3D),
+   so 50 per second is enough.
+
+   The ParticleArrays fountains use the same seed, and a checksum
+   of their coordinates is printed, which should be the same for
+   the serial and parallel runs, whatever the number of cores.
+
+   Usage:
+     java ParticleTimer [ NumTicks [ MaxParticles ] ]
+*/
+
+import java.text.DecimalFormat;
+import java.util.concurrent.ForkJoinPool;
+
+
+public class ParticleTimer
+{
+  private static final int[] NUM_PARTICLES =
+            {3000, 10000, 100000, 1000000, 4000000};
+  private static final int WARMUP_TICKS = 100;
+  private static final int NUM_TICKS = 100;
+  private static final long SEED = 42;
+
+  // as in PointParticles
+  private static final float XZ_VELOCITY = 2.0f;
+  private static final float Y_VELOCITY = 6.0f;
+  private static final float GRAVITY = 9.8f;
+  private static final float TIMESTEP = 0.05f;
+
+  private static DecimalFormat df = new DecimalFormat("0.###");  // 3 dp
+
+
+  public static void main(String args[])
+  {
+    int numTicks = NUM_TICKS;
+    int maxParticles = Integer.MAX_VALUE;
+    try {
+      if (args.length >= 1)
+        numTicks = Integer.parseInt(args[0]);
+      if (args.length >= 2)
+        maxParticles = Integer.parseInt(args[1]);
+    }
+    catch(NumberFormatException e)
+    { System.out.println("Illegal argument; using defaults"); }
+
+    ForkJoinPool serialPool = new ForkJoinPool(1);
+    ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+    System.out.println("Ticks: " + numTicks + "; cores: " +
+                        Runtime.getRuntime().availableProcessors());
+
+    for (int i=0; i < NUM_PARTICLES.length; i++) {
+      int numParts = NUM_PARTICLES[i];
+      if (numParts > maxParticles)
+        break;
+      timeOriginal(numParts, numTicks);
+      long serialSum = timeArrays(numParts, numTicks, serialPool, "serial  ");
+      long parallelSum = timeArrays(numParts, numTicks, parallelPool, "parallel");
+      if (serialSum != parallelSum)
+        System.out.println("  The fountains are different!");
+    }
+    serialPool.shutdown();
+  } // end of main()
+
+
+
+  private static long timeArrays(int numParts, int numTicks,
+                                 ForkJoinPool pool, String name)
+  /* Report the average update time for a ParticleArrays fountain of
+     numParts points, and return a checksum of its coordinates. */
+  {
+    float[] cs = new float[numParts*3];
+    ParticleArrays parts = new ParticleArrays(numParts,
+                     new float[] {0.0f, 0.0f, 0.0f}, XZ_VELOCITY, Y_VELOCITY, SEED);
+    parts.setPool(pool);
+
+    for (int t=0; t < WARMUP_TICKS; t++)
+      parts.update(cs);
+
+    long startTime = System.nanoTime();
+    for (int t=0; t < numTicks; t++)
+      parts.update(cs);
+    long endTime = System.nanoTime();
+
+    long sum = checksum(cs);
+    report(numParts, name, (endTime - startTime)/(numTicks*1000000.0),
+           "  checksum: " + Long.toHexString(sum));
+    return sum;
+  }  // end of timeArrays()
+
+
+
+  // ------------------ the original update ---------------------
+
+
+  private static void timeOriginal(int numParts, int numTicks)
+  /* Report the average update time for numParts points, moved as
+     PointParticles did before ParticleArrays (without the colours). */
+  {
+    float[] cs = new float[numParts*3];
+    float[] vels = new float[numParts*3];
+    float[] accs = new float[numParts*3];
+    for (int i=0; i < numParts*3; i=i+3)
+      initParticle(i, cs, vels, accs);
+
+    for (int t=0; t < WARMUP_TICKS; t++)
+      updateOriginal(cs, vels, accs);
+
+    long startTime = System.nanoTime();
+    for (int t=0; t < numTicks; t++)
+      updateOriginal(cs, vels, accs);
+    long endTime = System.nanoTime();
+
+    report(numParts, "original", (endTime - startTime)/(numTicks*1000000.0), "");
+  }  // end of timeOriginal()
+
+
+  private static void updateOriginal(float[] cs, float[] vels, float[] accs)
+  {
+    for (int i=0; i < cs.length; i=i+3) {
+      if (cs[i+1] < 0.0f)    // particle has dropped below the y-axis
+        initParticle(i, cs, vels, accs);
+      else {
+        for (int j=i; j < i+3; j++) {
+          cs[j] += vels[j] * TIMESTEP + 0.5 * accs[j] * TIMESTEP * TIMESTEP;
+          vels[j] += accs[j] * TIMESTEP;
+        }
+      }
+    }
+  }  // end of updateOriginal()
+
+
+  private static void initParticle(int i, float[] cs, float[] vels, float[] accs)
+  {
+    cs[i] = 0.0f; cs[i+1] = 0.0f; cs[i+2] = 0.0f;
+    double xvel = Math.random()*XZ_VELOCITY;
+    double zvel = Math.sqrt((XZ_VELOCITY*XZ_VELOCITY) - (xvel*xvel));
+    vels[i] = (float)((Math.random() < 0.5) ? -xvel : xvel);
+    vels[i+2] = (float)((Math.random() < 0.5) ? -zvel : zvel);
+    vels[i+1] = (float)(Math.random() * Y_VELOCITY);
+    accs[i] = 0.0f; accs[i+1] = -GRAVITY; accs[i+2] = 0.0f;
+  }  // end of initParticle()
+
+
+
+  // ------------------------ results ---------------------------
+
+
+  private static void report(int numParts, String name, double tickTime,
+                             String extra)
+  {
+    System.out.println("Particles: " + numParts + "  " + name +
+        "  update: " + df.format(tickTime) + " ms" +
+        "  (" + df.format(1000.0/tickTime) + " updates/s)" + extra);
+  }  // end of report()
+
+
+  private static long checksum(float[] cs)
+  // mix the bits of all the coordinates, so any difference shows
+  {
+    long sum = 0;
+    for (int i=0; i < cs.length; i++)
+      sum = sum*31 + Float.floatToIntBits(cs[i]);
+    return sum;
+  } // end of checksum()
+
+} // end of ParticleTimer class
@@ -9,6 +9,10 @@
    The geometry's coordinates and colours are changed. The colour
    of each particle changes gradually from yellow to red.
 
+   The particles are moved by a ParticleArrays object, which is
+   fast enough for around a million points; the updater only
+   copies its results into the coordinates and colours.
+
    The GeometryUpdater and Behavior subclasses are inner classes of
    LineParticles. This allows the updater to directly access the 
    coordinates and colours when its updateData() method is triggered. 
@@ -26,8 +30,6 @@ public class PointParticles extends Shape3D
   private final static int POINTSIZE = 3;
   private final static float FADE_INCR = 0.05f;
 
-  private static final float GRAVITY = 9.8f;
-  private static final float TIMESTEP = 0.05f;
   private static final float XZ_VELOCITY = 2.0f; 
   private static final float Y_VELOCITY = 6.0f; 
 
@@ -37,9 +39,11 @@ public class PointParticles extends Shape3D
   private PointArray pointParts;     // Geometry holding the coords and colours
   private PartclesControl partBeh;   // the Behaviour triggering the updates
 
-  private float[] cs, vels, accs, cols;     // we must use floats unfortunately
+  private float[] cs, cols;     // we must use floats unfortunately
   private int numPoints;
 
+  private ParticleArrays parts;   // moves the particles
+
 
   public PointParticles(int nps, int delay) 
   {
@@ -76,13 +80,16 @@ public class PointParticles extends Shape3D
   private void createGeometry()
   { 
     cs = new float[numPoints*3];   // to store each (x,y,z)
-    vels = new float[numPoints*3];
-    accs = new float[numPoints*3];
     cols = new float[numPoints*3];
 
-    // step in 3's == one (x,y,z) coord
-    for(int i=0; i < numPoints*3; i=i+3)
-      initParticle(i);
+    // one vertex for each particle, starting at the origin
+    parts = new ParticleArrays(numPoints, new float[] {0.0f, 0.0f, 0.0f},
+                     XZ_VELOCITY, Y_VELOCITY, System.currentTimeMillis());
+
+    // all the particles start yellow at the origin
+    for(int i=0; i < numPoints*3; i=i+3) {
+      cols[i] = yellow.x;  cols[i+1] = yellow.y; cols[i+2] = yellow.z;
+    }
 
     // store the coordinates and colours in the PointArray
     pointParts.setCoordRefFloat(cs);    // use BY_REFERENCE
@@ -92,27 +99,6 @@ public class PointParticles extends Shape3D
   }  // end of createGeometry()
 
 
-  private void initParticle(int i)
-  // initialise coords in cs[] i to i+2 (1 point)
-  { 
-    cs[i] = 0.0f; cs[i+1] = 0.0f; cs[i+2] = 0.0f;   // (x,y,z) at origin
-
-    // random velocity in XZ plane with combined vector XZ_VELOCITY
-    double xvel = Math.random()*XZ_VELOCITY;
-    double zvel = Math.sqrt((XZ_VELOCITY*XZ_VELOCITY) - (xvel*xvel));
-    vels[i] = (float)((Math.random() < 0.5) ? -xvel : xvel);    // x vel
-    vels[i+2] = (float)((Math.random() < 0.5) ? -zvel : zvel);  // z vel
-    // y velocity
-    vels[i+1] = (float)(Math.random() * Y_VELOCITY);
-    
-    // unchanging accelerations, downwards in y direction
-    accs[i] = 0.0f; accs[i+1] = -GRAVITY; accs[i+2] = 0.0f;
-
-    // initial particle colour is yellow
-    cols[i] = yellow.x;  cols[i+1] = yellow.y; cols[i+2] = yellow.z;
-  }  // end of initParticle()
-
-
 
   private void createAppearance()
   {
@@ -134,53 +120,29 @@ public class PointParticles extends Shape3D
     public void updateData(Geometry geo)
     /* An update of the geometry is triggered by the system.
        Rather than use geo, we directly access the cs[] and
-       cols[] arrays back in PointParticles. 
+       cols[] arrays back in PointParticles. ParticleArrays
+       moves the particles and fills cs[]; only the colours
+       are set here.
     */
     { // GeometryArray ga = (GeometryArray) geo;
       // float cds[] = ga.getCoordRefFloat();
 
-      // step in 3's == one (x,y,z) coord
-      for(int i=0; i < numPoints*3; i=i+3) {
-        if (cs[i+1] < 0.0f)    // particle has dropped below the y-axis
-          initParticle(i);     // re-initialise it
-        else       // update the particle
-          updateParticle(i);
-      }
+      parts.update(cs);
+      updateColours( parts.getAges() );
     }  // end of updateData()
 
 
-    private void updateParticle(int i)
-    /* Calculate the particle's new position and velocity (treating 
-       is as a projectile). The acceleration is constant.
-    */
-    { cs[i] += vels[i] * TIMESTEP +
-                      0.5 * accs[i] * TIMESTEP * TIMESTEP;     // x coord
-      cs[i+1] += vels[i+1] * TIMESTEP +
-                      0.5 * accs[i+1] * TIMESTEP * TIMESTEP;   // y coord
-      cs[i+2] += vels[i+2] * TIMESTEP +
-                      0.5 * accs[i+2] * TIMESTEP * TIMESTEP;   // z coord
-
-      // calculate new velocities
-      vels[i] += accs[i] * TIMESTEP;      // x vel
-      vels[i+1] += accs[i+1] * TIMESTEP;  // y vel
-      vels[i+2] += accs[i+2] * TIMESTEP;  // z vel
-
-      updateColour(i);
-    } // end of updateParticle()
-
-
-    private void updateColour(int i)
-    /* Fade colour to red by reducing the green and
-       blue parts of the initial colour in FADE_INCR steps
+    private void updateColours(int[] ages)
+    /* Fade colour to red by reducing the green and blue parts
+       of the initial colour by FADE_INCR for every update since
+       the particle was fired.
     */
-    { cols[i+1] = cols[i+1] - FADE_INCR;   // green part
-      if (cols[i+1] < 0.0f)
-        cols[i+1] = 0.0f;
-
-      cols[i+2] = cols[i+2] - FADE_INCR;   // blue part
-      if (cols[i+2] < 0.0f)
-        cols[i+2] = 0.0f;
-    }  // end of updateColour()
+    { for(int i=0; i < numPoints; i++) {
+        float fade = ages[i]*FADE_INCR;
+        cols[i*3+1] = Math.max(yellow.y - fade, 0.0f);   // green part
+        cols[i*3+2] = Math.max(yellow.z - fade, 0.0f);   // blue part
+      }
+    }  // end of updateColours()
     
   } // end of PointsUpdater class
 
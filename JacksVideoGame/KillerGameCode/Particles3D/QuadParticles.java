@@ -12,6 +12,11 @@
 
    The geometry's coordinates are changed.
 
+   The quads are moved by a ParticleArrays object, as groups of four
+   vertices which start at the quad's corners, and are jittered by
+   up to DELTA on each update (so the quads change shape); the
+   updater only copies its results into the coordinates.
+
    The GeometryUpdater and Behavior subclasses are inner classes of
    QuadParticles. This allows the updater to directly access the 
    coordinates when its updateData() method is triggered. 
@@ -40,8 +45,6 @@ public class QuadParticles extends OrientedShape3D
   private final static Color3f red = new Color3f(0.9f, 0.1f, 0.2f);
   private final static Color3f darkRed = new Color3f(1.0f, 0.0f, 0.0f);
 
-  private static final float GRAVITY = 9.8f;
-  private static final float TIMESTEP = 0.05f;
   private static final float XZ_VELOCITY = 2.0f; 
   private static final float Y_VELOCITY = 8.0f; 
 
@@ -51,17 +54,19 @@ public class QuadParticles extends OrientedShape3D
   private QuadArray quadParts;       // Geometry holding the coords, etc.
   private PartclesControl partBeh;   // the Behaviour triggering the updates
 
-  private float[] cs, vels, accs, norms;        // we must use floats arrays
+  private float[] cs, norms;        // we must use floats arrays
   private float[] tcoords;
 
   // starting points for a quad, counter-clockewise from bottom-left
-  private float[] p1 = {-QUAD_LEN/2, 0.0f, 0.0f};
-  private float[] p2 = {QUAD_LEN/2, 0.0f, 0.0f};
-  private float[] p3 = {QUAD_LEN/2, QUAD_LEN, 0.0f};
-  private float[] p4 = {-QUAD_LEN/2, QUAD_LEN, 0.0f};
+  private float[] corners = { -QUAD_LEN/2, 0.0f, 0.0f,
+                               QUAD_LEN/2, 0.0f, 0.0f,
+                               QUAD_LEN/2, QUAD_LEN, 0.0f,
+                              -QUAD_LEN/2, QUAD_LEN, 0.0f };
   
   private int numPoints;
 
+  private ParticleArrays parts;   // moves the quads
+
 
   public QuadParticles(int nps, int delay)
   {
@@ -98,24 +103,24 @@ public class QuadParticles extends OrientedShape3D
 
 
   private void createGeometry()
-  /* Create the float arrays for the coords, vels, accs, 
-     normals, and texture coords. Assign the coords, normals
-     and texture coords to the QuadArray using BY_REFERENCE.
+  /* Create the float arrays for the coords, normals, and
+     texture coords, and the ParticleArrays for moving the quads.
+     Assign the coords, normals and texture coords to the
+     QuadArray using BY_REFERENCE.
 
      Only the coords will be changed later.
   */ 
   { cs = new float[numPoints*3];   // to store each (x,y,z)
-    vels = new float[numPoints*3];
-    accs = new float[numPoints*3];
     norms = new float[numPoints*3];
 
     tcoords = new float[numPoints*2];  // two texture coords per coord
     // textureCoordsArray = new TexCoord2f[numPoints];
 
-    // initialise position, vel, and acc
-    // steps of 12 == 4 (x,y,z) coords == 1 quad at a time
-    for(int i=0; i < numPoints*3; i=i+12)
-      initQuadParticle(i);
+    // 4 vertices for each quad, starting at its corners
+    parts = new ParticleArrays(numPoints/4, corners, XZ_VELOCITY, Y_VELOCITY,
+                               System.currentTimeMillis());
+    parts.setJitter(DELTA);
+
     // refer to the coordinates in the QuadArray
     quadParts.setCoordRefFloat(cs);    // use BY_REFERENCE
 
@@ -147,52 +152,6 @@ public class QuadParticles extends OrientedShape3D
   }  // end of createGeometry()
 
 
-  private void initQuadParticle(int i)
-  // initialise quad made up of 4 particles from i to i+11
-  { 
-    setCoord(cs, i, p1);  // set starting points
-    setCoord(cs, i+3, p2);
-    setCoord(cs, i+6, p3);
-    setCoord(cs, i+9, p4);
-
-    // random velocity in XZ plane with combined vector XZ_VELOCITY
-    double xvel = Math.random()*XZ_VELOCITY;
-    double zvel = Math.sqrt((XZ_VELOCITY*XZ_VELOCITY) - (xvel*xvel));
-    vels[i] = (float)((Math.random() < 0.5) ? -xvel : xvel);    // x vel
-    vels[i+2] = (float)((Math.random() < 0.5) ? -zvel : zvel);  // z vel
-    // y velocity
-    vels[i+1] = (float)(Math.random() * Y_VELOCITY);
-    
-    // unchanging accelerations, downwards in y direction
-    accs[i] = 0.0f; accs[i+1] = -GRAVITY; accs[i+2] = 0.0f;
- 
-    // all the particles in the quad have the same vel and acc
-    copyCoord(vels, i+3, i);  
-    copyCoord(vels, i+6, i);
-    copyCoord(vels, i+9, i);
-
-    copyCoord(accs, i+3, i);
-    copyCoord(accs, i+6, i);
-    copyCoord(accs, i+9, i);
-  }  // end of initQuadParticle()
-
-
-  private void setCoord(float[] fs, int i, float[] p)
-  // copy the 3 floats in p[] into fs starting at i
-  {  fs[i] = p[0];
-     fs[i+1] = p[1];
-     fs[i+2] = p[2];
-  }  // end of setCoord()
-
-
-  private void copyCoord(float[] fs, int to, int from)
-  // copy 3 floats starting at fs[from] to fs[to]
-  { fs[to] = fs[from];
-    fs[to+1] = fs[from+1];
-    fs[to+2] = fs[from+2];
-  } // end of copyCoord()
-
-
   private void randomNormal(Vector3f v)
   // Create a unit vector. The x- and y- values can be +ve or -ve.
   // The z-value is positive, so facing towards the viewer.
@@ -246,66 +205,14 @@ public class QuadParticles extends OrientedShape3D
     public void updateData(Geometry geo)
     /* An update of the geometry is triggered by the system.
        Rather than use geo, we directly access the cs[] array
-       back in QuadParticles. 
+       back in QuadParticles, which ParticleArrays fills.
     */
     { // GeometryArray ga = (GeometryArray) geo;
       // float cds[] = ga.getCoordRefFloat();
 
-      // step in 12's == 4 (x,y,z) coords == one quad
-      for(int i=0; i < numPoints*3; i=i+12)
-         updateQuadParticle(i);
+      parts.update(cs);
     }  // end of updateData()
 
-
-    private void updateQuadParticle(int i)
-    {
-      if ((cs[i+1] < 0.0f) && (cs[i+4] < 0.0f) && 
-          (cs[i+7] < 0.0f) && (cs[i+10] < 0.0f))   
-        // all of the quad has dropped below the y-axis
-        initQuadParticle(i);
-      else {
-        updateParticle(i);   // all points in a quad change the same way
-        updateParticle(i+3);
-        updateParticle(i+6);
-        updateParticle(i+9);
-      }
-    }  // end of updateQuadParticle()
-
-
-
-    private void updateParticle(int i)
-    /* Calculate the particle's new position and velocity (treating 
-       is as a projectile). The acceleration is constant.
-    */
-    { cs[i] += vels[i] * TIMESTEP +
-                      0.5 * accs[i] * TIMESTEP * TIMESTEP;     // x coord
-      cs[i+1] += vels[i+1] * TIMESTEP +
-                      0.5 * accs[i+1] * TIMESTEP * TIMESTEP;   // y coord
-      cs[i+2] += vels[i+2] * TIMESTEP +
-                      0.5 * accs[i+2] * TIMESTEP * TIMESTEP;   // z coord
-
-      // perturbate (alter a bit) the (x,y,z) values
-      /* Without this each quad stays a fixed size since each
-         (x,y,z) coord is moved by the same amount */
-      cs[i] = perturbate(cs[i], DELTA);
-      cs[i+1] = perturbate(cs[i+1], DELTA);
-      cs[i+1] = perturbate(cs[i+1], DELTA);
-
-      // calculate new velocities
-      vels[i] += accs[i] * TIMESTEP;      // x vel
-      vels[i+1] += accs[i+1] * TIMESTEP;  // y vel
-      vels[i+2] += accs[i+2] * TIMESTEP;  // z vel
-    } // end of updateParticle()
-
-
-    private float perturbate(float f, float range)
-    // return a float which is f added to a number between -range to range
-    {
-      float randomRange = ((float)(Math.random()*range*2.0f))-range;
-      return (f + randomRange);
-    }  // end of perturbate()
-
-    
   } // end of QuadsUpdater class
 
 
@@ -0,0 +1,221 @@
+
+// HeightGrid.java
+
+/* A height index for the landscape mesh, built once by Landscape
+   when the mesh is loaded, so the height at any (x,y) on the floor
+   can be found straight away, instead of by picking (which took
+   1-2 seconds, and so had to be done in a separate thread).
+
+   It uses landscape coordinates: the floor is the XY plane, from
+   (0,0) to (landLength,landLength), and the height is along Z.
+
+   The floor is divided into a regular grid of cells, with about
+   TRIS_PER_CELL triangles per cell, and each cell lists the
+   triangles whose XY bounding boxes overlap it. The lists are
+   stored one after another in cellTris[], with cell c's list
+   starting at cellStart[c], so the whole index is three arrays.
+
+   getHeight() looks in the cell holding (x,y) for the triangle
+   which contains it, and interpolates the heights of its corners,
+   using barycentric coordinates. The coefficients for these are
+   calculated for each triangle when the grid is built, so a
+   lookup does a few multiplications per triangle in the cell,
+   and creates no objects.
+
+   If (x,y) is just outside all the cell's triangles (e.g. because
+   of a crack between them, or rounding at an edge), the nearest
+   triangle's plane is used. If more than one triangle contains
+   (x,y) the highest is used, which is what picking downwards
+   from above the landscape would find.
+*/
+
+
+public class HeightGrid
+{
+  private static final int TRIS_PER_CELL = 2;
+  private static final int MAX_CELLS = 1024;   // along each side
+  private static final float EPS = 1e-4f;      // for points on an edge
+
+  // for each triangle: x2, y2, then the barycentric coefficients
+  // of corners 0 and 1 (a0, b0, a1, b1), then the corners' heights
+  private static final int TRI_SIZE = 9;
+
+  private int numCells;     // along each side
+  private double cellLen;
+
+  private float[] triData;
+  private int numTris;
+  private int[] cellStart;  // numCells*numCells + 1 entries
+  private int[] cellTris;
+
+
+
+  public HeightGrid(float[] coords, int[] indices, double landLength)
+  /* coords holds the mesh's vertices as (x,y,z) triples, and
+     indices holds three vertex numbers for each triangle. */
+  {
+    int maxTris = indices.length/3;
+    numCells = (int) Math.sqrt(maxTris/TRIS_PER_CELL);
+    if (numCells < 1)
+      numCells = 1;
+    else if (numCells > MAX_CELLS)
+      numCells = MAX_CELLS;
+    cellLen = landLength/numCells;
+
+    float[] bounds = storeTriangles(coords, indices);
+    fillCells(bounds);
+  }  // end of HeightGrid()
+
+
+
+  private float[] storeTriangles(float[] coords, int[] indices)
+  /* Calculate each triangle's barycentric coefficients, skipping
+     the triangles which are vertical or have no area, since
+     they can't hold a point. Returns the triangles' XY bounding
+     boxes (min x, max x, min y, max y), for fillCells(). */
+  {
+    triData = new float[(indices.length/3) * TRI_SIZE];
+    float[] bounds = new float[(indices.length/3) * 4];
+    numTris = 0;
+    for (int i=0; i+2 < indices.length; i += 3) {
+      int v0 = indices[i]*3;
+      int v1 = indices[i+1]*3;
+      int v2 = indices[i+2]*3;
+      double x0 = coords[v0], y0 = coords[v0+1];
+      double x1 = coords[v1], y1 = coords[v1+1];
+      double x2 = coords[v2], y2 = coords[v2+1];
+
+      double det = (y1-y2)*(x0-x2) + (x2-x1)*(y0-y2);
+      if (Math.abs(det) < 1e-12)
+        continue;
+
+      int t = numTris*TRI_SIZE;
+      triData[t] = (float) x2;
+      triData[t+1] = (float) y2;
+      triData[t+2] = (float) ((y1-y2)/det);
+      triData[t+3] = (float) ((x2-x1)/det);
+      triData[t+4] = (float) ((y2-y0)/det);
+      triData[t+5] = (float) ((x0-x2)/det);
+      triData[t+6] = coords[v0+2];
+      triData[t+7] = coords[v1+2];
+      triData[t+8] = coords[v2+2];
+
+      int b = numTris*4;
+      bounds[b] = (float) Math.min(x0, Math.min(x1, x2));
+      bounds[b+1] = (float) Math.max(x0, Math.max(x1, x2));
+      bounds[b+2] = (float) Math.min(y0, Math.min(y1, y2));
+      bounds[b+3] = (float) Math.max(y0, Math.max(y1, y2));
+      numTris++;
+    }
+    return bounds;
+  }  // end of storeTriangles()
+
+
+
+  private void fillCells(float[] bounds)
+  /* Two passes over the triangles: the first counts the triangles
+     for each cell, so cellStart[] can be set, and the second
+     stores them in cellTris[]. */
+  {
+    cellStart = new int[numCells*numCells + 1];
+    int[] range = new int[4];
+    for (int i=0; i < numTris; i++) {
+      cellRange(i, bounds, range);
+      for (int cy=range[2]; cy <= range[3]; cy++)
+        for (int cx=range[0]; cx <= range[1]; cx++)
+          cellStart[cy*numCells + cx + 1]++;
+    }
+    for (int c=0; c < numCells*numCells; c++)
+      cellStart[c+1] += cellStart[c];
+
+    cellTris = new int[ cellStart[numCells*numCells] ];
+    int[] next = new int[numCells*numCells];
+    System.arraycopy(cellStart, 0, next, 0, next.length);
+    for (int i=0; i < numTris; i++) {
+      cellRange(i, bounds, range);
+      for (int cy=range[2]; cy <= range[3]; cy++)
+        for (int cx=range[0]; cx <= range[1]; cx++)
+          cellTris[ next[cy*numCells + cx]++ ] = i;
+    }
+  }  // end of fillCells()
+
+
+
+  private void cellRange(int tri, float[] bounds, int[] range)
+  /* Store the cells covered by the triangle's bounding box in
+     range[] as: min x cell, max x cell, min y cell, max y cell. */
+  {
+    int b = tri*4;
+    range[0] = toCell(bounds[b]);    range[1] = toCell(bounds[b+1]);
+    range[2] = toCell(bounds[b+2]);  range[3] = toCell(bounds[b+3]);
+  }
+
+
+  private int toCell(double coord)
+  {
+    int c = (int) Math.floor(coord/cellLen);
+    if (c < 0)
+      return 0;
+    if (c >= numCells)
+      return numCells-1;
+    return c;
+  }  // end of toCell()
+
+
+
+  public double getHeight(double x, double y)
+  /* Return the height of the landscape at (x,y), in landscape
+     coordinates, or Double.NaN if there's no mesh near (x,y). */
+  {
+    int cell = toCell(y)*numCells + toCell(x);
+    int end = cellStart[cell+1];
+
+    double height = Double.NaN;
+    int nearest = -1;
+    double nearestDist = Double.NEGATIVE_INFINITY;
+    for (int i=cellStart[cell]; i < end; i++) {
+      int t = cellTris[i]*TRI_SIZE;
+      double dx = x - triData[t];
+      double dy = y - triData[t+1];
+      double l0 = triData[t+2]*dx + triData[t+3]*dy;
+      double l1 = triData[t+4]*dx + triData[t+5]*dy;
+      double l2 = 1.0 - l0 - l1;
+
+      double minL = Math.min(l0, Math.min(l1, l2));
+      if (minL >= -EPS) {   // (x,y) is inside the triangle
+        double h = l0*triData[t+6] + l1*triData[t+7] + l2*triData[t+8];
+        if (Double.isNaN(height) || (h > height))
+          height = h;
+      }
+      else if (minL > nearestDist) {
+        nearest = t;
+        nearestDist = minL;
+      }
+    }
+
+    if (Double.isNaN(height) && (nearest != -1)) {  // use the nearest plane
+      double dx = x - triData[nearest];
+      double dy = y - triData[nearest+1];
+      double l0 = triData[nearest+2]*dx + triData[nearest+3]*dy;
+      double l1 = triData[nearest+4]*dx + triData[nearest+5]*dy;
+      height = l0*triData[nearest+6] + l1*triData[nearest+7] +
+                              (1.0 - l0 - l1)*triData[nearest+8];
+    }
+    return height;
+  }  // end of getHeight()
+
+
+  public int getNumCells()
+  {  return numCells;  }
+
+  public int getNumTriangles()
+  {  return numTris;  }
+
+
+  public String toString()
+  {
+    return "Height grid: " + numCells + "x" + numCells + " cells, " +
+           numTris + " triangles, " + cellTris.length + " cell entries";
+  }
+
+}  // end of HeightGrid class
@@ -9,14 +9,13 @@
 
       * where   //  prints the user's position in land coordinates
    
-   The major change is that a move does not _immediately_ affect
-   the user's height position on the terrain. The height calculation
-   is delegated to the HeightFinder object, which may take 1-2 secs
-   to obtain the height through picking. In the meantime, KeyBehavior
-   continues to use the old height position.
-
-   This means that the user can move inside mountains, but the user's 
-   height will eventually be corrected.
+   The major change is that the floor height for a move is found
+   with Landscape.getLandHeight(), which uses a HeightGrid index of
+   the terrain mesh. It used to be found by picking, which took 1-2
+   secs for such a large mesh, so it was delegated to a separate
+   HeightFinder thread, and the user could move inside mountains
+   until the height was corrected. Now the height is up to date
+   after every move.
 */
 
 
@@ -59,7 +58,6 @@ public class KeyBehavior extends ViewPlatformBehavior
   private WakeupCondition keyPress;
 
   private Landscape land;
-  private HeightFinder hf;   // HeightFinder processes height requests
 
   private double currLandHeight;  // floor height at current position (in world coords)
   private int zOffset;            // used when moving up/down
@@ -73,6 +71,7 @@ public class KeyBehavior extends ViewPlatformBehavior
   private Transform3D toMove = new Transform3D();
   private Transform3D toRot = new Transform3D();
   private Vector3d trans = new Vector3d();
+  private Vector3d actualMove = new Vector3d();
 
 
   public KeyBehavior(Landscape ld, TransformGroup steerTG)
@@ -82,9 +81,6 @@ public class KeyBehavior extends ViewPlatformBehavior
     initViewPosition(steerTG);
     df = new DecimalFormat("0.###");  // 3 dp
 
-    hf = new HeightFinder(land, this);
-    hf.start();
-
     keyPress = new WakeupOnAWTEvent(KeyEvent.KEY_PRESSED);
   } // end of KeyBehavior()
 
@@ -181,26 +177,16 @@ public class KeyBehavior extends ViewPlatformBehavior
 
 
   private void moveBy(Vector3d theMove)
-  /* _Eventually_ calculate the next position on the floor (x,?,z). 
+  /* Calculate the next position on the floor (x,?,z). 
 
      First, do a quick test to see if the move
      will be within the land boundaries. 
 
-     Then, _request_ the floor height for the given (x,z) position.
-     Don't wait for an answer (which may take 1-2 secs). Instead, 
-     continue with the current floor height, which means a move
-     with no change in the y-axis.
-
-     The height request is sent to the HeightFinder object, which will
-     query the landscape through picking. When it has an answer,
-     it will call KeyBehavior's adjustHeight().
-
-     This means that the user may walk through the sides of
-     mountains, but his/her y-position will *eventually* be
-     adjusted.
-
-     HeightFinder is coded so that when Keybehavior sends a
-     request, it will replace any previously pending request.
+     Then get the floor height for the given (x,z) position from
+     the Landscape, and move there in one step, putting the user
+     back on the floor if he/she was floating. If no height is
+     found (e.g. at the edge of the mesh), the current floor height
+     is kept.
   */
   {
     // System.out.println("theMove: " + theMove);
@@ -208,28 +194,16 @@ public class KeyBehavior extends ViewPlatformBehavior
     if (!land.inLandscape(nextLoc.x, nextLoc.z))   // if not on landscape
        return;
 
-    hf.requestMoveHeight(nextLoc);   // send height request to HeightFinder
-
-    Vector3d actualMove = new Vector3d(theMove.x, 0, theMove.z);  // no y-axis change
-    doMove(actualMove);
-  }  // end of moveBy()
-
-
-
-  public void adjustHeight(double newHeight)
-  /* Called by HeightFinder to adjust the viewer's y-axis 
-     position. It is synchronized, so that it won't interfere
-     with a call to moveBy() which also adjust's the viewer's 
-     position.
-  */
-  { // System.out.println("adjustHeight: " + newHeight);
+    double newHeight = land.getLandHeight(nextLoc.x, nextLoc.z);
+    if (Double.isNaN(newHeight))
+      newHeight = currLandHeight;
     double heightChg = newHeight - currLandHeight - (MOVE_STEP*zOffset);
-    Vector3d upVec = new Vector3d(0, heightChg, 0);
 
     currLandHeight = newHeight;      // update current height
     zOffset = 0;                     // back on floor, so no offset
-    doMove(upVec);
-  }  // end of adjustHeight()
+    actualMove.set(theMove.x, heightChg, theMove.z);
+    doMove(actualMove);
+  }  // end of moveBy()
 
 
 
@@ -245,11 +219,8 @@ public class KeyBehavior extends ViewPlatformBehavior
   }  // end of tryMove()
 
 
-  synchronized private void doMove(Vector3d theMove)
-  /* Move the viewpoint by theMove offset.
-     This method can be called by KeyBehavior from moveBy() 
-     and HeightFinder from adjustHeight(), so is synchronized.
-  */
+  private void doMove(Vector3d theMove)
+  // Move the viewpoint by theMove offset.
   {
     targetTG.getTransform(t3d);
     toMove.setTranslation(theMove);
@@ -25,6 +25,11 @@
 
     The Landscape is surrounded by four walls which are covered
     in a mountain range image.
+
+    The heights of the landscape are found with a HeightGrid, built
+    from the mesh's triangles when it is loaded, so getLandHeight()
+    answers straight away (it used to be done by picking, which was
+    so slow that it needed its own thread, HeightFinder).
 */
 
 import java.io.*;
@@ -33,12 +38,11 @@ import java.util.*;
 import javax.media.j3d.*;
 import javax.vecmath.*;
 import com.sun.j3d.utils.image.*;
+import com.sun.j3d.utils.geometry.GeometryInfo;
 
 import com.sun.j3d.loaders.objectfile.ObjectFile;
 import com.sun.j3d.loaders.*;
 
-import com.sun.j3d.utils.picking.*;
-
 
 
 public class Landscape
@@ -56,6 +60,8 @@ public class Landscape
   private double landLength, minHeight, maxHeight;
   private double scaleLen;
 
+  private HeightGrid heightGrid;   // for the heights of the mesh
+
   private Vector3d originVec = null;   
        // where the user starts in the landscape (in world coordinates)
 
@@ -65,12 +71,9 @@ public class Landscape
     this.sceneBG = sceneBG;
     loadMesh(fname);        // initialize landBG
     getLandShape(landBG);   // initialize landShape3D
-
-    // set the picking capabilities so that intersection
-    // coords can be extracted after the shape is picked
-    PickTool.setCapabilities(landShape3D, PickTool.INTERSECT_COORD);
  
     getLandDimensions(landShape3D);   // extracts sizes from landShape3D
+    makeHeightGrid(landShape3D);      // for getLandHeight()
 
     makeScenery(landBG, fname);   // add any scenery
     addWalls();                   // walls around the landscape
@@ -121,8 +124,8 @@ public class Landscape
      single Shape3D, and assign it to landShape3D for later.
      Also check that the shape holds a single GeometryArray.
 
-     landShape3D is later used for picking, and its dimensions
-     are extracted. 
+     landShape3D's dimensions are extracted later, and its
+     triangles are used to make the HeightGrid.
   */
   {
     if (landBG.numChildren() > 1)
@@ -197,6 +200,34 @@ public class Landscape
   }  // end of getLandDimensions()
 
 
+
+  private void makeHeightGrid(Shape3D landShape3D)
+  /* Copy the mesh's triangles into a HeightGrid. GeometryInfo
+     converts the GeometryArray to indexed triangles, whatever
+     kind of array the OBJ loader made (e.g. strips, or by
+     reference). This is done before the mesh is live, so no
+     capabilities are needed to read it.
+  */
+  {
+    long startTime = System.currentTimeMillis();
+    GeometryInfo gi = 
+          new GeometryInfo( (GeometryArray) landShape3D.getGeometry() );
+    gi.convertToIndexedTriangles();
+    Point3f[] pts = gi.getCoordinates();
+    int[] indices = gi.getCoordinateIndices();
+
+    float[] coords = new float[pts.length*3];
+    for (int i=0; i < pts.length; i++) {
+      coords[i*3] = pts[i].x;
+      coords[i*3+1] = pts[i].y;
+      coords[i*3+2] = pts[i].z;
+    }
+    heightGrid = new HeightGrid(coords, indices, landLength);
+    System.out.println(heightGrid + ", built in " +
+               (System.currentTimeMillis() - startTime) + " ms");
+  }  // end of makeHeightGrid()
+
+
   private void addLandtoScene(BranchGroup landBG)
   /* The floor of the landscape is the XY plane, starting at (0,0),
      with sides of landLength units.
@@ -469,25 +500,38 @@ public class Landscape
   {  return originVec;  }
 
   public BranchGroup getLandBG()
-  // used by HeightFinder
   {  return landBG;  }
 
   public double getScaleLen()
-  // used by HeightFinder
   {  return scaleLen;  }
 
 
   public boolean inLandscape(double x, double z)
-  // is world (x,z) in the landscape? Used by KeyBehavior
+  /* Is world (x,z) in the landscape? Used by KeyBehavior.
+     The conversion is the same as in worldToLand(), without
+     making a Vector3d. */
   {
-    Vector3d landVec = worldToLand( new Vector3d(x, 0, z));
-    if ((landVec.x <= 0) || (landVec.x >= landLength) ||
-        (landVec.y <= 0) || (landVec.y >= landLength))
+    double xCoord = (x + LAND_LEN/2) / scaleLen;
+    double yCoord = (-z + LAND_LEN/2) / scaleLen;
+    if ((xCoord <= 0) || (xCoord >= landLength) ||
+        (yCoord <= 0) || (yCoord >= landLength))
       return false;
     return true;
   }  // end of inLandscape()
 
 
+  public double getLandHeight(double x, double z)
+  /* Return the height of the landscape at world (x,z), in world
+     coordinates, or Double.NaN if there's no mesh there.
+     Used by KeyBehavior, and quick enough to use for many
+     sprites in every frame, since it creates no objects. */
+  {
+    double xCoord = (x + LAND_LEN/2) / scaleLen;
+    double yCoord = (-z + LAND_LEN/2) / scaleLen;  // z-axis --> y-axis
+    return heightGrid.getHeight(xCoord, yCoord) * scaleLen;  // z-axis --> y-axis
+  }  // end of getLandHeight()
+
+
   public Vector3d worldToLand(Vector3d worldVec)
   /* Used by KeyBehavior
      Converting world to land coordinates involves translation, scaling, 
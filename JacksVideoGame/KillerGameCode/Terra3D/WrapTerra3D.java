@@ -9,18 +9,11 @@
 
    The dark blue sky contains stars (points of light).
 
-   The user navigates over the terrain using a KeyBehavior object.
-   But the size of the terrain mesh means that there is a lag time 
-   before a user's height position correctly reflects the height of the
-   terrain.
-
-   For example, it is possible to move _inside_ a mountain, but when the 
-   height calculation (done through picking) is eventually completed, then 
-   the user's height will be corrected.
-
-   This behaviour is intentional -- it allows the user to move about the
-   terrain quickly without being forced to wait for the height calculations
-   to finish.
+   The user navigates over the terrain using a KeyBehavior object,
+   which keeps the user on the ground by asking the Landscape for the
+   terrain's height at each move. The Landscape answers from a
+   HeightGrid index of the mesh, built when it is loaded, so the
+   user's height is always up to date, even for a very large mesh.
 */
 
 import javax.swing.*;
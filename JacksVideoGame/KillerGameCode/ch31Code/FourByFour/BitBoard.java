@@ -0,0 +1,128 @@
+
+// BitBoard.java
+
+/* The 4*4*4 board as two 64-bit masks, one per player. Position
+   pos is bit pos, where pos = x + 4*y + 16*z, the same numbering
+   as in Positions.
+
+   The 76 winning lines are precomputed as masks (WIN_MASKS), and
+   so are the lines through each position (POS_MASKS: 7 for the
+   corners and the 8 central positions, 4 for the rest). A player
+   has won with a move at pos if one of the masks through pos is
+   completely inside the player's mask, so a win is found with at
+   most 7 ANDs, rather than by updating counts for each line.
+
+   The static methods work on plain masks, so FBFSearch can use
+   them without making BitBoard objects.
+*/
+
+
+public class BitBoard
+{
+  public final static int NUM_SPOTS = 64;    // in the game board (4*4*4)
+  public final static int WIN_WAYS = 76;     // the number of lines
+  public final static long FULL = -1L;       // all 64 positions
+
+  public final static int PLAYER1 = 1;
+  public final static int PLAYER2 = 2;
+
+  public final static long[] WIN_MASKS = new long[WIN_WAYS];
+  public final static long[][] POS_MASKS = new long[NUM_SPOTS][];
+
+  static {  initMasks();  }
+
+
+  private long[] stones = new long[3];   // indexed by player; 0 isn't used
+  private int numMoves = 0;
+
+
+
+  private static void initMasks()
+  /* A line starts at (x,y,z) and takes 3 more steps of (dx,dy,dz),
+     where each step is -1, 0, or 1. Only the 13 directions whose
+     first non-zero step is +1 are used, so each line is made once. */
+  {
+    int numLines = 0;
+    for (int dz=-1; dz <= 1; dz++)
+      for (int dy=-1; dy <= 1; dy++)
+        for (int dx=-1; dx <= 1; dx++) {
+          if ((dx > 0) || ((dx == 0) && (dy > 0)) ||
+              ((dx == 0) && (dy == 0) && (dz > 0))) {
+            for (int z=0; z < 4; z++)
+              for (int y=0; y < 4; y++)
+                for (int x=0; x < 4; x++) {
+                  if (inBoard(x+3*dx, y+3*dy, z+3*dz)) {
+                    long mask = 0;
+                    for (int i=0; i < 4; i++)
+                      mask |= 1L << index(x+i*dx, y+i*dy, z+i*dz);
+                    WIN_MASKS[numLines++] = mask;
+                  }
+                }
+          }
+        }
+
+    // the lines through each position
+    for (int pos=0; pos < NUM_SPOTS; pos++) {
+      int count = 0;
+      for (int i=0; i < WIN_WAYS; i++)
+        if ((WIN_MASKS[i] & (1L << pos)) != 0)
+          count++;
+      POS_MASKS[pos] = new long[count];
+      count = 0;
+      for (int i=0; i < WIN_WAYS; i++)
+        if ((WIN_MASKS[i] & (1L << pos)) != 0)
+          POS_MASKS[pos][count++] = WIN_MASKS[i];
+    }
+  }  // end of initMasks()
+
+
+  private static boolean inBoard(int x, int y, int z)
+  {  return (x >= 0) && (x < 4) && (y >= 0) && (y < 4) && (z >= 0) && (z < 4);  }
+
+
+  public static int index(int x, int y, int z)
+  {  return x + 4*y + 16*z;  }
+
+
+  public static boolean isWin(long mask, int pos)
+  // does mask hold a complete line through pos?
+  {
+    long[] lines = POS_MASKS[pos];
+    for (int i=0; i < lines.length; i++)
+      if ((mask & lines[i]) == lines[i])
+        return true;
+    return false;
+  }  // end of isWin()
+
+
+
+  // ---------------------- a game's board ----------------------
+
+  public void clear()
+  {  stones[PLAYER1] = 0;  stones[PLAYER2] = 0;
+     numMoves = 0;
+  }
+
+  public boolean isFree(int pos)
+  {  return ((stones[PLAYER1] | stones[PLAYER2]) & (1L << pos)) == 0;  }
+
+  public boolean isFull()
+  {  return (stones[PLAYER1] | stones[PLAYER2]) == FULL;  }
+
+  public long getStones(int player)
+  {  return stones[player];  }
+
+  public int getNumMoves()
+  {  return numMoves;  }
+
+
+  public boolean play(int pos, int player)
+  /* Put player's marker at pos, which must be free. Returns true
+     if it completes a line. */
+  {
+    stones[player] |= 1L << pos;
+    numMoves++;
+    return isWin(stones[player], pos);
+  }  // end of play()
+
+}  // end of BitBoard class
@@ -0,0 +1,255 @@
+
+// FBFBenchmark.java
+
+/* Measures the BitBoard and FBFSearch, without Java 3D:
+
+     * perft: counts the move sequences from the empty board, to
+       depths 1 to perftDepth, and the nodes per second. The counts
+       can be checked by hand up to depth 6, since no one can win in
+       fewer than 7 moves: 64, 64*63, 64*63*62, ...
+
+     * playouts: random games played to the end with the BitBoard,
+       and with line tables updated position by position, as the
+       old Board did (its winLines[] and posToLines[]).
+
+     * search: the computer's move from a few positions, with
+       searchTime ms for each, showing the depth reached, the nodes
+       per second, and the transposition table hits.
+
+     * games: the computer against a random player, as a check
+       that it wins.
+
+   Usage:
+     java FBFBenchmark [ perftDepth [ searchTime ] ]
+
+   The defaults are depth 4, and 2000 ms.
+*/
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+
+public class FBFBenchmark
+{
+  private static final int NUM_PLAYOUTS = 200000;
+  private static final int NUM_GAMES = 10;
+  private static final int GAME_TIME = 100;   // ms per computer move
+
+  private static DecimalFormat df = new DecimalFormat("#,##0");
+
+  private static Random rand = new Random(42);
+
+
+  public static void main(String[] args)
+  {
+    int perftDepth = 4;
+    int searchTime = 2000;
+    if (args.length > 0)
+      perftDepth = Integer.parseInt(args[0]);
+    if (args.length > 1)
+      searchTime = Integer.parseInt(args[1]);
+
+    perftTest(perftDepth);
+    playoutTest();
+    searchTest(searchTime);
+    gamesTest();
+  }  // end of main()
+
+
+
+  private static void perftTest(int maxDepth)
+  {
+    System.out.println("perft from the empty board:");
+    FBFSearch.perft(0, 0, 3);     // warm up
+    for (int depth=1; depth <= maxDepth; depth++) {
+      long start = System.nanoTime();
+      long count = FBFSearch.perft(0, 0, depth);
+      long time = System.nanoTime() - start;
+      System.out.println("  depth " + depth + ": " + df.format(count) +
+           " positions, " + df.format(count*1000000000L/Math.max(time,1)) +
+           " nodes/sec");
+    }
+  }  // end of perftTest()
+
+
+
+  // --------------------------- playouts ---------------------------
+
+  private static void playoutTest()
+  {
+    System.out.println("Random playouts:");
+    int[] order = new int[BitBoard.NUM_SPOTS];
+
+    // the old line tables, made from the masks
+    int[][] posToLines = new int[BitBoard.NUM_SPOTS][];
+    for (int pos=0; pos < BitBoard.NUM_SPOTS; pos++) {
+      int n = 0;
+      int[] lines = new int[BitBoard.POS_MASKS[pos].length];
+      for (int i=0; i < BitBoard.WIN_WAYS; i++)
+        if ((BitBoard.WIN_MASKS[i] & (1L << pos)) != 0)
+          lines[n++] = i;
+      posToLines[pos] = lines;
+    }
+
+    for (int round=0; round < 2; round++) {   // the first is a warm up
+      long start = System.nanoTime();
+      int wins = 0;
+      BitBoard board = new BitBoard();
+      for (int g=0; g < NUM_PLAYOUTS; g++) {
+        shuffle(order);
+        board.clear();
+        for (int i=0; i < order.length; i++)
+          if (board.play(order[i], (i & 1) + 1)) {
+            wins++;
+            break;
+          }
+      }
+      long bitTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int tableWins = 0;
+      int[] counts = new int[BitBoard.WIN_WAYS];
+      int[] owners = new int[BitBoard.WIN_WAYS];
+      for (int g=0; g < NUM_PLAYOUTS; g++) {
+        shuffle(order);
+        for (int i=0; i < BitBoard.WIN_WAYS; i++) {
+          counts[i] = 0;  owners[i] = 0;
+        }
+        if (tablePlayout(order, posToLines, counts, owners))
+          tableWins++;
+      }
+      long tableTime = System.nanoTime() - start;
+
+      if (round == 1) {
+        System.out.println("  bitboard: " +
+             df.format(NUM_PLAYOUTS*1000000000L/bitTime) + " games/sec (" +
+             wins + " won)");
+        System.out.println("  line tables: " +
+             df.format(NUM_PLAYOUTS*1000000000L/tableTime) + " games/sec (" +
+             tableWins + " won)");
+      }
+    }
+  }  // end of playoutTest()
+
+
+  private static boolean tablePlayout(int[] order, int[][] posToLines,
+                                      int[] counts, int[] owners)
+  // play the game in order, updating the lines as the old Board did
+  {
+    for (int i=0; i < order.length; i++) {
+      int player = (i & 1) + 1;
+      int[] lines = posToLines[ order[i] ];
+      for (int j=0; j < lines.length; j++) {
+        int line = lines[j];
+        if ((owners[line] != player) && (owners[line] != 0))
+          counts[line] = -1;      // both players are in the line
+        else {
+          owners[line] = player;
+          if (++counts[line] == 4)
+            return true;
+        }
+      }
+    }
+    return false;
+  }  // end of tablePlayout()
+
+
+  private static void shuffle(int[] order)
+  {
+    for (int i=0; i < order.length; i++)
+      order[i] = i;
+    for (int i=order.length-1; i > 0; i--) {
+      int j = rand.nextInt(i+1);
+      int t = order[i];  order[i] = order[j];  order[j] = t;
+    }
+  }  // end of shuffle()
+
+
+
+  // --------------------------- searches ---------------------------
+
+  private static void searchTest(int searchTime)
+  {
+    System.out.println("Searches of " + searchTime + " ms:");
+    FBFSearch search = new FBFSearch();
+    search.chooseMove(0, 0, 64, 200);    // warm up
+
+    // the empty board, and positions after 8 and 16 random moves
+    for (int numMoves=0; numMoves <= 16; numMoves += 8) {
+      BitBoard board = randomBoard(numMoves);
+      int player = (numMoves % 2) + 1;
+      search.clearTable();
+      long start = System.nanoTime();
+      int move = search.chooseMove(board, player, 64, searchTime);
+      long time = System.nanoTime() - start;
+      System.out.println("  after " + numMoves + " moves: move " + move +
+           ", depth " + search.getDepthReached() + ", score " +
+           search.getBestScore() + ", " + df.format(search.getNodes()) +
+           " nodes, " + df.format(search.getNodes()*1000000000L/time) +
+           " nodes/sec, " + df.format(search.getTableHits()) + " table hits");
+    }
+  }  // end of searchTest()
+
+
+  private static BitBoard randomBoard(int numMoves)
+  // a board after numMoves random moves, none of them a win
+  {
+    BitBoard board = new BitBoard();
+    int[] order = new int[BitBoard.NUM_SPOTS];
+    do {
+      board.clear();
+      shuffle(order);
+      boolean won = false;
+      for (int i=0; (i < numMoves) && !won; i++)
+        won = board.play(order[i], (i & 1) + 1);
+      if (!won)
+        return board;
+    } while (true);
+  }  // end of randomBoard()
+
+
+
+  private static void gamesTest()
+  {
+    System.out.println("Computer (" + GAME_TIME + " ms/move) against " +
+                                                  "random moves:");
+    FBFSearch search = new FBFSearch();
+    int wins = 0, losses = 0, draws = 0;
+    for (int g=0; g < NUM_GAMES; g++) {
+      int computer = (g % 2) + 1;    // take turns to start
+      BitBoard board = new BitBoard();
+      search.clearTable();
+      int player = BitBoard.PLAYER1;
+      int winner = 0;
+      while (!board.isFull()) {
+        int pos;
+        if (player == computer) {
+          pos = search.chooseMove(board, player, 64, GAME_TIME);
+          if (!board.isFree(pos)) {
+            System.out.println("  illegal move: " + pos);
+            break;
+          }
+        }
+        else {
+          do {
+            pos = rand.nextInt(BitBoard.NUM_SPOTS);
+          } while (!board.isFree(pos));
+        }
+        if (board.play(pos, player)) {
+          winner = player;
+          break;
+        }
+        player = (player == BitBoard.PLAYER1) ? BitBoard.PLAYER2 : BitBoard.PLAYER1;
+      }
+      if (winner == computer)
+        wins++;
+      else if (winner == 0)
+        draws++;
+      else
+        losses++;
+    }
+    System.out.println("  " + wins + " won, " + losses + " lost, " +
+                                          draws + " drawn");
+  }  // end of gamesTest()
+
+}  // end of FBFBenchmark class
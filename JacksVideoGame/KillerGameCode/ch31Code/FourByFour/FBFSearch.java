@@ -0,0 +1,367 @@
+
+// FBFSearch.java
+
+/* A computer player for FourByFour: an iterative deepening
+   alpha-beta search, written in the negamax style (each score is
+   from the point of view of the player about to move, so a child's
+   score is negated for its parent).
+
+   The position is a pair of BitBoard masks: the stones of the
+   player to move (me), and of the other player (opp).
+
+   At each node, one pass over the 76 win masks finds:
+     * the free positions which would complete a line for me
+       (so I can win now), or for opp (which I must block);
+     * the static score, for the leaves: a line only holding my
+       stones scores LINE_SCORE[their number], and one only holding
+       opp's scores minus that. Lines holding both are dead.
+   If opp has two winning positions, I can only block one, so the
+   node is a loss, and if it has one, that's the only move tried.
+   Wins are scored WIN_SCORE minus the number of moves to reach
+   them, so a quicker win is preferred, and a slower loss.
+
+   Moves are tried in this order:
+     * the best move found for the position before (stored in the
+       transposition table),
+     * then by the history heuristic (moves which have caused
+       cut-offs elsewhere in the tree score higher), with the
+       number of lines through a position breaking ties.
+
+   The transposition table stores each searched position's score,
+   its depth, whether the score is exact or a bound, and its best
+   move, keyed by a Zobrist hash of the position. The same position
+   is often reached by different orders of the same moves, so the
+   table saves searching it again.
+
+   chooseMove() deepens one move at a time until maxDepth, or until
+   maxTime ms have passed, and then uses the move found by the last
+   complete search.
+*/
+
+import java.util.Random;
+
+
+public class FBFSearch
+{
+  public final static int WIN_SCORE = 100000;
+  private final static int INFINITY = 1000000;
+  private final static int[] LINE_SCORE = {0, 1, 6, 40, 0};
+
+  private final static int MAX_PLY = 64;
+  private final static int TT_BITS = 20;   // 1M entries
+  private final static int TT_SIZE = 1 << TT_BITS;
+  private final static int EXACT = 0, LOWER = 1, UPPER = 2;
+
+  private final static long[][] ZOBRIST = new long[2][BitBoard.NUM_SPOTS];
+  static {
+    Random rand = new Random(4444);    // the same keys each run
+    for (int i=0; i < 2; i++)
+      for (int pos=0; pos < BitBoard.NUM_SPOTS; pos++)
+        ZOBRIST[i][pos] = rand.nextLong();
+  }
+
+  // transposition table
+  private long[] ttKeys = new long[TT_SIZE];
+  private int[] ttScores = new int[TT_SIZE];
+  private byte[] ttDepths = new byte[TT_SIZE];
+  private byte[] ttFlags = new byte[TT_SIZE];
+  private byte[] ttMoves = new byte[TT_SIZE];
+
+  private int[] history = new int[BitBoard.NUM_SPOTS];
+  private int[][] moves = new int[MAX_PLY+1][BitBoard.NUM_SPOTS];
+  private int[][] moveScores = new int[MAX_PLY+1][BitBoard.NUM_SPOTS];
+
+  // set by scanLines()
+  private long myWins, oppWins;
+  private int staticScore;
+
+  // the search's progress
+  private long deadline;
+  private boolean aborted;
+  private int rootBest;
+
+  // statistics for the last chooseMove()
+  private long nodes;
+  private long ttHits;
+  private int depthReached;
+  private int bestScore;
+
+
+
+  public int chooseMove(BitBoard board, int player, int maxDepth, long maxTime)
+  /* Return the best position for player to play on board, searching
+     at most maxDepth moves ahead, for about maxTime ms. */
+  {
+    int otherPlayer = (player == BitBoard.PLAYER1) ?
+                              BitBoard.PLAYER2 : BitBoard.PLAYER1;
+    long me = board.getStones(player);
+    long opp = board.getStones(otherPlayer);
+    return chooseMove(me, opp, maxDepth, maxTime);
+  }  // end of chooseMove()
+
+
+
+  public int chooseMove(long me, long opp, int maxDepth, long maxTime)
+  {
+    long free = ~(me | opp);
+    if (free == 0)
+      return -1;
+    int numFree = Long.bitCount(free);
+    if (maxDepth > numFree)
+      maxDepth = numFree;
+
+    nodes = 0;
+    ttHits = 0;
+    aborted = false;
+    deadline = System.currentTimeMillis() + maxTime;
+    for (int i=0; i < history.length; i++)
+      history[i] /= 8;     // keep a little from the last move's search
+
+    int move = Long.numberOfTrailingZeros(free);   // in case of no time at all
+    long key = hash(me, opp);
+    depthReached = 0;
+    for (int depth=1; depth <= maxDepth; depth++) {
+      rootBest = -1;
+      int score = negamax(me, opp, key, depth, 0, -INFINITY, INFINITY);
+      if (aborted)
+        break;
+      if (rootBest != -1)
+        move = rootBest;
+      bestScore = score;
+      depthReached = depth;
+      if (Math.abs(score) >= WIN_SCORE - MAX_PLY)   // the result is known
+        break;
+    }
+    return move;
+  }  // end of chooseMove()
+
+
+
+  private int negamax(long me, long opp, long key, int depth, int ply,
+                                                    int alpha, int beta)
+  {
+    nodes++;
+    if (((nodes & 4095) == 0) && (System.currentTimeMillis() > deadline))
+      aborted = true;
+    if (aborted)
+      return 0;
+
+    long free = ~(me | opp);
+    if (free == 0)
+      return 0;     // a draw
+
+    scanLines(me, opp);
+    if (myWins != 0) {
+      if (ply == 0)
+        rootBest = Long.numberOfTrailingZeros(myWins);
+      return WIN_SCORE - ply - 1;
+    }
+    if (Long.bitCount(oppWins) > 1) {    // can only block one of them
+      if (ply == 0)
+        rootBest = Long.numberOfTrailingZeros(oppWins);
+      return -(WIN_SCORE - ply - 2);
+    }
+    if (depth == 0)
+      return staticScore;
+
+    // look in the transposition table
+    int idx = (int) key & (TT_SIZE-1);
+    int ttMove = -1;
+    if (ttKeys[idx] == key) {
+      ttMove = ttMoves[idx];
+      if ((ttDepths[idx] >= depth) && (ply > 0)) {
+        ttHits++;
+        int score = fromTable(ttScores[idx], ply);
+        if ((ttFlags[idx] == EXACT) ||
+            ((ttFlags[idx] == LOWER) && (score >= beta)) ||
+            ((ttFlags[idx] == UPPER) && (score <= alpha)))
+          return score;
+      }
+    }
+
+    long candidates = (oppWins != 0) ? oppWins : free;   // a forced block
+    int numMoves = orderMoves(candidates, ttMove, ply);
+    int[] plyMoves = moves[ply];
+
+    int origAlpha = alpha;
+    int best = -INFINITY;
+    int bestMove = plyMoves[0];
+    for (int i=0; i < numMoves; i++) {
+      int pos = plyMoves[i];
+      int side = ply & 1;
+      int score = -negamax(opp, me | (1L << pos), key ^ ZOBRIST[side][pos],
+                                       depth-1, ply+1, -beta, -alpha);
+      if (aborted)
+        return 0;
+      if (score > best) {
+        best = score;
+        bestMove = pos;
+        if (ply == 0)
+          rootBest = pos;
+      }
+      if (score > alpha)
+        alpha = score;
+      if (alpha >= beta) {
+        history[pos] += depth*depth;
+        break;
+      }
+    }
+
+    // store the result
+    ttKeys[idx] = key;
+    ttScores[idx] = toTable(best, ply);
+    ttDepths[idx] = (byte) depth;
+    ttMoves[idx] = (byte) bestMove;
+    if (best <= origAlpha)
+      ttFlags[idx] = UPPER;
+    else if (best >= beta)
+      ttFlags[idx] = LOWER;
+    else
+      ttFlags[idx] = EXACT;
+    return best;
+  }  // end of negamax()
+
+
+
+  private void scanLines(long me, long opp)
+  // find the winning positions for both players, and the static score
+  {
+    long mw = 0, ow = 0;
+    int score = 0;
+    long[] lines = BitBoard.WIN_MASKS;
+    for (int i=0; i < lines.length; i++) {
+      long line = lines[i];
+      long m = me & line;
+      long o = opp & line;
+      if (o == 0) {
+        int n = Long.bitCount(m);
+        score += LINE_SCORE[n];
+        if (n == 3)
+          mw |= line & ~m;
+      }
+      else if (m == 0) {
+        int n = Long.bitCount(o);
+        score -= LINE_SCORE[n];
+        if (n == 3)
+          ow |= line & ~o;
+      }
+    }
+    myWins = mw;
+    oppWins = ow;
+    staticScore = score;
+  }  // end of scanLines()
+
+
+
+  private int orderMoves(long candidates, int ttMove, int ply)
+  /* Store the positions in candidates in moves[ply], best first,
+     and return how many there are. */
+  {
+    int[] plyMoves = moves[ply];
+    int[] scores = moveScores[ply];
+    int n = 0;
+    while (candidates != 0) {
+      int pos = Long.numberOfTrailingZeros(candidates);
+      candidates &= candidates - 1;
+      int score = (pos == ttMove) ? Integer.MAX_VALUE :
+                   history[pos]*8 + BitBoard.POS_MASKS[pos].length;
+
+      // insert it, keeping the array sorted
+      int j = n++;
+      while ((j > 0) && (scores[j-1] < score)) {
+        plyMoves[j] = plyMoves[j-1];
+        scores[j] = scores[j-1];
+        j--;
+      }
+      plyMoves[j] = pos;
+      scores[j] = score;
+    }
+    return n;
+  }  // end of orderMoves()
+
+
+
+  private long hash(long me, long opp)
+  /* The side to move is implied by the number of stones, so me's
+     stones use ZOBRIST[0] and opp's use ZOBRIST[1]; negamax() swaps
+     them at each ply, by using ply & 1. */
+  {
+    long key = 0;
+    for (int pos=0; pos < BitBoard.NUM_SPOTS; pos++) {
+      if ((me & (1L << pos)) != 0)
+        key ^= ZOBRIST[0][pos];
+      else if ((opp & (1L << pos)) != 0)
+        key ^= ZOBRIST[1][pos];
+    }
+    return key;
+  }  // end of hash()
+
+
+  /* Win and loss scores depend on the ply they are found at, so
+     they're stored relative to the position itself. */
+
+  private int toTable(int score, int ply)
+  {
+    if (score >= WIN_SCORE - MAX_PLY - 2)
+      return score + ply;
+    if (score <= -(WIN_SCORE - MAX_PLY - 2))
+      return score - ply;
+    return score;
+  }
+
+  private int fromTable(int score, int ply)
+  {
+    if (score >= WIN_SCORE - MAX_PLY - 2)
+      return score - ply;
+    if (score <= -(WIN_SCORE - MAX_PLY - 2))
+      return score + ply;
+    return score;
+  }
+
+
+
+  public static long perft(long me, long opp, int depth)
+  /* Count the positions reached by every sequence of depth moves,
+     where a move which wins ends its sequence. It tests the move
+     generation and win detection, and their speed. */
+  {
+    if (depth == 0)
+      return 1;
+    long free = ~(me | opp);
+    long count = 0;
+    while (free != 0) {
+      int pos = Long.numberOfTrailingZeros(free);
+      free &= free - 1;
+      long next = me | (1L << pos);
+      if ((depth == 1) || BitBoard.isWin(next, pos))
+        count++;
+      else
+        count += perft(opp, next, depth-1);
+    }
+    return count;
+  }  // end of perft()
+
+
+  public void clearTable()
+  // forget the previous searches, e.g. before a new game
+  {
+    for (int i=0; i < TT_SIZE; i++)
+      ttKeys[i] = 0;
+    for (int i=0; i < history.length; i++)
+      history[i] = 0;
+  }  // end of clearTable()
+
+
+  public long getNodes()
+  {  return nodes;  }
+
+  public long getTableHits()
+  {  return ttHits;  }
+
+  public int getDepthReached()
+  {  return depthReached;  }
+
+  public int getBestScore()
+  {  return bestScore;  }
+
+}  // end of FBFSearch class
@@ -24,6 +24,8 @@
       user data field of each shape
     - modified the PickDragBehavior logic so that dragging 
       doesn't 'jump' when first used
+    - player 2 can be the computer (see FBFSearch), with:
+         java FourByFour -ai
 */
 
 
@@ -36,10 +38,12 @@ import java.awt.event.*;
 public class FourByFour extends JFrame
 {
   private JTextField messageTF;
+  private boolean computerPlaying;   // is player 2 the computer?
 
-  public FourByFour() 
+  public FourByFour(boolean computerPlaying) 
   {
     super("Four By Four");
+    this.computerPlaying = computerPlaying;
 
     Container c = getContentPane();
     c.setLayout( new BorderLayout() );
@@ -66,10 +70,13 @@ public class FourByFour extends JFrame
   {  messageTF.setText(mesg);  }
 
 
+  public boolean isComputerPlaying()
+  {  return computerPlaying;  }
+
+
 // -----------------------------------------
 
   public static void main(String[] args)
-  { new FourByFour(); }
+  { new FourByFour( (args.length > 0) && args[0].equals("-ai") ); }
 
 } // end of FourByFour class
-
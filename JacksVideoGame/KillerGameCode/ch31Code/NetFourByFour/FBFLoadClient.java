@@ -0,0 +1,375 @@
+
+// FBFLoadClient.java
+
+/* A load test for FBFServer's rooms. It plays numGames games at
+   once, from a single thread (using one selector), with two
+   simulated players for each game, which the server pairs up
+   into rooms like any other players.
+
+   Each player keeps its own BitBoard, and plays a random free
+   position thinkTime ms after the other player's move. When a game
+   is won or drawn, both players disconnect, and are replaced by
+   two new ones, so there are always about numGames games going on.
+
+   The players use text messages, since they never offer binary
+   frames. Each player times its moves, from sending "try" to
+   receiving the other player's reply, less the other's thinking
+   time, which is how long a move takes to go through the server
+   there and back.
+
+   Every REPORT_INTERVAL secs, the finished games and moves per
+   second are printed, with the average, 99% and maximum reply
+   times. The server prints its own figures for each room.
+
+   Usage:
+     java FBFLoadClient [ numGames [ seconds [ thinkTime [ host ] ] ] ]
+
+   The default is 1000 games, for 30 seconds, with 100 ms for
+   each move, on localhost. A server for thousands of games will
+   probably need more threads, or -virtual; see HandlerExecutor.
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+
+public class FBFLoadClient
+{
+  private static final int PORT = 1234;     // server details
+  private static final String HOST = "localhost";
+
+  private static final int REPORT_INTERVAL = 5;   // secs
+  private static final int NUM_BUCKETS = 32;
+
+  private Selector selector;
+  private ByteBuffer readBuffer = ByteBuffer.allocateDirect(16*1024);
+  private ArrayList players = new ArrayList();
+  private int numToReplace = 0;   // players who have finished
+  private PriorityQueue moves;    // of players waiting to move, soonest first
+  private String host;
+  private int thinkTime;
+  private Random rand = new Random();
+
+  // statistics
+  private long numGames = 0;
+  private long numAbandoned = 0;
+  private long numMoves = 0;
+  private long numReplies = 0;
+  private long totalReply = 0;    // microseconds
+  private long maxReply = 0;
+  private long[] replies = new long[NUM_BUCKETS];
+
+
+
+  public FBFLoadClient(int numGames, int seconds, int thinkTime, String host)
+  {
+    this.host = host;
+    this.thinkTime = thinkTime;
+    moves = new PriorityQueue(numGames+1, new Comparator() {
+      public int compare(Object o1, Object o2)
+      {  long t1 = ((Player) o1).moveTime;
+         long t2 = ((Player) o2).moveTime;
+         return (t1 < t2) ? -1 : ((t1 == t2) ? 0 : 1);
+      }
+    });
+    try {
+      selector = Selector.open();
+      for (int i=0; i < numGames*2; i++)
+        players.add( new Player() );
+      System.out.println("Connected " + numGames*2 + " players to " +
+              host + ":" + PORT + ", thinking for " + thinkTime + " ms");
+      runGames( System.currentTimeMillis() + seconds*1000L );
+      for (int i=0; i < players.size(); i++)
+        ((Player) players.get(i)).close();
+      selector.close();
+    }
+    catch(IOException e)
+    {  System.out.println(e);  }
+  }  // end of FBFLoadClient()
+
+
+
+  private void runGames(long endTime) throws IOException
+  // make the moves, read the replies, replace the finished players, and report
+  {
+    long now = System.currentTimeMillis();
+    long nextReport = now + REPORT_INTERVAL*1000;
+    long lastGames = 0, lastMoves = 0;
+    Iterator it;
+    SelectionKey key;
+    while (now < endTime) {
+      long wait = makeMoves();
+      for (; numToReplace > 0; numToReplace--)
+        players.add( new Player() );
+
+      selector.select( Math.max(1, Math.min(wait, nextReport - now)) );
+      it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        key = (SelectionKey) it.next();
+        it.remove();
+        if (key.isValid() && key.isConnectable())
+          ((Player) key.attachment()).connected(key);
+        else if (key.isValid() && key.isReadable())
+          ((Player) key.attachment()).read();
+      }
+
+      now = System.currentTimeMillis();
+      if (now >= nextReport) {
+        System.out.println("Games/sec: " + (numGames - lastGames)/REPORT_INTERVAL +
+            " (" + numAbandoned + " abandoned); moves/sec: " +
+            (numMoves - lastMoves)/REPORT_INTERVAL + "; reply avg " +
+            ((numReplies == 0) ? 0 : totalReply/numReplies) + " us, 99% < " +
+            percentile(0.99) + " us, max " + maxReply + " us");
+        lastGames = numGames;  lastMoves = numMoves;
+        nextReport += REPORT_INTERVAL*1000;
+
+        for (int i=players.size()-1; i >= 0; i--)   // forget the finished ones
+          if (((Player) players.get(i)).isFinished())
+            players.remove(i);
+      }
+    }
+  }  // end of runGames()
+
+
+  private long makeMoves()
+  /* Move all the players whose thinking time is up, and return
+     the ms until the next one is due. */
+  {
+    long now = System.nanoTime();
+    Player p;
+    while ((p = (Player) moves.peek()) != null) {
+      if (p.moveTime > now)
+        return Math.max(1, (p.moveTime - now)/1000000);
+      moves.poll();
+      p.move();
+    }
+    return REPORT_INTERVAL*1000;
+  }  // end of makeMoves()
+
+
+  private void addReply(long micros)
+  {
+    if (micros < 0)
+      micros = 0;
+    numReplies++;
+    totalReply += micros;
+    if (micros > maxReply)
+      maxReply = micros;
+    replies[ GameRoom.bucket(micros) ]++;
+  }  // end of addReply()
+
+
+  private long percentile(double fraction)
+  {
+    long count = 0;
+    for (int i=0; i < NUM_BUCKETS; i++) {
+      count += replies[i];
+      if (count >= fraction*numReplies)
+        return 1L << i;
+    }
+    return maxReply;
+  }  // end of percentile()
+
+
+
+  // -----------------------------------------------------------
+
+  private class Player
+  // one simulated player
+  {
+    SocketChannel chan;
+    int playerID = 0;    // not known until the "ok" reply
+    int otherID;
+    BitBoard board = new BitBoard();
+    StringBuffer line = new StringBuffer();
+    long moveTime;       // nanoTime when we move next
+    long sentTime = 0;   // nanoTime of our last try
+    boolean finished = false;
+
+    public Player() throws IOException
+    /* Start connecting; the selector says when it has finished,
+       so the other players aren't held up meanwhile. */
+    {
+      chan = SocketChannel.open();
+      chan.configureBlocking(false);
+      if (chan.connect( new InetSocketAddress(host, PORT) ))
+        chan.register(selector, SelectionKey.OP_READ, this);
+      else
+        chan.register(selector, SelectionKey.OP_CONNECT, this);
+    }
+
+
+    public void connected(SelectionKey key)
+    {
+      try {
+        chan.finishConnect();
+        chan.socket().setTcpNoDelay(true);
+        key.interestOps(SelectionKey.OP_READ);
+      }
+      catch(IOException e)
+      {  System.out.println(e);
+         close();
+      }
+    }  // end of connected()
+
+
+    public boolean isFinished()
+    {  return finished;  }
+
+
+    public void move()
+    // play a random free position
+    {
+      if (finished)
+        return;
+      int posn;
+      do {
+        posn = rand.nextInt(BitBoard.NUM_SPOTS);
+      } while (!board.isFree(posn));
+      sentTime = System.nanoTime();
+      send("try " + posn);
+      numMoves++;
+      if (board.play(posn, playerID) || board.isFull())
+        endGame();
+    }  // end of move()
+
+
+    private void yourTurn()
+    {
+      if (thinkTime == 0)
+        move();
+      else {
+        moveTime = System.nanoTime() + thinkTime*1000000L;
+        moves.add(this);
+      }
+    }
+
+
+    public void read()
+    {
+      readBuffer.clear();
+      try {
+        int n = chan.read(readBuffer);
+        if (n == -1) {
+          close();
+          return;
+        }
+        for (int i=0; (i < n) && !finished; i++) {
+          char ch = (char) readBuffer.get(i);
+          if (ch == '\n') {
+            doMessage( line.toString().trim() );
+            line.setLength(0);
+          }
+          else
+            line.append(ch);
+        }
+      }
+      catch(IOException e)
+      {  close();  }
+    }  // end of read()
+
+
+    private void doMessage(String msg)
+    {
+      StringTokenizer st = new StringTokenizer(msg);
+      if (!st.hasMoreTokens())
+        return;
+      String type = st.nextToken();
+      if (type.equals("ok")) {
+        playerID = Integer.parseInt( st.nextToken() );
+        otherID = (playerID == BitBoard.PLAYER1) ? BitBoard.PLAYER2 : BitBoard.PLAYER1;
+      }
+      else if (type.equals("added")) {
+        if (playerID == BitBoard.PLAYER1)    // player 1 starts
+          yourTurn();
+      }
+      else if (type.equals("otherTurn")) {
+        st.nextToken();    // the other player's ID
+        int posn = Integer.parseInt( st.nextToken() );
+        if (sentTime != 0)
+          addReply( (System.nanoTime() - sentTime)/1000 - thinkTime*1000L );
+        if (board.play(posn, otherID) || board.isFull())
+          endGame();
+        else
+          yourTurn();
+      }
+      else if (type.equals("removed")) {
+        numAbandoned++;
+        close();
+      }
+      else if (type.equals("full")) {
+        System.out.println("Server is full");
+        close();
+      }
+    }  // end of doMessage()
+
+
+    private void endGame()
+    {
+      if (playerID == BitBoard.PLAYER1)    // count each game once
+        numGames++;
+      send("disconnect");
+      close();
+    }
+
+
+    private void send(String msg)
+    {
+      ByteBuffer buf = ByteBuffer.wrap( (msg + "\n").getBytes() );
+      try {
+        while (buf.hasRemaining())
+          chan.write(buf);
+      }
+      catch(IOException e)
+      {  close();  }
+    }
+
+
+    public void close()
+    {
+      if (finished)
+        return;
+      finished = true;
+      numToReplace++;
+      SelectionKey key = chan.keyFor(selector);
+      if (key != null)
+        key.cancel();
+      try {
+        chan.close();
+      }
+      catch(IOException e) {}
+    }
+
+  }  // end of Player class
+
+
+  // -----------------------------------------------------------
+
+  public static void main(String args[])
+  {
+    int numGames = 1000;
+    int seconds = 30;
+    int thinkTime = 100;
+    String host = HOST;
+    try {
+      if (args.length > 0)
+        numGames = Integer.parseInt(args[0]);
+      if (args.length > 1)
+        seconds = Integer.parseInt(args[1]);
+      if (args.length > 2)
+        thinkTime = Integer.parseInt(args[2]);
+    }
+    catch(NumberFormatException e)
+    {  System.out.println("Usage: java FBFLoadClient [ numGames [ seconds [ thinkTime [ host ] ] ] ]");
+       System.exit(0);
+    }
+    if (args.length > 3)
+      host = args[3];
+
+    new FBFLoadClient(numGames, seconds, thinkTime, host);
+  }  // end of main()
+
+}  // end of FBFLoadClient class
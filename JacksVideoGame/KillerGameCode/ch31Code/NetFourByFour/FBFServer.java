@@ -2,98 +2,239 @@
 // FBFServer.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
-/* A threaded server specialised to deal with at most two
-   concurrent links from the two players involved in the
-   FourByFour game.
+/* A threaded server for many concurrent FourByFour games.
 
    This is a thin server -- all the game logic is located
    on the client-side.
 
-   The shared data is an array of references to the handlers
-   and the current number of players. Since this is so little,
-   a shared object is not used to maintain it. 
+   Each game is a GameRoom, which holds the two players' handlers,
+   and has its own lock, so the moves in one game never wait for
+   another. The server is only a lobby: joinRoom() puts each new
+   player into the room where someone is waiting, or into a new
+   room if there isn't one. This is the only place where the
+   server's lock is held while a player is playing, apart from
+   roomClosed() when its room closes.
+
+   A room is closed when its people have left, and then
+   roomClosed() adds its results and move latencies to the
+   totals, which are printed every REPORT_INTERVAL secs, along
+   with the room with the slowest move.
+
+   The server's lock may be held while a room's lock is taken,
+   but never the other way round, so they can't deadlock.
+
+   The handlers are run by a HandlerExecutor, which can use a
+   virtual thread for each client (with -virtual), and limits
+   the number of clients (with -max <number>).
+
+   With -ai, a person who has waited AI_WAIT ms on their own gets
+   a computer opponent (a ServerPlayer), which takes the other
+   player ID in their room. The computer players share a
+   SearchPool, with a searcher for each core, so the memory and
+   threads they use don't grow with the number of games.
+
+   Usage:
+     java FBFServer [ -ai ] [ -virtual ] [ -max <number> ]
 */
 
 import java.net.*;
 import java.io.*;
+import java.util.*;
 
 
 public class FBFServer
 {
   private static final int PORT = 1234;
-
-  private static final int MAX_PLAYERS = 2;   // two-person game
-  private final static int PLAYER1    = 1;
-  private final static int PLAYER2    = 2;   // use to be MACHINE
-
-  // data structures shared by the handlers
-  private PlayerServerHandler[] handlers;     // handlers for players
-  private int numPlayers;
+  private static final int BACKLOG = 1000;   // connections waiting to be accepted
+  private static final int ACCEPT_BACKOFF = 100;   // ms after a failed accept()
+  private static final int AI_WAIT = 2000;   // ms before a computer joins
+  private static final int REPORT_INTERVAL = 10;   // secs
+
+  // the lobby
+  private GameRoom waitingRoom = null;   // has one player, waiting for another
+  private int nextRoomID = 1;
+
+  private boolean useComputer;          // play people on their own?
+  private Timer computerTimer;
+  private SearchPool searchers;    // for the computer players
+
+  // statistics, for the rooms which have closed
+  private int numOpen = 0;
+  private int numClosed = 0;
+  private int[] numResults = new int[4];   // indexed by GameRoom result
+  private long numMoves = 0;
+  private long totalLatency = 0;     // microseconds
+  private long maxLatency = 0;
+  private int[] latencies = new int[GameRoom.NUM_BUCKETS];
+  private String slowestRoom = null;   // since the last report
+  private long slowestLatency = 0;
+  private boolean changed = false;
 
   
-  public FBFServer()
+  public FBFServer(HandlerExecutor executor, boolean useComputer)
   // Concurrently process players
   {
-    handlers = new PlayerServerHandler[MAX_PLAYERS];
-    handlers[0] = null;
-    handlers[1] = null;
-    numPlayers = 0;
+    this.useComputer = useComputer;
+    if (useComputer) {
+      computerTimer = new Timer(true);
+      searchers = new SearchPool();
+    }
+    startReporter();
 
     try {
-      ServerSocket serverSock = new ServerSocket(PORT);
+      ServerSocket serverSock = new ServerSocket(PORT, BACKLOG);
       Socket clientSock;
       while (true) {
         System.out.println("Waiting for a client...");
-        clientSock = serverSock.accept();
-        new PlayerServerHandler(clientSock, this).start();
+        executor.waitForSlot();
+        try {
+          clientSock = serverSock.accept();
+        }
+        catch(IOException e) {    // e.g. out of file descriptors
+          executor.releaseSlot();
+          System.out.println("Accept failed: " + e);
+          Thread.sleep(ACCEPT_BACKOFF);    // then try again
+          continue;
+        }
+        executor.execute( new PlayerServerHandler(clientSock, this) );
       }
     }
     catch(Exception e)
     {  System.out.println(e);  }
-  }  // end of ChatServer()
+  }  // end of FBFServer()
 
 
-  // methods for child threads to access shared data structures
+  // methods for the handlers to join rooms, and for the rooms
+
+  synchronized public GameRoom joinRoom(PlayerServerHandler h)
+  /* Add the handler to the waiting room, or to a new room if no
+     one is waiting, and return the room. The player's ID is
+     passed to the handler's setRoom(). */
+  {
+    if (waitingRoom != null) {
+      GameRoom room = waitingRoom;
+      waitingRoom = null;
+      int id = room.addPlayer(h);   // -1 if it has just closed
+      if (id != -1) {
+        h.setRoom(room, id);
+        return room;
+      }
+    }
+    final GameRoom room = new GameRoom(nextRoomID++);
+    numOpen++;
+    h.setRoom(room, room.addPlayer(h));
+    waitingRoom = room;
+
+    if (useComputer)
+      computerTimer.schedule( new TimerTask() {
+        public void run()
+        {  computerJoins(room);  }
+      }, AI_WAIT);
+    return room;
+  }  // end of joinRoom()
+
+
+  private void computerJoins(GameRoom room)
+  // the player in room has waited AI_WAIT ms; give them the computer
+  {
+    synchronized(this) {
+      if (waitingRoom != room)     // someone else has joined it
+        return;
+      waitingRoom = null;
+    }
+    room.addComputer(searchers);
+  }  // end of computerJoins()
 
-  synchronized public boolean enoughPlayers()
-  { return (numPlayers == MAX_PLAYERS); }
 
+  synchronized public void roomClosed(GameRoom room)
+  // all the people have left room; add its statistics to the totals
+  {
+    if (waitingRoom == room)
+      waitingRoom = null;
+    numOpen--;
+    numClosed++;
+    numResults[room.getResult()]++;
+    numMoves += room.getNumMoves();
+    totalLatency += room.getTotalLatency();
+    if (room.getMaxLatency() > maxLatency)
+      maxLatency = room.getMaxLatency();
+    room.addLatencies(latencies);
+    if ((slowestRoom == null) || (room.getMaxLatency() > slowestLatency)) {
+      slowestRoom = room.toString();
+      slowestLatency = room.getMaxLatency();
+    }
+    changed = true;
+  }  // end of roomClosed()
 
-  synchronized public int addPlayer(PlayerServerHandler h)
-  /* Store a reference to the handler, and return a player ID to
-     the handler. The ID is the array index where the handler is 
-     stored + 1.
-  */
-  { for(int i=0; i < MAX_PLAYERS; i++)
-      if (handlers[i] == null) {
-        handlers[i] = h;
-        numPlayers++; 
-        return i+1;   // playerID is 1 or 2  (array index + 1)
-      }
-    return -1;  // means we have enough players already
-  }  // end of addPlayer()
 
+  synchronized public String toString()
+  {
+    return "Rooms: " + numOpen + " open, " + numClosed + " closed (" +
+       numResults[GameRoom.WON] + " won, " + numResults[GameRoom.DRAWN] +
+       " drawn, " + numResults[GameRoom.ABANDONED] + " abandoned); " +
+       numMoves + " moves, latency avg " +
+       ((numMoves == 0) ? 0 : totalLatency/numMoves) + " us, 99% < " +
+       percentile(0.99) + " us, max " + maxLatency + " us";
+  }  // end of toString()
+
+
+  private long percentile(double fraction)
+  // the upper limit of the histogram bucket reaching fraction of the moves
+  {
+    long count = 0;
+    for (int i=0; i < GameRoom.NUM_BUCKETS; i++) {
+      count += latencies[i];
+      if (count >= fraction*numMoves)
+        return 1L << i;
+    }
+    return maxLatency;
+  }  // end of percentile()
 
-  synchronized public void removePlayer(int playerID)
-  { handlers[playerID-1] = null;     // no checking done of player value
-    numPlayers--; 
-  }  // end of removePlayer()
 
+  private void startReporter()
+  /* print the rooms' statistics every REPORT_INTERVAL secs, if
+     any room has closed, with the slowest room since the last time */
+  {
+    Thread t = new Thread("RoomReporter") {
+      public void run()
+      {
+        while (true) {
+          try {
+            Thread.sleep(REPORT_INTERVAL*1000);
+          }
+          catch(InterruptedException e) {}
+          synchronized(FBFServer.this) {
+            if (changed) {
+              System.out.println(FBFServer.this);
+              System.out.println("  slowest: " + slowestRoom);
+              slowestRoom = null;
+              changed = false;
+            }
+          }
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+  }  // end of startReporter()
 
-  synchronized public void tellOther(int playerID, String msg)
-  // send mesg to the other player
-  { int otherID = ((playerID == PLAYER1) ? PLAYER2 : PLAYER1 );
-    if (handlers[otherID-1] != null)     // index is ID-1
-      handlers[otherID-1].sendMessage(msg);
-  }  // end of tellOther()
 
 
   // -----------------------------------
 
   public static void main(String args[]) 
-  {  new FBFServer();  }
+  {
+    boolean useComputer = false;
+    ArrayList rest = new ArrayList();   // the HandlerExecutor's arguments
+    for (int i=0; i < args.length; i++) {
+      if (args[i].equals("-ai"))
+        useComputer = true;
+      else
+        rest.add(args[i]);
+    }
+    new FBFServer( HandlerExecutor.parseArgs(
+                       (String[]) rest.toArray(new String[rest.size()]) ),
+                   useComputer );
+  }  // end of main()
 
 } // end of FBFServer class
-
-
-
@@ -7,28 +7,33 @@
    the client (a NetFourByFour object)
 
    Incoming Messages:
-    ok <playerID>           -- connection accepted; include player ID
+    ok <playerID> [binary <version>]
+                            -- connection accepted; include player ID, and
+                               whether the server can use binary frames
     full                    -- connection refused; server has enough players
     tooFewPlayers           -- turn rejected, since not enough players
     otherTurn <player> <posn>  -- turn by other player sent to client
     added <player>          -- other player added to server
     removed <player>        -- other player removed
+    binary <version>        -- the server has accepted the binary offer;
+                               the rest of the messages are FBFWire frames
 */
 
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 
 public class FBFWatcher extends Thread
 {
   private NetFourByFour fbf;    // ref back to client
-  private BufferedReader in;
+  private WireLink link;
 
-  public FBFWatcher(NetFourByFour fbf, BufferedReader i)
+  public FBFWatcher(NetFourByFour fbf, WireLink l)
   {  this.fbf = fbf; 
-     in = i;  
+     link = l;  
   }
 
 
@@ -36,9 +41,20 @@ public class FBFWatcher extends Thread
   // Read server messages and act on them
   { 
     String line;
+    ByteBuffer frame;
     try {
-      while ((line = in.readLine()) != null) {
-        if (line.startsWith("ok"))
+      while (true) {
+        if (link.isBinaryIn()) {
+          if ((frame = link.readFrame()) == null)
+            break;
+          doFrame(frame);
+          continue;
+        }
+        if ((line = link.readLine()) == null)
+          break;
+        if (line.equals(WireLink.OFFER))   // the server's reply to our offer
+          link.setBinaryIn(true);
+        else if (line.startsWith("ok"))
           extractID(line.substring(3));
         else if (line.startsWith("full"))
           fbf.disable("full game");    // disable client
@@ -61,13 +77,36 @@ public class FBFWatcher extends Thread
   }  // end of run()
 
 
+  private void doFrame(ByteBuffer frame)
+  /* Deal with a binary frame from the server, which holds the
+     same information as one of the text messages. */
+  {
+    int type = frame.get();
+    if (type == FBFWire.S_TOO_FEW)
+      fbf.disable("other player has left");    // disable client
+    else if (type == FBFWire.S_OTHER_TURN) {
+      int playerID = frame.get();
+      int posn = frame.get();
+      fbf.doMove(posn, playerID);   // client executes the other player's move
+    }
+    else if (type == FBFWire.S_ADDED)
+      fbf.addPlayer();        // client adds other player
+    else if (type == FBFWire.S_REMOVED)
+      fbf.removePlayer();     // client removes other player
+    // else a newer message; skip it
+  }  // end of doFrame()
+
+
   private void extractID(String line)
-  // line format:  <player id>
+  /* line format:  <player id> [binary <version>]
+     If the server offers binary frames, the client may take them up */
   {
     StringTokenizer tokens = new StringTokenizer(line);
     try {
       int id = Integer.parseInt( tokens.nextToken() );
       fbf.setPlayerID(id);     // client gets its playerID
+      if (line.trim().endsWith(" " + WireLink.OFFER))
+        fbf.useBinary();
     }
     catch(NumberFormatException e)
     { System.out.println(e); } 
@@ -0,0 +1,102 @@
+
+// FBFWire.java
+
+/* The NetFourByFour messages, in text and as binary frames
+   (see WireLink for the framing).
+
+   Client to server:
+      text                     binary frame fields
+      try <posn>               C_TRY         posn (byte)
+      disconnect               C_DISCONNECT
+
+   Server to client:
+      tooFewPlayers            S_TOO_FEW
+      otherTurn <player> <posn>
+                               S_OTHER_TURN  player (byte)  posn (byte)
+      added <player>           S_ADDED       player (byte)
+      removed <player>         S_REMOVED     player (byte)
+
+   The connection replies ("ok <id>" or "full") are always text,
+   since they are sent before the client can offer binary frames.
+   A server which supports frames adds the offer to its reply:
+        ok <id> binary <version>
+   and an older client ignores the extra words.
+
+   The send methods here use whichever mode the link is in.
+*/
+
+import java.nio.*;
+
+
+public class FBFWire
+{
+  // client to server
+  public static final int C_TRY = 1;
+  public static final int C_DISCONNECT = 2;
+
+  // server to client
+  public static final int S_TOO_FEW = 10;
+  public static final int S_OTHER_TURN = 11;
+  public static final int S_ADDED = 12;
+  public static final int S_REMOVED = 13;
+
+  private static final int MAX_FRAME = 5;
+
+
+  public static void sendTry(WireLink link, int posn)
+  {
+    synchronized(link) {
+      if (link.isBinaryOut()) {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_FRAME);
+        int start = WireLink.startFrame(buf, C_TRY);
+        buf.put((byte) posn);
+        WireLink.endFrame(buf, start);
+        link.write(buf);
+      }
+      else
+        link.writeLine("try " + posn);
+    }
+  }  // end of sendTry()
+
+
+  public static void sendDisconnect(WireLink link)
+  {
+    synchronized(link) {
+      if (link.isBinaryOut()) {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_FRAME);
+        WireLink.endFrame(buf, WireLink.startFrame(buf, C_DISCONNECT));
+        link.write(buf);
+      }
+      else
+        link.writeLine("disconnect");
+    }
+  }  // end of sendDisconnect()
+
+
+  public static void send(WireLink link, int type, int player, int posn)
+  /* Send one of the server's messages. player is used by all but
+     S_TOO_FEW, and posn only by S_OTHER_TURN. */
+  {
+    synchronized(link) {
+      if (link.isBinaryOut()) {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_FRAME);
+        int start = WireLink.startFrame(buf, type);
+        if (type != S_TOO_FEW)
+          buf.put((byte) player);
+        if (type == S_OTHER_TURN)
+          buf.put((byte) posn);
+        WireLink.endFrame(buf, start);
+        link.write(buf);
+      }
+      else if (type == S_TOO_FEW)
+        link.writeLine("tooFewPlayers");
+      else if (type == S_OTHER_TURN)
+        link.writeLine("otherTurn " + player + " " + posn);
+      else if (type == S_ADDED)
+        link.writeLine("added " + player);
+      else if (type == S_REMOVED)
+        link.writeLine("removed " + player);
+    }
+  }  // end of send()
+
+}  // end of FBFWire class
@@ -0,0 +1,218 @@
+
+// GameRoom.java
+
+/* One game of FourByFour on the FBFServer: the two players'
+   handlers (or a handler and a ServerPlayer), and the data they
+   share. This is what the whole server used to hold, so the
+   players still have IDs 1 and 2, and the clients can't tell
+   that there are other games going on.
+
+   Each room has its own lock (its methods are synchronized),
+   so a move only waits for the other player in its own room,
+   never for the server's lobby or for other games.
+
+   The server is still thin, and trusts the clients to check the
+   moves, but the room plays each one on a BitBoard, so it knows
+   when the game has been won or drawn, for the statistics.
+
+   The room also times each move, from when the handler read it
+   to when it has been written to the other player, in a histogram
+   of powers of two microseconds.
+
+   A room is closed when all its people have left; the handler
+   of the last one then passes it to the FBFServer's roomClosed(),
+   which adds its statistics to the totals and forgets it. A room
+   never calls the FBFServer itself, since it may be called by the
+   server, with the server's lock held.
+*/
+
+
+public class GameRoom
+{
+  private static final int MAX_PLAYERS = 2;   // two-person game
+  private final static int PLAYER1    = 1;
+  private final static int PLAYER2    = 2;
+
+  public final static int NUM_BUCKETS = 32;   // of the latency histogram
+
+  // game results
+  public final static int PLAYING = 0;
+  public final static int WON = 1;
+  public final static int DRAWN = 2;
+  public final static int ABANDONED = 3;
+
+  private int roomID;
+
+  private PlayerServerHandler[] handlers = new PlayerServerHandler[MAX_PLAYERS];
+  private int numPlayers = 0;
+  private int numPeople = 0;
+  private ServerPlayer computer = null;
+  private boolean closed = false;
+
+  private BitBoard board = new BitBoard();
+  private int result = PLAYING;
+
+  // move latencies, in microseconds
+  private int numMoves = 0;
+  private long totalLatency = 0;
+  private long maxLatency = 0;
+  private int[] latencies = new int[NUM_BUCKETS];
+
+
+  public GameRoom(int roomID)
+  {  this.roomID = roomID;  }
+
+
+  public int getRoomID()
+  {  return roomID;  }
+
+
+  synchronized public boolean enoughPlayers()
+  { return (numPlayers == MAX_PLAYERS); }
+
+
+  synchronized public int addPlayer(PlayerServerHandler h)
+  /* Store a reference to the handler, and return its player ID,
+     which is the array index where the handler is stored + 1,
+     or -1 if the room is full or closed. */
+  { if (closed)
+      return -1;
+    for(int i=0; i < MAX_PLAYERS; i++)
+      if ((handlers[i] == null) && !isComputer(i+1)) {
+        handlers[i] = h;
+        numPlayers++;
+        numPeople++;
+        return i+1;   // playerID is 1 or 2  (array index + 1)
+      }
+    return -1;
+  }  // end of addPlayer()
+
+
+  synchronized public boolean removePlayer(int playerID)
+  /* Remove the player, and tell the other one. When no people
+     are left, the room is closed, and true is returned. */
+  { handlers[playerID-1] = null;     // no checking done of player value
+    numPlayers--;
+    numPeople--;
+    tellOther(playerID, FBFWire.S_REMOVED, 0);
+    if (computer != null) {     // no one left for it to play
+      computer.stop();
+      computer = null;
+      numPlayers--;
+    }
+    if (result == PLAYING)
+      result = ABANDONED;
+    if (numPeople == 0)
+      closed = true;
+    return closed;
+  }  // end of removePlayer()
+
+
+  private boolean isComputer(int playerID)
+  {  return (computer != null) && (computer.getPlayerID() == playerID);  }
+
+
+  synchronized public void addComputer(SearchPool searchers)
+  /* Called by the FBFServer when a player has been waiting on
+     their own for a while. Add a computer player with the other ID,
+     which uses the server's searchers. */
+  {
+    if ((numPlayers != 1) || (computer != null) || closed)
+      return;
+    int id = (handlers[0] == null) ? PLAYER1 : PLAYER2;
+    computer = new ServerPlayer(this, id, searchers);
+    numPlayers++;
+    System.out.println("Room " + roomID + ": computer is player " + id);
+    tellOther(id, FBFWire.S_ADDED, 0);
+    computer.start();
+  }  // end of addComputer()
+
+
+  synchronized public void computerMove(ServerPlayer sp, int posn)
+  // the computer player sp has played posn
+  {
+    if (sp == computer)    // it's still playing
+      playMove(sp.getPlayerID(), posn, System.nanoTime());
+  }
+
+
+  synchronized public boolean playMove(int playerID, int posn, long startTime)
+  /* Pass playerID's move to the other player, and time it from
+     startTime (from System.nanoTime()). Returns false if there
+     aren't enough players yet. */
+  {
+    if (numPlayers != MAX_PLAYERS)
+      return false;
+    if ((result == PLAYING) && (posn >= 0) &&
+        (posn < BitBoard.NUM_SPOTS) && board.isFree(posn)) {
+      if (board.play(posn, playerID))
+        result = WON;
+      else if (board.isFull())
+        result = DRAWN;
+    }
+    tellOther(playerID, FBFWire.S_OTHER_TURN, posn);
+    addLatency( (System.nanoTime() - startTime)/1000 );
+    return true;
+  }  // end of playMove()
+
+
+  synchronized public void tellOther(int playerID, int msgType, int posn)
+  /* send a message about playerID to the other player
+     (msgType is one of the FBFWire server messages) */
+  { int otherID = ((playerID == PLAYER1) ? PLAYER2 : PLAYER1 );
+    if (handlers[otherID-1] != null)     // index is ID-1
+      handlers[otherID-1].sendMessage(msgType, playerID, posn);
+    else if (isComputer(otherID))
+      computer.sendMessage(msgType, playerID, posn);
+  }  // end of tellOther()
+
+
+
+  // ------------------ move latencies -----------------------
+
+  private void addLatency(long micros)
+  {
+    numMoves++;
+    totalLatency += micros;
+    if (micros > maxLatency)
+      maxLatency = micros;
+    latencies[ bucket(micros) ]++;
+  }  // end of addLatency()
+
+
+  public static int bucket(long micros)
+  // bucket i holds latencies below 2^i microseconds
+  {
+    int i = 64 - Long.numberOfLeadingZeros(micros);
+    return (i < NUM_BUCKETS) ? i : NUM_BUCKETS-1;
+  }
+
+
+  synchronized public int getResult()
+  {  return result;  }
+
+  synchronized public int getNumMoves()
+  {  return numMoves;  }
+
+  synchronized public long getTotalLatency()
+  {  return totalLatency;  }
+
+  synchronized public long getMaxLatency()
+  {  return maxLatency;  }
+
+  synchronized public void addLatencies(int[] totals)
+  // add this room's histogram to totals
+  {
+    for (int i=0; i < NUM_BUCKETS; i++)
+      totals[i] += latencies[i];
+  }
+
+
+  synchronized public String toString()
+  {
+    return "Room " + roomID + ": " + numMoves + " moves, latency avg " +
+           ((numMoves == 0) ? 0 : totalLatency/numMoves) + " us, max " +
+           maxLatency + " us";
+  }
+
+}  // end of GameRoom class
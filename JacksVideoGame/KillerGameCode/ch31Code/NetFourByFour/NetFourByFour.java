@@ -7,10 +7,16 @@
   Message sent by client:
         -- initial opening of connetion
             * receive back     ok <id>   or   full
+        -- binary <version>
+            * sent if the ok message offers binary frames; the
+              messages after it are frames (see FBFWire)
         -- try <posn>
             * may receive back tooFewPlayers
         -- disconnect
 
+   The client uses binary frames if the server offers them, unless
+   it is started with -Dwire=text.
+
    Changes:
       - playerID is 1 or 2
       - altered Board so does not change playerID
@@ -67,7 +73,7 @@ public class NetFourByFour extends JFrame
   private WrapNetFBF wrapFBF;
 
   private Socket sock;
-  private PrintWriter out;  
+  private WireLink link;  
 
   // game-related 
   private int playerID;
@@ -114,11 +120,9 @@ public class NetFourByFour extends JFrame
   {
     try {
       sock = new Socket(HOST, PORT);
-      BufferedReader in  = new BufferedReader( 
-		  		new InputStreamReader( sock.getInputStream() ) );
-      out = new PrintWriter( sock.getOutputStream(), true );  // autoflush
+      link = new WireLink(sock);
 
-      new FBFWatcher(this, in).start();    // start watching for server msgs
+      new FBFWatcher(this, link).start();    // start watching for server msgs
     }
     catch(Exception e)
     {  // System.out.println(e);
@@ -137,7 +141,7 @@ public class NetFourByFour extends JFrame
       else if (playerID != currPlayer)
         setStatus("Sorry, it is Player " + currPlayer + "'s turn");
       else if (numPlayers == MAX_PLAYERS) {
-        out.println( "try " + posn );   // tell the server
+        FBFWire.sendTry(link, posn);   // tell the server
         doMove(posn, playerID);         // do it, don't wait for any response
       }
       else
@@ -179,7 +183,7 @@ public class NetFourByFour extends JFrame
   { if (!isDisabled) {    // the client can only be disabled once
       try {
         isDisabled = true;
-        out.println("disconnect");  // tell server
+        FBFWire.sendDisconnect(link);  // tell server
         sock.close();
         setStatus("Game Over: " + msg);
         // System.out.println("Disabled: " + msg);
@@ -236,6 +240,20 @@ public class NetFourByFour extends JFrame
   } // end of removePlayer()
 
 
+  public void useBinary()
+  /* The server offers binary frames. Accept the offer, and send
+     frames from now on, unless the user wants text. */
+  {
+    if (!WireLink.wantBinary())
+      return;
+    synchronized(link) {
+      link.writeLine(WireLink.OFFER);
+      link.setBinaryOut(true);
+    }
+    System.out.println("Using binary messages");
+  }  // end of useBinary()
+
+
   public void setPlayerID(int id)
   /* This player is given a playerID. 
      Update the window's title bar.
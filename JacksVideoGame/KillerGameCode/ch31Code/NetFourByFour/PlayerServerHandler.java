@@ -6,7 +6,7 @@
 
    Upon initial connection:
        response to client is:
-             ok <playerID>   or    full
+             ok <playerID> binary <version>   or    full
        message to other client if player is accepted:
              added <playerID>
 
@@ -20,21 +20,29 @@
         tooFewPlayers
       message to other client if turn accepted
         otherTurn <playerID> <posn>
+
+   * binary <version>
+     the client offers to use binary frames (see WireLink); after
+     the reply, the messages are sent as frames (see FBFWire)
+
+   The FBFServer puts the player into a GameRoom, and the messages
+   to the other player go through the room, not the server.
 */
 
 import java.net.*;
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 
-public class PlayerServerHandler extends Thread
+public class PlayerServerHandler implements Runnable
 {
   private FBFServer server;
   private Socket clientSock;
-  private BufferedReader in;
-  private PrintWriter out;
+  private WireLink link;
 
-  private int playerID;     // this player id is assigned by FBFServer
+  private GameRoom room;    // this player's game
+  private int playerID;     // this player id is assigned by the room
 
 
   public PlayerServerHandler(Socket s, FBFServer serv)
@@ -43,59 +51,80 @@ public class PlayerServerHandler extends Thread
     server = serv;
     System.out.println("Player connection request");
     try {
-      in  = new BufferedReader( 
-			    new InputStreamReader( clientSock.getInputStream() ) );
-      out = new PrintWriter( clientSock.getOutputStream(), true );  // autoflush
+      link = new WireLink(clientSock);
     }
     catch(Exception e)
     {  System.out.println(e);  }
   }
 
 
+  public void setRoom(GameRoom r, int id)
+  // called by the FBFServer's joinRoom()
+  {  room = r;
+     playerID = id;
+  }
+
+
   public void run()
-  /* Add this player to FSFServer array, get an ID, then 
-     start processing client-side input
+  /* Add this player to a room in the FBFServer, get an ID, then 
+     start processing client-side input. The player is removed from
+     its room, and the socket closed, however processing ends (even
+     if a message causes an unexpected exception).
   */
   {
-    playerID = server.addPlayer(this);
-    if (playerID != -1) {    // -1 means adding the player was rejected
-      sendMessage("ok " + playerID);
-      System.out.println("ok " + playerID);  // tell player his/her playerID
-      server.tellOther(playerID, "added " + playerID);
-
-      processPlayerInput();
-
-      server.removePlayer(playerID);   // remove player from server data
-      server.tellOther(playerID, "removed " + playerID);    // tell others
-    }
-    else    // game is full
-      sendMessage("full");
-
-    try {     // close socket from player
-      clientSock.close();
-      System.out.println("Player " + playerID + " connection closed\n");
+    boolean joined = false;
+    try {
+      server.joinRoom(this);
+      if (playerID != -1) {    // -1 means adding the player was rejected
+        joined = true;
+        link.writeLine("ok " + playerID + " " + WireLink.OFFER);
+        System.out.println("ok " + playerID + " in room " + room.getRoomID());
+        room.tellOther(playerID, FBFWire.S_ADDED, 0);
+
+        processPlayerInput();
+      }
+      else    // game is full
+        link.writeLine("full");
     }
     catch(Exception e)
-    {  System.out.println(e);  }
-
+    {  System.out.println("Player " + playerID + ": " + e);  }
+    finally {
+      if (joined && room.removePlayer(playerID))   // also tells the other player
+        server.roomClosed(room);
+
+      try {     // close socket from player
+        clientSock.close();
+        System.out.println("Player " + playerID + " connection closed\n");
+      }
+      catch(Exception e)
+      {  System.out.println(e);  }
+    }
   }  // end of run()
 
 
    private void processPlayerInput()
    /* Stop when the input stream closes (is null) or "disconnect" is sent.
-      Otherwise pass the input to doRequest(). */
+      Otherwise pass the input to doRequest(), or to doFrame()
+      once the link has switched to binary frames. */
    {
      String line;
+     ByteBuffer frame;
      boolean done = false;
      try {
        while (!done) {
-         if((line = in.readLine()) == null)
+         if (link.isBinaryIn()) {
+           if ((frame = link.readFrame()) == null)
+             done = true;
+           else
+             done = doFrame(frame);
+         }
+         else if((line = link.readLine()) == null)
            done = true;
          else {
            // System.out.println("Player " + playerID + " msg: " + line);
            if (line.trim().equals("disconnect"))
              done = true;
-           else 
+           else if (!link.acceptOffer(line.trim()))
              doRequest(line);
          }
        }
@@ -116,12 +145,7 @@ public class PlayerServerHandler extends Thread
     if (line.startsWith("try")) {
       try {
         int posn = Integer.parseInt( line.substring(4).trim() );
-        // System.out.println("Player " + playerID + " wants to occupy position " + posn);
-
-        if (server.enoughPlayers())
-          server.tellOther(playerID, "otherTurn " + playerID + " " + posn);  // pass turn to others
-        else
-          sendMessage("tooFewPlayers");
+        tryPosn(posn);
       }
       catch(NumberFormatException e)
       { System.out.println(e); } 
@@ -129,14 +153,36 @@ public class PlayerServerHandler extends Thread
   }  // end of doRequest()
 
 
-  synchronized public void sendMessage(String msg)
-  // called by handler and top-level server
-  { try {
-        out.println(msg);
+  private boolean doFrame(ByteBuffer frame)
+  /* Deal with a binary frame, which holds the same information as
+     one of the text messages. Returns true for C_DISCONNECT. */
+  {
+    try {
+      int type = frame.get();
+      if (type == FBFWire.C_TRY)
+        tryPosn( frame.get() );
+      else if (type == FBFWire.C_DISCONNECT)
+        return true;
+      // else a newer message; skip it
     }
-    catch(Exception e)
-    {  System.out.println("Handler for player " + playerID + "\n" + e);  }
-  }  // end of sendMessage()
+    catch(BufferUnderflowException e)
+    {  System.out.println("Bad frame from player " + playerID);  }
+    return false;
+  }  // end of doFrame()
+
+
+  private void tryPosn(int posn)
+  {
+    // System.out.println("Player " + playerID + " wants to occupy position " + posn);
+    long startTime = System.nanoTime();    // for the room's latencies
+    if (!room.playMove(playerID, posn, startTime))  // pass turn to other
+      sendMessage(FBFWire.S_TOO_FEW, playerID, 0);
+  }  // end of tryPosn()
+
+
+  public void sendMessage(int type, int player, int posn)
+  // called by handler and its room; see FBFWire.send()
+  {  FBFWire.send(link, type, player, posn);  }
 
 
 }  // end of PlayerServerHandler class
@@ -0,0 +1,100 @@
+
+// SearchPool.java
+
+/* The computer players' searches, shared by all the ServerPlayers
+   on an FBFServer started with -ai.
+
+   An FBFSearch holds a large transposition table (about 15 MB),
+   so the pool makes numSearchers of them (one per core, by
+   default), however many games the computer is playing, and runs
+   each search on one of numSearchers threads. A ServerPlayer's
+   search is queued with chooseMove(), and when it is done, the
+   move is passed back to the ServerPlayer's moveChosen(), in the
+   pool's thread.
+
+   So at most numSearchers searches run at once. When more
+   are waiting, each search is given less time (down to MIN_TIME
+   ms), so the queue is emptied quickly, and a person never waits
+   long for the computer's move, however many games are going on.
+
+   The table is kept between searches, even for different games;
+   it is keyed by the position, so an entry from another game is
+   still correct, and just takes up room.
+*/
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class SearchPool
+{
+  private final static int MIN_TIME = 100;    // ms for a search
+
+  private int numSearchers;
+  private ExecutorService threads;
+  private LinkedBlockingQueue idle = new LinkedBlockingQueue();
+          // the FBFSearch objects not being used
+  private AtomicInteger numWaiting = new AtomicInteger(0);
+          // searches queued or running
+
+
+  public SearchPool(int numSearchers)
+  {
+    this.numSearchers = numSearchers;
+    for (int i=0; i < numSearchers; i++)
+      idle.add( new FBFSearch() );
+
+    threads = Executors.newFixedThreadPool(numSearchers, new ThreadFactory() {
+       public Thread newThread(Runnable r)
+       {  Thread t = new Thread(r, "ServerPlayer");
+          t.setDaemon(true);
+          return t;
+       }
+     });
+    System.out.println("Computer players share " + numSearchers + " searchers");
+  }  // end of SearchPool()
+
+
+  public SearchPool()
+  // a searcher for each core
+  {  this( Runtime.getRuntime().availableProcessors() );  }
+
+
+
+  public void chooseMove(final ServerPlayer sp, final long me, final long opp,
+                         final int maxDepth, final long maxTime)
+  /* Queue a search for sp's move, where sp's stones are me, and
+     the other player's are opp. This never blocks. */
+  {
+    numWaiting.incrementAndGet();
+    threads.execute( new Runnable() {
+      public void run()
+      {
+        FBFSearch search = (FBFSearch) idle.poll();   // there's one per thread
+        int posn;
+        try {
+          posn = search.chooseMove(me, opp, maxDepth, timeAllowed(maxTime));
+          System.out.println("Computer plays " + posn + " (depth " +
+              search.getDepthReached() + ", " + search.getNodes() + " nodes)");
+        }
+        finally {
+          idle.add(search);
+          numWaiting.decrementAndGet();
+        }
+        sp.moveChosen(posn);
+      }
+    });
+  }  // end of chooseMove()
+
+
+  private long timeAllowed(long maxTime)
+  /* maxTime, shared out when more searches are waiting than
+     there are searchers, but at least MIN_TIME. */
+  {
+    int waiting = numWaiting.get();
+    if (waiting <= numSearchers)
+      return maxTime;
+    return Math.max(MIN_TIME, maxTime*numSearchers/waiting);
+  }  // end of timeAllowed()
+
+}  // end of SearchPool class
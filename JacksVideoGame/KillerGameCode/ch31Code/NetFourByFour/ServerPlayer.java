@@ -0,0 +1,111 @@
+
+// ServerPlayer.java
+
+/* A computer player, run by the FBFServer when it's started
+   with -ai, for a person who has waited in their GameRoom with
+   no one else to play against.
+
+   The server is thin, and doesn't keep the game's board, so the
+   ServerPlayer keeps its own BitBoard. It gets the other player's
+   moves like a PlayerServerHandler does, as S_OTHER_TURN messages
+   passed to sendMessage() by the room's tellOther(), and chooses
+   its reply with one of the server's SearchPool searchers, in the
+   pool's thread, so the room isn't held up while it thinks. The
+   reply comes back to moveChosen(), and goes through the room's
+   computerMove(), which passes it to the other player as an
+   otherTurn message, just as if it came from a client.
+
+   If the ServerPlayer is player 1, it moves first, as soon as
+   it starts.
+*/
+
+
+public class ServerPlayer
+{
+  private final static int PLAYER1 = 1;
+  private final static int PLAYER2 = 2;
+
+  private final static int SEARCH_DEPTH = 64;   // as far as time allows
+  private final static int SEARCH_TIME = 1000;  // ms per move
+
+  private GameRoom room;
+  private int playerID;
+  private int otherID;
+
+  private BitBoard board = new BitBoard();
+  private SearchPool searchers;
+  private boolean gameOver = false;
+
+
+  public ServerPlayer(GameRoom room, int playerID, SearchPool searchers)
+  {
+    this.room = room;
+    this.playerID = playerID;
+    this.searchers = searchers;
+    otherID = (playerID == PLAYER1) ? PLAYER2 : PLAYER1;
+  }
+
+
+  public int getPlayerID()
+  {  return playerID;  }
+
+
+  public void start()
+  // called once the other player has been told about this one
+  {
+    if (playerID == PLAYER1)
+      think();
+  }
+
+
+  synchronized public void stop()
+  // the other player has gone
+  {  gameOver = true;  }
+
+
+
+  public void sendMessage(int type, int player, int posn)
+  /* A message from the room about the other player, called
+     with the room's lock held; see PlayerServerHandler. */
+  {
+    if (type == FBFWire.S_OTHER_TURN)
+      otherTurn(posn);
+  }  // end of sendMessage()
+
+
+
+  synchronized private void otherTurn(int posn)
+  // the other player has played posn; play it here and reply
+  {
+    if (gameOver || !board.isFree(posn))
+      return;
+    if (board.play(posn, otherID) || board.isFull())
+      gameOver = true;
+    else
+      think();
+  }  // end of otherTurn()
+
+
+
+  synchronized private void think()
+  // queue a search for the next move; see moveChosen()
+  {
+    searchers.chooseMove(this, board.getStones(playerID),
+                board.getStones(otherID), SEARCH_DEPTH, SEARCH_TIME);
+  }  // end of think()
+
+
+  public void moveChosen(int posn)
+  /* Called by the SearchPool, in its thread, with the move
+     chosen by think(); play it, unless the game has ended. */
+  {
+    synchronized(this) {
+      if (gameOver)
+        return;
+      if (board.play(posn, playerID) || board.isFull())
+        gameOver = true;
+    }
+    room.computerMove(this, posn);
+  }  // end of moveChosen()
+
+}  // end of ServerPlayer class